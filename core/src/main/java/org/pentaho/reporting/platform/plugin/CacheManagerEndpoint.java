@@ -14,15 +14,26 @@
 package org.pentaho.reporting.platform.plugin;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheStats;
 import org.pentaho.platform.api.engine.ICacheManager;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.engine.classic.core.cache.DataCache;
 import org.pentaho.reporting.engine.classic.core.cache.DataCacheFactory;
+import org.pentaho.reporting.platform.plugin.cache.DefinitionVersionCache;
 import org.pentaho.reporting.platform.plugin.cache.IPluginCacheManager;
 import org.pentaho.reporting.platform.plugin.cache.IReportContentCache;
+import org.pentaho.reporting.platform.plugin.cache.PentahoDataCache;
 
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
 import javax.ws.rs.core.Response;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 
 @Path( "/reporting/api/cache" )
 public class CacheManagerEndpoint {
@@ -40,7 +51,14 @@ public class CacheManagerEndpoint {
       cacheManager.clearRegionCache( "report-output-handlers" );
       cacheManager.clearRegionCache( "report-dataset-cache" );
 
-      DataCacheFactory.getCache().getCacheManager().clearAll();
+      final DataCache dataCache = DataCacheFactory.getCache();
+      if ( dataCache instanceof PentahoDataCache ) {
+        ( (PentahoDataCache) dataCache ).clear();
+      }
+      dataCache.getCacheManager().clearAll();
+      DefinitionVersionCache.invalidateAll();
+      ReportCreator.clearCache();
+      RepositoryFileCache.invalidateAll();
 
       return Response.ok().build();
     } catch ( final Exception e ) {
@@ -48,4 +66,25 @@ public class CacheManagerEndpoint {
     }
   }
 
+  @GET @Path( "stats" )
+  @Produces( APPLICATION_JSON )
+  public Response stats() {
+    try {
+      final DataCache dataCache = DataCacheFactory.getCache();
+      if ( !( dataCache instanceof PentahoDataCache ) ) {
+        return Response.status( Response.Status.NOT_FOUND ).build();
+      }
+      final Map<String, Long> statistics = new LinkedHashMap<>( ( (PentahoDataCache) dataCache ).getStatistics() );
+      final CacheStats repositoryFiles = RepositoryFileCache.getStats();
+      if ( repositoryFiles != null ) {
+        statistics.put( "repositoryFileHits", repositoryFiles.hitCount() );
+        statistics.put( "repositoryFileMisses", repositoryFiles.missCount() );
+      }
+      final ObjectMapper mapper = new ObjectMapper();
+      return Response.ok( mapper.writeValueAsString( statistics ) ).build();
+    } catch ( final Exception e ) {
+      return Response.serverError().build();
+    }
+  }
+
 }
@@ -0,0 +1,178 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.Locale;
+
+/**
+ * Output stream of a response that can take content already encoded with gzip. A writer holding gzip encoded content
+ * checks {@link #isGzipAccepted()} and passes the content to {@link #writeGzip(byte[])} instead of writing anything
+ * else. The response then gets the Content-Encoding header and the bytes go out as they are, so neither the plugin
+ * nor the container compresses them again. A writer knowing the entity tag of the content passes it to
+ * {@link #setEntityTag(String, String)} before writing.
+ */
+public class ContentEncodingOutputStream extends OutputStream {
+  public static final String GZIP = "gzip";
+
+  private final OutputStream wrappedStream;
+  private HttpServletResponse response;
+  private boolean gzipAccepted;
+  private boolean written;
+  private String contentEncoding;
+  private String entityTag;
+  private String contentKey;
+
+  public ContentEncodingOutputStream( final OutputStream wrapped ) {
+    this.wrappedStream = wrapped;
+  }
+
+  /**
+   * @param response     response receiving the content encoding header, null if there is none
+   * @param gzipAccepted whether the client accepts gzip content encoding
+   */
+  public void setResponse( final HttpServletResponse response, final boolean gzipAccepted ) {
+    this.response = response;
+    this.gzipAccepted = gzipAccepted;
+  }
+
+  /**
+   * @return true if encoded content can be written, that is the client accepts it and nothing was written yet
+   */
+  public boolean isGzipAccepted() {
+    return response != null && gzipAccepted && !written;
+  }
+
+  /**
+   * Writes the complete gzip encoded content of the response.
+   *
+   * @param data gzip member
+   * @throws IllegalStateException if encoded content is not accepted
+   */
+  public void writeGzip( final byte[] data ) throws IOException {
+    if ( !isGzipAccepted() ) {
+      throw new IllegalStateException( "Gzip encoded content is not accepted" );
+    }
+    response.setHeader( "Content-Encoding", GZIP );
+    response.addHeader( "Vary", "Accept-Encoding" );
+    contentEncoding = GZIP;
+    write( data, 0, data.length );
+  }
+
+  /**
+   * @return encoding of the written content or null if it was written as it is
+   */
+  public String getContentEncoding() {
+    return contentEncoding;
+  }
+
+  /**
+   * Sends the entity tag of the content about to be written. Ignored without a response or once content was written.
+   *
+   * @param entityTag  tag of the content
+   * @param contentKey cache key of the content
+   */
+  public void setEntityTag( final String entityTag, final String contentKey ) {
+    if ( response == null || written ) {
+      return;
+    }
+    response.setHeader( EntityTags.ETAG, entityTag );
+    this.entityTag = entityTag;
+    this.contentKey = contentKey;
+  }
+
+  /**
+   * @return the tag sent with the content or null
+   */
+  public String getEntityTag() {
+    return entityTag;
+  }
+
+  /**
+   * @return the cache key of the content sent with an entity tag or null
+   */
+  public String getContentKey() {
+    return contentKey;
+  }
+
+  public void write( final int b ) throws IOException {
+    written = true;
+    wrappedStream.write( b );
+  }
+
+  public void write( final byte[] b ) throws IOException {
+    write( b, 0, b.length );
+  }
+
+  public void write( final byte[] b, final int off, final int len ) throws IOException {
+    written = true;
+    wrappedStream.write( b, off, len );
+  }
+
+  public void flush() throws IOException {
+    wrappedStream.flush();
+  }
+
+  public void close() throws IOException {
+    wrappedStream.close();
+  }
+
+  public OutputStream getWrappedStream() {
+    return wrappedStream;
+  }
+
+  /**
+   * Checks the Accept-Encoding headers of a request for gzip with a non-zero quality.
+   *
+   * @param request request, may be null
+   * @return true if the client accepts gzip encoded content
+   */
+  public static boolean acceptsGzip( final HttpServletRequest request ) {
+    if ( request == null ) {
+      return false;
+    }
+    final Enumeration<String> headers = request.getHeaders( "Accept-Encoding" );
+    while ( headers != null && headers.hasMoreElements() ) {
+      final String header = headers.nextElement();
+      if ( header == null ) {
+        continue;
+      }
+      for ( final String coding : header.split( "," ) ) {
+        final String[] parts = coding.split( ";" );
+        final String name = parts[ 0 ].trim().toLowerCase( Locale.ROOT );
+        if ( !GZIP.equals( name ) && !"x-gzip".equals( name ) ) {
+          continue;
+        }
+        boolean accepted = true;
+        for ( int i = 1; i < parts.length; i++ ) {
+          final String parameter = parts[ i ].trim();
+          if ( parameter.startsWith( "q=" ) ) {
+            try {
+              accepted = Double.parseDouble( parameter.substring( 2 ).trim() ) > 0;
+            } catch ( final NumberFormatException e ) {
+              accepted = false;
+            }
+          }
+        }
+        if ( accepted ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,240 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.api.repository2.unified.RepositoryFile;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.platform.util.messages.LocaleHelper;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.platform.plugin.cache.IPluginCacheManager;
+import org.pentaho.reporting.platform.plugin.cache.IReportContent;
+import org.pentaho.reporting.platform.plugin.cache.IReportContentCache;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Strong entity tags of report pages and parameter documents, so a browser asking again for content it has already
+ * gets a 304 Not Modified instead of the content.
+ * <p>
+ * A tag is issued for a request key, made of the user, the report file and its version, the locale and the request
+ * parameters. A later request with the same key and the issued tag in If-None-Match is answered before the report is
+ * loaded: for a report page if the page is still in the content cache and has not changed, for a parameter document
+ * if the tag is younger than {@link #PARAMETER_LIFETIME}, as parameter values can come from queries.
+ */
+public final class EntityTags {
+  private static final Log logger = LogFactory.getLog( EntityTags.class );
+
+  public static final String ETAG = "ETag";
+  public static final String IF_NONE_MATCH = "If-None-Match";
+  public static final String CACHE_CONTROL = "private, max-age=0, must-revalidate";
+  /**
+   * Seconds a parameter document is answered with 304 after it was sent, off by default.
+   */
+  static final String PARAMETER_LIFETIME = "org.pentaho.reporting.platform.plugin.ParameterEntityTagLifetime";
+  private static final long DEFAULT_PARAMETER_LIFETIME = 0;
+  private static final int MAX_ISSUED = 10000;
+
+  private static final Cache<String, Issued> ISSUED = CacheBuilder.newBuilder().maximumSize( MAX_ISSUED ).build();
+
+  private EntityTags() {
+  }
+
+  private static final class Issued {
+    private final String tag;
+    private final long expires;
+    private final String contentKey;
+    private final int page;
+    private final String contentEncoding;
+
+    private Issued( final String tag, final long expires, final String contentKey, final int page,
+                    final String contentEncoding ) {
+      this.tag = tag;
+      this.expires = expires;
+      this.contentKey = contentKey;
+      this.page = page;
+      this.contentEncoding = contentEncoding;
+    }
+  }
+
+  /**
+   * Creates the key identifying the content a request asks for.
+   *
+   * @param kind         kind of content, requests of different kinds never share tags
+   * @param session      user session, may be null
+   * @param file         report file
+   * @param inputs       request parameters
+   * @param gzipAccepted whether the client accepts gzip encoded content
+   * @return the key or null if the request can not be identified
+   */
+  public static String createRequestKey( final String kind, final IPentahoSession session, final RepositoryFile file,
+                                         final Map<String, Object> inputs, final boolean gzipAccepted ) {
+    if ( file == null || file.getId() == null ) {
+      return null;
+    }
+    final StringBuilder text = new StringBuilder( kind );
+    text.append( '\n' ).append( session != null ? session.getName() : "" );
+    text.append( '\n' ).append( file.getId() ).append( '\n' ).append( file.getVersionId() );
+    text.append( '\n' ).append( file.getLastModifiedDate() != null ? file.getLastModifiedDate().getTime() : 0 );
+    text.append( '\n' ).append( LocaleHelper.getLocale() ).append( '\n' ).append( gzipAccepted );
+    for ( final Map.Entry<String, Object> input : new TreeMap<>( inputs ).entrySet() ) {
+      final Object value = input.getValue();
+      text.append( '\n' ).append( input.getKey() ).append( '=' )
+        .append( value instanceof Object[] ? Arrays.deepToString( (Object[]) value ) : String.valueOf( value ) );
+    }
+    try {
+      final MessageDigest md = MessageDigest.getInstance( "SHA-256" );
+      return Base64.encodeBase64URLSafeString( md.digest( text.toString().getBytes( StandardCharsets.UTF_8 ) ) );
+    } catch ( final NoSuchAlgorithmException e ) {
+      logger.debug( "Entity tags are not available: ", e );
+      return null;
+    }
+  }
+
+  /**
+   * Creates the tag of a report page from the cache key of the report content, the page number and the bytes sent.
+   *
+   * @param contentEncoding content encoding of the data, null if the page is sent as it is
+   */
+  public static String createPageTag( final String contentKey, final int page, final byte[] data,
+                                      final String contentEncoding ) {
+    final CRC32 crc = new CRC32();
+    crc.update( data, 0, data.length );
+    final StringBuilder tag = new StringBuilder( "\"" ).append( contentKey ).append( '-' ).append( page )
+      .append( '-' ).append( Long.toHexString( crc.getValue() ) );
+    if ( contentEncoding != null ) {
+      tag.append( '-' ).append( contentEncoding );
+    }
+    return tag.append( '"' ).toString();
+  }
+
+  /**
+   * Records the tag sent with a report page.
+   */
+  public static void issuePage( final String requestKey, final String contentKey, final int page,
+                                final String contentEncoding ) {
+    if ( requestKey != null && contentKey != null ) {
+      ISSUED.put( requestKey, new Issued( null, Long.MAX_VALUE, contentKey, page, contentEncoding ) );
+    }
+  }
+
+  /**
+   * Returns the tag of the report page sent for a request key, computed from the cached page.
+   *
+   * @return the tag or null if the page was not sent or is no longer cached
+   */
+  public static String getPageTag( final String requestKey ) {
+    final Issued issued = requestKey != null ? ISSUED.getIfPresent( requestKey ) : null;
+    if ( issued == null || issued.contentKey == null ) {
+      return null;
+    }
+    final IPluginCacheManager cacheManager = PentahoSystem.get( IPluginCacheManager.class );
+    final IReportContentCache cache = cacheManager != null ? cacheManager.getCache() : null;
+    final IReportContent content = cache != null ? cache.get( issued.contentKey ) : null;
+    if ( content == null ) {
+      return null;
+    }
+    final byte[] data = issued.contentEncoding != null
+      ? content.getGzipPageData( issued.page ) : content.getPageData( issued.page );
+    if ( data == null ) {
+      return null;
+    }
+    return createPageTag( issued.contentKey, issued.page, data, issued.contentEncoding );
+  }
+
+  /**
+   * Creates a new tag for the parameter document of a request key. Every document gets a new tag, as its content can
+   * change without the request changing.
+   */
+  public static String createParameterTag( final String requestKey ) {
+    return "\"" + requestKey + "-" + Long.toHexString( System.currentTimeMillis() ) + "\"";
+  }
+
+  /**
+   * Records the tag sent with a parameter document.
+   */
+  public static void issueParameters( final String requestKey, final String tag ) {
+    final long lifetime = getParameterLifetime();
+    if ( requestKey != null && lifetime > 0 ) {
+      ISSUED.put( requestKey, new Issued( tag, System.currentTimeMillis() + lifetime * 1000, null, -1, null ) );
+    }
+  }
+
+  /**
+   * @return the tag of the parameter document sent for a request key or null if it expired
+   */
+  public static String getParameterTag( final String requestKey ) {
+    final Issued issued = requestKey != null ? ISSUED.getIfPresent( requestKey ) : null;
+    if ( issued == null || issued.tag == null || issued.expires < System.currentTimeMillis() ) {
+      return null;
+    }
+    return issued.tag;
+  }
+
+  private static long getParameterLifetime() {
+    final String lifetime = ClassicEngineBoot.getInstance().getGlobalConfig()
+      .getConfigProperty( PARAMETER_LIFETIME, String.valueOf( DEFAULT_PARAMETER_LIFETIME ) );
+    try {
+      return Long.parseLong( lifetime.trim() );
+    } catch ( final NumberFormatException e ) {
+      logger.warn( "Invalid value of " + PARAMETER_LIFETIME + ": " + lifetime );
+      return DEFAULT_PARAMETER_LIFETIME;
+    }
+  }
+
+  /**
+   * @return true if the request has the tag in its If-None-Match header
+   */
+  public static boolean isNotModified( final HttpServletRequest request, final String tag ) {
+    return request != null && tag != null && matches( request.getHeader( IF_NONE_MATCH ), tag );
+  }
+
+  /**
+   * Compares the tags of an If-None-Match header with a tag, weak tags in the header match their strong form.
+   */
+  static boolean matches( final String ifNoneMatch, final String tag ) {
+    if ( ifNoneMatch == null ) {
+      return false;
+    }
+    for ( final String candidate : ifNoneMatch.split( "," ) ) {
+      String value = candidate.trim();
+      if ( value.startsWith( "W/" ) ) {
+        value = value.substring( 2 );
+      }
+      if ( "*".equals( value ) || tag.equals( value ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static void sendNotModified( final HttpServletResponse response, final String tag ) {
+    response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+    response.setHeader( ETAG, tag );
+    response.setHeader( "Cache-Control", CACHE_CONTROL );
+  }
+}
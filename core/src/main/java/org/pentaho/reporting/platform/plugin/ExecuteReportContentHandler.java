@@ -18,6 +18,7 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
@@ -74,6 +75,27 @@ public class ExecuteReportContentHandler {
     String result = MessageTypes.FAILED;
     StagingHandler reportStagingHandler = null;
     try {
+      final IUnifiedRepository repository = PentahoSystem.get( IUnifiedRepository.class, userSession );
+      final RepositoryFile file = repository.getFileById( fileId );
+
+      // a page the browser has already is answered before the report is loaded
+      final IParameterProvider pathProviders = contentGenerator.getParameterProviders().get( "path" );
+      final Object httpRequest = pathProviders != null ? pathProviders.getParameter( "httprequest" ) : null;
+      final HttpServletRequest request =
+        httpRequest instanceof HttpServletRequest ? (HttpServletRequest) httpRequest : null;
+      final boolean gzipAccepted = ContentEncodingOutputStream.acceptsGzip( request );
+      final String requestKey = request != null
+        ? EntityTags.createRequestKey( "report", userSession, file, inputs, gzipAccepted ) : null;
+      if ( requestKey != null && request.getHeader( EntityTags.IF_NONE_MATCH ) != null ) {
+        final Object httpResponse = pathProviders.getParameter( "httpresponse" );
+        final String tag = EntityTags.getPageTag( requestKey );
+        if ( httpResponse instanceof HttpServletResponse && EntityTags.isNotModified( request, tag ) ) {
+          EntityTags.sendNotModified( (HttpServletResponse) httpResponse, tag );
+          result = MessageTypes.INSTANCE_END;
+          return;
+        }
+      }
+
       final Object rawSessionId = inputs.get( ParameterXmlContentHandler.SYS_PARAM_SESSION_ID );
       if ( ( rawSessionId instanceof String ) == false || "".equals( rawSessionId ) ) {
         inputs.put( ParameterXmlContentHandler.SYS_PARAM_SESSION_ID, UUIDUtil.getUUIDAsString() );
@@ -91,7 +113,8 @@ public class ExecuteReportContentHandler {
 
       final MasterReport report = reportComponent.getReport();
       final StagingMode stagingMode = getStagingMode( inputs, report );
-      reportStagingHandler = AbstractStagingHandler.getStagingHandlerImpl( outputStream, this.userSession, stagingMode );
+      reportStagingHandler = AbstractStagingHandler.getStagingHandlerImpl( outputStream, this.userSession, stagingMode,
+        report.getConfiguration() );
 
       if ( reportStagingHandler.isFullyBuffered() ) {
         // it is safe to disable the buffered writing for the report now that we have a
@@ -99,15 +122,14 @@ public class ExecuteReportContentHandler {
         report.getReportConfiguration().setConfigProperty( FORCED_BUFFERED_WRITING, "false" );
       }
 
-      reportComponent.setOutputStream( reportStagingHandler.getStagingOutputStream() );
+      final ContentEncodingOutputStream encodingStream =
+        new ContentEncodingOutputStream( reportStagingHandler.getStagingOutputStream() );
+      reportComponent.setOutputStream( encodingStream );
 
       // the requested mime type can be null, in that case the report-component will resolve the desired
       // type from the output-target.
       // Hoever, the report-component will inspect the inputs independently from the mimetype here.
 
-      final IUnifiedRepository repository = PentahoSystem.get( IUnifiedRepository.class, userSession );
-      final RepositoryFile file = repository.getFileById( fileId );
-
       // add all inputs (request parameters) to report component
       final String mimeType = reportComponent.getMimeType();
 
@@ -129,7 +151,6 @@ public class ExecuteReportContentHandler {
 
       HttpServletResponse response = null;
       boolean streamToBrowser = false;
-      final IParameterProvider pathProviders = contentGenerator.getParameterProviders().get( "path" );
       if ( pathProviders != null ) {
         final Object httpResponse = pathProviders.getParameter( "httpresponse" );
         if ( httpResponse instanceof HttpServletResponse ) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
@@ -144,6 +165,8 @@ public class ExecuteReportContentHandler {
               streamToBrowser = true;
             }
           }
+          // cached html pages can go out as stored, gzip encoded
+          encodingStream.setResponse( response, gzipAccepted );
         }
       }
 
@@ -162,13 +185,18 @@ public class ExecuteReportContentHandler {
           // set headers before we begin execution
           response.setHeader( "Content-Disposition", disposition );
           response.setHeader( "Content-Description", file.getName() ); //$NON-NLS-1$
-          response.setHeader( "Cache-Control", "private, max-age=0, must-revalidate" );
+          response.setHeader( "Cache-Control", EntityTags.CACHE_CONTROL );
         }
         if ( reportComponent.execute() ) {
           if ( response != null ) {
             if ( reportStagingHandler.canSendHeaders() ) {
               // we can set content lenght after execution - so we know exact response weight
-              response.setContentLength( reportStagingHandler.getWrittenByteCount() );
+              final long contentLength = reportStagingHandler.getWrittenByteCount();
+              if ( contentLength <= Integer.MAX_VALUE ) {
+                response.setContentLength( (int) contentLength );
+              } else {
+                response.setHeader( "Content-Length", String.valueOf( contentLength ) );
+              }
             }
           }
           if ( logger.isDebugEnabled() ) {
@@ -177,6 +205,10 @@ public class ExecuteReportContentHandler {
                 String.valueOf( reportStagingHandler.getWrittenByteCount() ) ) ); //$NON-NLS-1$
           }
           reportStagingHandler.complete(); // will copy bytes to final destination...
+          if ( encodingStream.getEntityTag() != null ) {
+            EntityTags.issuePage( requestKey, encodingStream.getContentKey(), reportComponent.getAcceptedPage(),
+              encodingStream.getContentEncoding() );
+          }
           result = MessageTypes.INSTANCE_END;
         } else { // failed execution
           sendErrorResponse( response, outputStream, reportStagingHandler );
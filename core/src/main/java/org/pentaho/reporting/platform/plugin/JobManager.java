@@ -37,6 +37,7 @@ import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
 
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -70,6 +71,11 @@ public class JobManager {
   private static final String ERROR_GENERATING_REPORT = "Error generating report";
   private static final String UNABLE_TO_SERIALIZE_TO_JSON = "Unable to serialize to json : ";
   private static final String UNCKNOWN_MEDIA_TYPE = "Can't determine JAX-RS media type for: ";
+  private static final String RANGE = "Range";
+  private static final String IF_RANGE = "If-Range";
+  private static final String ACCEPT_RANGES = "Accept-Ranges";
+  private static final String CONTENT_RANGE = "Content-Range";
+  private static final String CONTENT_LENGTH = "Content-Length";
   private final Config config;
 
   public JobManager() {
@@ -99,16 +105,32 @@ public class JobManager {
 
   @GET
   @Path( "{job_id}/content" )
-  public Response getPDFContent( @PathParam( "job_id" ) final String job_id ) throws IOException {
+  public Response getPDFContent( @PathParam( "job_id" ) final String job_id,
+                                 @HeaderParam( RANGE ) final String range,
+                                 @HeaderParam( IF_RANGE ) final String ifRange ) throws IOException {
     logger.debug( "Chrome pdf viewer workaround. See BACKLOG-7598 for details" );
 
-    return this.getContent( job_id );
+    return this.getContent( job_id, range, ifRange );
   }
 
+  public Response getPDFContent( final String job_id ) throws IOException {
+    return getPDFContent( job_id, null, null );
+  }
+
+  public Response getContent( final String jobId ) throws IOException {
+    return getContent( jobId, null, null );
+  }
+
+  /**
+   * Sends the content of a finished job. A single byte range is sent if requested, as long as the If-Range tag, if
+   * any, still matches the content, so interrupted downloads of large reports can be resumed.
+   */
   @SuppressWarnings( "unchecked" )
   @POST
   @Path( "{job_id}/content" )
-  public Response getContent( @PathParam( "job_id" ) final String jobId )
+  public Response getContent( @PathParam( "job_id" ) final String jobId,
+                              @HeaderParam( RANGE ) final String range,
+                              @HeaderParam( IF_RANGE ) final String ifRange )
     throws IOException {
 
     try {
@@ -128,7 +150,15 @@ public class JobManager {
         return Response.serverError().build();
       }
 
-      final StreamingOutput stream = new StreamingOutputWrapper( input.getStream() );
+      final long size = input.getContentSize();
+      final String tag = "\"" + jobId + "-" + size + "\"";
+      // a changed content is sent as a whole
+      final boolean current = ifRange == null || tag.equals( ifRange.trim() );
+      final ByteRange byteRange = current ? ByteRange.parse( range, size ) : null;
+      if ( byteRange == ByteRange.UNSATISFIABLE ) {
+        return Response.status( Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE )
+          .header( CONTENT_RANGE, "bytes */" + size ).build();
+      }
 
       MediaType mediaType;
       Response.ResponseBuilder response;
@@ -141,7 +171,17 @@ public class JobManager {
         mediaType = MediaType.APPLICATION_OCTET_STREAM_TYPE;
       }
 
-      response = Response.ok( stream, mediaType );
+      if ( byteRange == null ) {
+        response = Response.ok( new StreamingOutputWrapper( input ), mediaType )
+          .header( CONTENT_LENGTH, size );
+      } else {
+        final long count = byteRange.last - byteRange.first + 1;
+        response = Response.status( Response.Status.PARTIAL_CONTENT )
+          .entity( new StreamingOutputWrapper( input, byteRange.first, count ) ).type( mediaType )
+          .header( CONTENT_RANGE, "bytes " + byteRange.first + "-" + byteRange.last + "/" + size )
+          .header( CONTENT_LENGTH, count );
+      }
+      response = response.header( ACCEPT_RANGES, "bytes" ).header( EntityTags.ETAG, tag );
 
       response = noCache( response );
       response = calculateContentDisposition( response, state );
@@ -316,14 +356,39 @@ public class JobManager {
   protected static final class StreamingOutputWrapper implements StreamingOutput {
 
     private InputStream input;
+    private IFixedSizeStreamingContent content;
+    private long position;
+    private long count = -1;
 
     public StreamingOutputWrapper( final InputStream readFrom ) {
       this.input = readFrom;
     }
 
+    /**
+     * Lets the content write itself, so staged files are transferred without copying them through a stream.
+     */
+    public StreamingOutputWrapper( final IFixedSizeStreamingContent content ) {
+      this.content = content;
+    }
+
+    /**
+     * Writes count bytes of the content starting at position.
+     */
+    public StreamingOutputWrapper( final IFixedSizeStreamingContent content, final long position, final long count ) {
+      this.content = content;
+      this.position = position;
+      this.count = count;
+    }
+
     @Override public void write( final OutputStream outputStream ) throws IOException, WebApplicationException {
       try {
-        IOUtils.copy( input, outputStream );
+        if ( content != null && count >= 0 ) {
+          content.writeTo( outputStream, position, count );
+        } else if ( content != null ) {
+          content.writeTo( outputStream );
+        } else {
+          IOUtils.copy( input, outputStream );
+        }
         outputStream.flush();
       } finally {
         IOUtils.closeQuietly( outputStream );
@@ -332,6 +397,58 @@ public class JobManager {
     }
   }
 
+  /**
+   * Single range of a Range header, see RFC 7233. Multiple ranges are not supported, the whole content is sent instead.
+   */
+  static final class ByteRange {
+    static final ByteRange UNSATISFIABLE = new ByteRange( -1, -1 );
+
+    final long first;
+    final long last;
+
+    private ByteRange( final long first, final long last ) {
+      this.first = first;
+      this.last = last;
+    }
+
+    /**
+     * @return the range, {@link #UNSATISFIABLE} if it starts beyond the content, or null if the whole content is sent
+     */
+    static ByteRange parse( final String header, final long size ) {
+      if ( header == null || !header.trim().startsWith( "bytes=" ) ) {
+        return null;
+      }
+      final String spec = header.trim().substring( "bytes=".length() );
+      final int dash = spec.indexOf( '-' );
+      if ( dash < 0 || spec.indexOf( ',' ) >= 0 ) {
+        return null;
+      }
+      try {
+        final String first = spec.substring( 0, dash ).trim();
+        final String last = spec.substring( dash + 1 ).trim();
+        if ( first.isEmpty() ) {
+          // the final bytes
+          final long suffix = Long.parseLong( last );
+          if ( suffix <= 0 || size == 0 ) {
+            return UNSATISFIABLE;
+          }
+          return new ByteRange( Math.max( 0, size - suffix ), size - 1 );
+        }
+        final long start = Long.parseLong( first );
+        final long end = last.isEmpty() ? size - 1 : Long.parseLong( last );
+        if ( end < start ) {
+          return null;
+        }
+        if ( start >= size ) {
+          return UNSATISFIABLE;
+        }
+        return new ByteRange( start, Math.min( end, size - 1 ) );
+      } catch ( final NumberFormatException e ) {
+        return null;
+      }
+    }
+  }
+
   protected static Response.ResponseBuilder noCache( final Response.ResponseBuilder response ) {
     // no cache
     final CacheControl cacheControl = new CacheControl();
@@ -119,6 +119,10 @@ public class ParameterContentGenerator extends SimpleContentGenerator {
   }
 
   public IParameterProvider getPathParameters() {
+    if ( parameterProviders == null ) {
+      return null;
+    }
+
     return parameterProviders.get( "path" );
   }
 
@@ -19,6 +19,9 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.platform.api.engine.IParameterProvider;
 import org.pentaho.platform.api.engine.IPluginManager;
+import org.pentaho.platform.api.repository2.unified.IUnifiedRepository;
+import org.pentaho.platform.api.repository2.unified.RepositoryFile;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.util.UUIDUtil;
 import org.pentaho.plugin.jfreereport.reportcharts.ChartExpression;
@@ -67,6 +70,8 @@ import org.springframework.web.util.HtmlUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
@@ -123,6 +128,7 @@ public class ParameterXmlContentHandler {
   private Map<String, ParameterDefinitionEntry> systemParameter;
   private final boolean paginate;
   private final IParameterProvider requestParameters;
+  private final IParameterProvider pathParameters;
   private final Map<String, Object> inputs;
   protected ReportContentUtil reportContentUtil;
 
@@ -130,6 +136,7 @@ public class ParameterXmlContentHandler {
     this.paginate = paginate;
     inputs = contentGenerator.createInputs();
     requestParameters = contentGenerator.getRequestParameters();
+    pathParameters = contentGenerator.getPathParameters();
     reportContentUtil = new ReportContentUtil();
   }
 
@@ -214,6 +221,24 @@ public class ParameterXmlContentHandler {
     }
   }
 
+  private <T> T getHttpParameter( final String name, final Class<T> type ) {
+    final Object value = pathParameters != null ? pathParameters.getParameter( name ) : null;
+    return type.isInstance( value ) ? type.cast( value ) : null;
+  }
+
+  /**
+   * Identifies the parameter document of a request by the report file, the user and the parameter state.
+   */
+  private String createRequestKey( final Serializable fileId, final boolean overrideOutputType ) {
+    final IUnifiedRepository repository = PentahoSystem.get( IUnifiedRepository.class, null );
+    if ( repository == null ) {
+      return null;
+    }
+    final RepositoryFile file = repository.getFileById( fileId );
+    return EntityTags.createRequestKey( "parameter-" + paginate + "-" + overrideOutputType,
+      PentahoSessionHolder.getSession(), file, inputs, false );
+  }
+
   private IParameterProvider getRequestParameters() {
     return requestParameters;
   }
@@ -288,6 +313,19 @@ public class ParameterXmlContentHandler {
                                       final String path,
                                       boolean overrideOutputType,
                                       final MasterReport sourceReport ) throws Exception {
+    // a document the browser has already is answered before the report is loaded
+    final HttpServletRequest request = getHttpParameter( "httprequest", HttpServletRequest.class );
+    final HttpServletResponse response = getHttpParameter( "httpresponse", HttpServletResponse.class );
+    final String requestKey = sourceReport == null && request != null && response != null
+      ? createRequestKey( fileId, overrideOutputType ) : null;
+    if ( requestKey != null ) {
+      final String tag = EntityTags.getParameterTag( requestKey );
+      if ( EntityTags.isNotModified( request, tag ) ) {
+        EntityTags.sendNotModified( response, tag );
+        return;
+      }
+    }
+
     final Object rawSessionId = inputs.get( ParameterXmlContentHandler.SYS_PARAM_SESSION_ID );
     if ( ( ( rawSessionId instanceof String ) == false ) || "".equals( rawSessionId ) ) {
       inputs.put( ParameterXmlContentHandler.SYS_PARAM_SESSION_ID, UUIDUtil.getUUIDAsString() );
@@ -405,10 +443,19 @@ public class ParameterXmlContentHandler {
       }
       document.appendChild( parameters );
 
+      final String tag = requestKey != null ? EntityTags.createParameterTag( requestKey ) : null;
+      if ( tag != null ) {
+        response.setHeader( EntityTags.ETAG, tag );
+        response.setHeader( "Cache-Control", EntityTags.CACHE_CONTROL );
+      }
+
       final DOMSource source = new DOMSource( document );
       final StreamResult result = new StreamResult( outputStream );
       final Transformer transformer = TransformerFactory.newInstance().newTransformer();
       transformer.transform( source, result );
+      if ( tag != null ) {
+        EntityTags.issueParameters( requestKey, tag );
+      }
       // close parameter context
     } finally {
       parameterContext.close();
@@ -19,10 +19,15 @@ import java.io.Serializable;
 import java.net.URL;
 import java.util.HashMap;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.pentaho.platform.api.repository2.unified.IUnifiedRepository;
 import org.pentaho.platform.api.repository2.unified.RepositoryFile;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
 import org.pentaho.reporting.engine.classic.core.MasterReport;
 import org.pentaho.reporting.engine.classic.core.modules.parser.base.ReportGenerator;
 import org.pentaho.reporting.libraries.resourceloader.Resource;
@@ -32,6 +37,34 @@ import org.pentaho.reporting.libraries.resourceloader.ResourceManager;
 import org.xml.sax.InputSource;
 
 public class ReportCreator {
+  private static final Log logger = LogFactory.getLog( ReportCreator.class );
+
+  /**
+   * Number of parsed report definitions kept, 0 parses the report file on every request.
+   */
+  static final String TEMPLATE_CACHE_SIZE = "org.pentaho.reporting.platform.plugin.ReportTemplateCacheSize";
+  private static final int DEFAULT_TEMPLATE_CACHE_SIZE = 100;
+
+  /**
+   * A parsed report file and the version of the file it was parsed from.
+   */
+  private static final class Template {
+    private final String version;
+    private final MasterReport report;
+
+    private Template( final String version, final MasterReport report ) {
+      this.version = version;
+      this.report = report;
+    }
+  }
+
+  /**
+   * Holds the cache of parsed reports, created when it is used first, after the engine was booted.
+   */
+  private static final class Templates {
+    private static final Cache<Serializable, Template> CACHE = createCache();
+  }
+
   public static MasterReport createReport( final InputStream inputStream, final URL url ) throws IOException,
     ResourceException {
     final ReportGenerator generator = ReportGenerator.createInstance();
@@ -52,6 +85,60 @@ public class ReportCreator {
   }
 
   public static MasterReport createReport( final Serializable fileId ) throws ResourceException, IOException {
+    IUnifiedRepository unifiedRepository =
+        PentahoSystem.get( IUnifiedRepository.class, PentahoSessionHolder.getSession() );
+    // read as the current user, so only users allowed to read the file get the cached report
+    final RepositoryFile repositoryFile = unifiedRepository.getFileById( fileId );
+    final String version = getVersion( repositoryFile );
+    final Cache<Serializable, Template> cache = Templates.CACHE;
+    if ( version == null || cache == null ) {
+      return parseReport( fileId, repositoryFile );
+    }
+
+    final Template template = cache.getIfPresent( repositoryFile.getId() );
+    if ( template != null && template.version.equals( version ) ) {
+      return (MasterReport) template.report.clone();
+    }
+    final MasterReport report = parseReport( fileId, repositoryFile );
+    // the caller changes the report it gets, the cache keeps a copy
+    cache.put( repositoryFile.getId(), new Template( version, (MasterReport) report.clone() ) );
+    return report;
+  }
+
+  /**
+   * Removes all parsed reports.
+   */
+  public static void clearCache() {
+    final Cache<Serializable, Template> cache = Templates.CACHE;
+    if ( cache != null ) {
+      cache.invalidateAll();
+    }
+  }
+
+  private static String getVersion( final RepositoryFile repositoryFile ) {
+    if ( repositoryFile == null || repositoryFile.getId() == null || repositoryFile.getLastModifiedDate() == null ) {
+      return null;
+    }
+    return repositoryFile.getLastModifiedDate().getTime() + "/" + repositoryFile.getVersionId();
+  }
+
+  private static Cache<Serializable, Template> createCache() {
+    final String size = ClassicEngineBoot.getInstance().getGlobalConfig()
+      .getConfigProperty( TEMPLATE_CACHE_SIZE, String.valueOf( DEFAULT_TEMPLATE_CACHE_SIZE ) );
+    int maximumSize = DEFAULT_TEMPLATE_CACHE_SIZE;
+    try {
+      maximumSize = Integer.parseInt( size.trim() );
+    } catch ( final NumberFormatException e ) {
+      logger.warn( "Invalid value of " + TEMPLATE_CACHE_SIZE + ": " + size );
+    }
+    if ( maximumSize <= 0 ) {
+      return null;
+    }
+    return CacheBuilder.newBuilder().maximumSize( maximumSize ).build();
+  }
+
+  static MasterReport parseReport( final Serializable fileId, final RepositoryFile repositoryFile )
+    throws ResourceException {
     final ResourceManager resourceManager = new ResourceManager();
     resourceManager.registerDefaults();
     final HashMap helperObjects = new HashMap();
@@ -60,9 +147,6 @@ public class ReportCreator {
 
     ResourceKey key = null;
 
-    IUnifiedRepository unifiedRepository =
-        PentahoSystem.get( IUnifiedRepository.class, PentahoSessionHolder.getSession() );
-    RepositoryFile repositoryFile = unifiedRepository.getFileById( fileId );
     if ( repositoryFile != null ) {
       key =
           resourceManager.createKey( RepositoryResourceLoader.SOLUTION_SCHEMA_NAME
@@ -55,13 +55,17 @@ public class ReportingSystemStartupListener implements IPentahoSystemListener {
     try {
       synchronized ( ClassicEngineBoot.class ) {
         if ( ClassicEngineBoot.getInstance().isBootDone() == false ) {
+          final long start = System.currentTimeMillis();
           ClassicEngineBoot.setUserConfig( new ReportingConfiguration() );
           ClassicEngineBoot.getInstance().start();
           logger.debug( Messages.getInstance().getString( "ReportPlugin.logDebugStartBoot" ) ); //$NON-NLS-1$
+          logger.info( "Reporting engine boot took " + ( System.currentTimeMillis() - start ) + " ms" );
 
           if ( ClassicEngineBoot.getInstance().isBootFailed() ) {
             logger.warn( Messages.getInstance().getString( "ReportPlugin.logErrorGeneralBootError" ), ClassicEngineBoot
                 .getInstance().getBootFailureReason() ); //$NON-NLS-1$
+          } else {
+            startWarmUp();
           }
           return true;
         }
@@ -72,6 +76,16 @@ public class ReportingSystemStartupListener implements IPentahoSystemListener {
     return false;
   }
 
+  /**
+   * Starts the warm-up. Its steps run on background threads, so neither the startup nor the boot lock waits for them.
+   */
+  private void startWarmUp() {
+    final ReportingWarmUp warmUp = new ReportingWarmUp( ClassicEngineBoot.getInstance().getGlobalConfig() );
+    if ( warmUp.isEnabled() ) {
+      warmUp.start();
+    }
+  }
+
   public void shutdown() {
     // Nothing required
   }
@@ -0,0 +1,155 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.platform.engine.security.SecurityHelper;
+import org.pentaho.reporting.engine.classic.core.MasterReport;
+import org.pentaho.reporting.engine.classic.core.cache.DataCacheFactory;
+import org.pentaho.reporting.engine.classic.core.modules.output.pageable.pdf.PdfReportUtil;
+import org.pentaho.reporting.engine.classic.core.modules.output.table.html.HtmlReportUtil;
+import org.pentaho.reporting.libraries.base.config.Configuration;
+import org.pentaho.reporting.libraries.base.util.NullOutputStream;
+import org.pentaho.reporting.platform.plugin.cache.IPluginCacheManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Does the work the first report after a restart would otherwise pay for, once the engine is booted: renders an empty
+ * report to html and pdf to set up the output modules and font registries, creates the data and content caches and
+ * parses the reports of {@link #REPORTS} into the parsed report cache. The steps run in parallel on background
+ * threads, each logs how long it took.
+ */
+final class ReportingWarmUp {
+  private static final Log logger = LogFactory.getLog( ReportingWarmUp.class );
+
+  /**
+   * Enables the warm-up.
+   */
+  static final String ENABLED = "org.pentaho.reporting.platform.plugin.WarmUp";
+  /**
+   * Comma separated repository paths of the reports to parse.
+   */
+  static final String REPORTS = "org.pentaho.reporting.platform.plugin.WarmUpReports";
+  /**
+   * Number of warm-up threads.
+   */
+  static final String THREADS = "org.pentaho.reporting.platform.plugin.WarmUpThreads";
+  private static final int DEFAULT_THREADS = 2;
+
+  private final Configuration configuration;
+
+  ReportingWarmUp( final Configuration configuration ) {
+    this.configuration = configuration;
+  }
+
+  boolean isEnabled() {
+    return "true".equals( configuration.getConfigProperty( ENABLED ) );
+  }
+
+  List<String> getReports() {
+    final List<String> reports = new ArrayList<>();
+    final String value = configuration.getConfigProperty( REPORTS );
+    if ( value != null ) {
+      for ( final String path : value.split( "," ) ) {
+        if ( !path.trim().isEmpty() ) {
+          reports.add( path.trim() );
+        }
+      }
+    }
+    return reports;
+  }
+
+  private int getThreads() {
+    final String threads = configuration.getConfigProperty( THREADS );
+    if ( threads != null ) {
+      try {
+        return Math.max( 1, Integer.parseInt( threads.trim() ) );
+      } catch ( final NumberFormatException e ) {
+        logger.warn( "Invalid value of " + THREADS + ": " + threads );
+      }
+    }
+    return DEFAULT_THREADS;
+  }
+
+  /**
+   * Starts the steps on background threads.
+   *
+   * @return completes when all steps are done, failed steps are logged only
+   */
+  CompletableFuture<Void> start() {
+    final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    final ThreadFactory threadFactory = r -> {
+      final Thread thread = Executors.defaultThreadFactory().newThread( r );
+      thread.setDaemon( true );
+      thread.setName( "Reporting Warm-Up" );
+      thread.setContextClassLoader( loader );
+      return thread;
+    };
+    final ExecutorService executor = Executors.newFixedThreadPool( getThreads(), threadFactory );
+    final long start = System.currentTimeMillis();
+
+    final List<CompletableFuture<Void>> steps = new ArrayList<>();
+    steps.add( CompletableFuture.runAsync( () -> run( "caches", this::createCaches ), executor ) );
+    steps.add( CompletableFuture.runAsync( () -> run( "output modules", this::renderEmptyReport ), executor ) );
+    for ( final String path : getReports() ) {
+      steps.add( CompletableFuture.runAsync( () -> run( "report " + path, () -> parseReport( path ) ), executor ) );
+    }
+    return CompletableFuture.allOf( steps.toArray( new CompletableFuture[ 0 ] ) ).whenComplete( ( result, error ) -> {
+      executor.shutdown();
+      logger.info( "Reporting warm-up finished in " + ( System.currentTimeMillis() - start ) + " ms" );
+    } );
+  }
+
+  interface Step {
+    void run() throws Exception;
+  }
+
+  static void run( final String name, final Step step ) {
+    final long start = System.currentTimeMillis();
+    try {
+      step.run();
+      logger.info( "Reporting warm-up: " + name + " took " + ( System.currentTimeMillis() - start ) + " ms" );
+    } catch ( final Exception e ) {
+      logger.warn( "Reporting warm-up: " + name + " failed after " + ( System.currentTimeMillis() - start ) + " ms",
+        e );
+    }
+  }
+
+  void createCaches() {
+    DataCacheFactory.getCache();
+    final IPluginCacheManager cacheManager = PentahoSystem.get( IPluginCacheManager.class );
+    if ( cacheManager != null ) {
+      cacheManager.getCache();
+    }
+  }
+
+  void renderEmptyReport() throws Exception {
+    HtmlReportUtil.createStreamHTML( new MasterReport(), new NullOutputStream() );
+    PdfReportUtil.createPDF( new MasterReport(), new NullOutputStream() );
+  }
+
+  /**
+   * Parses a report as the system user, the parsed report cache still checks every user's access to the file.
+   */
+  void parseReport( final String path ) throws Exception {
+    SecurityHelper.getInstance().runAsSystem( () -> ReportCreator.createReportByName( path ) );
+  }
+}
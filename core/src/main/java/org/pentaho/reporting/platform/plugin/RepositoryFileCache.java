@@ -0,0 +1,145 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.api.repository2.unified.IUnifiedRepository;
+import org.pentaho.platform.api.repository2.unified.RepositoryFile;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+
+/**
+ * Short lived cache of repository file lookups by path and by id. The engine asks for the same files again and again
+ * while it renders a report, to load them and to check whether they changed, and every lookup is a round trip to the
+ * repository.
+ * <p>
+ * Files are cached per user, as the repository only returns files the user may read. Files that were not found are
+ * cached as well. A lookup is repeated once it is older than {@link #LIFETIME}.
+ */
+public final class RepositoryFileCache {
+  private static final Log logger = LogFactory.getLog( RepositoryFileCache.class );
+
+  /**
+   * Milliseconds a file lookup is reused, 0 disables the cache.
+   */
+  static final String LIFETIME = "org.pentaho.reporting.platform.plugin.RepositoryFileCacheLifetime";
+  private static final long DEFAULT_LIFETIME = 5000;
+  private static final int MAX_FILES = 10000;
+
+  private RepositoryFileCache() {
+  }
+
+  /**
+   * Holds the cache, created when it is used first, after the engine was booted.
+   */
+  private static final class Files {
+    private static final Cache<String, Lookup> CACHE = createCache();
+  }
+
+  /**
+   * Result of a lookup, the file is null if it was not found.
+   */
+  private static final class Lookup {
+    private final RepositoryFile file;
+
+    private Lookup( final RepositoryFile file ) {
+      this.file = file;
+    }
+  }
+
+  private static Cache<String, Lookup> createCache() {
+    final String value = ClassicEngineBoot.getInstance().getGlobalConfig()
+      .getConfigProperty( LIFETIME, String.valueOf( DEFAULT_LIFETIME ) );
+    long lifetime = DEFAULT_LIFETIME;
+    try {
+      lifetime = Long.parseLong( value.trim() );
+    } catch ( final NumberFormatException e ) {
+      logger.warn( "Invalid value of " + LIFETIME + ": " + value );
+    }
+    if ( lifetime <= 0 ) {
+      return null;
+    }
+    return CacheBuilder.newBuilder().maximumSize( MAX_FILES ).expireAfterWrite( lifetime, TimeUnit.MILLISECONDS )
+      .recordStats().build();
+  }
+
+  /**
+   * Looks up a file by its path as the current user.
+   *
+   * @return the file or null if it does not exist or the user can not read it
+   */
+  public static RepositoryFile getFile( final IUnifiedRepository repository, final String path ) {
+    final Cache<String, Lookup> cache = Files.CACHE;
+    if ( cache == null ) {
+      return repository.getFile( path );
+    }
+    final String key = createKey( "path", path );
+    final Lookup lookup = cache.getIfPresent( key );
+    if ( lookup != null ) {
+      return lookup.file;
+    }
+    final RepositoryFile file = repository.getFile( path );
+    cache.put( key, new Lookup( file ) );
+    return file;
+  }
+
+  /**
+   * Looks up a file by its id as the current user.
+   *
+   * @return the file or null if it does not exist or the user can not read it
+   */
+  public static RepositoryFile getFileById( final IUnifiedRepository repository, final Serializable id ) {
+    final Cache<String, Lookup> cache = Files.CACHE;
+    if ( cache == null ) {
+      return repository.getFileById( id );
+    }
+    final String key = createKey( "id", String.valueOf( id ) );
+    final Lookup lookup = cache.getIfPresent( key );
+    if ( lookup != null ) {
+      return lookup.file;
+    }
+    final RepositoryFile file = repository.getFileById( id );
+    cache.put( key, new Lookup( file ) );
+    return file;
+  }
+
+  private static String createKey( final String kind, final String identifier ) {
+    final IPentahoSession session = PentahoSessionHolder.getSession();
+    final String user = session != null && session.getName() != null ? session.getName() : "";
+    return user + '\n' + kind + '\n' + identifier;
+  }
+
+  public static void invalidateAll() {
+    final Cache<String, Lookup> cache = Files.CACHE;
+    if ( cache != null ) {
+      cache.invalidateAll();
+    }
+  }
+
+  /**
+   * @return hit and miss counts, or null if the cache is disabled
+   */
+  public static CacheStats getStats() {
+    final Cache<String, Lookup> cache = Files.CACHE;
+    return cache != null ? cache.stats() : null;
+  }
+}
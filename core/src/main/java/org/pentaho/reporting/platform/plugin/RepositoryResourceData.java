@@ -29,6 +29,7 @@ import org.pentaho.reporting.libraries.resourceloader.ResourceKey;
 import org.pentaho.reporting.libraries.resourceloader.ResourceLoadingException;
 import org.pentaho.reporting.libraries.resourceloader.ResourceManager;
 import org.pentaho.reporting.libraries.resourceloader.loader.AbstractResourceData;
+import org.pentaho.reporting.platform.plugin.cache.DefinitionVersionCache;
 
 
 /**
@@ -69,9 +70,9 @@ public class RepositoryResourceData extends AbstractResourceData {
     IUnifiedRepository unifiedRepository = null;
     try {
       unifiedRepository = PentahoSystem.get( IUnifiedRepository.class );
-      RepositoryFile repositoryFile = unifiedRepository.getFile( key.getIdentifierAsString() );
+      RepositoryFile repositoryFile = RepositoryFileCache.getFile( unifiedRepository, key.getIdentifierAsString() );
       if ( repositoryFile == null ) {
-        repositoryFile = unifiedRepository.getFileById( key.getIdentifierAsString() );
+        repositoryFile = RepositoryFileCache.getFileById( unifiedRepository, key.getIdentifierAsString() );
       }
       if ( repositoryFile == null ) {
         throw new ResourceLoadingException();
@@ -125,12 +126,19 @@ public class RepositoryResourceData extends AbstractResourceData {
    * @return version
    */
   public long getVersion( ResourceManager caller ) throws ResourceLoadingException {
+    final long version = loadVersion();
+    // keeps the memoized version of a replaced report current
+    DefinitionVersionCache.update( key, version );
+    return version;
+  }
+
+  private long loadVersion() {
     IUnifiedRepository unifiedRepository =
         PentahoSystem.get( IUnifiedRepository.class, PentahoSessionHolder.getSession() );
     RepositoryFile repositoryFile = null;
     try {
       // if we got a FileNotFoundException on getResourceInputStream then we will get a null file; avoid NPE
-      repositoryFile = unifiedRepository.getFile( key.getIdentifier().toString() );
+      repositoryFile = RepositoryFileCache.getFile( unifiedRepository, key.getIdentifier().toString() );
       if ( repositoryFile != null ) {
         return repositoryFile.getLastModifiedDate().getTime();
       } else {
@@ -138,7 +146,7 @@ public class RepositoryResourceData extends AbstractResourceData {
       }
     } catch ( UnifiedRepositoryException ex ) {
       try {
-        repositoryFile = unifiedRepository.getFileById( key.getIdentifier().toString() );
+        repositoryFile = RepositoryFileCache.getFileById( unifiedRepository, key.getIdentifier().toString() );
       } catch ( UnifiedRepositoryException exception ) {
         return -1;
       }
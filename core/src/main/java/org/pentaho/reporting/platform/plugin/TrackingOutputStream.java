@@ -17,7 +17,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 public class TrackingOutputStream extends OutputStream {
-  private int trackingSize;
+  private long trackingSize;
   private OutputStream wrappedStream;
 
   public TrackingOutputStream( final OutputStream wrapped ) {
@@ -51,7 +51,7 @@ public class TrackingOutputStream extends OutputStream {
     return wrappedStream;
   }
 
-  public int getTrackingSize() {
+  public long getTrackingSize() {
     return trackingSize;
   }
 }
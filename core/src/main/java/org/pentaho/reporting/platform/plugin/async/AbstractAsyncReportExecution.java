@@ -118,6 +118,18 @@ public abstract class AbstractAsyncReportExecution<TReportState extends IAsyncRe
     closeFile();
   }
 
+  /**
+   * Fails the task without running it, e.g. because the executor is saturated.
+   *
+   * @param reason message reported as the job's error
+   */
+  public void reject( final String reason ) {
+    if ( listener != null ) {
+      listener.setErrorMessage( reason );
+    }
+    fail();
+  }
+
   private void closeFile() {
     try {
       handler.getStagingContent().cleanContent();
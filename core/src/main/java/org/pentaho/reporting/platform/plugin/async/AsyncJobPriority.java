@@ -0,0 +1,31 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.async;
+
+/**
+ * Priority classes of async jobs, highest priority first.
+ */
+public enum AsyncJobPriority {
+  /**
+   * Html renders a user is waiting for in the viewer.
+   */
+  INTERACTIVE,
+  /**
+   * Other exports started from the viewer.
+   */
+  ASYNC_VIEWER,
+  /**
+   * Scheduled jobs and work nobody waits for.
+   */
+  BACKGROUND
+}
@@ -0,0 +1,325 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs async jobs on a fixed number of threads. Queued jobs start by priority class and then in submission order, a
+ * job is skipped while its user or its report already run the configured number of jobs.
+ * <p>
+ * Admission is bounded: a job is rejected when the queue or the user's share of it is full. Work passed to
+ * {@link #execute(Runnable)} (callbacks of finished jobs) bypasses the queue, it runs on threads of its own and takes
+ * no job slot. Limits of 0 mean no limit. A job canceled while queued leaves the queue right away and frees its slot.
+ */
+public class AsyncJobScheduler implements Executor {
+
+  private static final Log log = LogFactory.getLog( AsyncJobScheduler.class );
+
+  private final int capacity;
+  private final ExecutorService workers;
+  private final ExecutorService callbacks = Executors.newCachedThreadPool( r -> {
+    final Thread thread = Executors.defaultThreadFactory().newThread( r );
+    thread.setDaemon( true );
+    thread.setName( "PentahoAsyncExecutor Callback" );
+    return thread;
+  } );
+
+  private final TreeSet<Job> queue = new TreeSet<>();
+  private final Map<String, Integer> queuedByUser = new HashMap<>();
+  private final Map<String, Integer> runningByUser = new HashMap<>();
+  private final Map<String, Integer> runningByReport = new HashMap<>();
+  private int running;
+  private long sequence;
+  private long rejected;
+  private boolean shutdown;
+
+  private volatile int maxQueuedJobs = 1000;
+  private volatile int maxQueuedJobsPerUser = 0;
+  private volatile int maxConcurrentJobsPerUser = 0;
+  private volatile int maxConcurrentJobsPerReport = 0;
+
+  /**
+   * @param capacity number of jobs running at the same time
+   * @param workers  executor providing at least capacity threads
+   */
+  public AsyncJobScheduler( final int capacity, final ExecutorService workers ) {
+    this.capacity = capacity;
+    this.workers = workers;
+  }
+
+  public void setMaxQueuedJobs( final int maxQueuedJobs ) {
+    this.maxQueuedJobs = maxQueuedJobs;
+  }
+
+  public void setMaxQueuedJobsPerUser( final int maxQueuedJobsPerUser ) {
+    this.maxQueuedJobsPerUser = maxQueuedJobsPerUser;
+  }
+
+  public void setMaxConcurrentJobsPerUser( final int maxConcurrentJobsPerUser ) {
+    this.maxConcurrentJobsPerUser = maxConcurrentJobsPerUser;
+  }
+
+  public void setMaxConcurrentJobsPerReport( final int maxConcurrentJobsPerReport ) {
+    this.maxConcurrentJobsPerReport = maxConcurrentJobsPerReport;
+  }
+
+  /**
+   * Queues a job.
+   *
+   * @param callable job
+   * @param priority priority class
+   * @param user     user the job runs for, may be null
+   * @param report   report the job renders, may be null
+   * @return future of the job, extended by the job if it is a {@link IListenableFutureDelegator}
+   * @throws RejectedExecutionException if the queue is full or the scheduler is shut down
+   */
+  @SuppressWarnings( "unchecked" )
+  public <T> ListenableFuture<T> submit( final Callable<T> callable, final AsyncJobPriority priority,
+                                         final String user, final String report ) {
+    final ListenableFutureTask<T> task = ListenableFutureTask.create( callable );
+    final ListenableFuture<T> result;
+    if ( callable instanceof IListenableFutureDelegator ) {
+      result = ( (IListenableFutureDelegator<T>) callable ).delegate( task );
+    } else {
+      result = task;
+    }
+    final Job job = new Job( task, result, priority, user, report );
+    enqueue( job );
+    result.addListener( () -> {
+      if ( result.isCancelled() ) {
+        dequeue( job );
+      }
+    }, MoreExecutors.directExecutor() );
+    return result;
+  }
+
+  /**
+   * Runs a callback of a finished job. Callbacks don't wait for a job slot, so they are never stuck behind the jobs
+   * they were registered by.
+   */
+  @Override public void execute( final Runnable command ) {
+    callbacks.execute( command );
+  }
+
+  /**
+   * Moves a job that is still queued to another priority class, e.g. when it got scheduled. Running jobs are not
+   * affected.
+   *
+   * @param result   future returned by {@link #submit(Callable, AsyncJobPriority, String, String)}
+   * @param priority new priority class
+   * @return true if the job was queued
+   */
+  public synchronized boolean reprioritize( final Future<?> result, final AsyncJobPriority priority ) {
+    for ( final Job job : queue ) {
+      if ( job.result == result ) {
+        if ( job.priority != priority ) {
+          queue.remove( job );
+          job.priority = priority;
+          queue.add( job );
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private synchronized void enqueue( final Job job ) {
+    if ( shutdown ) {
+      throw new RejectedExecutionException( "Async executor is shut down" );
+    }
+    if ( maxQueuedJobs > 0 && queue.size() >= maxQueuedJobs ) {
+      rejected++;
+      throw new RejectedExecutionException( "Too many queued report executions: " + queue.size() );
+    }
+    if ( job.user != null && maxQueuedJobsPerUser > 0 && count( queuedByUser, job.user ) >= maxQueuedJobsPerUser ) {
+      rejected++;
+      throw new RejectedExecutionException( "Too many queued report executions for the user" );
+    }
+    job.sequence = sequence++;
+    queue.add( job );
+    increment( queuedByUser, job.user );
+    dispatch();
+  }
+
+  /**
+   * Removes a job canceled while queued, it would do no useful work.
+   */
+  private synchronized void dequeue( final Job job ) {
+    if ( queue.remove( job ) ) {
+      decrement( queuedByUser, job.user );
+      cancel( job );
+    }
+  }
+
+  /**
+   * Starts the best eligible queued jobs while there are free threads.
+   */
+  private void dispatch() {
+    while ( running < capacity ) {
+      final Job job = pollEligible();
+      if ( job == null ) {
+        return;
+      }
+      running++;
+      increment( runningByUser, job.user );
+      increment( runningByReport, job.report );
+      try {
+        workers.execute( () -> run( job ) );
+      } catch ( final RejectedExecutionException e ) {
+        log.debug( "Worker pool rejected async job: ", e );
+        finished( job );
+        cancel( job );
+        return;
+      }
+    }
+  }
+
+  private Job pollEligible() {
+    final Iterator<Job> it = queue.iterator();
+    while ( it.hasNext() ) {
+      final Job job = it.next();
+      if ( isUnderQuota( runningByUser, job.user, maxConcurrentJobsPerUser )
+        && isUnderQuota( runningByReport, job.report, maxConcurrentJobsPerReport ) ) {
+        it.remove();
+        decrement( queuedByUser, job.user );
+        return job;
+      }
+    }
+    return null;
+  }
+
+  private void run( final Job job ) {
+    try {
+      job.command.run();
+    } finally {
+      synchronized ( this ) {
+        finished( job );
+        if ( !shutdown ) {
+          dispatch();
+        }
+      }
+    }
+  }
+
+  private void finished( final Job job ) {
+    running--;
+    decrement( runningByUser, job.user );
+    decrement( runningByReport, job.report );
+  }
+
+  private static void cancel( final Job job ) {
+    if ( job.command instanceof Future ) {
+      ( (Future<?>) job.command ).cancel( false );
+    }
+  }
+
+  public synchronized int getQueuedJobs() {
+    return queue.size();
+  }
+
+  public synchronized int getRunningJobs() {
+    return running;
+  }
+
+  public synchronized long getRejectedJobs() {
+    return rejected;
+  }
+
+  /**
+   * Cancels queued jobs and stops accepting new ones. Running jobs are not interrupted.
+   */
+  public void shutdown() {
+    synchronized ( this ) {
+      shutdown = true;
+      // canceling a job calls back into dequeue, so the queue is emptied first
+      final List<Job> jobs = new ArrayList<>( queue );
+      queue.clear();
+      queuedByUser.clear();
+      for ( final Job job : jobs ) {
+        cancel( job );
+      }
+    }
+    workers.shutdown();
+    callbacks.shutdown();
+  }
+
+  private static boolean isUnderQuota( final Map<String, Integer> counts, final String key, final int quota ) {
+    return key == null || quota <= 0 || count( counts, key ) < quota;
+  }
+
+  private static int count( final Map<String, Integer> counts, final String key ) {
+    final Integer count = counts.get( key );
+    return count == null ? 0 : count;
+  }
+
+  private static void increment( final Map<String, Integer> counts, final String key ) {
+    if ( key != null ) {
+      counts.merge( key, 1, Integer::sum );
+    }
+  }
+
+  private static void decrement( final Map<String, Integer> counts, final String key ) {
+    if ( key != null ) {
+      counts.computeIfPresent( key, ( k, v ) -> v > 1 ? v - 1 : null );
+    }
+  }
+
+  private static final class Job implements Comparable<Job> {
+    private final Runnable command;
+    private final ListenableFuture<?> result;
+    private AsyncJobPriority priority;
+    private final String user;
+    private final String report;
+    private long sequence;
+
+    private Job( final Runnable command, final ListenableFuture<?> result, final AsyncJobPriority priority,
+                 final String user, final String report ) {
+      this.command = command;
+      this.result = result;
+      this.priority = priority;
+      this.user = user;
+      this.report = report;
+    }
+
+    @Override public int compareTo( final Job o ) {
+      final int result = priority.compareTo( o.priority );
+      return result != 0 ? result : Long.compare( sequence, o.sequence );
+    }
+
+    @Override public boolean equals( final Object o ) {
+      return o instanceof Job && compareTo( (Job) o ) == 0;
+    }
+
+    @Override public int hashCode() {
+      return Long.hashCode( sequence );
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the number of jobs doing layout at the same time. A job takes a permit with its first progress update, which the
+ * engine fires once the report queries returned, and gives it back when processing finishes or the job ends. Jobs
+ * waiting for a database or the repository hold no permit. Permits belong to a job, not to a thread, as the report of
+ * a job may be processed on another thread.
+ */
+public class LayoutPermits {
+
+  private final Semaphore permits;
+
+  public LayoutPermits( final int permits ) {
+    this.permits = new Semaphore( permits, true );
+  }
+
+  /**
+   * @return the permit of a new job, it has to be released when the job ends
+   */
+  public Permit newPermit() {
+    return new Permit();
+  }
+
+  public int getAvailablePermits() {
+    return permits.availablePermits();
+  }
+
+  /**
+   * Permit of one job. It is taken at most once, a released permit is not taken again.
+   */
+  public final class Permit implements ReportProgressListener {
+    private static final int NEW = 0;
+    private static final int HELD = 1;
+    private static final int RELEASED = 2;
+
+    private final AtomicInteger state = new AtomicInteger( NEW );
+
+    private Permit() {
+    }
+
+    @Override public void reportProcessingStarted( final ReportProgressEvent event ) {
+      //ignore
+    }
+
+    @Override public void reportProcessingUpdate( final ReportProgressEvent event ) {
+      if ( state.get() != NEW ) {
+        return;
+      }
+      try {
+        permits.acquire();
+      } catch ( final InterruptedException e ) {
+        // let the engine see the interruption and stop the report
+        Thread.currentThread().interrupt();
+        return;
+      }
+      if ( !state.compareAndSet( NEW, HELD ) ) {
+        // taken by a concurrent update or released meanwhile
+        permits.release();
+      }
+    }
+
+    @Override public void reportProcessingFinished( final ReportProgressEvent event ) {
+      release();
+    }
+
+    /**
+     * Gives back the permit if it is held. Can be called any number of times, from any thread.
+     */
+    public void release() {
+      if ( state.getAndSet( RELEASED ) == HELD ) {
+        permits.release();
+      }
+    }
+  }
+}
@@ -17,6 +17,8 @@ import java.io.Serializable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.pentaho.reporting.platform.plugin.cache.SessionIndex;
+
 /**
  * Used to store scheduled files id against job keys Use lock and unlock to achieve thread safety
  */
@@ -26,7 +28,10 @@ public class MemorizeSchedulingLocationListener {
 
   private ConcurrentHashMap<PentahoAsyncExecutor.CompositeKey, Serializable> locationMap = new ConcurrentHashMap<>();
 
+  private SessionIndex<PentahoAsyncExecutor.CompositeKey> sessions = new SessionIndex<>();
+
   public void recordOutputFile( final PentahoAsyncExecutor.CompositeKey key, final Serializable fileId ) {
+    sessions.add( key.getSessionId(), key );
     locationMap.put( key, fileId );
   }
 
@@ -36,10 +41,13 @@ public class MemorizeSchedulingLocationListener {
 
   public void shutdown() {
     this.locationMap.clear();
+    this.sessions.clear();
   }
 
   public void onLogout( final String sessionId ) {
-    this.locationMap.keySet().removeIf( k -> k.isSameSession( sessionId ) );
+    for ( final PentahoAsyncExecutor.CompositeKey key : sessions.removeSession( sessionId ) ) {
+      this.locationMap.remove( key );
+    }
   }
 
   public void lock() {
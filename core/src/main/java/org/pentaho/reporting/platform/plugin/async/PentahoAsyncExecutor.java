@@ -14,20 +14,23 @@
 package org.pentaho.reporting.platform.plugin.async;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.platform.api.engine.ILogoutListener;
@@ -39,13 +42,14 @@ import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatu
 import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
 import org.pentaho.reporting.libraries.base.util.ArgumentNullException;
 import org.pentaho.reporting.libraries.base.util.StringUtils;
+import org.pentaho.reporting.platform.plugin.cache.SessionIndex;
 import org.pentaho.reporting.platform.plugin.staging.AsyncJobFileStagingHandler;
 import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
 
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
   implements ILogoutListener, IPentahoAsyncExecutor<TReportState> {
@@ -56,11 +60,13 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
 
   private Map<CompositeKey, ListenableFuture<IFixedSizeStreamingContent>> futures = new ConcurrentHashMap<>();
   private Map<CompositeKey, IAsyncReportExecution<TReportState>> tasks = new ConcurrentHashMap<>();
+  private final SessionIndex<CompositeKey> sessions = new SessionIndex<>();
 
-  private ListeningExecutorService executorService;
+  private AsyncJobScheduler executorService;
 
   private final int autoSchedulerThreshold;
   private final MemorizeSchedulingLocationListener schedulingLocationListener;
+  private final LayoutPermits layoutPermits;
   private Map<CompositeKey, ISchedulingListener> writeToJcrListeners;
 
   /**
@@ -68,30 +74,106 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
    * @param autoSchedulerThreshold quantity of rows after which reports are automatically scheduled
    */
   public PentahoAsyncExecutor( final int capacity, final int autoSchedulerThreshold ) {
+    this( capacity, autoSchedulerThreshold, false, 0 );
+  }
+
+  /**
+   * In virtual thread mode every job runs on a thread of its own, so jobs blocked on a database, the repository or the
+   * staging file cost no platform thread. Capacity can then be much higher than the number of cores, while layout
+   * concurrency keeps the CPU bound part of the jobs bounded. The mode falls back to a platform thread per job if the
+   * runtime has no virtual threads.
+   *
+   * @param capacity               jobs running at the same time, thread pool capacity in platform thread mode
+   * @param autoSchedulerThreshold quantity of rows after which reports are automatically scheduled
+   * @param virtualThreads         whether each job runs on its own virtual thread
+   * @param layoutConcurrency      jobs doing layout at the same time in virtual thread mode, 0 for no limit
+   */
+  public PentahoAsyncExecutor( final int capacity, final int autoSchedulerThreshold, final boolean virtualThreads,
+                               final int layoutConcurrency ) {
     this.autoSchedulerThreshold = autoSchedulerThreshold;
-    log.info( "Initialized reporting async execution fixed thread pool with capacity: " + capacity );
-    executorService =
-      new DelegatedListenableExecutor( new ThreadPoolExecutor( capacity, capacity, 0L, TimeUnit.MILLISECONDS,
-        new LinkedBlockingQueue<>(), new ThreadFactory() {
-          @Override
-          public Thread newThread( Runnable r ) {
-            Thread thread = Executors.defaultThreadFactory().newThread( r );
-            thread.setDaemon( true );
-            thread.setName( "PentahoAsyncExecutor Thread Pool" );
-            return thread;
-          }
-        } ) );
+    if ( virtualThreads ) {
+      this.layoutPermits = layoutConcurrency > 0 ? new LayoutPermits( layoutConcurrency ) : null;
+      executorService = new AsyncJobScheduler( capacity, createThreadPerJobExecutor() );
+    } else {
+      this.layoutPermits = null;
+      log.info( "Initialized reporting async execution fixed thread pool with capacity: " + capacity );
+      // the scheduler hands out at most capacity jobs, callbacks of finished jobs run on threads of their own
+      executorService =
+        new AsyncJobScheduler( capacity, new ThreadPoolExecutor( capacity, capacity, 0L, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<>(), new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable r ) {
+              Thread thread = Executors.defaultThreadFactory().newThread( r );
+              thread.setDaemon( true );
+              thread.setName( "PentahoAsyncExecutor Thread Pool" );
+              return thread;
+            }
+          } ) );
+    }
     PentahoSystem.addLogoutListener( this );
     this.writeToJcrListeners = new ConcurrentHashMap<>();
     this.schedulingLocationListener = new MemorizeSchedulingLocationListener();
   }
 
+  /**
+   * Threads are not reused, so thread locals set by a job (session, security context, report listener) end with it.
+   */
+  private static ExecutorService createThreadPerJobExecutor() {
+    ThreadFactory threadFactory = VirtualThreads.createFactory( "PentahoAsyncExecutor Virtual Thread" );
+    if ( threadFactory != null ) {
+      log.info( "Initialized reporting async execution on virtual threads" );
+    } else {
+      log.warn( "Virtual threads are not supported by this Java runtime, running async jobs on platform threads" );
+      threadFactory = r -> {
+        final Thread thread = Executors.defaultThreadFactory().newThread( r );
+        thread.setDaemon( true );
+        thread.setName( "PentahoAsyncExecutor Thread" );
+        return thread;
+      };
+    }
+    return new ThreadPoolExecutor( 0, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+      threadFactory );
+  }
+
 
   @Deprecated
   public PentahoAsyncExecutor( final int capacity ) {
     this( capacity, 0 );
   }
 
+  /**
+   * @param maxQueuedJobs jobs waiting for a thread after which new jobs are rejected, 0 for no limit
+   */
+  public void setMaxQueuedJobs( final int maxQueuedJobs ) {
+    executorService.setMaxQueuedJobs( maxQueuedJobs );
+  }
+
+  /**
+   * @param maxQueuedJobsPerUser jobs of a user waiting for a thread after which the user's new jobs are rejected, 0 for
+   *                             no limit
+   */
+  public void setMaxQueuedJobsPerUser( final int maxQueuedJobsPerUser ) {
+    executorService.setMaxQueuedJobsPerUser( maxQueuedJobsPerUser );
+  }
+
+  /**
+   * @param maxConcurrentJobsPerUser jobs of a user running at the same time, 0 for no limit
+   */
+  public void setMaxConcurrentJobsPerUser( final int maxConcurrentJobsPerUser ) {
+    executorService.setMaxConcurrentJobsPerUser( maxConcurrentJobsPerUser );
+  }
+
+  /**
+   * @param maxConcurrentJobsPerReport jobs of a report running at the same time, 0 for no limit
+   */
+  public void setMaxConcurrentJobsPerReport( final int maxConcurrentJobsPerReport ) {
+    executorService.setMaxConcurrentJobsPerReport( maxConcurrentJobsPerReport );
+  }
+
+  public AsyncJobScheduler getScheduler() {
+    return executorService;
+  }
+
   /**
    * This executor stores jobs (identified by their id) in a separate partition for each user (identified by the
    * session-id). We don't let others access our session or job-id, but need to match against the session-id for
@@ -112,7 +194,7 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
       return StringUtils.equals( sessionId, this.sessionId );
     }
 
-    private String getSessionId() {
+    String getSessionId() {
       return sessionId;
     }
 
@@ -140,17 +222,68 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
   public UUID addTask( final IAsyncReportExecution<TReportState> task, final IPentahoSession session, final UUID id ) {
     final CompositeKey key = new CompositeKey( session, id );
 
-    task.notifyTaskQueued( id,
-      Collections.singletonList( new AutoScheduleListener( id, session, autoSchedulerThreshold, this ) ) );
+    final AutoScheduleListener autoScheduleListener = new AutoScheduleListener( id, session, autoSchedulerThreshold,
+      this );
+    final LayoutPermits.Permit permit = layoutPermits != null ? layoutPermits.newPermit() : null;
+    if ( permit != null ) {
+      task.notifyTaskQueued( id, Arrays.asList( autoScheduleListener, permit ) );
+    } else {
+      task.notifyTaskQueued( id, Collections.singletonList( autoScheduleListener ) );
+    }
 
     log.debug( "register async execution for task: " + task.toString() );
 
-    final ListenableFuture<IFixedSizeStreamingContent> result = executorService.submit( task );
+    ListenableFuture<IFixedSizeStreamingContent> result;
+    try {
+      result = executorService.submit( task, getPriority( task ), session.getName(), task.getReportPath() );
+    } catch ( final RejectedExecutionException e ) {
+      // keep the task, so the rejection can be polled as job status
+      log.warn( "Async report execution rejected: " + e.getMessage() );
+      if ( task instanceof AbstractAsyncReportExecution ) {
+        ( (AbstractAsyncReportExecution<?>) task ).reject( e.getMessage() );
+      }
+      result = Futures.immediateFailedFuture( e );
+    }
+    if ( permit != null ) {
+      // progress events may stop reaching the permit, e.g. when the listener of a canceled request is detached
+      result.addListener( permit::release, MoreExecutors.directExecutor() );
+    }
+    sessions.add( key.getSessionId(), key );
     futures.put( key, result );
     tasks.put( key, task );
     return id;
   }
 
+  /**
+   * Html renders are what users wait for in the viewer, they run first. Tasks that are scheduled already run last.
+   *
+   * @param task queued task
+   * @return priority class of the task
+   */
+  protected AsyncJobPriority getPriority( final IAsyncReportExecution<TReportState> task ) {
+    final TReportState state = task.getState();
+    if ( state != null && ( AsyncExecutionStatus.SCHEDULED.equals( state.getStatus() )
+      || AsyncExecutionStatus.PRE_SCHEDULED.equals( state.getStatus() ) ) ) {
+      return AsyncJobPriority.BACKGROUND;
+    }
+    final String mimeType = task.getMimeType();
+    if ( mimeType != null && mimeType.startsWith( "text/html" ) ) {
+      return AsyncJobPriority.INTERACTIVE;
+    }
+    return AsyncJobPriority.ASYNC_VIEWER;
+  }
+
+  /**
+   * Tasks are queued before they get scheduled, a task scheduled while it waits for a thread moves to its new priority
+   * class.
+   */
+  private void reprioritize( final CompositeKey key, final IAsyncReportExecution<TReportState> task ) {
+    final ListenableFuture<IFixedSizeStreamingContent> future = futures.get( key );
+    if ( future != null ) {
+      executorService.reprioritize( future, getPriority( task ) );
+    }
+  }
+
   @Override public Future<IFixedSizeStreamingContent> getFuture( final UUID id, final IPentahoSession session ) {
     validateParams( id, session );
     return futures.get( new CompositeKey( session, id ) );
@@ -160,6 +293,7 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
     final CompositeKey key = new CompositeKey( session, id );
     futures.remove( key );
     tasks.remove( key );
+    sessions.remove( key.getSessionId(), key );
   }
 
   @Override public void requestPage( final UUID id, final IPentahoSession session, final int page ) {
@@ -173,9 +307,10 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
   @Override public boolean preSchedule( final UUID uuid, final IPentahoSession session ) {
     validateParams( uuid, session );
     final CompositeKey compositeKey = new CompositeKey( session, uuid );
-    final IAsyncReportExecution<? extends TReportState> runningTask = tasks.get( compositeKey );
-    if ( runningTask != null ) {
-      return runningTask.preSchedule();
+    final IAsyncReportExecution<TReportState> runningTask = tasks.get( compositeKey );
+    if ( runningTask != null && runningTask.preSchedule() ) {
+      reprioritize( compositeKey, runningTask );
+      return true;
     }
     return false;
   }
@@ -222,6 +357,7 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
 
     if ( !StringUtils.isEmpty( userId ) ) {
       if ( runningTask.schedule() ) {
+        reprioritize( compositeKey, runningTask );
         Futures.addCallback( future,
           new TriggerScheduledContentWritingHandler( userId, sessionId, runningTask, compositeKey ), executorService );
         return true;
@@ -288,28 +424,26 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
       log.debug( "killing async report execution cache for user: " + session.getName() );
     }
 
-    for ( final Map.Entry<CompositeKey, ListenableFuture<IFixedSizeStreamingContent>> entry : futures.entrySet() ) {
-      if ( ObjectUtils.equals( entry.getKey().getSessionId(), session.getId() ) ) {
+    // only the jobs of the session are visited, however many jobs other sessions have
+    for ( final CompositeKey key : sessions.removeSession( session.getId() ) ) {
+      final IAsyncReportExecution<TReportState> task = tasks.get( key );
 
-        final IAsyncReportExecution<TReportState> task = tasks.get( entry.getKey() );
-
-        final ListenableFuture<IFixedSizeStreamingContent> value = entry.getValue();
-
-        if ( task != null && task.getState() != null && AsyncExecutionStatus.SCHEDULED
-          .equals( task.getState().getStatus() ) ) {
-          //After the session end nobody can poll status, we can remove task
-          //Keep future to have content in place
-          tasks.remove( entry.getKey() );
-          continue;
-        }
+      if ( task != null && task.getState() != null && AsyncExecutionStatus.SCHEDULED
+        .equals( task.getState().getStatus() ) ) {
+        //After the session end nobody can poll status, we can remove task
+        //Keep future to have content in place
+        tasks.remove( key );
+        continue;
+      }
 
-        // attempt to cancel running task
+      // attempt to cancel running task
+      final ListenableFuture<IFixedSizeStreamingContent> value = futures.remove( key );
+      if ( value != null ) {
         value.cancel( true );
-
-        // remove all links to release GC
-        futures.remove( entry.getKey() );
-        tasks.remove( entry.getKey() );
       }
+
+      // remove all links to release GC
+      tasks.remove( key );
     }
 
     //User can't update scheduling directory after logout, so we can clean location locationMap
@@ -334,6 +468,7 @@ public class PentahoAsyncExecutor<TReportState extends IAsyncReportState>
     // forget all
     this.futures.clear();
     this.tasks.clear();
+    this.sessions.clear();
     this.writeToJcrListeners.clear();
     this.executorService.shutdown();
     try {
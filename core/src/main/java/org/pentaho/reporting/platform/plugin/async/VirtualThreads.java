@@ -0,0 +1,51 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads (Java 21+) without compiling against them.
+ */
+final class VirtualThreads {
+
+  private static final Log log = LogFactory.getLog( VirtualThreads.class );
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Creates a factory of virtual threads that don't inherit inheritable thread locals, so a job never sees the
+   * security context or session of the thread that happened to start it.
+   *
+   * @param name thread name prefix
+   * @return thread factory or null if the runtime has no virtual threads
+   */
+  static ThreadFactory createFactory( final String name ) {
+    try {
+      final Class<?> builderClass = Class.forName( "java.lang.Thread$Builder" );
+      Object builder = Thread.class.getMethod( "ofVirtual" ).invoke( null );
+      builder = builderClass.getMethod( "name", String.class, long.class ).invoke( builder, name, 0L );
+      final Method inherit = builderClass.getMethod( "inheritInheritableThreadLocals", boolean.class );
+      builder = inherit.invoke( builder, false );
+      return (ThreadFactory) builderClass.getMethod( "factory" ).invoke( builder );
+    } catch ( final ReflectiveOperationException | RuntimeException e ) {
+      log.debug( "Virtual threads are not available: ", e );
+      return null;
+    }
+  }
+}
@@ -42,6 +42,12 @@ public abstract class AbstractReportContentCache implements IReportContentCache
     return getBackend().write( computeKey( key ), value, metaData );
   }
 
+  @Override
+  public boolean append( final String key, final int pageCount, final Map<Integer, byte[]> pages,
+                         final Map<String, Serializable> metaData ) {
+    return getBackend().append( computeKey( key ), pageCount, pages, metaData );
+  }
+
   @Override
   public IReportContent get( final String key ) {
     return (IReportContent) getBackend().read( computeKey( key ) );
@@ -59,5 +65,11 @@ public abstract class AbstractReportContentCache implements IReportContentCache
     this.backend = backend;
   }
 
+  /**
+   * Releases resources held by the cache. Called when the plugin's application context is closed.
+   */
+  public void shutdown() {
+  }
+
   protected abstract List<String> computeKey( final String key );
 }
@@ -0,0 +1,471 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.pentaho.reporting.engine.classic.core.MetaTableModel;
+import org.pentaho.reporting.engine.classic.core.wizard.DataAttributes;
+import org.pentaho.reporting.engine.classic.core.wizard.EmptyDataAttributes;
+
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only copy of a table model that stores its values column by column. Integer, long, double, boolean, date and
+ * decimal columns are kept in primitive arrays, string columns as codes into a dictionary of their distinct values.
+ * Columns with other or mixed value types keep their values as they are. Values are boxed again when they are read,
+ * they are equal to the values of the copied model and of the same class.
+ */
+public class ColumnarTableModel extends AbstractTableModel implements MetaTableModel {
+
+  private static final long serialVersionUID = 5735306416390386223L;
+
+  private final int rowCount;
+  private final String[] columnNames;
+  private final Class<?>[] columnClasses;
+  private final Column[] columns;
+  private final DataAttributes tableAttributes;
+  private final DataAttributes[] columnAttributes;
+  private final long estimatedBytes;
+
+  public ColumnarTableModel( final TableModel model ) {
+    rowCount = model.getRowCount();
+    final int columnCount = model.getColumnCount();
+    columnNames = new String[ columnCount ];
+    columnClasses = new Class<?>[ columnCount ];
+    columnAttributes = new DataAttributes[ columnCount ];
+    final MetaTableModel metaModel = model instanceof MetaTableModel ? (MetaTableModel) model : null;
+    for ( int column = 0; column < columnCount; column++ ) {
+      columnNames[ column ] = model.getColumnName( column );
+      columnClasses[ column ] = model.getColumnClass( column );
+      columnAttributes[ column ] = metaModel != null ? metaModel.getColumnAttributes( column ) : null;
+    }
+    tableAttributes = metaModel != null ? metaModel.getTableAttributes() : null;
+
+    // row by row, result set backed models read forward
+    columns = new Column[ columnCount ];
+    for ( int row = 0; row < rowCount; row++ ) {
+      for ( int column = 0; column < columnCount; column++ ) {
+        final Object value = model.getValueAt( row, column );
+        Column target = columns[ column ];
+        if ( target == null ) {
+          if ( value == null ) {
+            continue;
+          }
+          target = Column.create( value, rowCount );
+          target.nulls.set( 0, row );
+          columns[ column ] = target;
+        }
+        if ( !target.set( row, value ) ) {
+          target = ObjectColumn.copyOf( target, row, rowCount );
+          target.set( row, value );
+          columns[ column ] = target;
+        }
+      }
+    }
+
+    long bytes = 64;
+    for ( int column = 0; column < columnCount; column++ ) {
+      if ( columns[ column ] == null ) {
+        columns[ column ] = new NullColumn();
+      }
+      columns[ column ].complete();
+      bytes += 64 + columns[ column ].getBytes();
+    }
+    estimatedBytes = bytes;
+  }
+
+  /**
+   * @return estimated heap bytes of the stored values
+   */
+  public long getEstimatedBytes() {
+    return estimatedBytes;
+  }
+
+  @Override public int getRowCount() {
+    return rowCount;
+  }
+
+  @Override public int getColumnCount() {
+    return columns.length;
+  }
+
+  @Override public String getColumnName( final int column ) {
+    return columnNames[ column ];
+  }
+
+  @Override public Class<?> getColumnClass( final int column ) {
+    return columnClasses[ column ];
+  }
+
+  @Override public Object getValueAt( final int row, final int column ) {
+    if ( row < 0 || row >= rowCount ) {
+      throw new IndexOutOfBoundsException( "Row " + row + " of " + rowCount );
+    }
+    return columns[ column ].get( row );
+  }
+
+  @Override public DataAttributes getCellDataAttributes( final int row, final int column ) {
+    return EmptyDataAttributes.INSTANCE;
+  }
+
+  @Override public boolean isCellDataAttributesSupported() {
+    return false;
+  }
+
+  @Override public DataAttributes getColumnAttributes( final int column ) {
+    final DataAttributes attributes = columnAttributes[ column ];
+    return attributes != null ? attributes : EmptyDataAttributes.INSTANCE;
+  }
+
+  @Override public DataAttributes getTableAttributes() {
+    return tableAttributes != null ? tableAttributes : EmptyDataAttributes.INSTANCE;
+  }
+
+  private abstract static class Column implements Serializable {
+    private final BitSet nulls = new BitSet();
+
+    static Column create( final Object value, final int rows ) {
+      final Class<?> type = value.getClass();
+      if ( type == Integer.class ) {
+        return new IntColumn( rows );
+      } else if ( type == Long.class ) {
+        return new LongColumn( rows );
+      } else if ( type == Double.class ) {
+        return new DoubleColumn( rows );
+      } else if ( type == Boolean.class ) {
+        return new BooleanColumn();
+      } else if ( type == Date.class || type == java.sql.Date.class || type == Time.class
+        || type == Timestamp.class ) {
+        return new DateColumn( type, rows );
+      } else if ( type == BigDecimal.class ) {
+        return new DecimalColumn( rows );
+      } else if ( type == String.class ) {
+        return new StringColumn( rows );
+      }
+      return new ObjectColumn( rows );
+    }
+
+    /**
+     * @return false if the column can not store the value
+     */
+    boolean set( final int row, final Object value ) {
+      if ( value == null ) {
+        nulls.set( row );
+        return true;
+      }
+      if ( !accepts( value ) ) {
+        return false;
+      }
+      store( row, value );
+      return true;
+    }
+
+    Object get( final int row ) {
+      return nulls.get( row ) ? null : load( row );
+    }
+
+    long getBytes() {
+      return 32 + nulls.size() / 8 + getValueBytes();
+    }
+
+    void complete() {
+    }
+
+    abstract boolean accepts( Object value );
+
+    abstract void store( int row, Object value );
+
+    abstract Object load( int row );
+
+    abstract long getValueBytes();
+  }
+
+  private static final class NullColumn extends Column {
+    @Override Object get( final int row ) {
+      return null;
+    }
+
+    @Override boolean accepts( final Object value ) {
+      return false;
+    }
+
+    @Override void store( final int row, final Object value ) {
+      throw new IllegalStateException();
+    }
+
+    @Override Object load( final int row ) {
+      return null;
+    }
+
+    @Override long getValueBytes() {
+      return 0;
+    }
+  }
+
+  private static final class IntColumn extends Column {
+    private final int[] values;
+
+    private IntColumn( final int rows ) {
+      values = new int[ rows ];
+    }
+
+    @Override boolean accepts( final Object value ) {
+      return value.getClass() == Integer.class;
+    }
+
+    @Override void store( final int row, final Object value ) {
+      values[ row ] = (Integer) value;
+    }
+
+    @Override Object load( final int row ) {
+      return values[ row ];
+    }
+
+    @Override long getValueBytes() {
+      return 16 + 4L * values.length;
+    }
+  }
+
+  private static final class LongColumn extends Column {
+    private final long[] values;
+
+    private LongColumn( final int rows ) {
+      values = new long[ rows ];
+    }
+
+    @Override boolean accepts( final Object value ) {
+      return value.getClass() == Long.class;
+    }
+
+    @Override void store( final int row, final Object value ) {
+      values[ row ] = (Long) value;
+    }
+
+    @Override Object load( final int row ) {
+      return values[ row ];
+    }
+
+    @Override long getValueBytes() {
+      return 16 + 8L * values.length;
+    }
+  }
+
+  private static final class DoubleColumn extends Column {
+    private final double[] values;
+
+    private DoubleColumn( final int rows ) {
+      values = new double[ rows ];
+    }
+
+    @Override boolean accepts( final Object value ) {
+      return value.getClass() == Double.class;
+    }
+
+    @Override void store( final int row, final Object value ) {
+      values[ row ] = (Double) value;
+    }
+
+    @Override Object load( final int row ) {
+      return values[ row ];
+    }
+
+    @Override long getValueBytes() {
+      return 16 + 8L * values.length;
+    }
+  }
+
+  private static final class BooleanColumn extends Column {
+    private final BitSet values = new BitSet();
+
+    @Override boolean accepts( final Object value ) {
+      return value.getClass() == Boolean.class;
+    }
+
+    @Override void store( final int row, final Object value ) {
+      values.set( row, (Boolean) value );
+    }
+
+    @Override Object load( final int row ) {
+      return values.get( row );
+    }
+
+    @Override long getValueBytes() {
+      return 32 + values.size() / 8;
+    }
+  }
+
+  /**
+   * Dates of one class as milliseconds, timestamps with their nanoseconds.
+   */
+  private static final class DateColumn extends Column {
+    private final Class<?> type;
+    private final long[] times;
+    private final int[] nanos;
+
+    private DateColumn( final Class<?> type, final int rows ) {
+      this.type = type;
+      times = new long[ rows ];
+      nanos = type == Timestamp.class ? new int[ rows ] : null;
+    }
+
+    @Override boolean accepts( final Object value ) {
+      return value.getClass() == type;
+    }
+
+    @Override void store( final int row, final Object value ) {
+      times[ row ] = ( (Date) value ).getTime();
+      if ( nanos != null ) {
+        nanos[ row ] = ( (Timestamp) value ).getNanos();
+      }
+    }
+
+    @Override Object load( final int row ) {
+      final long time = times[ row ];
+      if ( type == Timestamp.class ) {
+        final Timestamp timestamp = new Timestamp( time );
+        timestamp.setNanos( nanos[ row ] );
+        return timestamp;
+      } else if ( type == java.sql.Date.class ) {
+        return new java.sql.Date( time );
+      } else if ( type == Time.class ) {
+        return new Time( time );
+      }
+      return new Date( time );
+    }
+
+    @Override long getValueBytes() {
+      return 16 + 8L * times.length + ( nanos != null ? 16 + 4L * nanos.length : 0 );
+    }
+  }
+
+  /**
+   * Decimals with an unscaled value fitting into a long.
+   */
+  private static final class DecimalColumn extends Column {
+    private final long[] unscaled;
+    private final int[] scales;
+
+    private DecimalColumn( final int rows ) {
+      unscaled = new long[ rows ];
+      scales = new int[ rows ];
+    }
+
+    @Override boolean accepts( final Object value ) {
+      return value.getClass() == BigDecimal.class && ( (BigDecimal) value ).unscaledValue().bitLength() < 64;
+    }
+
+    @Override void store( final int row, final Object value ) {
+      final BigDecimal decimal = (BigDecimal) value;
+      unscaled[ row ] = decimal.unscaledValue().longValue();
+      scales[ row ] = decimal.scale();
+    }
+
+    @Override Object load( final int row ) {
+      return BigDecimal.valueOf( unscaled[ row ], scales[ row ] );
+    }
+
+    @Override long getValueBytes() {
+      return 32 + 12L * unscaled.length;
+    }
+  }
+
+  /**
+   * Strings as codes into the dictionary of distinct values.
+   */
+  private static final class StringColumn extends Column {
+    private final int[] codes;
+    private final ArrayList<String> dictionary = new ArrayList<>();
+    private transient Map<String, Integer> index = new HashMap<>();
+    private long dictionaryBytes;
+
+    private StringColumn( final int rows ) {
+      codes = new int[ rows ];
+    }
+
+    @Override boolean accepts( final Object value ) {
+      return value.getClass() == String.class;
+    }
+
+    @Override void store( final int row, final Object value ) {
+      final String text = (String) value;
+      Integer code = index.get( text );
+      if ( code == null ) {
+        code = dictionary.size();
+        dictionary.add( text );
+        index.put( text, code );
+        dictionaryBytes += TableModelWeigher.weighValue( text ) + 8;
+      }
+      codes[ row ] = code;
+    }
+
+    @Override Object load( final int row ) {
+      return dictionary.get( codes[ row ] );
+    }
+
+    @Override void complete() {
+      index = null;
+      dictionary.trimToSize();
+    }
+
+    @Override long getValueBytes() {
+      return 16 + 4L * codes.length + 40 + dictionaryBytes;
+    }
+  }
+
+  private static final class ObjectColumn extends Column {
+    private final Object[] values;
+    private long valueBytes;
+
+    private ObjectColumn( final int rows ) {
+      values = new Object[ rows ];
+    }
+
+    /**
+     * Copies the first rows of a column that can not store all values.
+     */
+    static Column copyOf( final Column column, final int rows, final int size ) {
+      final ObjectColumn copy = new ObjectColumn( size );
+      for ( int row = 0; row < rows; row++ ) {
+        copy.set( row, column.get( row ) );
+      }
+      return copy;
+    }
+
+    @Override boolean accepts( final Object value ) {
+      return true;
+    }
+
+    @Override void store( final int row, final Object value ) {
+      values[ row ] = value;
+      valueBytes += TableModelWeigher.weighValue( value );
+    }
+
+    @Override Object load( final int row ) {
+      return values[ row ];
+    }
+
+    @Override long getValueBytes() {
+      return 16 + 8L * values.length + valueBytes;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.libraries.resourceloader.ResourceKey;
+import org.pentaho.reporting.libraries.resourceloader.ResourceLoadingException;
+
+/**
+ * Versions of report definitions, memoized per resource key so computing a content cache key does not ask the
+ * repository for the file on every request.
+ * <p>
+ * The repository sends no change events to plugins. Instead the resource loaders report every version they read with
+ * {@link #update(ResourceKey, long)}, so loading a replaced report moves its version on, and a version is read again
+ * once it is older than {@link #LIFETIME}.
+ */
+public final class DefinitionVersionCache {
+  private static final Log logger = LogFactory.getLog( DefinitionVersionCache.class );
+
+  /**
+   * Seconds a version is used without asking the repository, 0 disables the memo.
+   */
+  static final String LIFETIME = "org.pentaho.reporting.platform.plugin.cache.DefinitionVersionLifetime";
+  private static final long DEFAULT_LIFETIME = 10;
+  private static final int MAX_VERSIONS = 10000;
+
+  private static final Cache<ResourceKey, Version> VERSIONS =
+    CacheBuilder.newBuilder().maximumSize( MAX_VERSIONS ).build();
+
+  private DefinitionVersionCache() {
+  }
+
+  public interface VersionLoader {
+    /**
+     * @return version of the resource or -1 if it has none
+     */
+    long load( ResourceKey key ) throws ResourceLoadingException;
+  }
+
+  private static final class Version {
+    private final long version;
+    private final long expires;
+
+    private Version( final long version, final long expires ) {
+      this.version = version;
+      this.expires = expires;
+    }
+  }
+
+  /**
+   * Returns the memoized version of a resource or loads it.
+   *
+   * @return version of the resource or -1 if it has none
+   */
+  public static long getVersion( final ResourceKey key, final VersionLoader loader ) throws ResourceLoadingException {
+    final Version memo = VERSIONS.getIfPresent( key );
+    if ( memo != null && memo.expires > System.currentTimeMillis() ) {
+      return memo.version;
+    }
+    final long version = loader.load( key );
+    update( key, version );
+    return version;
+  }
+
+  /**
+   * Records the version of a resource read by a loader. Resources without a version are forgotten, so a version a
+   * user could not read is never shared with others.
+   */
+  public static void update( final ResourceKey key, final long version ) {
+    if ( version == -1 ) {
+      VERSIONS.invalidate( key );
+      return;
+    }
+    final long lifetime = getLifetime();
+    if ( lifetime > 0 ) {
+      VERSIONS.put( key, new Version( version, System.currentTimeMillis() + lifetime * 1000 ) );
+    }
+  }
+
+  public static void invalidate( final ResourceKey key ) {
+    VERSIONS.invalidate( key );
+  }
+
+  public static void invalidateAll() {
+    VERSIONS.invalidateAll();
+  }
+
+  private static long getLifetime() {
+    final String lifetime = ClassicEngineBoot.getInstance().getGlobalConfig()
+      .getConfigProperty( LIFETIME, String.valueOf( DEFAULT_LIFETIME ) );
+    try {
+      return Long.parseLong( lifetime.trim() );
+    } catch ( final NumberFormatException e ) {
+      logger.warn( "Invalid value of " + LIFETIME + ": " + lifetime );
+      return DEFAULT_LIFETIME;
+    }
+  }
+}
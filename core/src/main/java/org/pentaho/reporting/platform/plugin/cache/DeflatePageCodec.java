@@ -0,0 +1,128 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses pages with deflate. Html pages shrink about ten times, level 1 (the default) is several times faster than
+ * level 9 and loses little density on html. Encoded pages start with the length of the page, so decoding allocates the
+ * page once.
+ */
+public class DeflatePageCodec implements PageCodec {
+
+  public static final int ID = 1;
+
+  private int level = Deflater.BEST_SPEED;
+
+  /**
+   * @param level deflate level from 1 (fastest) to 9 (smallest)
+   */
+  public void setLevel( final int level ) {
+    if ( level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION ) {
+      throw new IllegalArgumentException( "Invalid deflate level: " + level );
+    }
+    this.level = level;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  @Override public int getId() {
+    return ID;
+  }
+
+  @Override public String getName() {
+    return "deflate";
+  }
+
+  @Override public byte[] encode( final byte[] page ) {
+    final byte[] result = deflate( page, 4, 0 );
+    ByteBuffer.wrap( result ).putInt( 0, page.length );
+    return result;
+  }
+
+  @Override public byte[] decode( final byte[] data ) throws IOException {
+    if ( data.length < 4 ) {
+      throw new IOException( "Truncated deflated page" );
+    }
+    final int length = ByteBuffer.wrap( data ).getInt( 0 );
+    if ( length < 0 ) {
+      throw new IOException( "Invalid deflated page length: " + length );
+    }
+    return inflate( data, 4, data.length - 4, length );
+  }
+
+  /**
+   * Compresses a page to raw deflate data.
+   *
+   * @param page   page
+   * @param header bytes left free in front of the compressed data
+   * @param footer bytes left free after the compressed data
+   * @return array of exactly the header, compressed data and footer size
+   */
+  protected byte[] deflate( final byte[] page, final int header, final int footer ) {
+    final Deflater deflater = new Deflater( level, true );
+    try {
+      deflater.setInput( page );
+      deflater.finish();
+      byte[] buffer = new byte[ header + Math.max( 64, page.length / 4 ) ];
+      int length = header;
+      while ( !deflater.finished() ) {
+        if ( length == buffer.length ) {
+          final byte[] grown = new byte[ buffer.length * 2 ];
+          System.arraycopy( buffer, 0, grown, 0, length );
+          buffer = grown;
+        }
+        length += deflater.deflate( buffer, length, buffer.length - length );
+      }
+      final byte[] result = new byte[ length + footer ];
+      System.arraycopy( buffer, 0, result, 0, length );
+      return result;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Decompresses raw deflate data.
+   *
+   * @param length size of the page
+   */
+  protected static byte[] inflate( final byte[] data, final int offset, final int count, final int length )
+    throws IOException {
+    final byte[] page = new byte[ length ];
+    final Inflater inflater = new Inflater( true );
+    try {
+      inflater.setInput( data, offset, count );
+      int read = 0;
+      while ( read < length ) {
+        final int n = inflater.inflate( page, read, length - read );
+        if ( n == 0 && ( inflater.finished() || inflater.needsInput() || inflater.needsDictionary() ) ) {
+          throw new IOException( "Truncated deflated page" );
+        }
+        read += n;
+      }
+      return page;
+    } catch ( final DataFormatException e ) {
+      throw new IOException( "Damaged deflated page", e );
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -27,9 +27,17 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Eviction strategy that kills old cache when accessed
+ * Eviction strategy that kills old cache entries. Entry timestamps are kept in an in-memory expiry index, which is
+ * rebuilt from the entries' metadata once on first use. A background sweeper purges expired entries, so the request
+ * path only ever checks the entry it works with.
  */
 public class DeleteOldOnAccessCache extends AbstractReportContentCache {
 
@@ -39,6 +47,12 @@ public class DeleteOldOnAccessCache extends AbstractReportContentCache {
   public static final int MILLIS_IN_DAY = 86400000;
   public static final String ANONYMOUS = "anonymous";
   private long millisToLive;
+  private long sweepIntervalSeconds = 300;
+
+  private final ConcurrentSkipListSet<Expiry> expiryIndex = new ConcurrentSkipListSet<>();
+  private final ConcurrentHashMap<List<String>, Expiry> expiryByKey = new ConcurrentHashMap<>();
+  private final AtomicBoolean started = new AtomicBoolean();
+  private volatile ScheduledExecutorService sweeper;
 
 
   public DeleteOldOnAccessCache( final ICacheBackend backend ) {
@@ -57,6 +71,20 @@ public class DeleteOldOnAccessCache extends AbstractReportContentCache {
     this.millisToLive = millisToLive;
   }
 
+  /**
+   * @param sweepIntervalSeconds how often the background sweeper looks for expired entries
+   */
+  public void setSweepIntervalSeconds( final long sweepIntervalSeconds ) {
+    this.sweepIntervalSeconds = sweepIntervalSeconds;
+  }
+
+  /**
+   * @return key of the directory all entries of this cache live in
+   */
+  protected List<String> getSegmentKey() {
+    return Collections.singletonList( SEGMENT );
+  }
+
   @Override protected List<String> computeKey( final String key ) {
     final IPentahoSession session = PentahoSessionHolder.getSession();
     //Don't use username explicitly - compute hash
@@ -64,7 +92,7 @@ public class DeleteOldOnAccessCache extends AbstractReportContentCache {
   }
 
   /**
-   * Cleans old entries Saves value with timestamp
+   * Saves value with timestamp
    *
    * @param key   key
    * @param value value
@@ -75,7 +103,7 @@ public class DeleteOldOnAccessCache extends AbstractReportContentCache {
   }
 
   /**
-   * Cleans old entries Saves value with timestamp
+   * Saves value with timestamp
    *
    * @param key   key
    * @param value value
@@ -83,20 +111,47 @@ public class DeleteOldOnAccessCache extends AbstractReportContentCache {
    * @return success
    */
   @Override public boolean put( final String key, final IReportContent value,  Map<String, Serializable> metaData ) {
-    cleanUp();
+    ensureStarted();
 
-    metaData.put( TIMESTAMP, System.currentTimeMillis() );
-    getBackend().write( computeKey( key ), value, metaData );
+    final long timestamp = System.currentTimeMillis();
+    final List<String> computedKey = computeKey( key );
+    //Index first, so the sweeper never purges the entry we are about to write
+    index( computedKey, timestamp );
+    metaData.put( TIMESTAMP, timestamp );
+    getBackend().write( computedKey, value, metaData );
     return false;
   }
 
+  /**
+   * Appends pages and refreshes the timestamp
+   *
+   * @param key       key
+   * @param pageCount page count
+   * @param pages     new pages
+   * @param metaData  metaData
+   * @return success
+   */
+  @Override public boolean append( final String key, final int pageCount, final Map<Integer, byte[]> pages,
+                                   final Map<String, Serializable> metaData ) {
+    ensureStarted();
+
+    final long timestamp = System.currentTimeMillis();
+    final List<String> computedKey = computeKey( key );
+    index( computedKey, timestamp );
+    metaData.put( TIMESTAMP, timestamp );
+    return getBackend().append( computedKey, pageCount, pages, metaData );
+  }
+
 
   /**
    * @param key key
    * @return ReportContent
    */
   @Override public IReportContent get( final String key ) {
-    cleanUp();
+    ensureStarted();
+    if ( evictIfExpired( computeKey( key ) ) ) {
+      return null;
+    }
     return super.get( key );
   }
 
@@ -105,7 +160,10 @@ public class DeleteOldOnAccessCache extends AbstractReportContentCache {
    * @return Map<String, Serializable>
    */
   @Override public Map<String, Serializable> getMetaData( String key ) {
-    cleanUp();
+    ensureStarted();
+    if ( evictIfExpired( computeKey( key ) ) ) {
+      return null;
+    }
     return super.getMetaData( key );
   }
 
@@ -113,37 +171,146 @@ public class DeleteOldOnAccessCache extends AbstractReportContentCache {
    * Cleans old files
    */
   @Override public void cleanup() {
-    cleanUp();
+    ensureStarted();
+    sweep();
   }
 
   @Override public void cleanupCurrentSession() {
     final IPentahoSession session = PentahoSessionHolder.getSession();
     final List<String> key = Collections.unmodifiableList( Arrays.asList( SEGMENT, createKey( session.getName() ) ) );
     final ICacheBackend backend = getBackend();
-    backend.purgeSegment( key, ( k, m ) -> true );
+    backend.purgeSegment( key, ( k, m ) -> {
+      unindex( k );
+      return true;
+    } );
+  }
+
+  /**
+   * Purges the entry if the index knows it has expired. Entries the index doesn't know yet (the index is still being
+   * rebuilt) are checked against their own metadata.
+   *
+   * @param computedKey entry key
+   * @return true if entry is expired
+   */
+  private boolean evictIfExpired( final List<String> computedKey ) {
+    final List<String> indexKey = FileSystemCacheBackend.sanitizeKeySegments( computedKey );
+    final Expiry expiry = expiryByKey.get( indexKey );
+    final long timestamp;
+    if ( expiry != null ) {
+      timestamp = expiry.timestamp;
+    } else {
+      final Map<String, Serializable> md = getBackend().readMetaData( computedKey );
+      final Object o = md == null ? null : md.get( TIMESTAMP );
+      if ( !( o instanceof Long ) ) {
+        return false;
+      }
+      timestamp = (Long) o;
+    }
+    if ( System.currentTimeMillis() - timestamp > millisToLive ) {
+      evict( indexKey, expiry );
+      return true;
+    }
+    return false;
   }
 
-  private void cleanUp() {
+  private void index( final List<String> computedKey, final long timestamp ) {
+    final List<String> indexKey = FileSystemCacheBackend.sanitizeKeySegments( computedKey );
+    final Expiry expiry = new Expiry( timestamp, indexKey );
+    final Expiry previous = expiryByKey.put( indexKey, expiry );
+    if ( previous != null ) {
+      expiryIndex.remove( previous );
+    }
+    expiryIndex.add( expiry );
+  }
+
+  private void unindex( final List<String> indexKey ) {
+    final Expiry expiry = expiryByKey.remove( indexKey );
+    if ( expiry != null ) {
+      expiryIndex.remove( expiry );
+    }
+  }
+
+  private void evict( final List<String> indexKey, final Expiry expiry ) {
+    if ( expiry != null ) {
+      // a newer put replaced the indexed entry - it is not expired
+      if ( !expiryByKey.remove( indexKey, expiry ) ) {
+        return;
+      }
+      expiryIndex.remove( expiry );
+    }
+    logger.debug( "Purged long-term cache: " + indexKey );
+    getBackend().purge( indexKey );
+  }
+
+  /**
+   * Purges expired entries, oldest first, stopping at the first entry that is still alive.
+   */
+  void sweep() {
     logger.debug( "Starting periodical cache eviction" );
-    final long currentTimeMillis = System.currentTimeMillis();
-    final ICacheBackend backend = getBackend();
+    final long cutOff = System.currentTimeMillis() - millisToLive;
+    for ( final Expiry expiry : expiryIndex ) {
+      if ( expiry.timestamp >= cutOff ) {
+        break;
+      }
+      evict( expiry.key, expiry );
+    }
+    logger.debug( "Finished periodical cache eviction" );
+  }
 
-    backend.purgeSegment( Collections.singletonList( SEGMENT ),
-      new BiPredicate<List<String>, Map<String, Serializable>>() {
-        @Override public boolean test( final List<String> key, final Map<String, Serializable> md ) {
-          final Object o = md.get( TIMESTAMP );
-          if ( o instanceof Long ) {
-            final long timestamp = (Long) o;
-            if ( currentTimeMillis - timestamp > millisToLive ) {
-              logger.debug( "Purged long-term cache: " + key );
-              return true;
-            }
-          }
-          return false;
+  /**
+   * Rebuilds the expiry index from the entries stored by the backend. This is the only full walk of the cache tree and
+   * runs once, on the sweeper thread. The walk doesn't block requests, entries they write meanwhile are indexed by
+   * them.
+   */
+  void rebuildIndex() {
+    logger.debug( "Rebuilding cache expiry index for " + getSegmentKey() );
+    getBackend().visitSegment( getSegmentKey(), ( key, md ) -> {
+      final Object o = md == null ? null : md.get( TIMESTAMP );
+      if ( o instanceof Long && !expiryByKey.containsKey( key ) ) {
+        final Expiry expiry = new Expiry( (Long) o, key );
+        if ( expiryByKey.putIfAbsent( key, expiry ) == null ) {
+          expiryIndex.add( expiry );
         }
+      }
+    } );
+    logger.debug( "Rebuilt cache expiry index for " + getSegmentKey() + ", entries: " + expiryByKey.size() );
+  }
+
+  boolean isIndexed( final String key ) {
+    return expiryByKey.containsKey( FileSystemCacheBackend.sanitizeKeySegments( computeKey( key ) ) );
+  }
+
+  private void ensureStarted() {
+    if ( started.compareAndSet( false, true ) ) {
+      final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor( r -> {
+        final Thread thread = Executors.defaultThreadFactory().newThread( r );
+        thread.setDaemon( true );
+        thread.setName( getClass().getSimpleName() + " Sweeper" );
+        return thread;
       } );
+      executor.execute( this::rebuildIndex );
+      executor.scheduleWithFixedDelay( this::sweepSafely, sweepIntervalSeconds, sweepIntervalSeconds,
+        TimeUnit.SECONDS );
+      sweeper = executor;
+    }
+  }
 
-    logger.debug( "Finished periodical cache eviction" );
+  private void sweepSafely() {
+    try {
+      sweep();
+    } catch ( final Exception e ) {
+      logger.error( "Can't evict long-term cache: ", e );
+    }
+  }
+
+  /**
+   * Stops the background sweeper.
+   */
+  @Override public void shutdown() {
+    final ScheduledExecutorService executor = sweeper;
+    if ( executor != null ) {
+      executor.shutdownNow();
+    }
   }
 
 
@@ -160,4 +327,29 @@ public class DeleteOldOnAccessCache extends AbstractReportContentCache {
       throw new Error( e );
     }
   }
+
+  private static final class Expiry implements Comparable<Expiry> {
+    private final long timestamp;
+    private final List<String> key;
+    private final String order;
+
+    private Expiry( final long timestamp, final List<String> key ) {
+      this.timestamp = timestamp;
+      this.key = key;
+      this.order = key.toString();
+    }
+
+    @Override public int compareTo( final Expiry o ) {
+      final int result = Long.compare( timestamp, o.timestamp );
+      return result != 0 ? result : order.compareTo( o.order );
+    }
+
+    @Override public boolean equals( final Object o ) {
+      return o instanceof Expiry && compareTo( (Expiry) o ) == 0;
+    }
+
+    @Override public int hashCode() {
+      return 31 * Long.hashCode( timestamp ) + order.hashCode();
+    }
+  }
 }
@@ -13,7 +13,6 @@
 package org.pentaho.reporting.platform.plugin.cache;
 
 import com.cronutils.utils.VisibleForTesting;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -27,7 +26,14 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -35,6 +41,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
 
 /**
  * Default interface for cache backend
@@ -47,18 +55,43 @@ public class FileSystemCacheBackend implements ICacheBackend {
   public static final String EXT = "\\.metadata|\\.data";
   public static final String DATA = ".data";
   public static final String METADATA = ".metadata";
-  private final Map<List<String>, ReentrantReadWriteLock> syncMap;
+  private static final String TMP = ".tmp";
+  private static final Pattern EXT_PATTERN = Pattern.compile( EXT );
+  /**
+   * Metadata key holding the name of the codec the pages of an entry are stored with.
+   */
+  public static final String PAGE_CODEC = "PageCodec";
+  // a power of two, entries are mapped to a lock by the low bits of their hash
+  private static final int LOCK_STRIPES = 64;
+  private final ReentrantReadWriteLock treeLock;
+  private final ReentrantReadWriteLock[] entryLocks;
 
   private String cachePath;
+  private PageCodec pageCodec = new PlainPageCodec();
 
   public FileSystemCacheBackend() {
-    syncMap = new HashMap<>();
+    treeLock = new ReentrantReadWriteLock();
+    entryLocks = new ReentrantReadWriteLock[ LOCK_STRIPES ];
+    for ( int i = 0; i < entryLocks.length; i++ ) {
+      entryLocks[ i ] = new ReentrantReadWriteLock();
+    }
   }
 
   public void setCachePath( final String cachePath ) {
     this.cachePath = getSystemTmp() + cachePath;
   }
 
+  /**
+   * @param pageCodec codec of report pages written from now on, content written before stays readable
+   */
+  public void setPageCodec( final PageCodec pageCodec ) {
+    this.pageCodec = pageCodec;
+  }
+
+  public PageCodec getPageCodec() {
+    return pageCodec;
+  }
+
   @Override
   public boolean write( final List<String> key, final Serializable value,
                         final Map<String, Serializable> metaData ) {
@@ -66,7 +99,11 @@ public class FileSystemCacheBackend implements ICacheBackend {
     final List<Lock> locks = lockForWrite( cleanKey );
     try {
       final String filePath = cachePath + StringUtils.join( cleanKey, File.separator );
-      if ( writeFile( value, filePath + DATA ) ) {
+      if ( value instanceof IReportContent ) {
+        if ( writePagedFile( (IReportContent) value, filePath + DATA ) ) {
+          return false;
+        }
+      } else if ( writeFile( value, filePath + DATA ) ) {
         return false;
       }
 
@@ -74,6 +111,9 @@ public class FileSystemCacheBackend implements ICacheBackend {
       if ( metaData != null ) {
         writeableMetaData.putAll( metaData );
       }
+      if ( value instanceof IReportContent ) {
+        writeableMetaData.put( PAGE_CODEC, pageCodec.getName() );
+      }
       if ( writeFile( writeableMetaData, filePath + METADATA ) ) {
         return false;
       }
@@ -103,6 +143,72 @@ public class FileSystemCacheBackend implements ICacheBackend {
     return false;
   }
 
+  /**
+   * Writes report content in the paged layout. Content goes to a temporary file first and is then moved over the old
+   * entry, so readers that still hold a mapping of the previous file keep seeing consistent data.
+   */
+  private boolean writePagedFile( final IReportContent value, final String filePath ) {
+    final File file = new File( filePath );
+    final File tmp = new File( filePath + TMP );
+    try {
+      file.getParentFile().mkdirs();
+      try ( final FileChannel channel = FileChannel.open( tmp.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) ) {
+        ReportContentFileFormat.write( channel, value, pageCodec );
+      }
+      try {
+        Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+      } catch ( final AtomicMoveNotSupportedException e ) {
+        Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+      }
+    } catch ( final IOException e ) {
+      logger.error( "Can't write cache: ", e );
+      tmp.delete();
+      return true;
+    }
+    return false;
+  }
+
+
+  /**
+   * Appends pages to a paged data file in place. Other entries are written as new paged content.
+   */
+  @Override
+  public boolean append( final List<String> key, final int pageCount, final Map<Integer, byte[]> pages,
+                         final Map<String, Serializable> metaData ) {
+    final List<String> cleanKey = sanitizeKeySegments( key );
+    final List<Lock> locks = lockForWrite( cleanKey );
+    try {
+      final String filePath = cachePath + StringUtils.join( cleanKey, File.separator );
+      final File data = new File( filePath + DATA );
+      boolean appended = false;
+      String codecName = null;
+      if ( data.exists() ) {
+        try ( final FileChannel channel = FileChannel.open( data.toPath(), StandardOpenOption.READ,
+          StandardOpenOption.WRITE ) ) {
+          if ( ReportContentFileFormat.isPaged( channel ) ) {
+            codecName = ReportContentFileFormat.append( channel, pageCount, pages, pageCodec ).getName();
+            appended = true;
+          }
+        } catch ( final IOException e ) {
+          logger.debug( "Can't append to cache, rewriting the entry: ", e );
+        }
+      }
+      if ( !appended ) {
+        // old format or damaged file, the write lock is reentrant
+        return ICacheBackend.super.append( key, pageCount, pages, metaData );
+      }
+
+      final HashMap<String, Serializable> writeableMetaData = new HashMap<>();
+      if ( metaData != null ) {
+        writeableMetaData.putAll( metaData );
+      }
+      writeableMetaData.put( PAGE_CODEC, codecName );
+      return !writeFile( writeableMetaData, filePath + METADATA );
+    } finally {
+      unlock( locks );
+    }
+  }
 
   @Override
   public Serializable read( final List<String> key ) {
@@ -116,8 +222,11 @@ public class FileSystemCacheBackend implements ICacheBackend {
         return null;
       }
 
-      try ( final FileInputStream fis = new FileInputStream( f );
-            final ObjectInputStream ois = new ObjectInputStream( fis ) ) {
+      try ( final FileChannel channel = FileChannel.open( f.toPath(), StandardOpenOption.READ ) ) {
+        if ( ReportContentFileFormat.isPaged( channel ) ) {
+          return ReportContentFileFormat.read( channel, pageCodec );
+        }
+        final ObjectInputStream ois = new ObjectInputStream( Channels.newInputStream( channel ) );
         result = ois.readObject();
       } catch ( final Exception e ) {
         logger.debug( "Can't read cache: ", e );
@@ -162,8 +271,7 @@ public class FileSystemCacheBackend implements ICacheBackend {
   }
 
   /**
-   * Locks are released in reverse order. First we release the more specialized locks and traverse upwards towards the
-   * root directory.
+   * Locks are released in reverse order: entry lock first, the tree lock last.
    *
    * @param locks
    */
@@ -174,62 +282,68 @@ public class FileSystemCacheBackend implements ICacheBackend {
     }
   }
 
-  private List<Lock> lockForRead( List<String> key ) {
-    List<Lock> retval;
-    if ( !key.isEmpty() ) {
-      final List<String> parent = key.subList( 0, key.size() - 1 );
-      retval = lockForRead( parent );
-    } else {
-      retval = new ArrayList<>();
-    }
+  private List<Lock> lockForRead( final List<String> key ) {
+    return lockEntry( key, false );
+  }
 
-    final Lock lock = getLock( key ).readLock();
+  private List<Lock> lockForWrite( final List<String> key ) {
+    return lockEntry( key, true );
+  }
+
+  /**
+   * Entry operations share the tree lock and then take the striped lock of the entry. Two locks per access, whatever
+   * the key depth is.
+   *
+   * @param key       compound key
+   * @param exclusive whether the entry is about to be modified
+   * @return acquired locks
+   */
+  private List<Lock> lockEntry( final List<String> key, final boolean exclusive ) {
+    final List<Lock> retval = new ArrayList<>( 2 );
+    final Lock tree = treeLock.readLock();
+    tree.lock();
+    retval.add( tree );
+
+    final ReentrantReadWriteLock entryLock = getLock( key );
+    final Lock lock = exclusive ? entryLock.writeLock() : entryLock.readLock();
     lock.lock();
     retval.add( lock );
     return retval;
   }
 
   /**
-   * Acquires read locks for all sub-directories, and a final write lock for the current working directory. It acquires
-   * the parent locks first, before trying to get more local locks.
+   * Operations over a whole directory exclude every entry operation. The tree lock is reentrant, so entry operations
+   * called while holding it do not block.
    *
-   * @param key
-   * @return
+   * @return acquired locks
    */
-  private List<Lock> lockForWrite( final List<String> key ) {
-    final List<Lock> retval;
-    if ( CollectionUtils.isNotEmpty( key ) ) {
-      final List<String> parent = key.subList( 0, key.size() - 1 );
-      retval = lockForRead( parent );
-    } else {
-      retval = new ArrayList<>();
-    }
-
-    final Lock lock = getLock( key ).writeLock();
+  private List<Lock> lockTree() {
+    final Lock lock = treeLock.writeLock();
     lock.lock();
-    retval.add( lock );
-    return retval;
+    return Collections.singletonList( lock );
   }
 
   /**
-   * Returns an object for read/write synchronization
+   * Returns an object for read/write synchronization. Locks are striped, so the lock table is bounded and the lookup
+   * doesn't need synchronization. Data and metadata files of an entry share the same lock.
    *
    * @param key compound key
    * @return lock object
    */
-  private synchronized ReentrantReadWriteLock getLock( final List<String> key ) {
-    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock( true );
-    if ( !syncMap.containsKey( key ) ) {
-      syncMap.put( key, lock );
-      return lock;
+  @VisibleForTesting
+  ReentrantReadWriteLock getLock( final List<String> key ) {
+    int hash = 1;
+    for ( final String segment : key ) {
+      hash = 31 * hash + ( segment == null ? 0 : EXT_PATTERN.matcher( segment ).replaceAll( "" ).hashCode() );
     }
-    return syncMap.get( key );
+    hash ^= ( hash >>> 16 );
+    return entryLocks[ hash & ( entryLocks.length - 1 ) ];
   }
 
   public void purgeSegment( final List<String> key,
                             final BiPredicate<List<String>, Map<String, Serializable>> p ) {
     final List<String> cleanKey = sanitizeKeySegments( key );
-    final List<Lock> locks = lockForWrite( cleanKey );
+    final List<Lock> locks = lockTree();
     try {
       for ( String name : listKeys( cleanKey ) ) {
         ArrayList<String> entryKey = new ArrayList<>( cleanKey );
@@ -249,13 +363,32 @@ public class FileSystemCacheBackend implements ICacheBackend {
     }
   }
 
+  /**
+   * Walks the tree without the tree lock, so entry operations go on meanwhile. Each metadata read takes the lock of its
+   * entry only.
+   */
+  @Override
+  public void visitSegment( final List<String> key,
+                            final BiConsumer<List<String>, Map<String, Serializable>> visitor ) {
+    final List<String> cleanKey = sanitizeKeySegments( key );
+    for ( String name : listKeys( cleanKey ) ) {
+      ArrayList<String> entryKey = new ArrayList<>( cleanKey );
+      entryKey.add( name );
+      visitor.accept( entryKey, readMetaData( entryKey ) );
+    }
+    for ( String name : listSegments( cleanKey ) ) {
+      ArrayList<String> entryKey = new ArrayList<>( cleanKey );
+      entryKey.add( name );
+      visitSegment( entryKey, visitor );
+    }
+  }
+
   @Override
   public boolean purge( final List<String> key ) {
     final List<String> cleanKey = sanitizeKeySegments( key );
-    final List<Lock> locks = lockForWrite( cleanKey );
+    final String fileName = cachePath + StringUtils.join( cleanKey, File.separator );
+    final List<Lock> locks = new File( fileName ).isDirectory() ? lockTree() : lockForWrite( cleanKey );
     try {
-      final String fileName = cachePath + StringUtils.join( cleanKey, File.separator );
-
       if ( fileName.endsWith( DATA ) ) {
         final File data = new File( fileName );
         if ( !data.exists() ) {
@@ -294,7 +427,6 @@ public class FileSystemCacheBackend implements ICacheBackend {
       return false;
     } finally {
       unlock( locks );
-      syncMap.remove( cleanKey );
     }
   }
 
@@ -340,7 +472,7 @@ public class FileSystemCacheBackend implements ICacheBackend {
     return s;
   }
 
-  private static List<String> sanitizeKeySegments( final List<String> key ) {
+  static List<String> sanitizeKeySegments( final List<String> key ) {
     final List<String> clean = new ArrayList<>();
     if ( key != null ) {
       for ( final String segment : key ) {
@@ -349,15 +481,4 @@ public class FileSystemCacheBackend implements ICacheBackend {
     }
     return clean;
   }
-
-  @VisibleForTesting
-  void setSyncMap( Map<List<String>, ReentrantReadWriteLock> newMap ) {
-    this.syncMap.clear();
-    this.syncMap.putAll( newMap );
-  }
-
-  @VisibleForTesting
-  Map<List<String>, ReentrantReadWriteLock> getSyncMap() {
-    return this.syncMap;
-  }
 }
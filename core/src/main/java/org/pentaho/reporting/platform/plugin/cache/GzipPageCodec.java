@@ -0,0 +1,75 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * Stores pages as gzip members, so a cached page can be sent to clients accepting gzip encoding as it is stored. The
+ * compressed data is the same as with {@link DeflatePageCodec}, gzip adds 18 bytes of framing and a checksum.
+ */
+public class GzipPageCodec extends DeflatePageCodec {
+
+  public static final int ID = 2;
+  private static final int HEADER_SIZE = 10;
+  private static final int TRAILER_SIZE = 8;
+
+  @Override public int getId() {
+    return ID;
+  }
+
+  @Override public String getName() {
+    return "gzip";
+  }
+
+  @Override public byte[] encode( final byte[] page ) {
+    final byte[] result = deflate( page, HEADER_SIZE, TRAILER_SIZE );
+    // magic, deflate, no flags, no modification time, no extra flags, unknown OS
+    result[ 0 ] = (byte) 0x1f;
+    result[ 1 ] = (byte) 0x8b;
+    result[ 2 ] = 8;
+    result[ 9 ] = (byte) 0xff;
+    final CRC32 crc = new CRC32();
+    crc.update( page );
+    final ByteBuffer trailer = ByteBuffer.wrap( result ).order( ByteOrder.LITTLE_ENDIAN );
+    trailer.putInt( result.length - TRAILER_SIZE, (int) crc.getValue() );
+    trailer.putInt( result.length - 4, page.length );
+    return result;
+  }
+
+  /**
+   * Decodes members written by {@link #encode(byte[])}, which carry no optional header fields.
+   */
+  @Override public byte[] decode( final byte[] data ) throws IOException {
+    if ( data.length < HEADER_SIZE + TRAILER_SIZE || ( data[ 0 ] & 0xff ) != 0x1f || ( data[ 1 ] & 0xff ) != 0x8b
+      || data[ 2 ] != 8 || data[ 3 ] != 0 ) {
+      throw new IOException( "Not a gzip page" );
+    }
+    final ByteBuffer trailer = ByteBuffer.wrap( data ).order( ByteOrder.LITTLE_ENDIAN );
+    final int checksum = trailer.getInt( data.length - TRAILER_SIZE );
+    final int length = trailer.getInt( data.length - 4 );
+    if ( length < 0 ) {
+      throw new IOException( "Invalid gzip page length: " + length );
+    }
+    final byte[] page = inflate( data, HEADER_SIZE, data.length - HEADER_SIZE - TRAILER_SIZE, length );
+    final CRC32 crc = new CRC32();
+    crc.update( page );
+    if ( (int) crc.getValue() != checksum ) {
+      throw new IOException( "Damaged gzip page" );
+    }
+    return page;
+  }
+}
@@ -0,0 +1,116 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Report content holding its pages gzip encoded only. Clients accepting gzip get the stored pages as they are, other
+ * clients get them decoded on each request.
+ */
+public class GzipReportContent implements IReportContent {
+
+  private static final long serialVersionUID = 1L;
+  private static final Log logger = LogFactory.getLog( GzipReportContent.class );
+  private static final GzipPageCodec GZIP = new GzipPageCodec();
+
+  private final int pageCount;
+  private final Map<Integer, byte[]> gzipData;
+
+  /**
+   * @param pageCount page count of the content
+   * @param gzipData  gzip encoded pages by page number
+   */
+  public GzipReportContent( final int pageCount, final Map<Integer, byte[]> gzipData ) {
+    this.pageCount = pageCount;
+    this.gzipData = gzipData;
+  }
+
+  /**
+   * Encodes plain pages, each page once.
+   */
+  public static GzipReportContent encode( final int pageCount, final Map<Integer, byte[]> pages ) {
+    final Map<Integer, byte[]> encoded = new HashMap<>();
+    for ( final Map.Entry<Integer, byte[]> page : pages.entrySet() ) {
+      if ( page.getValue() != null ) {
+        encoded.put( page.getKey(), GZIP.encode( page.getValue() ) );
+      }
+    }
+    return new GzipReportContent( pageCount, encoded );
+  }
+
+  /**
+   * Copies content into the heap. Pages the content holds gzip encoded already are copied as they are.
+   */
+  public static GzipReportContent encode( final IReportContent content ) {
+    if ( content instanceof GzipReportContent ) {
+      return (GzipReportContent) content;
+    }
+    final Map<Integer, byte[]> encoded = new HashMap<>();
+    final int stored = content.getStoredPageCount();
+    final int limit = Math.max( content.getPageCount(), stored );
+    for ( int i = 0; i < limit && encoded.size() < stored; i++ ) {
+      byte[] data = content.getGzipPageData( i );
+      if ( data == null ) {
+        final byte[] page = content.getPageData( i );
+        data = page != null ? GZIP.encode( page ) : null;
+      }
+      if ( data != null ) {
+        encoded.put( i, data );
+      }
+    }
+    return new GzipReportContent( content.getPageCount(), encoded );
+  }
+
+  @Override public int getPageCount() {
+    return pageCount;
+  }
+
+  @Override public int getStoredPageCount() {
+    return gzipData.size();
+  }
+
+  /**
+   * @return total size of the encoded pages in bytes
+   */
+  long getContentSize() {
+    long size = 0;
+    for ( final byte[] data : gzipData.values() ) {
+      size += data.length;
+    }
+    return size;
+  }
+
+  @Override public byte[] getPageData( final int page ) {
+    final byte[] data = gzipData.get( page );
+    if ( data == null ) {
+      return null;
+    }
+    try {
+      return GZIP.decode( data );
+    } catch ( final IOException e ) {
+      logger.warn( "Can't decode cached page " + page + ": ", e );
+      return null;
+    }
+  }
+
+  @Override public byte[] getGzipPageData( final int page ) {
+    return gzipData.get( page );
+  }
+}
@@ -13,8 +13,10 @@
 package org.pentaho.reporting.platform.plugin.cache;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * Simple interface for cache backend
@@ -50,4 +52,48 @@ public interface ICacheBackend {
 
   void purgeSegment( final List<String> key, final BiPredicate<List<String>, Map<String, Serializable>> p );
 
+  /**
+   * Passes every entry below a key with its metadata to the visitor, without removing anything. Unlike
+   * {@link #purgeSegment(List, BiPredicate)} the walk doesn't need to exclude concurrent entry operations, entries
+   * written or removed during the walk may or may not be visited.
+   *
+   * @param key     path
+   * @param visitor receives key and metadata of each entry
+   */
+  default void visitSegment( final List<String> key,
+                             final BiConsumer<List<String>, Map<String, Serializable>> visitor ) {
+    purgeSegment( key, ( entryKey, metaData ) -> {
+      visitor.accept( entryKey, metaData );
+      return false;
+    } );
+  }
+
+  /**
+   * Adds pages to stored report content and replaces its page count and metadata. Backends that can't append in place
+   * merge the pages with the stored content and write the result.
+   *
+   * @param key       path
+   * @param pageCount page count of the content
+   * @param pages     pages not stored yet
+   * @param metaData  metadata replacing the stored one
+   * @return if operation succeed
+   */
+  default boolean append( final List<String> key, final int pageCount, final Map<Integer, byte[]> pages,
+                          final Map<String, Serializable> metaData ) {
+    final Map<Integer, byte[]> merged = new HashMap<>();
+    final Serializable stored = read( key );
+    if ( stored instanceof IReportContent ) {
+      final IReportContent content = (IReportContent) stored;
+      final int limit = Math.max( content.getPageCount(), content.getStoredPageCount() );
+      for ( int i = 0; i < limit && merged.size() < content.getStoredPageCount(); i++ ) {
+        final byte[] page = content.getPageData( i );
+        if ( page != null ) {
+          merged.put( i, page );
+        }
+      }
+    }
+    merged.putAll( pages );
+    return write( key, new ReportContentImpl( pageCount, merged ), metaData );
+  }
+
 }
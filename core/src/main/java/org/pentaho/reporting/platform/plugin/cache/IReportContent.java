@@ -26,4 +26,14 @@ public interface IReportContent extends Serializable {
 
   byte[] getPageData( final int page );
 
+  /**
+   * Returns a page encoded as a gzip member, for clients accepting gzip content encoding.
+   *
+   * @param page page number
+   * @return gzip encoded page or null if the content has no encoded form of the page
+   */
+  default byte[] getGzipPageData( final int page ) {
+    return null;
+  }
+
 }
@@ -13,6 +13,7 @@
 package org.pentaho.reporting.platform.plugin.cache;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.Map;
 
 public interface IReportContentCache {
@@ -25,6 +26,33 @@ public interface IReportContentCache {
 
   Map<String, Serializable> getMetaData( String key );
 
+  /**
+   * Adds pages to the cached content of the key, without rewriting the pages cached already. Caches that can't append
+   * in place merge the pages with the cached content and put the result.
+   *
+   * @param key       key
+   * @param pageCount page count of the content
+   * @param pages     pages not cached yet
+   * @param metaData  metadata replacing the cached one
+   * @return success
+   */
+  default boolean append( final String key, final int pageCount, final Map<Integer, byte[]> pages,
+                          final Map<String, Serializable> metaData ) {
+    final Map<Integer, byte[]> merged = new HashMap<>();
+    final IReportContent content = get( key );
+    if ( content != null ) {
+      final int limit = Math.max( content.getPageCount(), content.getStoredPageCount() );
+      for ( int i = 0; i < limit && merged.size() < content.getStoredPageCount(); i++ ) {
+        final byte[] page = content.getPageData( i );
+        if ( page != null ) {
+          merged.put( i, page );
+        }
+      }
+    }
+    merged.putAll( pages );
+    return put( key, new ReportContentImpl( pageCount, merged ), metaData );
+  }
+
   void cleanup();
 
   void cleanupCurrentSession();
@@ -0,0 +1,262 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Size bounded in-heap tier in front of another cache backend. Writes go through to the delegate, reads are served from
+ * memory when possible. Entries are evicted least recently used first once the weight of all entries exceeds the
+ * configured amount of bytes. Report content is held with gzip encoded pages, which are sent as they are to clients
+ * accepting gzip and weighed by their encoded size.
+ */
+public class InMemoryCacheBackend implements ICacheBackend {
+
+  private static final Log logger = LogFactory.getLog( InMemoryCacheBackend.class );
+
+  private ICacheBackend delegate;
+  private Weigher<List<String>, Serializable> weigher = new ReportContentWeigher();
+  private long maximumBytes = 64L * 1024 * 1024;
+  private long maximumEntryBytes = 8L * 1024 * 1024;
+  private long expireAfterAccessSeconds = 0;
+
+  private final AtomicLong purges = new AtomicLong();
+  private volatile Cache<List<String>, Entry> cache;
+
+  public InMemoryCacheBackend() {
+  }
+
+  public InMemoryCacheBackend( final ICacheBackend delegate ) {
+    this.delegate = delegate;
+  }
+
+  public ICacheBackend getDelegate() {
+    return delegate;
+  }
+
+  public void setDelegate( final ICacheBackend delegate ) {
+    this.delegate = delegate;
+  }
+
+  public void setWeigher( final Weigher<List<String>, Serializable> weigher ) {
+    this.weigher = weigher;
+  }
+
+  /**
+   * @param maximumBytes total weight of the in-memory tier
+   */
+  public void setMaximumBytes( final long maximumBytes ) {
+    this.maximumBytes = maximumBytes;
+  }
+
+  /**
+   * @param maximumEntryBytes entries heavier than this are kept by the delegate only
+   */
+  public void setMaximumEntryBytes( final long maximumEntryBytes ) {
+    this.maximumEntryBytes = maximumEntryBytes;
+  }
+
+  /**
+   * @param expireAfterAccessSeconds idle time after which an entry leaves memory, 0 to keep until evicted by size
+   */
+  public void setExpireAfterAccessSeconds( final long expireAfterAccessSeconds ) {
+    this.expireAfterAccessSeconds = expireAfterAccessSeconds;
+  }
+
+  public CacheStats getStats() {
+    return getCache().stats();
+  }
+
+  @Override
+  public boolean write( final List<String> key, final Serializable value, final Map<String, Serializable> metaData ) {
+    final List<String> cleanKey = FileSystemCacheBackend.sanitizeKeySegments( key );
+    // a read of the previous value must not put it back once this write invalidated it
+    purges.incrementAndGet();
+    final boolean written = delegate.write( key, value, metaData );
+    final Serializable cached = written ? toHeap( cleanKey, value ) : null;
+    if ( cached != null ) {
+      getCache().put( cleanKey, new Entry( cached, copy( metaData ) ) );
+    } else {
+      getCache().invalidate( cleanKey );
+    }
+    return written;
+  }
+
+  /**
+   * Appended content is not kept in memory, the next read loads the complete content from the delegate.
+   */
+  @Override
+  public boolean append( final List<String> key, final int pageCount, final Map<Integer, byte[]> pages,
+                         final Map<String, Serializable> metaData ) {
+    purges.incrementAndGet();
+    final boolean written = delegate.append( key, pageCount, pages, metaData );
+    getCache().invalidate( FileSystemCacheBackend.sanitizeKeySegments( key ) );
+    return written;
+  }
+
+  @Override
+  public Serializable read( final List<String> key ) {
+    final List<String> cleanKey = FileSystemCacheBackend.sanitizeKeySegments( key );
+    final Entry entry = getCache().getIfPresent( cleanKey );
+    if ( entry != null ) {
+      return entry.value;
+    }
+    // a concurrent write or purge wins over the value loaded here
+    final long purgesBeforeRead = purges.get();
+    final Serializable value = delegate.read( key );
+    final Serializable cached = toHeap( cleanKey, value );
+    if ( cached == null ) {
+      return value;
+    }
+    if ( purgesBeforeRead == purges.get() ) {
+      getCache().asMap().putIfAbsent( cleanKey, new Entry( cached, null ) );
+    }
+    return cached;
+  }
+
+  /**
+   * Creates the value kept in memory. Report content is copied into the heap with gzip encoded pages, so no entry
+   * holds on to a mapped file of the delegate, which might be replaced or purged later.
+   *
+   * @return the value to keep, or null if it is too large
+   */
+  private Serializable toHeap( final List<String> key, final Serializable value ) {
+    if ( value == null ) {
+      return null;
+    }
+    if ( !( value instanceof IReportContent ) ) {
+      return weigher.weigh( key, value ) <= maximumEntryBytes ? value : null;
+    }
+    // plain content is on the heap already and shrinks when encoded, other content isn't copied in vain
+    if ( !( value instanceof ReportContentImpl ) && weigher.weigh( key, value ) > maximumEntryBytes ) {
+      return null;
+    }
+    final GzipReportContent content = GzipReportContent.encode( (IReportContent) value );
+    return weigher.weigh( key, content ) <= maximumEntryBytes ? content : null;
+  }
+
+  @Override
+  public Map<String, Serializable> readMetaData( final List<String> key ) {
+    final List<String> cleanKey = FileSystemCacheBackend.sanitizeKeySegments( key );
+    final Entry entry = getCache().getIfPresent( cleanKey );
+    if ( entry != null && entry.metaData != null ) {
+      return copy( entry.metaData );
+    }
+    final Map<String, Serializable> metaData = delegate.readMetaData( key );
+    if ( entry != null && metaData != null ) {
+      entry.metaData = copy( metaData );
+    }
+    return metaData;
+  }
+
+  @Override
+  public boolean purge( final List<String> key ) {
+    purges.incrementAndGet();
+    final boolean purged = delegate.purge( key );
+    invalidatePrefix( FileSystemCacheBackend.sanitizeKeySegments( key ) );
+    return purged;
+  }
+
+  @Override
+  public void purgeSegment( final List<String> key, final BiPredicate<List<String>, Map<String, Serializable>> p ) {
+    delegate.purgeSegment( key, ( entryKey, metaData ) -> {
+      if ( p.test( entryKey, metaData ) ) {
+        purges.incrementAndGet();
+        getCache().invalidate( entryKey );
+        return true;
+      }
+      return false;
+    } );
+  }
+
+  @Override
+  public void visitSegment( final List<String> key,
+                            final BiConsumer<List<String>, Map<String, Serializable>> visitor ) {
+    delegate.visitSegment( key, visitor );
+  }
+
+  private void invalidatePrefix( final List<String> prefix ) {
+    if ( prefix.size() == 1 && prefix.get( 0 ).isEmpty() ) {
+      getCache().invalidateAll();
+      return;
+    }
+    final List<String> entryKey = stripExtension( prefix );
+    getCache().asMap().keySet().removeIf( k -> k.size() >= entryKey.size() && k.subList( 0, entryKey.size() )
+      .equals( entryKey ) );
+  }
+
+  private static List<String> stripExtension( final List<String> key ) {
+    if ( key.isEmpty() ) {
+      return key;
+    }
+    final String last = key.get( key.size() - 1 );
+    if ( last.endsWith( FileSystemCacheBackend.DATA ) ) {
+      final List<String> stripped = new ArrayList<>( key );
+      stripped.set( key.size() - 1, last.substring( 0, last.length() - FileSystemCacheBackend.DATA.length() ) );
+      return stripped;
+    }
+    return key;
+  }
+
+  private static Map<String, Serializable> copy( final Map<String, Serializable> metaData ) {
+    return metaData == null ? null : new HashMap<>( metaData );
+  }
+
+  private Cache<List<String>, Entry> getCache() {
+    Cache<List<String>, Entry> result = cache;
+    if ( result == null ) {
+      synchronized ( this ) {
+        result = cache;
+        if ( result == null ) {
+          final Weigher<List<String>, Serializable> valueWeigher = weigher;
+          final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+            .maximumWeight( maximumBytes )
+            .recordStats();
+          if ( expireAfterAccessSeconds > 0 ) {
+            builder.expireAfterAccess( expireAfterAccessSeconds, TimeUnit.SECONDS );
+          }
+          result = builder.weigher( (Weigher<List<String>, Entry>) ( k, v ) -> valueWeigher.weigh( k, v.value ) )
+            .build();
+          cache = result;
+          logger.debug( "In-memory report cache tier created, maximum bytes: " + maximumBytes );
+        }
+      }
+    }
+    return result;
+  }
+
+  private static class Entry {
+    private final Serializable value;
+    private volatile Map<String, Serializable> metaData;
+
+    private Entry( final Serializable value, final Map<String, Serializable> metaData ) {
+      this.value = value;
+      this.metaData = metaData;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import java.io.IOException;
+
+/**
+ * Encodes the pages of report content stored by a cache backend. The id of the codec is stored with the content, so
+ * content stays readable after another codec was configured.
+ */
+public interface PageCodec {
+
+  /**
+   * @return identifier stored with encoded content, unique per encoding
+   */
+  int getId();
+
+  /**
+   * @return name of the encoding
+   */
+  String getName();
+
+  byte[] encode( byte[] page ) throws IOException;
+
+  byte[] decode( byte[] data ) throws IOException;
+}
@@ -0,0 +1,108 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Report content backed by a read-only buffer in the paged cache file format. Only the page index is decoded up front,
+ * page bytes are copied out of the buffer and decoded when a page is requested.
+ */
+class PagedReportContent implements IReportContent {
+
+  private static final long serialVersionUID = 1L;
+  private static final Log logger = LogFactory.getLog( PagedReportContent.class );
+
+  private final int pageCount;
+  private final Map<Integer, long[]> index;
+  private final transient ByteBuffer buffer;
+  private final transient PageCodec codec;
+
+  PagedReportContent( final int pageCount, final Map<Integer, long[]> index, final ByteBuffer buffer,
+                      final PageCodec codec ) {
+    this.pageCount = pageCount;
+    this.index = index;
+    this.buffer = buffer;
+    this.codec = codec;
+  }
+
+  @Override public int getPageCount() {
+    return pageCount;
+  }
+
+  @Override public int getStoredPageCount() {
+    return index.size();
+  }
+
+  /**
+   * @return total size of the stored, encoded pages in bytes
+   */
+  long getContentSize() {
+    long size = 0;
+    for ( final long[] region : index.values() ) {
+      size += region[ 1 ];
+    }
+    return size;
+  }
+
+  @Override public byte[] getPageData( final int page ) {
+    final byte[] data = getStoredPageData( page );
+    if ( data == null ) {
+      return null;
+    }
+    try {
+      return codec.decode( data );
+    } catch ( final IOException e ) {
+      logger.warn( "Can't decode cached page " + page + ": ", e );
+      return null;
+    }
+  }
+
+  /**
+   * Pages stored as gzip members are returned as they are.
+   */
+  @Override public byte[] getGzipPageData( final int page ) {
+    return codec.getId() == GzipPageCodec.ID ? getStoredPageData( page ) : null;
+  }
+
+  private byte[] getStoredPageData( final int page ) {
+    final long[] region = index.get( page );
+    if ( region == null ) {
+      return null;
+    }
+    final byte[] data = new byte[ (int) region[ 1 ] ];
+    final ByteBuffer view = buffer.duplicate();
+    view.position( (int) region[ 0 ] );
+    view.get( data );
+    return data;
+  }
+
+  /**
+   * The mapped buffer can't travel through java serialization, so the content is materialized first.
+   */
+  private Object writeReplace() throws ObjectStreamException {
+    final Map<Integer, byte[]> pages = new HashMap<>();
+    for ( final Integer page : index.keySet() ) {
+      pages.put( page, getPageData( page ) );
+    }
+    return new ReportContentImpl( pageCount, pages );
+  }
+}
@@ -13,13 +13,31 @@
 
 package org.pentaho.reporting.platform.plugin.cache;
 
-import java.util.Set;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.table.TableModel;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.pentaho.platform.api.engine.ICacheManager;
+import org.pentaho.platform.api.engine.IApplicationContext;
 import org.pentaho.platform.api.engine.ILogoutListener;
 import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
@@ -29,10 +47,23 @@ import org.pentaho.reporting.engine.classic.core.cache.CachableTableModel;
 import org.pentaho.reporting.engine.classic.core.cache.DataCache;
 import org.pentaho.reporting.engine.classic.core.cache.DataCacheKey;
 import org.pentaho.reporting.engine.classic.core.cache.DataCacheManager;
+import org.pentaho.reporting.libraries.base.config.Configuration;
 
 /**
- * A simple data cache that wraps around the plain in-memory data-cache. That cache is stored on the user's session and
- * shared across all reports run by that user in that session.
+ * A simple data cache that wraps around the plain in-memory data-cache. Cached data belongs to the user's session and
+ * is shared across all reports run by that user in that session.
+ * <p>
+ * Tables are copied into a {@link ColumnarTableModel}. Lookups do not lock. Every table is weighed by its estimated
+ * heap bytes: tables heavier than the entry limit are not
+ * cached, and once all tables together exceed the memory budget the least recently used ones are evicted.
+ * <p>
+ * Evicted tables and tables too large for the heap are spilled to memory-mapped files below {@code system/tmp}, where
+ * they are read back one row at a time. The spill has its own budget, a budget of 0 disables it. Evicted tables are
+ * written in the background and served from the heap until then, so the request causing an eviction doesn't wait for
+ * the file.
+ * <p>
+ * Tables in either tier expire a fixed time after they were put and after they were last read, like the
+ * {@code report-dataset-cache} region used before, so data changed in the database is queried again.
  *
  * @author Thomas Morgner.
  */
@@ -40,7 +71,45 @@ public class PentahoDataCache implements DataCache, ILogoutListener {
 
   private static final Log log = LogFactory.getLog( PentahoDataCache.class );
 
-  private static final String CACHE_NAME = "report-dataset-cache";
+  private static final String PREFIX = "org.pentaho.reporting.platform.plugin.cache.PentahoDataCache.";
+  static final String ROW_LIMIT = PREFIX + "CachableRowLimit";
+  /**
+   * Memory budget of all cached tables in bytes.
+   */
+  static final String MAXIMUM_BYTES = PREFIX + "MaximumBytes";
+  /**
+   * Tables estimated heavier than this amount of bytes are not cached.
+   */
+  static final String MAXIMUM_ENTRY_BYTES = PREFIX + "MaximumEntryBytes";
+  /**
+   * Budget of all spilled tables in bytes, 0 disables spilling.
+   */
+  static final String SPILL_MAXIMUM_BYTES = PREFIX + "SpillMaximumBytes";
+  /**
+   * Tables with a spill file larger than this amount of bytes are not spilled.
+   */
+  static final String SPILL_MAXIMUM_ENTRY_BYTES = PREFIX + "SpillMaximumEntryBytes";
+  /**
+   * Directory of the spill files, defaults to {@code system/tmp/report-dataset-cache}.
+   */
+  static final String SPILL_DIRECTORY = PREFIX + "SpillDirectory";
+  /**
+   * Tables are removed this many seconds after they were put, 0 keeps them until evicted.
+   */
+  static final String EXPIRE_AFTER_WRITE_SECONDS = PREFIX + "ExpireAfterWriteSeconds";
+  /**
+   * Tables are removed this many seconds after they were last read, 0 keeps them until evicted.
+   */
+  static final String EXPIRE_AFTER_ACCESS_SECONDS = PREFIX + "ExpireAfterAccessSeconds";
+  private static final long DEFAULT_MAXIMUM_BYTES = 128L * 1024 * 1024;
+  private static final long DEFAULT_MAXIMUM_ENTRY_BYTES = 16L * 1024 * 1024;
+  private static final long DEFAULT_SPILL_MAXIMUM_BYTES = 256L * 1024 * 1024;
+  private static final long DEFAULT_SPILL_MAXIMUM_ENTRY_BYTES = 64L * 1024 * 1024;
+  // timeToLiveSeconds and timeToIdleSeconds of the former report-dataset-cache region
+  private static final long DEFAULT_EXPIRE_AFTER_WRITE_SECONDS = 600;
+  private static final long DEFAULT_EXPIRE_AFTER_ACCESS_SECONDS = 300;
+  private static final String SPILL_PATH = "system/tmp/report-dataset-cache/";
+  private static final int CONCURRENCY_LEVEL = 4;
 
   /**
    * this as a public class so that if necessary someone can get access to a session key and clear the cache in their
@@ -81,137 +150,391 @@ public class PentahoDataCache implements DataCache, ILogoutListener {
     }
   }
 
-  private static class PentahoDataCacheManager implements DataCacheManager {
-    private ICacheManager cacheManager;
-
-    private PentahoDataCacheManager() {
-      cacheManager = PentahoSystem.getCacheManager( null ); // cache manager gets loaded just once...
-    }
+  private class PentahoDataCacheManager implements DataCacheManager {
 
     public void clearAll() {
-      if ( cacheManager != null ) {
-        final IPentahoSession session = PentahoSessionHolder.getSession();
-        cacheManager.killSessionCache( session );
+      final IPentahoSession session = PentahoSessionHolder.getSession();
+      if ( session != null ) {
+        killSessionCache( session );
       }
     }
 
     public void shutdown() {
-      if ( cacheManager != null ) {
-        final IPentahoSession session = PentahoSessionHolder.getSession();
-        cacheManager.killSessionCache( session );
-      }
+      clear();
     }
 
-    @SuppressWarnings( "unchecked" )
     public void killSessionCache( IPentahoSession session ) {
-      if ( cacheManager != null ) {
-        try {
-          Set cachedObjects = cacheManager.getAllKeysFromRegionCache( CACHE_NAME );
-          if ( cachedObjects != null ) {
-            for ( Object k : cachedObjects ) {
-              if ( k instanceof CompositeKey ) {
-                CompositeKey key = (CompositeKey) k;
-                if ( key.sessionId.equals( session.getId() ) ) {
-                  cacheManager.removeFromRegionCache( CACHE_NAME, key );
-                }
-              }
-            }
-          }
-        } catch ( Throwable e ) {
-          // due to a known issue in hibernate cache
-          // the getAll* methods of ICacheManager throw a NullPointerException if
-          // cache values are null (this can happen due to cache object timeouts)
-          // please see: http://opensource.atlassian.com/projects/hibernate/browse/HHH-3248
-          if ( log.isDebugEnabled() ) {
-            log.debug( "", e );
-          }
+      // only the tables of the session are touched, however many sessions have cached tables
+      for ( final CompositeKey key : sessions.removeSession( session.getId() ) ) {
+        cache.invalidate( key );
+        if ( spill != null ) {
+          removePendingSpill( key );
+          spill.invalidate( key );
         }
       }
     }
   }
 
-  private PentahoDataCacheManager manager;
-  private ICacheManager cacheManager;
-  private int maximumRows;
+  /**
+   * Expiry shared by the heap and the spill.
+   */
+  static final class Expiry {
+    private final long afterWriteSeconds;
+    private final long afterAccessSeconds;
+    private final Ticker ticker;
+
+    Expiry( final long afterWriteSeconds, final long afterAccessSeconds, final Ticker ticker ) {
+      this.afterWriteSeconds = afterWriteSeconds;
+      this.afterAccessSeconds = afterAccessSeconds;
+      this.ticker = ticker;
+    }
+
+    CacheBuilder<Object, Object> apply( final CacheBuilder<Object, Object> builder ) {
+      if ( afterWriteSeconds > 0 ) {
+        builder.expireAfterWrite( afterWriteSeconds, TimeUnit.SECONDS );
+      }
+      if ( afterAccessSeconds > 0 ) {
+        builder.expireAfterAccess( afterAccessSeconds, TimeUnit.SECONDS );
+      }
+      return builder.ticker( ticker );
+    }
+  }
+
+  private static class Entry {
+    private final TableModel model;
+    private final int weight;
+
+    private Entry( final TableModel model, final int weight ) {
+      this.model = model;
+      this.weight = weight;
+    }
+  }
+
+  private final PentahoDataCacheManager manager;
+  private final Weigher<Object, TableModel> weigher;
+  private final Cache<CompositeKey, Entry> cache;
+  private final AtomicLong bytes = new AtomicLong();
+  private final SessionIndex<CompositeKey> sessions = new SessionIndex<>();
+  private final TableModelSpillStore<CompositeKey> spill;
+  private final Executor spillExecutor;
+  private final Map<CompositeKey, Entry> pendingSpills = new ConcurrentHashMap<>();
+  private final AtomicLong pendingSpillBytes = new AtomicLong();
+  private final int maximumRows;
+  private final long maximumBytes;
+  private final long maximumEntryBytes;
 
   public PentahoDataCache() {
+    this( new TableModelWeigher() );
+  }
+
+  public PentahoDataCache( final Weigher<Object, TableModel> weigher ) {
+    this( weigher, getSpillDirectory() );
+  }
+
+  PentahoDataCache( final Weigher<Object, TableModel> weigher, final File spillDirectory ) {
+    this( weigher, spillDirectory, createSpillExecutor() );
+  }
+
+  /**
+   * @param spillExecutor runs the spill of evicted tables
+   */
+  PentahoDataCache( final Weigher<Object, TableModel> weigher, final File spillDirectory,
+                    final Executor spillExecutor ) {
+    this( weigher, spillDirectory, spillExecutor, Ticker.systemTicker() );
+  }
+
+  /**
+   * @param ticker time source of the expiry
+   */
+  PentahoDataCache( final Weigher<Object, TableModel> weigher, final File spillDirectory,
+                    final Executor spillExecutor, final Ticker ticker ) {
+    this.spillExecutor = spillExecutor;
     if ( log.isDebugEnabled() ) {
       log.debug( "Initializing" );
     }
-    maximumRows =
-        ClassicEngineBoot.getInstance().getExtendedConfig().getIntProperty(
-            "org.pentaho.reporting.platform.plugin.cache.PentahoDataCache.CachableRowLimit" );
+    maximumRows = ClassicEngineBoot.getInstance().getExtendedConfig().getIntProperty( ROW_LIMIT );
+    final Configuration config = ClassicEngineBoot.getInstance().getGlobalConfig();
+    maximumBytes = getLongProperty( config, MAXIMUM_BYTES, DEFAULT_MAXIMUM_BYTES );
+    // the budget is split across the segments of the cache, a larger entry would be evicted right away
+    maximumEntryBytes = Math.min( maximumBytes / CONCURRENCY_LEVEL,
+      getLongProperty( config, MAXIMUM_ENTRY_BYTES, DEFAULT_MAXIMUM_ENTRY_BYTES ) );
+
+    final long expireAfterWrite =
+      getLongProperty( config, EXPIRE_AFTER_WRITE_SECONDS, DEFAULT_EXPIRE_AFTER_WRITE_SECONDS );
+    final long expireAfterAccess =
+      getLongProperty( config, EXPIRE_AFTER_ACCESS_SECONDS, DEFAULT_EXPIRE_AFTER_ACCESS_SECONDS );
+    final Expiry expiry = new Expiry( expireAfterWrite, expireAfterAccess, ticker );
 
     if ( log.isDebugEnabled() ) {
-      log.debug( "Maximum Rows: " + maximumRows );
+      log.debug( "Maximum Rows: " + maximumRows + ", maximum bytes: " + maximumBytes + ", maximum entry bytes: "
+        + maximumEntryBytes + ", expire after write: " + expireAfterWrite + "s, expire after access: "
+        + expireAfterAccess + "s" );
     }
 
-    cacheManager = PentahoSystem.getCacheManager( null ); // cache manager gets loaded just once...
-    manager = new PentahoDataCacheManager();
-    if ( cacheManager != null ) {
-      if ( !cacheManager.cacheEnabled( CACHE_NAME ) ) {
-        if ( !cacheManager.addCacheRegion( CACHE_NAME ) ) {
-          cacheManager = null;
-          manager.cacheManager = null;
-          throw new IllegalStateException( "PentahoDataCache (" + CACHE_NAME + ") cannot be initialized" );
-        }
+    final long spillBytes = getLongProperty( config, SPILL_MAXIMUM_BYTES, DEFAULT_SPILL_MAXIMUM_BYTES );
+    if ( spillBytes > 0 ) {
+      spill = new TableModelSpillStore<>( spillDirectory, spillBytes,
+        getLongProperty( config, SPILL_MAXIMUM_ENTRY_BYTES, DEFAULT_SPILL_MAXIMUM_ENTRY_BYTES ), expiry,
+        this::unindex );
+      if ( log.isDebugEnabled() ) {
+        log.debug( "Spilling to " + spillDirectory + ", maximum bytes: " + spillBytes );
       }
+    } else {
+      spill = null;
     }
 
+    this.weigher = weigher;
+    cache = expiry.apply( CacheBuilder.newBuilder() )
+      .concurrencyLevel( CONCURRENCY_LEVEL )
+      .maximumWeight( maximumBytes )
+      .weigher( (Weigher<CompositeKey, Entry>) ( key, entry ) -> entry.weight )
+      .removalListener( (RemovalListener<CompositeKey, Entry>) this::onRemoval )
+      .recordStats()
+      .build();
+    manager = new PentahoDataCacheManager();
+
     PentahoSystem.addLogoutListener( this ); // So you can remove a users' region when their session disappears
   }
 
-  public synchronized TableModel get( final DataCacheKey key ) {
-    if ( cacheManager == null ) {
-      return null;
+  private static File getSpillDirectory() {
+    final String directory = ClassicEngineBoot.getInstance().getGlobalConfig().getConfigProperty( SPILL_DIRECTORY );
+    if ( directory != null && !directory.trim().isEmpty() ) {
+      return new File( directory.trim() );
+    }
+    final IApplicationContext context = PentahoSystem.getApplicationContext();
+    if ( context != null ) {
+      return new File( context.getFileOutputPath( SPILL_PATH ) );
     }
+    return new File( System.getProperty( "java.io.tmpdir" ), "report-dataset-cache" );
+  }
+
+  private static Executor createSpillExecutor() {
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor( 1, 1, 60L, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(), r -> {
+        final Thread thread = Executors.defaultThreadFactory().newThread( r );
+        thread.setDaemon( true );
+        thread.setName( "PentahoDataCache Spill" );
+        return thread;
+      } );
+    executor.allowCoreThreadTimeOut( true );
+    return executor;
+  }
 
+  private void onRemoval( final RemovalNotification<CompositeKey, Entry> notification ) {
+    bytes.addAndGet( -notification.getValue().weight );
+    if ( spill != null && notification.getCause() == RemovalCause.SIZE ) {
+      scheduleSpill( notification.getKey(), notification.getValue() );
+    }
+    unindex( notification.getKey() );
+  }
+
+  /**
+   * Hands an evicted table to the spill thread. Tables waiting for it stay on the heap, they may take a quarter of the
+   * memory budget on top of it, further evicted tables are dropped.
+   */
+  private void scheduleSpill( final CompositeKey key, final Entry entry ) {
+    if ( pendingSpillBytes.addAndGet( entry.weight ) > maximumBytes / CONCURRENCY_LEVEL ) {
+      pendingSpillBytes.addAndGet( -entry.weight );
+      if ( log.isDebugEnabled() ) {
+        log.debug( "too many tables waiting for the spill, not spilling." );
+      }
+      return;
+    }
+    final Entry previous = pendingSpills.put( key, entry );
+    if ( previous != null ) {
+      pendingSpillBytes.addAndGet( -previous.weight );
+    }
+    try {
+      spillExecutor.execute( () -> writeSpill( key, entry ) );
+    } catch ( final RejectedExecutionException e ) {
+      removePendingSpill( key, entry );
+    }
+  }
+
+  private void writeSpill( final CompositeKey key, final Entry entry ) {
+    if ( pendingSpills.get( key ) == entry ) {
+      spill.put( key, entry.model );
+      if ( !removePendingSpill( key, entry ) ) {
+        // the table was put again or its session ended while it was written
+        spill.invalidate( key );
+      }
+    }
+    unindex( key );
+  }
+
+  private boolean removePendingSpill( final CompositeKey key, final Entry entry ) {
+    if ( pendingSpills.remove( key, entry ) ) {
+      pendingSpillBytes.addAndGet( -entry.weight );
+      return true;
+    }
+    return false;
+  }
+
+  private void removePendingSpill( final CompositeKey key ) {
+    final Entry entry = pendingSpills.remove( key );
+    if ( entry != null ) {
+      pendingSpillBytes.addAndGet( -entry.weight );
+    }
+  }
+
+  /**
+   * Forgets the session of a key that is in neither tier.
+   */
+  private void unindex( final CompositeKey key ) {
+    if ( !cache.asMap().containsKey( key ) && !pendingSpills.containsKey( key )
+      && ( spill == null || !spill.contains( key ) ) ) {
+      sessions.remove( key.sessionId, key );
+    }
+  }
+
+  private static long getLongProperty( final Configuration config, final String key, final long defaultValue ) {
+    final String value = config.getConfigProperty( key );
+    if ( value == null || value.trim().isEmpty() ) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong( value.trim() );
+    } catch ( final NumberFormatException e ) {
+      log.warn( "Invalid value of " + key + ": " + value );
+      return defaultValue;
+    }
+  }
+
+  public TableModel get( final DataCacheKey key ) {
     final IPentahoSession session = PentahoSessionHolder.getSession();
 
     if ( log.isDebugEnabled() ) {
       log.debug( "looking up key for session " + session.getId() );
     }
 
-    return (TableModel) cacheManager.getFromRegionCache( CACHE_NAME, new CompositeKey( session.getId(), key ) );
+    final CompositeKey compositeKey = new CompositeKey( session.getId(), key );
+    final Entry entry = cache.getIfPresent( compositeKey );
+    if ( entry != null ) {
+      return entry.model;
+    }
+    if ( spill == null ) {
+      return null;
+    }
+    final Entry pending = pendingSpills.get( compositeKey );
+    if ( pending != null ) {
+      return pending.model;
+    }
+    return spill.get( compositeKey );
   }
 
-  public synchronized TableModel put( final DataCacheKey key, final TableModel model ) {
+  public TableModel put( final DataCacheKey key, final TableModel model ) {
     if ( log.isDebugEnabled() ) {
       log.debug( "put() called" );
     }
 
     final IPentahoSession session = PentahoSessionHolder.getSession();
-    if ( cacheManager != null ) {
-      if ( model.getRowCount() > maximumRows ) {
+    final CompositeKey compositeKey = new CompositeKey( session.getId(), key );
 
-        if ( log.isDebugEnabled() ) {
-          log.debug( "too many rows (" + model.getRowCount() + " > " + maximumRows + ") not caching." );
-        }
-        return model;
+    // Only copy if safe to do so. Check for whitelist of good column types ..
+    if ( CachableTableModel.isSafeToCache( model ) == false ) {
+      if ( log.isDebugEnabled() ) {
+        log.debug( "model is not safe to cache. not caching." );
       }
+      return model;
+    }
 
-      // Only copy if safe to do so. Check for whitelist of good column types ..
-      if ( CachableTableModel.isSafeToCache( model ) == false ) {
-        if ( log.isDebugEnabled() ) {
-          log.debug( "model is not safe to cache. not caching." );
-        }
-        return model;
+    if ( model.getRowCount() > maximumRows ) {
+      if ( log.isDebugEnabled() ) {
+        log.debug( "too many rows (" + model.getRowCount() + " > " + maximumRows + ") not caching in memory." );
       }
+      return spill( compositeKey, model );
+    }
 
+    final TableModel cacheModel = new ColumnarTableModel( model );
+    final int weight = weigher.weigh( key, cacheModel );
+    if ( weight > maximumEntryBytes ) {
       if ( log.isDebugEnabled() ) {
-        log.debug( "placing model in cache for session " + session.getId() + " (rows=" + model.getColumnCount() + ")" );
+        log.debug( "too large (" + weight + " > " + maximumEntryBytes + " bytes) not caching in memory." );
       }
-      final TableModel cacheModel = new CachableTableModel( model );
-      cacheManager.putInRegionCache( CACHE_NAME, new CompositeKey( session.getId(), key ), cacheModel );
-      return cacheModel;
+      return spill( compositeKey, cacheModel );
+    }
+
+    if ( log.isDebugEnabled() ) {
+      log.debug( "placing model in cache for session " + session.getId() + " (rows=" + model.getRowCount()
+        + ", bytes=" + weight + ")" );
+    }
+    // counted before the entry can be evicted
+    bytes.addAndGet( weight );
+    sessions.add( compositeKey.sessionId, compositeKey );
+    cache.put( compositeKey, new Entry( cacheModel, weight ) );
+    if ( spill != null ) {
+      removePendingSpill( compositeKey );
+      spill.invalidate( compositeKey );
     }
-    return model;
+    return cacheModel;
+  }
+
+  private TableModel spill( final CompositeKey key, final TableModel model ) {
+    if ( spill == null ) {
+      return model;
+    }
+    cache.invalidate( key );
+    removePendingSpill( key );
+    sessions.add( key.sessionId, key );
+    final TableModel spilled = spill.put( key, model );
+    if ( spilled == null ) {
+      unindex( key );
+      return model;
+    }
+    return spilled;
   }
 
   public DataCacheManager getCacheManager() {
     return manager;
   }
 
+  /**
+   * Removes the cached data of all sessions.
+   */
+  public void clear() {
+    cache.invalidateAll();
+    if ( spill != null ) {
+      for ( final CompositeKey key : pendingSpills.keySet() ) {
+        removePendingSpill( key );
+      }
+      spill.invalidateAll();
+    }
+    sessions.clear();
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  /**
+   * @return estimated bytes of all cached tables
+   */
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  /**
+   * @return hits, misses, evictions, entries, bytes and maximum bytes of the cache, and entries, bytes and hits of the
+   * spill
+   */
+  public Map<String, Long> getStatistics() {
+    final CacheStats stats = cache.stats();
+    final Map<String, Long> statistics = new LinkedHashMap<>();
+    statistics.put( "hits", stats.hitCount() );
+    statistics.put( "misses", stats.missCount() );
+    statistics.put( "evictions", stats.evictionCount() );
+    statistics.put( "entries", cache.size() );
+    statistics.put( "bytes", getBytes() );
+    statistics.put( "maximumBytes", maximumBytes );
+    if ( spill != null ) {
+      statistics.put( "spillEntries", spill.size() );
+      statistics.put( "spillBytes", spill.getBytes() );
+      statistics.put( "spillHits", spill.getStats().hitCount() );
+      statistics.put( "spillPending", (long) pendingSpills.size() );
+    }
+    return statistics;
+  }
+
   @Override
   public void onLogout( IPentahoSession session ) {
 
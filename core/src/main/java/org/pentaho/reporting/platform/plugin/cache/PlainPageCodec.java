@@ -0,0 +1,37 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+/**
+ * Stores pages as they are.
+ */
+public class PlainPageCodec implements PageCodec {
+
+  public static final int ID = 0;
+
+  @Override public int getId() {
+    return ID;
+  }
+
+  @Override public String getName() {
+    return "plain";
+  }
+
+  @Override public byte[] encode( final byte[] page ) {
+    return page;
+  }
+
+  @Override public byte[] decode( final byte[] data ) {
+    return data;
+  }
+}
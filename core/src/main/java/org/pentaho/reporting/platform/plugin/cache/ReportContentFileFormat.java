@@ -0,0 +1,268 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Paged on-disk layout for report content:
+ * <pre>
+ *   int  magic
+ *   int  version
+ *   int  page count
+ *   int  stored page count (N)
+ *   int  page codec id (since version 3)
+ *   N x { int page, long offset, int length }
+ *   page regions, one contiguous region per stored page
+ *   appended pages, each { int page, int length, page data }
+ * </pre>
+ * Reading maps the file and decodes the index only, so serving a single page never touches the other pages. Pages
+ * produced after the file was written are appended as records at the end of the file and the page count in the
+ * header is updated in place, so growing content never rewrites the pages already stored. A later record of a page
+ * replaces the earlier one.
+ * <p>
+ * Page regions and records hold pages encoded by the {@link PageCodec} named in the header. Files of version 1 and 2
+ * hold plain pages.
+ */
+final class ReportContentFileFormat {
+
+  static final int MAGIC = 0x50524350; // "PRCP"
+  static final int VERSION = 3;
+  private static final int MIN_VERSION = 1;
+  private static final int CODEC_VERSION = 3;
+
+  private static final int HEADER_SIZE = 16;
+  private static final int CODEC_HEADER_SIZE = 20;
+  private static final int PAGE_COUNT_OFFSET = 8;
+  private static final int INDEX_ENTRY_SIZE = 16;
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final PageCodec PLAIN = new PlainPageCodec();
+
+  private ReportContentFileFormat() {
+  }
+
+  /**
+   * Writes content to the channel, starting at the current position.
+   *
+   * @param channel target channel
+   * @param content report content
+   * @param codec   codec encoding the pages
+   * @throws IOException on write failure
+   */
+  static void write( final FileChannel channel, final IReportContent content, final PageCodec codec )
+    throws IOException {
+    final List<Integer> pageNumbers = new ArrayList<>();
+    final List<byte[]> pages = new ArrayList<>();
+    final int stored = content.getStoredPageCount();
+    final int limit = Math.max( content.getPageCount(), stored );
+    final boolean gzip = codec.getId() == GzipPageCodec.ID;
+    for ( int i = 0; i < limit && pages.size() < stored; i++ ) {
+      // pages held gzip encoded already are stored as they are
+      final byte[] encoded = gzip ? content.getGzipPageData( i ) : null;
+      if ( encoded != null ) {
+        pageNumbers.add( i );
+        pages.add( encoded );
+        continue;
+      }
+      final byte[] page = content.getPageData( i );
+      if ( page != null ) {
+        pageNumbers.add( i );
+        pages.add( codec.encode( page ) );
+      }
+    }
+
+    final ByteBuffer header = ByteBuffer.allocate( CODEC_HEADER_SIZE + INDEX_ENTRY_SIZE * pages.size() );
+    header.putInt( MAGIC );
+    header.putInt( VERSION );
+    header.putInt( content.getPageCount() );
+    header.putInt( pages.size() );
+    header.putInt( codec.getId() );
+    long offset = header.capacity();
+    for ( int i = 0; i < pages.size(); i++ ) {
+      final int length = pages.get( i ).length;
+      header.putInt( pageNumbers.get( i ) );
+      header.putLong( offset );
+      header.putInt( length );
+      offset += length;
+    }
+    header.flip();
+
+    final ByteBuffer[] regions = new ByteBuffer[ pages.size() + 1 ];
+    regions[ 0 ] = header;
+    for ( int i = 0; i < pages.size(); i++ ) {
+      regions[ i + 1 ] = ByteBuffer.wrap( pages.get( i ) );
+    }
+    long remaining = offset;
+    while ( remaining > 0 ) {
+      remaining -= channel.write( regions );
+    }
+  }
+
+  /**
+   * Appends pages to content written by {@link #write(FileChannel, IReportContent, PageCodec)} and updates its page
+   * count. The pages stored already are not touched, appended pages are encoded like them.
+   *
+   * @param channel   channel opened for reading and writing
+   * @param pageCount new page count
+   * @param pages     pages to append
+   * @param codec     configured codec, used if the file names it
+   * @return codec of the appended pages
+   * @throws IOException on write failure or if the channel doesn't hold paged content
+   */
+  static PageCodec append( final FileChannel channel, final int pageCount, final Map<Integer, byte[]> pages,
+                      final PageCodec codec ) throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate( CODEC_HEADER_SIZE );
+    readFully( channel, header, 0 );
+    header.flip();
+    if ( header.getInt() != MAGIC ) {
+      throw new IOException( "Not a paged report content file" );
+    }
+    final int version = header.getInt();
+    if ( version != VERSION ) {
+      throw new IOException( "Can't append to paged report content version: " + version );
+    }
+    final PageCodec fileCodec = resolveCodec( header.getInt( 16 ), codec );
+
+    final ByteBuffer[] records = new ByteBuffer[ pages.size() * 2 ];
+    long length = 0;
+    int i = 0;
+    for ( final Map.Entry<Integer, byte[]> page : pages.entrySet() ) {
+      final byte[] data = fileCodec.encode( page.getValue() );
+      final ByteBuffer recordHeader = ByteBuffer.allocate( RECORD_HEADER_SIZE );
+      recordHeader.putInt( page.getKey() );
+      recordHeader.putInt( data.length );
+      recordHeader.flip();
+      records[ i++ ] = recordHeader;
+      records[ i++ ] = ByteBuffer.wrap( data );
+      length += RECORD_HEADER_SIZE + data.length;
+    }
+    channel.position( channel.size() );
+    while ( length > 0 ) {
+      length -= channel.write( records );
+    }
+
+    final ByteBuffer count = ByteBuffer.allocate( 4 );
+    count.putInt( pageCount );
+    count.flip();
+    while ( count.hasRemaining() ) {
+      channel.write( count, PAGE_COUNT_OFFSET + count.position() );
+    }
+    return fileCodec;
+  }
+
+  private static void readFully( final FileChannel channel, final ByteBuffer buffer, final long position )
+    throws IOException {
+    while ( buffer.hasRemaining() ) {
+      if ( channel.read( buffer, position + buffer.position() ) < 0 ) {
+        throw new IOException( "Truncated paged report content file" );
+      }
+    }
+  }
+
+  /**
+   * Checks whether the channel holds content in the paged layout, without moving its position.
+   *
+   * @param channel source channel
+   * @return true if the file starts with the paged layout magic number
+   * @throws IOException on read failure
+   */
+  static boolean isPaged( final FileChannel channel ) throws IOException {
+    if ( channel.size() < HEADER_SIZE ) {
+      return false;
+    }
+    final ByteBuffer magic = ByteBuffer.allocate( 4 );
+    while ( magic.hasRemaining() ) {
+      if ( channel.read( magic, magic.position() ) < 0 ) {
+        return false;
+      }
+    }
+    magic.flip();
+    return magic.getInt() == MAGIC;
+  }
+
+  /**
+   * Maps the channel and decodes the page index. The mapping stays valid after the channel is closed.
+   *
+   * @param channel source channel
+   * @param codec   configured codec, used if the file names it
+   * @return lazily read report content
+   * @throws IOException if the file is damaged or has unsupported version or codec
+   */
+  static IReportContent read( final FileChannel channel, final PageCodec codec ) throws IOException {
+    final MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+    if ( buffer.getInt() != MAGIC ) {
+      throw new IOException( "Not a paged report content file" );
+    }
+    final int version = buffer.getInt();
+    if ( version < MIN_VERSION || version > VERSION ) {
+      throw new IOException( "Unsupported paged report content version: " + version );
+    }
+    final int pageCount = buffer.getInt();
+    final int stored = buffer.getInt();
+    final PageCodec fileCodec = version >= CODEC_VERSION ? resolveCodec( buffer.getInt(), codec ) : PLAIN;
+    final int headerSize = version >= CODEC_VERSION ? CODEC_HEADER_SIZE : HEADER_SIZE;
+    final Map<Integer, long[]> index = new HashMap<>( stored * 2 );
+    long end = headerSize + (long) INDEX_ENTRY_SIZE * stored;
+    for ( int i = 0; i < stored; i++ ) {
+      final int page = buffer.getInt();
+      final long offset = buffer.getLong();
+      final int length = buffer.getInt();
+      if ( offset + length > buffer.capacity() ) {
+        throw new IOException( "Truncated paged report content file" );
+      }
+      index.put( page, new long[] { offset, length } );
+      end = Math.max( end, offset + length );
+    }
+    while ( end + RECORD_HEADER_SIZE <= buffer.capacity() ) {
+      buffer.position( (int) end );
+      final int page = buffer.getInt();
+      final int length = buffer.getInt();
+      final long offset = end + RECORD_HEADER_SIZE;
+      if ( length < 0 || offset + length > buffer.capacity() ) {
+        throw new IOException( "Truncated paged report content file" );
+      }
+      index.put( page, new long[] { offset, length } );
+      end = offset + length;
+    }
+    return new PagedReportContent( pageCount, index, buffer, fileCodec );
+  }
+
+  /**
+   * Finds the codec of stored content: the configured one or one of the built-in codecs.
+   *
+   * @throws IOException if no codec with the id is available
+   */
+  static PageCodec resolveCodec( final int id, final PageCodec configured ) throws IOException {
+    if ( configured != null && configured.getId() == id ) {
+      return configured;
+    }
+    switch ( id ) {
+      case PlainPageCodec.ID:
+        return PLAIN;
+      case DeflatePageCodec.ID:
+        return new DeflatePageCodec();
+      case GzipPageCodec.ID:
+        return new GzipPageCodec();
+      default:
+        throw new IOException( "Unknown page codec: " + id );
+    }
+  }
+}
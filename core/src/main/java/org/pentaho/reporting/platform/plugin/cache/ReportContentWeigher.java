@@ -0,0 +1,53 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import com.google.common.cache.Weigher;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Weighs cached values by the bytes of the stored pages. Values that are not report content get a fixed weight.
+ */
+public class ReportContentWeigher implements Weigher<List<String>, Serializable> {
+
+  private int entryOverhead = 1024;
+
+  public void setEntryOverhead( final int entryOverhead ) {
+    this.entryOverhead = entryOverhead;
+  }
+
+  @Override public int weigh( final List<String> key, final Serializable value ) {
+    long weight = entryOverhead;
+    if ( value instanceof PagedReportContent ) {
+      weight += ( (PagedReportContent) value ).getContentSize();
+    } else if ( value instanceof GzipReportContent ) {
+      weight += ( (GzipReportContent) value ).getContentSize();
+    } else if ( value instanceof IReportContent ) {
+      final IReportContent content = (IReportContent) value;
+      final int stored = content.getStoredPageCount();
+      final int limit = Math.max( content.getPageCount(), stored );
+      int found = 0;
+      for ( int i = 0; i < limit && found < stored; i++ ) {
+        final byte[] page = content.getPageData( i );
+        if ( page != null ) {
+          weight += page.length;
+          found++;
+        }
+      }
+    }
+    return (int) Math.min( Integer.MAX_VALUE, weight );
+  }
+}
@@ -0,0 +1,240 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.CompoundDataFactory;
+import org.pentaho.reporting.engine.classic.core.AbstractReportDefinition;
+import org.pentaho.reporting.engine.classic.core.DataFactory;
+import org.pentaho.reporting.engine.classic.core.Element;
+import org.pentaho.reporting.engine.classic.core.MasterReport;
+import org.pentaho.reporting.engine.classic.core.ReportEnvironment;
+import org.pentaho.reporting.engine.classic.core.RootLevelBand;
+import org.pentaho.reporting.engine.classic.core.Section;
+import org.pentaho.reporting.engine.classic.core.StaticDataRow;
+import org.pentaho.reporting.engine.classic.core.SubReport;
+import org.pentaho.reporting.engine.classic.core.function.Expression;
+import org.pentaho.reporting.engine.classic.core.function.ExpressionCollection;
+import org.pentaho.reporting.engine.classic.core.metadata.DataFactoryMetaData;
+import org.pentaho.reporting.engine.classic.core.style.StyleKey;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Describes the part of the security context a report's data depends on. Used as part of content cache keys shared
+ * across sessions.
+ * <p>
+ * Roles are always part of the fingerprint, as data sources may apply role based security (mondrian, metadata) without
+ * the report referencing them. Other environment properties (username, session attributes, ...) are added when a query,
+ * expression or element of the report or one of its subreports references the matching {@code env::} field. If the
+ * referenced fields can't be determined, the username is added as well.
+ */
+public final class ReportSecurityFingerprint {
+
+  private static final Log logger = LogFactory.getLog( ReportSecurityFingerprint.class );
+  static final String ENV_PREFIX = "env::";
+  static final String ROLES = "roles";
+  static final String USERNAME = "username";
+  private static final Pattern ENV_REFERENCE = Pattern.compile( "env::([^\\[\\]\\s\"';,()]+)" );
+  private static final int MAX_DEPTH = 8;
+  // runtime state of expressions, not part of their definition
+  private static final Set<String> IGNORED_PROPERTIES =
+    new HashSet<>( Arrays.asList( "class", "value", "instance", "runtime", "dataRow", "reportConfiguration",
+      "resourceBundleFactory", "dataSchema" ) );
+
+  private ReportSecurityFingerprint() {
+  }
+
+  /**
+   * @param report report
+   * @return sorted environment property names and values the report's content depends on
+   */
+  public static TreeMap<String, String> compute( final MasterReport report ) {
+    final ReportEnvironment environment = report.getReportEnvironment();
+    final TreeMap<String, String> fingerprint = new TreeMap<>();
+    fingerprint.put( ROLES, sortedRoles( environment.getEnvironmentProperty( ROLES ) ) );
+
+    final List<String> referenced = findReferencedEnvironmentProperties( report );
+    if ( referenced == null ) {
+      fingerprint.put( USERNAME, environment.getEnvironmentProperty( USERNAME ) );
+    } else {
+      for ( final String name : referenced ) {
+        if ( !fingerprint.containsKey( name ) ) {
+          fingerprint.put( name, environment.getEnvironmentProperty( name ) );
+        }
+      }
+    }
+    return fingerprint;
+  }
+
+  private static String sortedRoles( final String roles ) {
+    if ( roles == null ) {
+      return null;
+    }
+    final String[] split = roles.split( "," );
+    Arrays.sort( split );
+    return String.join( ",", split );
+  }
+
+  /**
+   * @return environment property names referenced by the report's queries, expressions or elements, including those of
+   * its subreports, or null if they can't be determined
+   */
+  static List<String> findReferencedEnvironmentProperties( final MasterReport report ) {
+    final Set<String> result = new LinkedHashSet<>();
+    try {
+      collect( report.getDataFactory(), result );
+      collectSection( report, result );
+    } catch ( final Exception e ) {
+      logger.debug( "Can't determine fields referenced by the report: ", e );
+      return null;
+    }
+    return new ArrayList<>( result );
+  }
+
+  private static void collect( final DataFactory dataFactory, final Set<String> result ) {
+    if ( dataFactory == null ) {
+      return;
+    }
+    if ( dataFactory instanceof CompoundDataFactory ) {
+      final CompoundDataFactory compound = (CompoundDataFactory) dataFactory;
+      for ( int i = 0; i < compound.size(); i++ ) {
+        collect( compound.getReference( i ), result );
+      }
+      return;
+    }
+    final DataFactoryMetaData metaData = dataFactory.getMetaData();
+    for ( final String query : dataFactory.getQueryNames() ) {
+      final String[] fields = metaData.getReferencedFields( dataFactory, query, new StaticDataRow() );
+      if ( fields == null ) {
+        // the data factory can't tell, so assume the worst
+        throw new IllegalStateException( "Unknown referenced fields for query " + query );
+      }
+      for ( final String field : fields ) {
+        if ( field != null && field.startsWith( ENV_PREFIX ) ) {
+          result.add( field.substring( ENV_PREFIX.length() ) );
+        }
+      }
+    }
+  }
+
+  /**
+   * Walks the elements of a section, the expressions and data factories of report definitions and all subreports.
+   */
+  private static void collectSection( final Section section, final Set<String> result ) throws Exception {
+    collectElement( section, result );
+    if ( section instanceof AbstractReportDefinition ) {
+      final ExpressionCollection expressions = ( (AbstractReportDefinition) section ).getExpressions();
+      if ( expressions != null ) {
+        for ( int i = 0; i < expressions.size(); i++ ) {
+          collectBean( expressions.getExpression( i ), result, 0 );
+        }
+      }
+    }
+    if ( section instanceof SubReport ) {
+      collect( ( (SubReport) section ).getDataFactory(), result );
+    }
+    if ( section instanceof RootLevelBand ) {
+      final SubReport[] subReports = ( (RootLevelBand) section ).getSubReports();
+      if ( subReports != null ) {
+        for ( final SubReport subReport : subReports ) {
+          collectSection( subReport, result );
+        }
+      }
+    }
+    for ( int i = 0; i < section.getElementCount(); i++ ) {
+      final Element element = section.getElement( i );
+      if ( element instanceof Section ) {
+        collectSection( (Section) element, result );
+      } else if ( element != null ) {
+        collectElement( element, result );
+      }
+    }
+  }
+
+  /**
+   * Collects references of the text attributes, attribute expressions and style expressions of an element.
+   */
+  private static void collectElement( final Element element, final Set<String> result ) throws Exception {
+    final String[] namespaces = element.getAttributeNamespaces();
+    if ( namespaces != null ) {
+      for ( final String namespace : namespaces ) {
+        for ( final String name : element.getAttributeNames( namespace ) ) {
+          collectValue( element.getAttribute( namespace, name ), result, 0 );
+        }
+      }
+    }
+    final String[] expressionNamespaces = element.getAttributeExpressionNamespaces();
+    if ( expressionNamespaces != null ) {
+      for ( final String namespace : expressionNamespaces ) {
+        for ( final String name : element.getAttributeExpressionNames( namespace ) ) {
+          collectBean( element.getAttributeExpression( namespace, name ), result, 0 );
+        }
+      }
+    }
+    final Map<StyleKey, Expression> styleExpressions = element.getStyleExpressions();
+    if ( styleExpressions != null ) {
+      for ( final Expression expression : styleExpressions.values() ) {
+        collectBean( expression, result, 0 );
+      }
+    }
+  }
+
+  /**
+   * Collects references of all readable properties of an expression, fields and formulas alike.
+   */
+  private static void collectBean( final Expression expression, final Set<String> result, final int depth )
+    throws Exception {
+    if ( expression == null ) {
+      return;
+    }
+    if ( depth > MAX_DEPTH ) {
+      throw new IllegalStateException( "Expression nesting too deep: " + expression.getName() );
+    }
+    for ( final PropertyDescriptor property : Introspector.getBeanInfo( expression.getClass() )
+      .getPropertyDescriptors() ) {
+      final Method read = property.getReadMethod();
+      if ( read != null && read.getParameterCount() == 0 && !IGNORED_PROPERTIES.contains( property.getName() ) ) {
+        collectValue( read.invoke( expression ), result, depth + 1 );
+      }
+    }
+  }
+
+  private static void collectValue( final Object value, final Set<String> result, final int depth ) throws Exception {
+    if ( value instanceof String ) {
+      final Matcher matcher = ENV_REFERENCE.matcher( (String) value );
+      while ( matcher.find() ) {
+        result.add( matcher.group( 1 ) );
+      }
+    } else if ( value instanceof Object[] ) {
+      for ( final Object item : (Object[]) value ) {
+        collectValue( item, result, depth );
+      }
+    } else if ( value instanceof Expression ) {
+      collectBean( (Expression) value, result, depth );
+    }
+  }
+}
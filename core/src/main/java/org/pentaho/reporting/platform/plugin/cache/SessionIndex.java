@@ -0,0 +1,79 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keys of a session-partitioned map, grouped by session. Logout clean-ups remove the keys of one session without
+ * walking the entries of all other sessions. Keys without a session are not indexed.
+ *
+ * @param <K> key of the indexed map
+ */
+public class SessionIndex<K> {
+
+  private final ConcurrentHashMap<String, Set<K>> sessions = new ConcurrentHashMap<>();
+
+  public void add( final String sessionId, final K key ) {
+    if ( sessionId == null ) {
+      return;
+    }
+    sessions.compute( sessionId, ( id, keys ) -> {
+      final Set<K> result = keys != null ? keys : ConcurrentHashMap.newKeySet();
+      result.add( key );
+      return result;
+    } );
+  }
+
+  public void remove( final String sessionId, final K key ) {
+    if ( sessionId == null ) {
+      return;
+    }
+    sessions.computeIfPresent( sessionId, ( id, keys ) -> {
+      keys.remove( key );
+      return keys.isEmpty() ? null : keys;
+    } );
+  }
+
+  /**
+   * Forgets a session.
+   *
+   * @return the keys of the session
+   */
+  public Set<K> removeSession( final String sessionId ) {
+    if ( sessionId == null ) {
+      return Collections.emptySet();
+    }
+    final Set<K> keys = sessions.remove( sessionId );
+    return keys != null ? keys : Collections.<K>emptySet();
+  }
+
+  public Set<K> getKeys( final String sessionId ) {
+    final Set<K> keys = sessionId != null ? sessions.get( sessionId ) : null;
+    return keys != null ? Collections.unmodifiableSet( keys ) : Collections.<K>emptySet();
+  }
+
+  /**
+   * @return number of sessions with keys
+   */
+  public int size() {
+    return sessions.size();
+  }
+
+  public void clear() {
+    sessions.clear();
+  }
+}
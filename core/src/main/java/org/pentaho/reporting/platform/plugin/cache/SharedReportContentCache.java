@@ -0,0 +1,86 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache shared by all sessions. Content keys computed for this cache include a fingerprint of the security context the
+ * report depends on (see {@link ReportSecurityFingerprint}), so identical renders are deduplicated across sessions
+ * without leaking data between users with different permissions. Entries expire like in
+ * {@link DeleteOldOnAccessCache}.
+ */
+public class SharedReportContentCache extends DeleteOldOnAccessCache {
+
+  private static final Log logger = LogFactory.getLog( SharedReportContentCache.class );
+  private static final String SEGMENT = "shared";
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public SharedReportContentCache( final ICacheBackend backend ) {
+    super( backend );
+  }
+
+  public SharedReportContentCache() {
+  }
+
+  @Override protected List<String> getSegmentKey() {
+    return Collections.singletonList( SEGMENT );
+  }
+
+  @Override protected List<String> computeKey( final String key ) {
+    return Collections.unmodifiableList( Arrays.asList( SEGMENT, key ) );
+  }
+
+  @Override public IReportContent get( final String key ) {
+    final IReportContent content = super.get( key );
+    if ( content != null ) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    if ( logger.isDebugEnabled() ) {
+      logger.debug( "Shared report cache hit ratio: " + getHitRatio() + " (" + hits.get() + " hits, " + misses.get()
+        + " misses)" );
+    }
+    return content;
+  }
+
+  /**
+   * Shared entries don't belong to a session, so clearing the cache of the current session drops all shared content.
+   */
+  @Override public void cleanupCurrentSession() {
+    getBackend().purgeSegment( getSegmentKey(), ( k, m ) -> true );
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public double getHitRatio() {
+    final long h = hits.get();
+    final long total = h + misses.get();
+    return total == 0 ? 0 : (double) h / total;
+  }
+}
@@ -0,0 +1,383 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.pentaho.reporting.engine.classic.core.MetaTableModel;
+import org.pentaho.reporting.engine.classic.core.wizard.DataAttributes;
+import org.pentaho.reporting.engine.classic.core.wizard.EmptyDataAttributes;
+
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Read-only table model kept in a memory-mapped file. Rows are decoded when they are read, the last decoded row is
+ * kept, as reports read a table row by row. The values of a row are equal to the values of the written model and of the
+ * same class.
+ * <p>
+ * File layout: a header with magic number, row and column count, the rows one after another, the offset of every row
+ * and at the end the position of the offsets.
+ */
+public class SpilledTableModel extends AbstractTableModel implements MetaTableModel {
+
+  private static final long serialVersionUID = -4325905418405386214L;
+
+  private static final int MAGIC = 0x50524454;
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte INTEGER = 2;
+  private static final byte LONG = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte TRUE = 5;
+  private static final byte FALSE = 6;
+  private static final byte DATE = 7;
+  private static final byte SQL_DATE = 8;
+  private static final byte TIME = 9;
+  private static final byte TIMESTAMP = 10;
+  private static final byte DECIMAL = 11;
+  private static final byte BIG_INTEGER = 12;
+  private static final byte FLOAT = 13;
+  private static final byte SHORT = 14;
+  private static final byte BYTE = 15;
+  private static final byte SERIALIZED = 16;
+  /**
+   * Rows encoded to estimate the file size of a table.
+   */
+  private static final int ESTIMATE_SAMPLES = 64;
+
+  private final File file;
+  private final int rowCount;
+  private final String[] columnNames;
+  private final Class<?>[] columnClasses;
+  private final DataAttributes tableAttributes;
+  private final DataAttributes[] columnAttributes;
+  private final transient ByteBuffer buffer;
+  private final int indexPosition;
+  private transient volatile DecodedRow last;
+
+  private static final class DecodedRow {
+    private final int row;
+    private final Object[] values;
+
+    private DecodedRow( final int row, final Object[] values ) {
+      this.row = row;
+      this.values = values;
+    }
+  }
+
+  private SpilledTableModel( final File file, final TableModel model, final ByteBuffer buffer,
+                             final int indexPosition ) {
+    this.file = file;
+    this.buffer = buffer;
+    this.indexPosition = indexPosition;
+    rowCount = model.getRowCount();
+    final int columnCount = model.getColumnCount();
+    columnNames = new String[ columnCount ];
+    columnClasses = new Class<?>[ columnCount ];
+    columnAttributes = new DataAttributes[ columnCount ];
+    final MetaTableModel metaModel = model instanceof MetaTableModel ? (MetaTableModel) model : null;
+    for ( int column = 0; column < columnCount; column++ ) {
+      columnNames[ column ] = model.getColumnName( column );
+      columnClasses[ column ] = model.getColumnClass( column );
+      columnAttributes[ column ] = metaModel != null ? metaModel.getColumnAttributes( column ) : null;
+    }
+    tableAttributes = metaModel != null ? metaModel.getTableAttributes() : null;
+  }
+
+  /**
+   * Writes a table model into a file and maps it.
+   *
+   * @param maximumBytes maximum size of the file
+   * @return the model or null if the table is larger than the maximum size
+   * @throws NotSerializableException if a value can not be written
+   */
+  public static SpilledTableModel write( final TableModel model, final File file, final long maximumBytes )
+    throws IOException {
+    final long limit = Math.min( maximumBytes, Integer.MAX_VALUE );
+    final int rows = model.getRowCount();
+    final int columns = model.getColumnCount();
+    final int indexPosition;
+    boolean complete = false;
+    try {
+      try ( DataOutputStream out =
+              new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 64 * 1024 ) ) ) {
+        out.writeInt( MAGIC );
+        out.writeInt( rows );
+        out.writeInt( columns );
+        final int[] offsets = new int[ rows ];
+        for ( int row = 0; row < rows; row++ ) {
+          offsets[ row ] = out.size();
+          for ( int column = 0; column < columns; column++ ) {
+            writeValue( out, model.getValueAt( row, column ) );
+          }
+          if ( out.size() + 4L * ( rows + 1 ) > limit ) {
+            return null;
+          }
+        }
+        indexPosition = out.size();
+        for ( final int offset : offsets ) {
+          out.writeInt( offset );
+        }
+        out.writeInt( indexPosition );
+      }
+      final ByteBuffer buffer;
+      try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+        buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+      }
+      complete = true;
+      return new SpilledTableModel( file, model, buffer, indexPosition );
+    } finally {
+      if ( !complete ) {
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * Estimates the file size of a table from a sample of its rows, without writing a file.
+   *
+   * @return estimated bytes of the file
+   * @throws NotSerializableException if a sampled value can not be written
+   */
+  static long estimateSize( final TableModel model ) throws IOException {
+    final int rows = model.getRowCount();
+    final int columns = model.getColumnCount();
+    // header, offsets of the rows and position of the offsets
+    final long fixed = 12L + 4L * ( rows + 1 );
+    if ( rows == 0 ) {
+      return fixed;
+    }
+    final int samples = Math.min( rows, ESTIMATE_SAMPLES );
+    final DataOutputStream out = new DataOutputStream( OutputStream.nullOutputStream() );
+    for ( int i = 0; i < samples; i++ ) {
+      final int row = (int) ( (long) i * rows / samples );
+      for ( int column = 0; column < columns; column++ ) {
+        writeValue( out, model.getValueAt( row, column ) );
+      }
+    }
+    return fixed + (long) out.size() * rows / samples;
+  }
+
+  private static void writeValue( final DataOutputStream out, final Object value ) throws IOException {
+    if ( value == null ) {
+      out.writeByte( NULL );
+      return;
+    }
+    final Class<?> type = value.getClass();
+    if ( type == String.class ) {
+      final byte[] bytes = ( (String) value ).getBytes( StandardCharsets.UTF_8 );
+      out.writeByte( STRING );
+      out.writeInt( bytes.length );
+      out.write( bytes );
+    } else if ( type == Integer.class ) {
+      out.writeByte( INTEGER );
+      out.writeInt( (Integer) value );
+    } else if ( type == Long.class ) {
+      out.writeByte( LONG );
+      out.writeLong( (Long) value );
+    } else if ( type == Double.class ) {
+      out.writeByte( DOUBLE );
+      out.writeDouble( (Double) value );
+    } else if ( type == Boolean.class ) {
+      out.writeByte( (Boolean) value ? TRUE : FALSE );
+    } else if ( type == Date.class ) {
+      out.writeByte( DATE );
+      out.writeLong( ( (Date) value ).getTime() );
+    } else if ( type == java.sql.Date.class ) {
+      out.writeByte( SQL_DATE );
+      out.writeLong( ( (Date) value ).getTime() );
+    } else if ( type == Time.class ) {
+      out.writeByte( TIME );
+      out.writeLong( ( (Date) value ).getTime() );
+    } else if ( type == Timestamp.class ) {
+      out.writeByte( TIMESTAMP );
+      out.writeLong( ( (Timestamp) value ).getTime() );
+      out.writeInt( ( (Timestamp) value ).getNanos() );
+    } else if ( type == BigDecimal.class ) {
+      final byte[] unscaled = ( (BigDecimal) value ).unscaledValue().toByteArray();
+      out.writeByte( DECIMAL );
+      out.writeInt( ( (BigDecimal) value ).scale() );
+      out.writeInt( unscaled.length );
+      out.write( unscaled );
+    } else if ( type == BigInteger.class ) {
+      final byte[] bytes = ( (BigInteger) value ).toByteArray();
+      out.writeByte( BIG_INTEGER );
+      out.writeInt( bytes.length );
+      out.write( bytes );
+    } else if ( type == Float.class ) {
+      out.writeByte( FLOAT );
+      out.writeFloat( (Float) value );
+    } else if ( type == Short.class ) {
+      out.writeByte( SHORT );
+      out.writeShort( (Short) value );
+    } else if ( type == Byte.class ) {
+      out.writeByte( BYTE );
+      out.writeByte( (Byte) value );
+    } else if ( value instanceof Serializable ) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try ( ObjectOutputStream objects = new ObjectOutputStream( bytes ) ) {
+        objects.writeObject( value );
+      }
+      out.writeByte( SERIALIZED );
+      out.writeInt( bytes.size() );
+      bytes.writeTo( out );
+    } else {
+      throw new NotSerializableException( type.getName() );
+    }
+  }
+
+  private Object[] decode( final int row ) {
+    final ByteBuffer data = buffer.duplicate();
+    data.position( data.getInt( indexPosition + 4 * row ) );
+    final Object[] values = new Object[ columnNames.length ];
+    for ( int column = 0; column < values.length; column++ ) {
+      values[ column ] = readValue( data );
+    }
+    return values;
+  }
+
+  private static Object readValue( final ByteBuffer data ) {
+    final byte tag = data.get();
+    switch ( tag ) {
+      case NULL:
+        return null;
+      case STRING:
+        return new String( readBytes( data ), StandardCharsets.UTF_8 );
+      case INTEGER:
+        return data.getInt();
+      case LONG:
+        return data.getLong();
+      case DOUBLE:
+        return data.getDouble();
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      case DATE:
+        return new Date( data.getLong() );
+      case SQL_DATE:
+        return new java.sql.Date( data.getLong() );
+      case TIME:
+        return new Time( data.getLong() );
+      case TIMESTAMP: {
+        final Timestamp timestamp = new Timestamp( data.getLong() );
+        timestamp.setNanos( data.getInt() );
+        return timestamp;
+      }
+      case DECIMAL: {
+        final int scale = data.getInt();
+        return new BigDecimal( new BigInteger( readBytes( data ) ), scale );
+      }
+      case BIG_INTEGER:
+        return new BigInteger( readBytes( data ) );
+      case FLOAT:
+        return data.getFloat();
+      case SHORT:
+        return data.getShort();
+      case BYTE:
+        return data.get();
+      case SERIALIZED:
+        try ( ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( readBytes( data ) ) ) ) {
+          return in.readObject();
+        } catch ( final IOException | ClassNotFoundException e ) {
+          throw new IllegalStateException( "Spilled value can not be read", e );
+        }
+      default:
+        throw new IllegalStateException( "Unknown value tag " + tag );
+    }
+  }
+
+  private static byte[] readBytes( final ByteBuffer data ) {
+    final byte[] bytes = new byte[ data.getInt() ];
+    data.get( bytes );
+    return bytes;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return size of the file
+   */
+  public int getSize() {
+    return buffer.capacity();
+  }
+
+  @Override public int getRowCount() {
+    return rowCount;
+  }
+
+  @Override public int getColumnCount() {
+    return columnNames.length;
+  }
+
+  @Override public String getColumnName( final int column ) {
+    return columnNames[ column ];
+  }
+
+  @Override public Class<?> getColumnClass( final int column ) {
+    return columnClasses[ column ];
+  }
+
+  @Override public Object getValueAt( final int row, final int column ) {
+    if ( row < 0 || row >= rowCount ) {
+      throw new IndexOutOfBoundsException( "Row " + row + " of " + rowCount );
+    }
+    DecodedRow decoded = last;
+    if ( decoded == null || decoded.row != row ) {
+      decoded = new DecodedRow( row, decode( row ) );
+      last = decoded;
+    }
+    return decoded.values[ column ];
+  }
+
+  @Override public DataAttributes getCellDataAttributes( final int row, final int column ) {
+    return EmptyDataAttributes.INSTANCE;
+  }
+
+  @Override public boolean isCellDataAttributesSupported() {
+    return false;
+  }
+
+  @Override public DataAttributes getColumnAttributes( final int column ) {
+    final DataAttributes attributes = columnAttributes[ column ];
+    return attributes != null ? attributes : EmptyDataAttributes.INSTANCE;
+  }
+
+  @Override public DataAttributes getTableAttributes() {
+    return tableAttributes != null ? tableAttributes : EmptyDataAttributes.INSTANCE;
+  }
+}
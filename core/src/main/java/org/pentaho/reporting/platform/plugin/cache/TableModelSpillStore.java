@@ -0,0 +1,186 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.swing.table.TableModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Second tier of the data cache. Tables are written to memory-mapped files in a directory, which keeps them off the
+ * heap. Files are deleted when their table is evicted, least recently used first once all files exceed the budget.
+ * Files that can't be deleted yet, e.g. on Windows while a table still in use maps them, are retried on later puts and
+ * evictions.
+ *
+ * @param <K> cache key
+ */
+class TableModelSpillStore<K> {
+
+  private static final Log log = LogFactory.getLog( TableModelSpillStore.class );
+
+  private static final String PREFIX = "dataset-";
+  private static final String SUFFIX = ".bin";
+  private static final int CONCURRENCY_LEVEL = 4;
+
+  private final File directory;
+  private final long maximumEntryBytes;
+  private final Cache<K, SpilledTableModel> cache;
+  private final AtomicLong bytes = new AtomicLong();
+  private final Queue<File> undeleted = new ConcurrentLinkedQueue<>();
+  private final Consumer<K> removalListener;
+
+  /**
+   * @param directory         directory of the files, files left there by an earlier run are deleted
+   * @param maximumBytes      budget of all files
+   * @param maximumEntryBytes tables with a larger file are not kept
+   * @param expiry            expiry of the tables
+   * @param removalListener   called with the key of a table that is no longer kept
+   */
+  TableModelSpillStore( final File directory, final long maximumBytes, final long maximumEntryBytes,
+                        final PentahoDataCache.Expiry expiry, final Consumer<K> removalListener ) {
+    this.directory = directory;
+    this.removalListener = removalListener;
+    // the budget is split across the segments of the cache, a larger entry would be evicted right away
+    this.maximumEntryBytes = Math.min( maximumBytes / CONCURRENCY_LEVEL, maximumEntryBytes );
+    cache = expiry.apply( CacheBuilder.newBuilder() )
+      .concurrencyLevel( CONCURRENCY_LEVEL )
+      .maximumWeight( maximumBytes )
+      .weigher( (Weigher<K, SpilledTableModel>) ( key, model ) -> model.getSize() )
+      .removalListener( (RemovalListener<K, SpilledTableModel>) n -> {
+        release( n.getValue() );
+        if ( n.getCause() != RemovalCause.REPLACED ) {
+          removalListener.accept( n.getKey() );
+        }
+      } )
+      .recordStats()
+      .build();
+    deleteFiles();
+  }
+
+  /**
+   * Writes a table to a file. Tables estimated larger than the entry limit are not written at all.
+   *
+   * @return the table read from the file, or null if it can not be kept
+   */
+  SpilledTableModel put( final K key, final TableModel model ) {
+    retryDeletes();
+    try {
+      final long estimate = SpilledTableModel.estimateSize( model );
+      if ( estimate > maximumEntryBytes ) {
+        if ( log.isDebugEnabled() ) {
+          log.debug( "too large (~" + estimate + " > " + maximumEntryBytes + " bytes) not spilling." );
+        }
+        return null;
+      }
+      if ( !directory.isDirectory() && !directory.mkdirs() ) {
+        log.warn( "Data cache spill directory can not be created: " + directory );
+        return null;
+      }
+      final File file = File.createTempFile( PREFIX, SUFFIX, directory );
+      final SpilledTableModel spilled = SpilledTableModel.write( model, file, maximumEntryBytes );
+      if ( spilled == null ) {
+        if ( log.isDebugEnabled() ) {
+          log.debug( "too large (> " + maximumEntryBytes + " bytes) not spilling." );
+        }
+        return null;
+      }
+      // counted before the entry can be evicted
+      bytes.addAndGet( spilled.getSize() );
+      cache.put( key, spilled );
+      return spilled;
+    } catch ( final IOException e ) {
+      log.debug( "Table can not be spilled: ", e );
+      return null;
+    }
+  }
+
+  SpilledTableModel get( final K key ) {
+    return cache.getIfPresent( key );
+  }
+
+  boolean contains( final K key ) {
+    return cache.asMap().containsKey( key );
+  }
+
+  void invalidate( final K key ) {
+    cache.invalidate( key );
+  }
+
+  void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  CacheStats getStats() {
+    return cache.stats();
+  }
+
+  long size() {
+    return cache.size();
+  }
+
+  /**
+   * @return bytes of all files
+   */
+  long getBytes() {
+    return bytes.get();
+  }
+
+  private void release( final SpilledTableModel model ) {
+    bytes.addAndGet( -model.getSize() );
+    retryDeletes();
+    // the mapping stays readable for tables still in use, a file still mapped is retried later
+    if ( !model.getFile().delete() && model.getFile().exists() ) {
+      undeleted.add( model.getFile() );
+    }
+  }
+
+  /**
+   * Tries once more to delete each file that couldn't be deleted before.
+   */
+  private void retryDeletes() {
+    for ( int i = undeleted.size(); i > 0; i-- ) {
+      final File file = undeleted.poll();
+      if ( file == null ) {
+        return;
+      }
+      if ( !file.delete() && file.exists() ) {
+        undeleted.add( file );
+      }
+    }
+  }
+
+  private void deleteFiles() {
+    final File[] files = directory.listFiles( ( dir, name ) -> name.startsWith( PREFIX ) && name.endsWith( SUFFIX ) );
+    if ( files != null ) {
+      for ( final File file : files ) {
+        if ( !file.delete() ) {
+          log.debug( "Stale data cache file can not be deleted: " + file );
+        }
+      }
+    }
+  }
+}
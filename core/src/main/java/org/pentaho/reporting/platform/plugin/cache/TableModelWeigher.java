@@ -0,0 +1,93 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import com.google.common.cache.Weigher;
+
+import javax.swing.table.TableModel;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+
+/**
+ * Estimates the heap bytes of a cached table model from its cell values. Large tables are weighed by a sample of
+ * evenly spaced rows, columnar tables by their own estimate.
+ */
+public class TableModelWeigher implements Weigher<Object, TableModel> {
+
+  private int entryOverhead = 1024;
+  private int sampleRows = 1024;
+
+  public void setEntryOverhead( final int entryOverhead ) {
+    this.entryOverhead = entryOverhead;
+  }
+
+  /**
+   * @param sampleRows tables with more rows are weighed by this many rows
+   */
+  public void setSampleRows( final int sampleRows ) {
+    if ( sampleRows < 1 ) {
+      throw new IllegalArgumentException( "Sample rows must be positive: " + sampleRows );
+    }
+    this.sampleRows = sampleRows;
+  }
+
+  @Override public int weigh( final Object key, final TableModel model ) {
+    if ( model instanceof ColumnarTableModel ) {
+      return (int) Math.min( Integer.MAX_VALUE, entryOverhead + ( (ColumnarTableModel) model ).getEstimatedBytes() );
+    }
+    final int rows = model.getRowCount();
+    final int columns = model.getColumnCount();
+    // row arrays and their references
+    long weight = entryOverhead + rows * ( 16L + 8L * columns );
+    if ( rows > 0 && columns > 0 ) {
+      final int sampled = Math.min( rows, sampleRows );
+      long cells = 0;
+      for ( int i = 0; i < sampled; i++ ) {
+        final int row = (int) ( (long) i * rows / sampled );
+        for ( int column = 0; column < columns; column++ ) {
+          cells += weighValue( model.getValueAt( row, column ) );
+        }
+      }
+      weight += cells * rows / sampled;
+    }
+    return (int) Math.min( Integer.MAX_VALUE, weight );
+  }
+
+  static long weighValue( final Object value ) {
+    if ( value == null || value instanceof Boolean ) {
+      return 0;
+    }
+    if ( value instanceof String ) {
+      return 40 + 2L * ( (String) value ).length();
+    }
+    if ( value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof Float
+      || value instanceof Character ) {
+      return 16;
+    }
+    if ( value instanceof Long || value instanceof Double || value instanceof Date ) {
+      return 24;
+    }
+    if ( value instanceof BigDecimal ) {
+      return 72 + ( (BigDecimal) value ).unscaledValue().bitLength() / 8;
+    }
+    if ( value instanceof BigInteger ) {
+      return 56 + ( (BigInteger) value ).bitLength() / 8;
+    }
+    if ( value instanceof byte[] ) {
+      return 16L + ( (byte[]) value ).length;
+    }
+    return 32;
+  }
+}
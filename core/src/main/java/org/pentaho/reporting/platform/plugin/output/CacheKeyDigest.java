@@ -0,0 +1,85 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.output;
+
+import org.pentaho.reporting.libraries.xmlns.parser.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hashes the parts of a content cache key into a SHA-256 digest as they are added, without building the key first.
+ * Every part is written with its length, so different keys never hash the same bytes.
+ */
+final class CacheKeyDigest {
+  private static final byte NULL = 0;
+  private static final byte VALUE = 1;
+
+  private final MessageDigest digest;
+
+  CacheKeyDigest() throws NoSuchAlgorithmException {
+    digest = MessageDigest.getInstance( "SHA-256" );
+  }
+
+  CacheKeyDigest add( final String value ) {
+    if ( value == null ) {
+      digest.update( NULL );
+      return this;
+    }
+    final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+    digest.update( VALUE );
+    addLength( bytes.length );
+    digest.update( bytes );
+    return this;
+  }
+
+  CacheKeyDigest add( final List<String> values ) {
+    addLength( values.size() );
+    for ( final String value : values ) {
+      add( value );
+    }
+    return this;
+  }
+
+  /**
+   * Adds the entries of a map in the order of their keys.
+   */
+  CacheKeyDigest add( final Map<String, String> values ) {
+    addLength( values.size() );
+    final Map<String, String> sorted = values instanceof TreeMap ? values : new TreeMap<>( values );
+    for ( final Map.Entry<String, String> entry : sorted.entrySet() ) {
+      add( entry.getKey() );
+      add( entry.getValue() );
+    }
+    return this;
+  }
+
+  private void addLength( final int length ) {
+    digest.update( (byte) ( length >>> 24 ) );
+    digest.update( (byte) ( length >>> 16 ) );
+    digest.update( (byte) ( length >>> 8 ) );
+    digest.update( (byte) length );
+  }
+
+  /**
+   * @return the digest in base64, 44 characters long
+   */
+  String digest() {
+    return new String( Base64.encode( digest.digest() ) );
+  }
+}
@@ -16,22 +16,29 @@ import com.cronutils.utils.VisibleForTesting;
 import mondrian.util.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.platform.api.repository2.unified.IUnifiedRepository;
 import org.pentaho.platform.api.repository2.unified.RepositoryFile;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.platform.engine.security.SecurityHelper;
 import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
 import org.pentaho.reporting.engine.classic.core.MasterReport;
 import org.pentaho.reporting.engine.classic.core.PerformanceTags;
 import org.pentaho.reporting.engine.classic.core.ReportDataFactoryException;
+import org.pentaho.reporting.engine.classic.core.ReportInterruptedException;
 import org.pentaho.reporting.engine.classic.core.ReportParameterValidationException;
 import org.pentaho.reporting.engine.classic.core.ReportProcessingException;
 import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
 import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
 import org.pentaho.reporting.engine.classic.core.event.async.AsyncExecutionStatus;
+import org.pentaho.reporting.engine.classic.core.event.async.AsyncReportStatusListener;
 import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportListener;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportState;
 import org.pentaho.reporting.engine.classic.core.event.async.ReportListenerThreadHolder;
 import org.pentaho.reporting.engine.classic.core.layout.output.DisplayAllFlowSelector;
 import org.pentaho.reporting.engine.classic.core.modules.output.pageable.base.PageableReportProcessor;
+import org.pentaho.reporting.engine.classic.core.modules.output.table.html.AllItemsHtmlPrinter;
 import org.pentaho.reporting.engine.classic.core.modules.output.table.html.PageableHtmlOutputProcessor;
 import org.pentaho.reporting.engine.classic.core.parameters.ParameterDefinitionEntry;
 import org.pentaho.reporting.engine.classic.core.parameters.ReportParameterDefinition;
@@ -44,54 +51,191 @@ import org.pentaho.reporting.libraries.base.util.PerformanceLoggingStopWatch;
 import org.pentaho.reporting.libraries.repository.ContentIOException;
 import org.pentaho.reporting.libraries.repository.ContentLocation;
 import org.pentaho.reporting.libraries.repository.Repository;
-import org.pentaho.reporting.libraries.resourceloader.ResourceData;
+import org.pentaho.reporting.libraries.repository.zip.ZipRepository;
 import org.pentaho.reporting.libraries.resourceloader.ResourceKey;
 import org.pentaho.reporting.libraries.resourceloader.ResourceLoadingException;
 import org.pentaho.reporting.libraries.resourceloader.ResourceManager;
-import org.pentaho.reporting.libraries.xmlns.parser.Base64;
+import org.pentaho.reporting.platform.plugin.ContentEncodingOutputStream;
+import org.pentaho.reporting.platform.plugin.EntityTags;
+import org.pentaho.reporting.platform.plugin.cache.DefinitionVersionCache;
+import org.pentaho.reporting.platform.plugin.cache.GzipReportContent;
 import org.pentaho.reporting.platform.plugin.cache.IPluginCacheManager;
 import org.pentaho.reporting.platform.plugin.cache.IReportContent;
 import org.pentaho.reporting.platform.plugin.cache.IReportContentCache;
+import org.pentaho.reporting.platform.plugin.cache.ReportSecurityFingerprint;
+import org.pentaho.reporting.platform.plugin.cache.SharedReportContentCache;
 import org.pentaho.reporting.platform.plugin.repository.PentahoNameGenerator;
 import org.pentaho.reporting.platform.plugin.repository.ReportContentRepository;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
-import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class CachingPageableHTMLOutput extends PageableHTMLOutput {
 
   private static Log logger = LogFactory.getLog( CachingPageableHTMLOutput.class );
   public static final String IS_QUERY_LIMIT_REACHED = "IsQueryLimitReached";
   public static final String REPORT_ROWS = "ReportRows";
+  /**
+   * Time between checks for cancellation and partial content while waiting for another render.
+   */
+  private static final long FLIGHT_POLL_MILLIS = 200;
+  private static final SingleFlightRegistry<IReportContent> FLIGHTS = new SingleFlightRegistry<>();
+  private final Object cacheLock = new Object();
   private PageableReportProcessor processor;
+  private Set<Integer> cachedPages;
   private String jcrOutputPath;
+  private volatile DetachableListener leaderListener;
+  private volatile LeaderGuard leaderGuard;
+
+  /**
+   * Watches the render of the request leading a flight. When the request is canceled while other requests wait for the
+   * render, the interruption is cleared and the render goes on for them without reporting to the canceled request. The
+   * render is interrupted again once the last waiting request left. An interruption the engine sees before the next
+   * progress event stops the render, the waiting requests then start it again.
+   */
+  static final class LeaderGuard implements ReportProgressListener {
+    private final SingleFlightRegistry.Flight<IReportContent> flight;
+    private final DetachableListener listener;
+    private final Thread thread = Thread.currentThread();
+    private boolean rendering = true;
+    private volatile boolean handedOver;
+
+    private LeaderGuard( final SingleFlightRegistry.Flight<IReportContent> flight,
+                         final DetachableListener listener ) {
+      this.flight = flight;
+      this.listener = listener;
+    }
+
+    boolean isHandedOver() {
+      return handedOver;
+    }
+
+    private void check() {
+      if ( handedOver || !isCanceled( listener != null ? listener.listener : null ) ) {
+        return;
+      }
+      if ( flight.handOver() ) {
+        handedOver = true;
+        Thread.interrupted();
+        if ( listener != null ) {
+          listener.detach();
+        }
+      }
+    }
+
+    /**
+     * Cancel action of the flight, stops the render if it is still running.
+     */
+    private synchronized void interrupt() {
+      if ( rendering ) {
+        thread.interrupt();
+      }
+    }
+
+    /**
+     * Called when the render ended. A canceled request that handed the render over sees its interruption again.
+     */
+    private void finish() {
+      synchronized ( this ) {
+        rendering = false;
+      }
+      if ( handedOver ) {
+        thread.interrupt();
+      }
+    }
+
+    @Override public void reportProcessingStarted( final ReportProgressEvent event ) {
+      check();
+    }
+
+    @Override public void reportProcessingUpdate( final ReportProgressEvent event ) {
+      check();
+    }
+
+    @Override public void reportProcessingFinished( final ReportProgressEvent event ) {
+      //ignore
+    }
+  }
+
+  /**
+   * Listener of the request that started a render. The render goes on for other requests when this one is canceled,
+   * from then on it must not update the request's state anymore.
+   */
+  private static final class DetachableListener implements ReportProgressListener {
+    private final IAsyncReportListener listener;
+    private volatile boolean detached;
+
+    private DetachableListener( final IAsyncReportListener listener ) {
+      this.listener = listener;
+    }
+
+    /**
+     * @return the request's listener, or null once the request stopped waiting for the render
+     */
+    private IAsyncReportListener getAttached() {
+      return detached ? null : listener;
+    }
+
+    private void detach() {
+      detached = true;
+    }
+
+    @Override public void reportProcessingStarted( final ReportProgressEvent event ) {
+      final IAsyncReportListener attached = getAttached();
+      if ( attached != null ) {
+        attached.reportProcessingStarted( event );
+      }
+    }
+
+    @Override public void reportProcessingUpdate( final ReportProgressEvent event ) {
+      final IAsyncReportListener attached = getAttached();
+      if ( attached != null ) {
+        attached.reportProcessingUpdate( event );
+      }
+    }
+
+    @Override public void reportProcessingFinished( final ReportProgressEvent event ) {
+      final IAsyncReportListener attached = getAttached();
+      if ( attached != null ) {
+        attached.reportProcessingFinished( event );
+      }
+    }
+  }
 
   private class CacheListener implements ReportProgressListener {
 
     private CacheListener( final String key, final int acceptedPage,
                    final PageableReportProcessor proc,
                    final Repository targetRepository,
-                   final IAsyncReportListener asyncReportListener ) {
+                   final DetachableListener asyncReportListener,
+                   final Set<Integer> cachedPages ) {
       this.key = key;
       this.acceptedPage = acceptedPage;
       this.proc = proc;
       this.targetRepository = targetRepository;
       this.asyncReportListener = asyncReportListener;
+      this.cachedPages = cachedPages;
     }
 
     private final String key;
     private final int acceptedPage;
     private final PageableReportProcessor proc;
     private final Repository targetRepository;
-    private final IAsyncReportListener asyncReportListener;
+    private final DetachableListener asyncReportListener;
+    private final Set<Integer> cachedPages;
 
     private int lastAcceptedPageWritten;
 
@@ -104,28 +248,34 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
       //then to be sure that X page is already stored the current index in event should be X+1
       //in other words page + 2
       final int page;
+      final IAsyncReportListener listener = asyncReportListener.getAttached();
 
-      if ( asyncReportListener.getRequestedPage() > 0 ) {
+      if ( listener != null && listener.getRequestedPage() > 0 ) {
         //user requested new page before original generation finished
         //Generation could already pass the page but we need to update cache anyway
-        page = Math.max( asyncReportListener.getRequestedPage() + 2, reportProgressEvent.getPage() );
+        page = Math.max( listener.getRequestedPage() + 2, reportProgressEvent.getPage() );
       } else {
         //it's just an original request
         page = acceptedPage + 2;
       }
 
-      asyncReportListener.setIsQueryLimitReached( proc.isQueryLimitReached() );
+      if ( listener != null ) {
+        listener.setIsQueryLimitReached( proc.isQueryLimitReached() );
+      }
       final boolean needToStorePages = reportProgressEvent.getPage() == page && reportProgressEvent.getPage() > lastAcceptedPageWritten;
       if ( reportProgressEvent.getActivity() == ReportProgressEvent.GENERATING_CONTENT
         && needToStorePages ) {
         // we finished pagination, and thus have the page numbers ready.
         // we also have pages in repository
         try {
-          persistContent( key, produceReportContent( proc, targetRepository ), reportProgressEvent.getMaximumRow() );
+          appendContent( key, proc.getLogicalPageCount(), readPages( targetRepository, cachedPages ), cachedPages,
+            reportProgressEvent.getMaximumRow() );
           lastAcceptedPageWritten = page;
           //Update after pages are in cache
-          asyncReportListener.updateGenerationStatus( page - 1 );
-          asyncReportListener.setStatus( AsyncExecutionStatus.CONTENT_AVAILABLE );
+          if ( listener != null ) {
+            listener.updateGenerationStatus( page - 1 );
+            listener.setStatus( AsyncExecutionStatus.CONTENT_AVAILABLE );
+          }
         } catch ( final Exception e ) {
           logger.error( "Can't persist" );
         }
@@ -188,10 +338,7 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
           }
           setQueryLimitReachedToListener( key, listener );
 
-          final byte[] pageData = freshCache.getPageData( acceptedPage );
-
-          outputStream.write( pageData );
-          outputStream.flush();
+          writePage( outputStream, freshCache, key, acceptedPage, null );
           return freshCache.getPageCount();
         } else {
           return -1;
@@ -221,8 +368,7 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
           PaginationControlWrapper.write( outputStream, cachedContent );
           return cachedContent.getPageCount();
         }
-        outputStream.write( page );
-        outputStream.flush();
+        writePage( outputStream, cachedContent, key, acceptedPage, page );
         return cachedContent.getPageCount();
       }
 
@@ -234,8 +380,7 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
         return fullReportCache.getPageCount();
       }
 
-      outputStream.write( fullReportCache.getPageData( acceptedPage ) );
-      outputStream.flush();
+      writePage( outputStream, fullReportCache, key, acceptedPage, null );
       return fullReportCache.getPageCount();
     } catch ( final CacheKeyException e ) {
       return generateNonCaching( report, acceptedPage, outputStream, yieldRate );
@@ -246,6 +391,37 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
     }
   }
 
+  /**
+   * Writes a page, gzip encoded if the response takes encoded content, with its entity tag.
+   *
+   * @param page the page if it was read already, or null
+   */
+  private static void writePage( final OutputStream outputStream, final IReportContent content, final String key,
+                                 final int acceptedPage, final byte[] page ) throws IOException {
+    final byte[] data;
+    if ( outputStream instanceof ContentEncodingOutputStream ) {
+      final ContentEncodingOutputStream stream = (ContentEncodingOutputStream) outputStream;
+      if ( stream.isGzipAccepted() ) {
+        final byte[] gzip = content.getGzipPageData( acceptedPage );
+        if ( gzip != null ) {
+          stream.setEntityTag(
+            EntityTags.createPageTag( key, acceptedPage, gzip, ContentEncodingOutputStream.GZIP ), key );
+          stream.writeGzip( gzip );
+          stream.flush();
+          return;
+        }
+      }
+      data = page != null ? page : content.getPageData( acceptedPage );
+      if ( data != null ) {
+        stream.setEntityTag( EntityTags.createPageTag( key, acceptedPage, data, null ), key );
+      }
+    } else {
+      data = page != null ? page : content.getPageData( acceptedPage );
+    }
+    outputStream.write( data );
+    outputStream.flush();
+  }
+
   protected boolean isJcrImagesAndCss() {
     return getJcrOutputPath() != null && !getJcrOutputPath().isEmpty();
   }
@@ -288,18 +464,158 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
   IReportContent regenerateCache( final MasterReport report, final int yieldRate, final String key,
                                   final int acceptedPage )
     throws ReportProcessingException {
+    while ( true ) {
+      final SingleFlightRegistry.Flight<IReportContent> flight = FLIGHTS.join( computeFlightKey( key ) );
+      if ( flight.isLeader() ) {
+        return regenerateCacheAsLeader( report, yieldRate, key, acceptedPage, flight );
+      }
+      try {
+        return awaitLeader( report, key, acceptedPage, flight );
+      } catch ( final SingleFlightRegistry.AbandonedException e ) {
+        logger.debug( "Generation of " + key + " was stopped, starting it again" );
+      }
+    }
+  }
+
+  /**
+   * Identical renders share a flight. Without a shared cache content keys don't include the security context, so
+   * flights are scoped to the session.
+   */
+  private String computeFlightKey( final String key ) {
+    final IPentahoSession session = PentahoSessionHolder.getSession();
+    if ( session == null || isSharedCache() ) {
+      return key;
+    }
+    return session.getId() + "/" + key;
+  }
+
+  /**
+   * Renders a flight on the calling thread. A request canceled while other requests wait for its render hands the
+   * render over to them, see {@link LeaderGuard}.
+   */
+  private IReportContent regenerateCacheAsLeader( final MasterReport report, final int yieldRate, final String key,
+                                                  final int acceptedPage,
+                                                  final SingleFlightRegistry.Flight<IReportContent> flight )
+    throws ReportProcessingException {
+    final IAsyncReportListener listener = ReportListenerThreadHolder.getListener();
+    final DetachableListener attached = listener != null ? new DetachableListener( listener ) : null;
+    final LeaderGuard guard = new LeaderGuard( flight, attached );
+    flight.setCancelAction( guard::interrupt );
+    leaderListener = attached;
+    leaderGuard = guard;
+    try {
+      final IReportContent result = doRegenerateCache( report, yieldRate, key, acceptedPage );
+      if ( result == null && Thread.currentThread().isInterrupted() ) {
+        flight.abandon();
+      } else {
+        flight.complete( result );
+      }
+      return result;
+    } catch ( final ReportProcessingException | RuntimeException | Error e ) {
+      if ( Thread.currentThread().isInterrupted() || e instanceof ReportInterruptedException ) {
+        flight.abandon();
+      } else {
+        flight.fail( e );
+      }
+      throw e;
+    } finally {
+      leaderListener = null;
+      leaderGuard = null;
+      guard.finish();
+    }
+  }
+
+  @VisibleForTesting
+  LeaderGuard getLeaderGuard() {
+    return leaderGuard;
+  }
+
+  /**
+   * Waits for the render of a flight. Followers requesting a single page return as soon as it is cached, unless nobody
+   * else waits for the render.
+   */
+  private IReportContent awaitLeader( final MasterReport report, final String key, final int acceptedPage,
+                                      final SingleFlightRegistry.Flight<IReportContent> flight )
+    throws ReportProcessingException, SingleFlightRegistry.AbandonedException {
+    logger.debug( "Waiting for running generation of " + key );
+    final IAsyncReportListener listener = ReportListenerThreadHolder.getListener();
+    final boolean singlePage = listener != null && listener.isFirstPageMode()
+      && !listener.isScheduled() && !isForceAllPages( report );
+    try {
+      while ( true ) {
+        try {
+          return flight.await( FLIGHT_POLL_MILLIS, TimeUnit.MILLISECONDS );
+        } catch ( final TimeoutException e ) {
+          if ( isCanceled( listener ) ) {
+            throw new ReportInterruptedException( "Report execution canceled while waiting for " + key );
+          }
+          // the last request waiting takes the whole render, leaving would stop it
+          if ( singlePage && flight.getWaiters() > 1 ) {
+            final IReportContent partial = getCachedContent( key );
+            if ( partial != null && partial.getPageData( acceptedPage ) != null ) {
+              return partial;
+            }
+          }
+        }
+      }
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new ReportInterruptedException( "Report execution interrupted while waiting for " + key );
+    } catch ( final ExecutionException e ) {
+      final Throwable cause = e.getCause();
+      if ( cause instanceof SingleFlightRegistry.AbandonedException ) {
+        throw (SingleFlightRegistry.AbandonedException) cause;
+      }
+      throw new ReportProcessingException( "Generation of " + key + " failed", cause );
+    } finally {
+      flight.leave();
+    }
+  }
+
+  private static boolean isCanceled( final IAsyncReportListener listener ) {
+    if ( Thread.currentThread().isInterrupted() ) {
+      return true;
+    }
+    if ( listener instanceof AsyncReportStatusListener ) {
+      final IAsyncReportState state = ( (AsyncReportStatusListener) listener ).getState();
+      return state != null && AsyncExecutionStatus.CANCELED.equals( state.getStatus() );
+    }
+    return false;
+  }
+
+  private IReportContent doRegenerateCache( final MasterReport report, final int yieldRate, final String key,
+                                            final int acceptedPage )
+    throws ReportProcessingException {
     logger.warn( "Regenerating report data for " + key );
     final IReportContent result = produceCacheablePages( report, yieldRate, key, acceptedPage );
+    final Set<Integer> appendedPages = cachedPages;
+    cachedPages = null;
     final IAsyncReportListener listener = ReportListenerThreadHolder.getListener();
-    if ( listener != null ) {
-      persistContent( key, result, listener.getTotalRows() );
+    final int reportTotalRows = listener != null ? listener.getTotalRows() : report.getQueryLimit();
+    if ( result != null && appendedPages != null && !appendedPages.isEmpty() ) {
+      // first pages are in the cache already
+      appendContent( key, result.getPageCount(), getMissingPages( result, appendedPages ), appendedPages,
+        reportTotalRows );
     } else {
-      persistContent( key, result, report.getQueryLimit() );
+      persistContent( key, result, reportTotalRows );
     }
 
     return result;
   }
 
+  private static Map<Integer, byte[]> getMissingPages( final IReportContent content, final Set<Integer> cached ) {
+    final Map<Integer, byte[]> pages = new HashMap<>();
+    for ( int i = 0; i < content.getPageCount(); i++ ) {
+      if ( !cached.contains( i ) ) {
+        final byte[] page = content.getPageData( i );
+        if ( page != null ) {
+          pages.put( i, page );
+        }
+      }
+    }
+    return pages;
+  }
+
   @VisibleForTesting
   protected IReportContent produceCacheablePages( final MasterReport report, final int yieldRate, final String key,
                                                 final int acceptedPage )
@@ -313,34 +629,140 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
 
     //Async listener
     final IAsyncReportListener listener = ReportListenerThreadHolder.getListener();
+    final DetachableListener progressListener = listener == null ? null
+      : leaderListener != null ? leaderListener : new DetachableListener( listener );
+    final LeaderGuard guard = leaderGuard;
     ReportProgressListener cacheListener = null;
+    final ParallelPageRenderer parallel = ParallelPageRenderer.isEnabled( report )
+      ? startParallelRender( report, acceptedPage ) : null;
     try {
       final Repository targetRepository = reinitOutputTargetRepo();
+      if ( parallel != null ) {
+        final ParallelPageRenderer.PageSelector selector = parallel.createSelector( ParallelPageRenderer.MAIN );
+        outputProcessor.setFlowSelector( selector );
+        getPrinter().setContentWriter( targetRepository.getRoot(), selector );
+      }
       if ( listener != null ) {
         if ( listener.isFirstPageMode() ) {
           //Create cache listener to write first requested page when needed
-          cacheListener = new CacheListener( key, acceptedPage, proc, targetRepository, listener );
+          cachedPages = new HashSet<>();
+          cacheListener = new CacheListener( key, acceptedPage, proc, targetRepository, progressListener,
+            cachedPages );
           proc.addReportProgressListener( cacheListener );
         }
-        proc.addReportProgressListener( listener );
+        proc.addReportProgressListener( progressListener );
+      }
+      if ( guard != null ) {
+        proc.addReportProgressListener( guard );
       }
       proc.processReport();
-      return produceReportContent( proc, targetRepository );
+      if ( parallel != null ) {
+        return joinParallelRender( parallel, proc, targetRepository );
+      }
+      // pages are gzip encoded once, as they are cached and sent
+      return GzipReportContent.encode( produceReportContent( proc, targetRepository ) );
     } catch ( final ContentIOException | IOException | ReportDataFactoryException | ReportParameterValidationException e ) {
-      if ( e.getMessage() != null && listener != null ) {
-        listener.setErrorMessage( e.getMessage() );
+      final IAsyncReportListener attached = progressListener != null ? progressListener.getAttached() : null;
+      if ( e.getMessage() != null && attached != null ) {
+        attached.setErrorMessage( e.getMessage() );
       }
       return null;
     } finally {
-      if ( listener != null ) {
-        proc.removeReportProgressListener( listener );
+      if ( parallel != null ) {
+        parallel.cancel();
+      }
+      if ( progressListener != null ) {
+        proc.removeReportProgressListener( progressListener );
       }
       if ( cacheListener != null ) {
         proc.removeReportProgressListener( cacheListener );
       }
+      if ( guard != null ) {
+        proc.removeReportProgressListener( guard );
+      }
     }
   }
 
+  /**
+   * Starts the workers of a parallel render. The calling thread renders the pages up to the requested one and claims
+   * further pages like any worker. No further workers are started once the shared pool is busy.
+   */
+  private ParallelPageRenderer startParallelRender( final MasterReport report, final int acceptedPage ) {
+    final ParallelPageRenderer renderer = new ParallelPageRenderer( Math.max( acceptedPage, 0 ) + 1 );
+    final IPentahoSession session = PentahoSessionHolder.getSession();
+    final int threads = ParallelPageRenderer.getThreads( report );
+    for ( int i = 1; i < threads; i++ ) {
+      // derived on this thread, the workers must not share report state
+      final MasterReport copy = (MasterReport) report.derive();
+      if ( !renderer.fork( selector -> renderClaimedPages( copy, selector, session ) ) ) {
+        break;
+      }
+    }
+    return renderer;
+  }
+
+  private Map<Integer, byte[]> renderClaimedPages( final MasterReport report,
+                                                   final ParallelPageRenderer.PageSelector selector,
+                                                   final IPentahoSession session ) throws Exception {
+    return callAsSession( session, () -> doRenderClaimedPages( report, selector ) );
+  }
+
+  /**
+   * Runs a task of a request on another thread with the request's session.
+   */
+  private static <T> T callAsSession( final IPentahoSession session, final Callable<T> task ) throws Exception {
+    if ( session == null ) {
+      return task.call();
+    }
+    return SecurityHelper.getInstance().runAsUser( session.getName(), () -> {
+      PentahoSessionHolder.setSession( session );
+      try {
+        return task.call();
+      } finally {
+        PentahoSessionHolder.removeSession();
+      }
+    } );
+  }
+
+  private Map<Integer, byte[]> doRenderClaimedPages( final MasterReport report,
+                                                     final ParallelPageRenderer.PageSelector selector )
+    throws ReportProcessingException, ContentIOException, IOException {
+    final AllItemsHtmlPrinter printer = createPrinter( report );
+    final Repository repository = new ZipRepository();
+    final Pair<ContentLocation, PentahoNameGenerator> pair = reinitLocationAndNameGenerator();
+    printer.setContentWriter( repository.getRoot(), selector );
+    printer.setDataWriter( pair.getKey(), pair.getValue() );
+
+    final PageableHtmlOutputProcessor outputProcessor = new PageableHtmlOutputProcessor( report.getConfiguration() );
+    outputProcessor.setPrinter( printer );
+    outputProcessor.setFlowSelector( selector );
+    final PageableReportProcessor proc = new PageableReportProcessor( report, outputProcessor );
+    proc.addReportProgressListener( selector );
+    try {
+      proc.processReport();
+      return readPages( repository, Collections.<Integer>emptySet() );
+    } finally {
+      proc.close();
+    }
+  }
+
+  private IReportContent joinParallelRender( final ParallelPageRenderer parallel, final PageableReportProcessor proc,
+                                             final Repository targetRepository )
+    throws ReportProcessingException, ContentIOException, IOException {
+    final Map<Integer, byte[]> pages = parallel.join( readPages( targetRepository, Collections.<Integer>emptySet() ) );
+    final int pageCount = proc.getLogicalPageCount();
+    final Set<Integer> missing = ParallelPageRenderer.getMissingPages( pageCount, pages );
+    if ( !missing.isEmpty() ) {
+      logger.debug( "Rendering " + missing.size() + " pages left by failed workers" );
+      final ParallelPageRenderer.PageSelector selector = parallel.createSelector( missing );
+      ( (PageableHtmlOutputProcessor) proc.getOutputProcessor() ).setFlowSelector( selector );
+      getPrinter().setContentWriter( targetRepository.getRoot(), selector );
+      proc.processReport();
+      pages.putAll( readPages( targetRepository, pages.keySet() ) );
+    }
+    return GzipReportContent.encode( pageCount, pages );
+  }
+
 
   int generateNonCaching( final MasterReport report, final int acceptedPage, final OutputStream outputStream,
                                   final int yieldRate )
@@ -361,24 +783,55 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
     return cache.getMetaData( key );
   }
 
-  private synchronized void persistContent( final String key, final IReportContent data, final int reportTotalRows ) {
+  private void persistContent( final String key, final IReportContent data, final int reportTotalRows ) {
     final IPluginCacheManager cacheManager = PentahoSystem.get( IPluginCacheManager.class );
     final IReportContentCache cache = cacheManager.getCache();
     if ( cache != null ) {
-      Map<String, Serializable> metaData = cache.getMetaData( key );
-      if ( metaData == null ) {
-        metaData = new HashMap<>();
+      synchronized ( cacheLock ) {
+        cache.put( key, data, createMetaData( cache, key, reportTotalRows ) );
       }
-      metaData.put( REPORT_ROWS, reportTotalRows );
+    } else {
+      logger.error( "Plugin session cache is not available." );
+    }
+  }
 
-      if ( processor.isQueryLimitReached() ) {
-        updateQueryLimitReachedFlag( metaData );
+  /**
+   * Writes pages that are not cached yet. The first call replaces whatever was cached for the key, later calls append
+   * to it, so every page is written to the cache once.
+   *
+   * @param cachedPages pages written so far, updated with the written pages
+   */
+  private void appendContent( final String key, final int pageCount, final Map<Integer, byte[]> pages,
+                                           final Set<Integer> cachedPages, final int reportTotalRows ) {
+    final IPluginCacheManager cacheManager = PentahoSystem.get( IPluginCacheManager.class );
+    final IReportContentCache cache = cacheManager.getCache();
+    if ( cache == null ) {
+      logger.error( "Plugin session cache is not available." );
+      return;
+    }
+    synchronized ( cacheLock ) {
+      final Map<String, Serializable> metaData = createMetaData( cache, key, reportTotalRows );
+      if ( cachedPages.isEmpty() ) {
+        cache.put( key, GzipReportContent.encode( pageCount, pages ), metaData );
+      } else {
+        cache.append( key, pageCount, pages, metaData );
       }
+      cachedPages.addAll( pages.keySet() );
+    }
+  }
 
-      cache.put( key, data, metaData );
-    } else {
-      logger.error( "Plugin session cache is not available." );
+  private Map<String, Serializable> createMetaData( final IReportContentCache cache, final String key,
+                                                    final int reportTotalRows ) {
+    Map<String, Serializable> metaData = cache.getMetaData( key );
+    if ( metaData == null ) {
+      metaData = new HashMap<>();
+    }
+    metaData.put( REPORT_ROWS, reportTotalRows );
+
+    if ( processor != null && processor.isQueryLimitReached() ) {
+      updateQueryLimitReachedFlag( metaData );
     }
+    return metaData;
   }
 
   private Map<String, Serializable> updateQueryLimitReachedFlag( Map<String, Serializable> metaData ) {
@@ -390,7 +843,7 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
     return metaData;
   }
 
-  private Serializable computeCacheKey( final MasterReport report ) throws BeanException {
+  private void computeCacheKey( final MasterReport report, final CacheKeyDigest key ) throws BeanException {
     final ResourceKey definitionSource = report.getDefinitionSource();
 
     //We need a parent because ZipRepository always has the same values
@@ -401,7 +854,7 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
     } else {
       sourceKey = computeDefSourceKey( report, definitionSource );
     }
-    final HashMap<String, String> params = new HashMap<>();
+    final TreeMap<String, String> params = new TreeMap<>();
     params.put( "query-limit", String.valueOf( report.getQueryLimit() ) );
     final ReportParameterDefinition parameterDefinition = report.getParameterDefinition();
     final ReportParameterValues parameterValues = report.getParameterValues();
@@ -414,11 +867,18 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
         params.put( name, ConverterRegistry.toAttributeValue( o ) );
       }
     }
-    final ArrayList<Object> key = new ArrayList<>();
     key.add( sourceKey );
     key.add( params );
     key.add( report.getReportEnvironment().getLocale().toString() );
-    return key;
+    if ( isSharedCache() ) {
+      //Content is shared across sessions, so it must not be served to users with a different security context
+      key.add( ReportSecurityFingerprint.compute( report ) );
+    }
+  }
+
+  private boolean isSharedCache() {
+    final IPluginCacheManager cacheManager = PentahoSystem.get( IPluginCacheManager.class );
+    return cacheManager != null && cacheManager.getCache() instanceof SharedReportContentCache;
   }
 
   private List<String> computeDefSourceKey( final MasterReport report, final ResourceKey definitionSource ) {
@@ -437,14 +897,12 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
 
   private String getRawDataVersion( final MasterReport report, final ResourceKey definitionSource ) {
     String result = null;
-    ResourceManager resourceManager = report.getResourceManager();
-    if ( resourceManager == null ) {
-      resourceManager = new ResourceManager();
-    }
-    final ResourceData resourceData;
+    final ResourceManager resourceManager =
+      report.getResourceManager() != null ? report.getResourceManager() : new ResourceManager();
     try {
-      resourceData = resourceManager.loadRawData( definitionSource );
-      final long version = resourceData.getVersion( resourceManager );
+      // memoized, so a cache hit does not ask the repository for the report file
+      final long version = DefinitionVersionCache.getVersion( definitionSource,
+        key -> resourceManager.loadRawData( key ).getVersion( resourceManager ) );
       if ( version != -1 ) {
         result = String.valueOf( version );
       }
@@ -454,25 +912,13 @@ public class CachingPageableHTMLOutput extends PageableHTMLOutput {
     return result;
   }
 
-  private byte[] keyToBytes( final Serializable s ) throws IOException {
-    final ByteArrayOutputStream bout = new ByteArrayOutputStream();
-    final ObjectOutputStream oout = new ObjectOutputStream( bout );
-    oout.writeObject( s );
-    oout.close();
-    bout.toByteArray();
-    return bout.toByteArray();
-  }
-
-  // will be 43 characters long. Good enough for a directory name, even on Windows.
+  // will be 44 characters long. Good enough for a directory name, even on Windows.
   public String createKey( final MasterReport report )
     throws CacheKeyException {
     try {
-      final Serializable keyRaw = computeCacheKey( report );
-      final byte[] text = keyToBytes( keyRaw );
-      final MessageDigest md = MessageDigest.getInstance( "SHA-256" );
-      md.update( text ); // Change this to "UTF-16" if needed
-      final byte[] digest = md.digest();
-      return new String( Base64.encode( digest ) );
+      final CacheKeyDigest key = new CacheKeyDigest();
+      computeCacheKey( report, key );
+      return key.digest();
     } catch ( final Exception b ) {
       throw new CacheKeyException( b );
     }
@@ -48,8 +48,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class PageableHTMLOutput extends AbstractHtmlOutput {
 
@@ -93,8 +95,7 @@ public class PageableHTMLOutput extends AbstractHtmlOutput {
 
     proxyOutputStream = new ProxyOutputStream();
 
-    printer = new AllItemsHtmlPrinter( report.getResourceManager() );
-    printer.setUrlRewriter( new PentahoURLRewriter( getContentHandlerPattern(), shouldUseContentIdAsName() ) );
+    printer = createPrinter( report );
 
     final PageableHtmlOutputProcessor outputProcessor = new PageableHtmlOutputProcessor( report.getConfiguration() );
     outputProcessor.setPrinter( printer );
@@ -107,6 +108,12 @@ public class PageableHTMLOutput extends AbstractHtmlOutput {
     return proc;
   }
 
+  protected AllItemsHtmlPrinter createPrinter( final MasterReport report ) {
+    final AllItemsHtmlPrinter htmlPrinter = new AllItemsHtmlPrinter( report.getResourceManager() );
+    htmlPrinter.setUrlRewriter( new PentahoURLRewriter( getContentHandlerPattern(), shouldUseContentIdAsName() ) );
+    return htmlPrinter;
+  }
+
   protected boolean shouldUseContentIdAsName() {
     return false;
   }
@@ -292,6 +299,18 @@ public class PageableHTMLOutput extends AbstractHtmlOutput {
                                                  final Repository targetRepository )
           throws ContentIOException, IOException {
     final int pageCount = proc.getLogicalPageCount();
+    return new ReportContentImpl( pageCount, readPages( targetRepository, Collections.<Integer>emptySet() ) );
+  }
+
+  /**
+   * Reads the pages generated so far.
+   *
+   * @param targetRepository repository the pages are generated to
+   * @param skip             pages that are not read
+   * @return page data by page number
+   */
+  protected Map<Integer, byte[]> readPages( final Repository targetRepository, final Set<Integer> skip )
+          throws ContentIOException, IOException {
     final ContentLocation root = targetRepository.getRoot();
     final Map<Integer, byte[]> pages = new HashMap<>();
 
@@ -300,12 +319,12 @@ public class PageableHTMLOutput extends AbstractHtmlOutput {
         final ContentItem ci = (ContentItem) contentEntities;
         final String name = ci.getName();
         final int pageNumber = extractPageFromName( name );
-        if ( pageNumber >= 0 ) {
+        if ( pageNumber >= 0 && !skip.contains( pageNumber ) ) {
           pages.put( pageNumber, read( ci.getInputStream() ) );
         }
       }
     }
-    return new ReportContentImpl( pageCount, pages );
+    return pages;
   }
 
   private byte[] read( final InputStream in ) throws IOException {
@@ -13,10 +13,10 @@
 
 package org.pentaho.reporting.platform.plugin.output;
 
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.commons.lang.StringEscapeUtils;
-import org.apache.commons.lang.text.StrSubstitutor;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.platform.api.engine.IApplicationContext;
@@ -24,15 +24,24 @@ import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.util.StringUtil;
 import org.pentaho.reporting.platform.plugin.cache.IReportContent;
 
+import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Writes a paginated html report as a single document with pagination controls. The pages are processed and written
+ * one at a time, so the memory needed does not grow with the number of pages.
+ */
 class PaginationControlWrapper {
 
   private PaginationControlWrapper() {
@@ -41,81 +50,137 @@ class PaginationControlWrapper {
   private static Log logger = LogFactory.getLog( PaginationControlWrapper.class );
   private static final String TEMPLATE_PATH = "system/reporting/reportviewer/paginationTemplate.html";
   private static final String STAGING_PATH = "system/tmp/";
+  private static final String PAGES = "${pages}";
+  private static final String IMAGE_LINK = "/getImage?image=";
   private static final Pattern CSS = Pattern.compile( "(.*link.*\\/getImage\\?image=)(.*)(\".*)" );
   private static final Pattern IMG = Pattern.compile( "(.*img.*src=\")(http.+)(\\/getImage\\?image=)(.*)(\".*)" );
 
   private static String pageableHtml;
 
   public static void write( final OutputStream stream, final IReportContent content ) throws IOException {
-
-    final StringBuilder builder = new StringBuilder();
-
+    final String template;
     synchronized ( TEMPLATE_PATH ) {
       if ( StringUtil.isEmpty( pageableHtml ) ) {
         pageableHtml = getSolutionDirFileContent( TEMPLATE_PATH );
       }
+      template = pageableHtml;
     }
 
-    final String pages = getPageArray( content, builder );
-
-    final StrSubstitutor substitutor = new StrSubstitutor( Collections.singletonMap( "pages", pages ) );
-    final String filledTemplate = substitutor.replace( pageableHtml );
-
-    stream.write( filledTemplate.getBytes() );
-    stream.flush();
-
+    final OutputStream out = new BufferedOutputStream( stream );
+    final int index = template.indexOf( PAGES );
+    if ( index < 0 ) {
+      out.write( template.getBytes() );
+    } else {
+      out.write( template.substring( 0, index ).getBytes() );
+      writePageArray( out, content );
+      out.write( template.substring( index + PAGES.length() ).getBytes() );
+    }
+    out.flush();
   }
 
-  private static String getPageArray( final IReportContent content, final StringBuilder builder ) throws IOException {
-    builder.append( "var pages = [ " );
+  private static void writePageArray( final OutputStream out, final IReportContent content ) throws IOException {
+    final PageRewriter rewriter = new PageRewriter();
+    writeAscii( out, "var pages = [ " );
     int index = 0;
     byte[] page = content.getPageData( index );
     while ( page != null ) {
-      String pageContent = new String( page, "UTF-8" );
-      try {
-        pageContent = embedCss( pageContent );
-        pageContent = replaceImgSrc( pageContent );
-      } catch ( final IOException e ) {
-        //Can't embed, let's not fail and at least make it usable inside the platform
-        logger.error( "Can't embed styles and images into scheduled HTML file: ", e );
+      if ( index > 0 ) {
+        writeAscii( out, ", \n" );
       }
-      builder.append( '\'' )
-        .append( Base64.encodeBase64String( StringEscapeUtils.escapeHtml( pageContent ).getBytes( "UTF-8" ) ) )
-        .append( '\'' )
-        .append( ", \n" );
+      out.write( '\'' );
+      writePage( out, rewriter.rewrite( new String( page, StandardCharsets.UTF_8 ) ) );
+      out.write( '\'' );
       index++;
       page = content.getPageData( index );
     }
-    //don't need comma in the end
-    builder.setLength( builder.length() - 3 );
-    builder.append( " ];\n" );
-    return builder.toString();
+    writeAscii( out, " ];\n" );
   }
 
-  private static String embedCss( String pageContent ) throws IOException {
-    Matcher cssLinkMatcher = CSS.matcher( pageContent );
-    while ( cssLinkMatcher.find() && cssLinkMatcher.groupCount() > 1 ) {
-      final String cssContent = getSolutionDirFileContent( STAGING_PATH + cssLinkMatcher.group( 2 ) );
-      pageContent = cssLinkMatcher.replaceFirst( "<style>\n" + cssContent + "\n</style>" );
-      cssLinkMatcher = CSS.matcher( pageContent );
+  /**
+   * Writes the html escaped and base64 encoded page.
+   */
+  private static void writePage( final OutputStream out, final String pageContent ) throws IOException {
+    // closing the base64 stream writes the final block, the shield keeps the output open
+    try ( Writer writer = new OutputStreamWriter(
+      new Base64OutputStream( CloseShieldOutputStream.wrap( out ), true, 0, null ), StandardCharsets.UTF_8 ) ) {
+      StringEscapeUtils.escapeHtml( writer, pageContent );
     }
-    return pageContent;
   }
 
-  private static String replaceImgSrc( String pageContent ) throws IOException {
-    String fullyQualifiedServerUrl = PentahoSystem.getApplicationContext().getFullyQualifiedServerURL();
-    URL url = new URL( fullyQualifiedServerUrl );
-    String garbage = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
-    String prefix = fullyQualifiedServerUrl.substring( garbage.length(), fullyQualifiedServerUrl.length() - 1 );
-
-    Matcher imgLinkMatcher = IMG.matcher( pageContent );
-    while ( imgLinkMatcher.find() && imgLinkMatcher.groupCount() > 1 ) {
-      String imgContent = imgLinkMatcher.group( 0 );
-      imgContent = imgContent.replace( imgLinkMatcher.group( 2 ), prefix );
-      pageContent = imgLinkMatcher.replaceFirst( imgContent );
-      imgLinkMatcher = IMG.matcher( pageContent );
+  private static void writeAscii( final OutputStream out, final String text ) throws IOException {
+    out.write( text.getBytes( StandardCharsets.US_ASCII ) );
+  }
+
+  /**
+   * Embeds the stylesheets and makes the image links relative to the server. Stylesheets are read once per document,
+   * all pages link the same ones.
+   */
+  private static final class PageRewriter {
+    private final Map<String, String> styles = new HashMap<>();
+    private String serverPrefix;
+
+    private String rewrite( final String pageContent ) {
+      if ( !pageContent.contains( IMAGE_LINK ) ) {
+        return pageContent;
+      }
+      String result = pageContent;
+      try {
+        result = embedCss( result );
+        result = replaceImgSrc( result );
+      } catch ( final IOException e ) {
+        //Can't embed, let's not fail and at least make it usable inside the platform
+        logger.error( "Can't embed styles and images into scheduled HTML file: ", e );
+      }
+      return result;
+    }
+
+    private String embedCss( final String pageContent ) throws IOException {
+      final Matcher cssLinkMatcher = CSS.matcher( pageContent );
+      if ( !cssLinkMatcher.find() ) {
+        return pageContent;
+      }
+      final StringBuilder result = new StringBuilder( pageContent.length() );
+      do {
+        final String cssContent = getStyle( cssLinkMatcher.group( 2 ) );
+        cssLinkMatcher.appendReplacement( result, Matcher.quoteReplacement( "<style>\n" + cssContent + "\n</style>" ) );
+      } while ( cssLinkMatcher.find() );
+      cssLinkMatcher.appendTail( result );
+      return result.toString();
+    }
+
+    private String replaceImgSrc( final String pageContent ) throws IOException {
+      final Matcher imgLinkMatcher = IMG.matcher( pageContent );
+      if ( !imgLinkMatcher.find() ) {
+        return pageContent;
+      }
+      final String prefix = getServerPrefix();
+      final StringBuilder result = new StringBuilder( pageContent.length() );
+      do {
+        final String imgContent = imgLinkMatcher.group( 0 ).replace( imgLinkMatcher.group( 2 ), prefix );
+        imgLinkMatcher.appendReplacement( result, Matcher.quoteReplacement( imgContent ) );
+      } while ( imgLinkMatcher.find() );
+      imgLinkMatcher.appendTail( result );
+      return result.toString();
+    }
+
+    private String getStyle( final String name ) throws IOException {
+      String cssContent = styles.get( name );
+      if ( cssContent == null ) {
+        cssContent = getSolutionDirFileContent( STAGING_PATH + name );
+        styles.put( name, cssContent );
+      }
+      return cssContent;
+    }
+
+    private String getServerPrefix() throws IOException {
+      if ( serverPrefix == null ) {
+        String fullyQualifiedServerUrl = PentahoSystem.getApplicationContext().getFullyQualifiedServerURL();
+        URL url = new URL( fullyQualifiedServerUrl );
+        String garbage = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+        serverPrefix = fullyQualifiedServerUrl.substring( garbage.length(), fullyQualifiedServerUrl.length() - 1 );
+      }
+      return serverPrefix;
     }
-    return pageContent;
   }
 
   private static String getSolutionDirFileContent( final String path ) throws IOException {
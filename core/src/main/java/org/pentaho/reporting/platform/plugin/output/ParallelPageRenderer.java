@@ -0,0 +1,318 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.output;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.engine.classic.core.MasterReport;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
+import org.pentaho.reporting.engine.classic.core.layout.output.FlowSelector;
+import org.pentaho.reporting.engine.classic.core.layout.output.LogicalPageKey;
+import org.pentaho.reporting.engine.classic.core.layout.output.PhysicalPageKey;
+import org.pentaho.reporting.libraries.repository.NameGenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the pages of a paginated html report on several threads. Every worker paginates its own copy of the report
+ * and then renders the pages nobody else claimed yet, so a fast worker takes over pages a slow one would have
+ * rendered. The thread that started the render takes part as owner {@link #MAIN} and always renders the pages up to
+ * the requested one, so they are available as early as without parallel rendering.
+ * <p>
+ * The workers of all reports share a bounded pool. Workers that don't fit into it are not started, their pages are
+ * rendered by the remaining threads, so a busy server falls back to rendering on the calling thread only.
+ */
+final class ParallelPageRenderer {
+
+  private static final Log logger = LogFactory.getLog( ParallelPageRenderer.class );
+
+  /**
+   * Enables parallel rendering for a report or globally.
+   */
+  static final String ENABLED = "org.pentaho.reporting.platform.plugin.output.ParallelPagination";
+  /**
+   * Number of threads rendering one report, including the calling thread. Defaults to the number of processors.
+   */
+  static final String THREADS = "org.pentaho.reporting.platform.plugin.output.ParallelPaginationThreads";
+  /**
+   * Global upper bound of {@link #THREADS}.
+   */
+  static final String MAX_THREADS = "org.pentaho.reporting.platform.plugin.output.ParallelPaginationMaxThreads";
+  /**
+   * Global number of worker threads shared by all reports. Defaults to the number of processors.
+   */
+  static final String POOL_THREADS = "org.pentaho.reporting.platform.plugin.output.ParallelPaginationPoolThreads";
+
+  static final int MAIN = 0;
+  private static final int DEFAULT_MAX_THREADS = 4;
+
+  interface Worker {
+    /**
+     * Paginates a copy of the report and renders the pages accepted by the selector.
+     *
+     * @param selector flow selector and content name generator of the worker
+     * @return rendered pages by page number
+     */
+    Map<Integer, byte[]> render( PageSelector selector ) throws Exception;
+  }
+
+  private final int reserved;
+  private final ExecutorService executor;
+  private final Map<Integer, Integer> owners = new ConcurrentHashMap<>();
+  private final List<Future<Map<Integer, byte[]>>> tasks = new ArrayList<>();
+  private volatile boolean closed;
+
+  /**
+   * @param reserved number of leading pages rendered by {@link #MAIN}
+   */
+  ParallelPageRenderer( final int reserved ) {
+    this( reserved, WorkerPool.EXECUTOR );
+  }
+
+  /**
+   * @param executor runs the workers
+   */
+  ParallelPageRenderer( final int reserved, final ExecutorService executor ) {
+    this.reserved = reserved;
+    this.executor = executor;
+  }
+
+  static boolean isEnabled( final MasterReport report ) {
+    return "true".equals( report.getConfiguration().getConfigProperty( ENABLED ) );
+  }
+
+  static int getThreads( final MasterReport report ) {
+    final int threads = parseThreads( THREADS, report.getConfiguration().getConfigProperty( THREADS ),
+      Runtime.getRuntime().availableProcessors() );
+    final int maximum = parseThreads( MAX_THREADS,
+      ClassicEngineBoot.getInstance().getGlobalConfig().getConfigProperty( MAX_THREADS ), DEFAULT_MAX_THREADS );
+    return Math.max( 1, Math.min( threads, maximum ) );
+  }
+
+  private static int parseThreads( final String name, final String value, final int defaultValue ) {
+    if ( value != null ) {
+      try {
+        return Integer.parseInt( value.trim() );
+      } catch ( final NumberFormatException e ) {
+        logger.warn( "Invalid value of " + name + ": " + value );
+      }
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Workers of all reports, created on first use. The queue holds as many workers as there are threads.
+   */
+  private static final class WorkerPool {
+    private static final ExecutorService EXECUTOR = createPool();
+
+    private static ExecutorService createPool() {
+      final int threads = Math.max( 1, parseThreads( POOL_THREADS,
+        ClassicEngineBoot.getInstance().getGlobalConfig().getConfigProperty( POOL_THREADS ),
+        Runtime.getRuntime().availableProcessors() ) );
+      final ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>( threads ), r -> {
+          final Thread thread = Executors.defaultThreadFactory().newThread( r );
+          thread.setDaemon( true );
+          thread.setName( "ParallelPageRenderer Worker" );
+          return thread;
+        } );
+      executor.allowCoreThreadTimeOut( true );
+      return executor;
+    }
+  }
+
+  /**
+   * Starts a worker on the shared pool. Workers get the owner ids following {@link #MAIN}.
+   *
+   * @return false if the pool is busy and the worker was not started
+   */
+  synchronized boolean fork( final Worker worker ) {
+    final PageSelector selector = new PageSelector( tasks.size() + 1, null );
+    final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    final Future<Map<Integer, byte[]>> task;
+    try {
+      task = executor.submit( () -> {
+        if ( closed ) {
+          return new HashMap<Integer, byte[]>();
+        }
+        final Thread thread = Thread.currentThread();
+        final ClassLoader previous = thread.getContextClassLoader();
+        thread.setContextClassLoader( loader );
+        try {
+          return worker.render( selector );
+        } finally {
+          thread.setContextClassLoader( previous );
+          // a worker stopped by close() interrupts itself
+          Thread.interrupted();
+        }
+      } );
+    } catch ( final RejectedExecutionException e ) {
+      logger.debug( "Parallel page rendering pool is busy, not starting another worker" );
+      return false;
+    }
+    tasks.add( task );
+    return true;
+  }
+
+  /**
+   * Creates the selector of a thread claiming pages.
+   */
+  PageSelector createSelector( final int owner ) {
+    return new PageSelector( owner, null );
+  }
+
+  /**
+   * Creates a selector accepting exactly the given pages, without claiming them.
+   */
+  PageSelector createSelector( final Set<Integer> pages ) {
+    return new PageSelector( MAIN, pages );
+  }
+
+  /**
+   * Claims a page for an owner. Repeated claims of the same page by its owner succeed.
+   *
+   * @return true if the owner renders the page
+   */
+  boolean claim( final int owner, final int page ) {
+    if ( page < reserved ) {
+      return owner == MAIN;
+    }
+    final Integer current = owners.get( page );
+    if ( current != null ) {
+      return current == owner;
+    }
+    if ( closed ) {
+      return false;
+    }
+    final Integer previous = owners.putIfAbsent( page, owner );
+    return previous == null || previous == owner;
+  }
+
+  /**
+   * Stops further claims, waits for the workers and merges their pages. Workers still paginating are stopped, failed
+   * workers are logged, their pages are reported by {@link #getMissingPages(int, Map)}.
+   *
+   * @param pages pages of {@link #MAIN}
+   * @return all rendered pages
+   */
+  Map<Integer, byte[]> join( final Map<Integer, byte[]> pages ) {
+    closed = true;
+    final Map<Integer, byte[]> result = new HashMap<>( pages );
+    for ( final Future<Map<Integer, byte[]>> task : getTasks() ) {
+      try {
+        result.putAll( task.get() );
+      } catch ( final ExecutionException e ) {
+        logger.warn( "Parallel page rendering failed, missing pages are rendered again: ", e.getCause() );
+      } catch ( final CancellationException e ) {
+        logger.debug( "Parallel page rendering was canceled, missing pages are rendered again" );
+      } catch ( final InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        cancel();
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Stops the workers without waiting for them.
+   */
+  void cancel() {
+    closed = true;
+    for ( final Future<Map<Integer, byte[]>> task : getTasks() ) {
+      task.cancel( true );
+    }
+  }
+
+  private synchronized List<Future<Map<Integer, byte[]>>> getTasks() {
+    return new ArrayList<>( tasks );
+  }
+
+  static Set<Integer> getMissingPages( final int pageCount, final Map<Integer, byte[]> pages ) {
+    final Set<Integer> missing = new TreeSet<>();
+    for ( int i = 0; i < pageCount; i++ ) {
+      if ( !pages.containsKey( i ) ) {
+        missing.add( i );
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * Flow selector of one thread. It also names the content items after the page accepted last, as the pages of a
+   * thread are not consecutive, and stops a worker that still paginates when the render is over.
+   */
+  final class PageSelector implements FlowSelector, NameGenerator, ReportProgressListener {
+    private final int owner;
+    private final Set<Integer> pages;
+    private volatile int page = -1;
+
+    private PageSelector( final int owner, final Set<Integer> pages ) {
+      this.owner = owner;
+      this.pages = pages;
+    }
+
+    @Override public boolean isLogicalPageAccepted( final LogicalPageKey key ) {
+      if ( key == null ) {
+        return false;
+      }
+      final int position = key.getPosition();
+      final boolean accepted = pages != null ? pages.contains( position ) : claim( owner, position );
+      if ( accepted ) {
+        page = position;
+      }
+      return accepted;
+    }
+
+    @Override public boolean isPhysicalPageAccepted( final PhysicalPageKey key ) {
+      return false;
+    }
+
+    @Override public String generateName( final String nameHint, final String mimeType ) {
+      return "page-" + page + ".html";
+    }
+
+    @Override public void reportProcessingStarted( final ReportProgressEvent event ) {
+      //ignore
+    }
+
+    @Override public void reportProcessingUpdate( final ReportProgressEvent event ) {
+      if ( closed && owner != MAIN && event.getActivity() != ReportProgressEvent.GENERATING_CONTENT ) {
+        // all pages are claimed, the pagination would be for nothing
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override public void reportProcessingFinished( final ReportProgressEvent event ) {
+      //ignore
+    }
+  }
+}
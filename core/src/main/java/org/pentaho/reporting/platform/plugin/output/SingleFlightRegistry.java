@@ -0,0 +1,172 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.output;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Registry of in-flight computations. The first caller joining a key becomes the leader and starts the computation,
+ * callers joining the same key while it runs become followers and wait for its result.
+ * <p>
+ * The leader computes on its own thread and counts as a waiter until it completes the flight or hands it over to the
+ * followers. A caller leaving (e.g. because its request was canceled) never affects the computation as long as
+ * somebody is still waiting for it, the last caller leaving runs the flight's cancel action.
+ * When the computation stops without a result, the flight is abandoned and callers still waiting join again.
+ *
+ * @param <V> result type
+ */
+final class SingleFlightRegistry<V> {
+
+  private final ConcurrentMap<String, Flight<V>> flights = new ConcurrentHashMap<>();
+
+  /**
+   * @param key flight key
+   * @return the running flight for the key or a new one led by the current thread
+   */
+  Flight<V> join( final String key ) {
+    while ( true ) {
+      final Flight<V> created = new Flight<>( this, key );
+      final Flight<V> existing = flights.putIfAbsent( key, created );
+      if ( existing == null ) {
+        return created;
+      }
+      if ( existing.addWaiter() ) {
+        return existing;
+      }
+      // the flight is about to finish, don't wait for it
+      flights.remove( key, existing );
+    }
+  }
+
+  int size() {
+    return flights.size();
+  }
+
+  static final class Flight<V> {
+    private final SingleFlightRegistry<V> registry;
+    private final String key;
+    private final Thread leader;
+    private final CompletableFuture<V> result = new CompletableFuture<>();
+    private int waiters = 1;
+    private boolean closed;
+    private Runnable cancelAction;
+
+    private Flight( final SingleFlightRegistry<V> registry, final String key ) {
+      this.registry = registry;
+      this.key = key;
+      this.leader = Thread.currentThread();
+    }
+
+    boolean isLeader() {
+      return leader == Thread.currentThread();
+    }
+
+    synchronized int getWaiters() {
+      return waiters;
+    }
+
+    private synchronized boolean addWaiter() {
+      if ( closed ) {
+        return false;
+      }
+      waiters++;
+      return true;
+    }
+
+    /**
+     * @param cancelAction stops the computation once nobody waits for it anymore
+     */
+    synchronized void setCancelAction( final Runnable cancelAction ) {
+      this.cancelAction = cancelAction;
+    }
+
+    /**
+     * Called by a leader whose caller stopped waiting while the computation goes on for the followers.
+     *
+     * @return false if nobody else waits, the leader then stays
+     */
+    synchronized boolean handOver() {
+      if ( closed || waiters <= 1 ) {
+        return false;
+      }
+      waiters--;
+      return true;
+    }
+
+    /**
+     * Called by a caller that stops waiting. The last one leaving a running flight cancels it.
+     */
+    void leave() {
+      final Runnable action;
+      synchronized ( this ) {
+        if ( closed || waiters == 0 ) {
+          return;
+        }
+        waiters--;
+        if ( waiters > 0 ) {
+          return;
+        }
+        action = cancelAction;
+        close();
+      }
+      if ( action != null ) {
+        action.run();
+      }
+    }
+
+    private synchronized void close() {
+      closed = true;
+      waiters = 0;
+      registry.flights.remove( key, this );
+    }
+
+    void complete( final V value ) {
+      close();
+      result.complete( value );
+    }
+
+    void fail( final Throwable t ) {
+      close();
+      result.completeExceptionally( t );
+    }
+
+    /**
+     * Called when the computation stopped without a result. Callers get {@link AbandonedException} and may join again.
+     */
+    void abandon() {
+      close();
+      result.completeExceptionally( new AbandonedException() );
+    }
+
+    /**
+     * @return the result of the computation
+     * @throws TimeoutException   if the computation is still running after the given time
+     * @throws ExecutionException if the computation failed, cause is {@link AbandonedException} if it was abandoned
+     */
+    V await( final long timeout, final TimeUnit unit )
+      throws InterruptedException, ExecutionException, TimeoutException {
+      return result.get( timeout, unit );
+    }
+  }
+
+  static final class AbandonedException extends Exception {
+    private AbandonedException() {
+      super( "Flight was abandoned" );
+    }
+  }
+}
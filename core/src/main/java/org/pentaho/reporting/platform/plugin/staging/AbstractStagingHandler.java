@@ -15,6 +15,7 @@ package org.pentaho.reporting.platform.plugin.staging;
 
 import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.reporting.engine.classic.core.util.StagingMode;
+import org.pentaho.reporting.libraries.base.config.Configuration;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -45,5 +46,20 @@ public abstract class AbstractStagingHandler implements StagingHandler {
     }
   }
 
+  /**
+   * Like {@link #getStagingHandlerImpl(OutputStream, IPentahoSession, StagingMode)}, but stages MEMORY and TMPFILE
+   * adaptively if the configuration enables it.
+   */
+  public static StagingHandler getStagingHandlerImpl( final OutputStream outputStream,
+                                                      final IPentahoSession userSession, final StagingMode mode,
+                                                      final Configuration configuration ) throws IOException {
+    if ( configuration != null && AdaptiveStagingHandler.isEnabled( configuration )
+        && ( mode.equals( StagingMode.MEMORY ) || mode.equals( StagingMode.TMPFILE ) ) ) {
+      final int threshold = AdaptiveStagingHandler.getThreshold( configuration );
+      return new AdaptiveStagingHandler( outputStream, userSession, threshold );
+    }
+    return getStagingHandlerImpl( outputStream, userSession, mode );
+  }
+
   protected abstract void initialize() throws IOException;
 }
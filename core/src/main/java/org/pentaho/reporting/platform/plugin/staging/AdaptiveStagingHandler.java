@@ -0,0 +1,229 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.api.engine.IApplicationContext;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.engine.classic.core.util.StagingMode;
+import org.pentaho.reporting.libraries.base.config.Configuration;
+import org.pentaho.reporting.platform.plugin.TrackingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stages in pooled memory chunks up to a threshold and moves the content to a temp file once it grows larger, or when
+ * the memory of all adaptive handlers together is used up. Small responses never touch the disk, large ones never
+ * hold more than the threshold in memory.
+ */
+public class AdaptiveStagingHandler extends AbstractStagingHandler {
+
+  private static final Log logger = LogFactory.getLog( AdaptiveStagingHandler.class );
+
+  /**
+   * Replaces the MEMORY and TMPFILE staging modes, for a report or globally.
+   */
+  public static final String ENABLED = "org.pentaho.reporting.platform.plugin.staging.AdaptiveStaging";
+  /**
+   * Bytes of content staged in memory before it is moved to a temp file.
+   */
+  public static final String THRESHOLD = "org.pentaho.reporting.platform.plugin.staging.AdaptiveStagingThreshold";
+  private static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+  private static String PREFIX = "repstg";
+  private static String POSTFIX = ".tmp";
+
+  private final StagingBufferPool pool;
+  private final int threshold;
+  private final List<byte[]> chunks = new ArrayList<>();
+  private int chunkPosition = StagingBufferPool.CHUNK_SIZE;
+  private TrackingOutputStream trackingStream;
+  private OutputStream fileStream;
+  // same-package junit test access
+  File tmpFile;
+
+  public AdaptiveStagingHandler( final OutputStream outputStream, final IPentahoSession userSession,
+                                 final int threshold ) throws IOException {
+    this( outputStream, userSession, threshold, StagingBufferPool.getInstance() );
+  }
+
+  AdaptiveStagingHandler( final OutputStream outputStream, final IPentahoSession userSession, final int threshold,
+                          final StagingBufferPool pool ) throws IOException {
+    super( outputStream, userSession );
+    this.threshold = threshold;
+    this.pool = pool;
+  }
+
+  public static boolean isEnabled( final Configuration configuration ) {
+    return "true".equals( configuration.getConfigProperty( ENABLED ) );
+  }
+
+  public static int getThreshold( final Configuration configuration ) {
+    final String value = configuration.getConfigProperty( THRESHOLD );
+    if ( value != null ) {
+      try {
+        return Integer.parseInt( value.trim() );
+      } catch ( final NumberFormatException e ) {
+        logger.warn( "Invalid value of " + THRESHOLD + ": " + value );
+      }
+    }
+    return DEFAULT_THRESHOLD;
+  }
+
+  @Override
+  protected void initialize() {
+    logger.trace( "Staging mode set - ADAPTIVE" );
+    // the fields of this class are not assigned yet, the stream reads them on write
+    trackingStream = new TrackingOutputStream( new StagingStream() );
+  }
+
+  /**
+   * Write the staged content to the output stream passed in constructor.
+   *
+   * @throws IOException
+   */
+  @Override
+  public void complete() throws IOException {
+    if ( fileStream != null ) {
+      fileStream.close();
+      FileTransfer.transferTo( tmpFile, outputStream );
+      return;
+    }
+    long remaining = trackingStream.getTrackingSize();
+    for ( final byte[] chunk : chunks ) {
+      final int length = (int) Math.min( remaining, chunk.length );
+      outputStream.write( chunk, 0, length );
+      remaining -= length;
+    }
+  }
+
+  /**
+   * Return the memory chunks to the pool, delete the temp file.
+   */
+  @Override
+  public void close() {
+    releaseChunks();
+    IOUtils.closeQuietly( fileStream );
+    if ( tmpFile != null && tmpFile.exists() ) {
+      if ( !tmpFile.delete() ) {
+        logger.debug( "Unable to delete temp file for user: " + userSession.getName() );
+      }
+    }
+  }
+
+  private void releaseChunks() {
+    for ( final byte[] chunk : chunks ) {
+      pool.release( chunk );
+    }
+    chunks.clear();
+  }
+
+  /**
+   * Moves the chunks written so far to a temp file, further content is written to the file.
+   */
+  private void spill() throws IOException {
+    final IApplicationContext appCtx = PentahoSystem.getApplicationContext();
+    // Use the deleter framework for safety...
+    tmpFile = appCtx.createTempFile( userSession, PREFIX, POSTFIX, true );
+    fileStream = new BufferedOutputStream( new FileOutputStream( tmpFile ) );
+    logger.trace( "Staging content exceeds memory, moved to temp file" );
+
+    for ( int i = 0; i < chunks.size(); i++ ) {
+      final byte[] chunk = chunks.get( i );
+      fileStream.write( chunk, 0, i == chunks.size() - 1 ? chunkPosition : chunk.length );
+    }
+    releaseChunks();
+  }
+
+  private byte[] nextChunk() {
+    if ( ( chunks.size() + 1L ) * StagingBufferPool.CHUNK_SIZE > threshold ) {
+      return null;
+    }
+    return pool.acquire();
+  }
+
+  @Override public long getWrittenByteCount() {
+    return trackingStream.getTrackingSize();
+  }
+
+  @Override
+  public boolean canSendHeaders() {
+    return true;
+  }
+
+  @Override
+  public OutputStream getStagingOutputStream() {
+    return trackingStream;
+  }
+
+  @Override
+  public boolean isFullyBuffered() {
+    return true;
+  }
+
+  /**
+   * @return MEMORY while the content fits into memory, TMPFILE afterwards
+   */
+  @Override
+  public StagingMode getStagingMode() {
+    return fileStream == null ? StagingMode.MEMORY : StagingMode.TMPFILE;
+  }
+
+  private class StagingStream extends OutputStream {
+    @Override public void write( final int b ) throws IOException {
+      if ( fileStream == null && chunkPosition < StagingBufferPool.CHUNK_SIZE ) {
+        chunks.get( chunks.size() - 1 )[ chunkPosition++ ] = (byte) b;
+      } else {
+        write( new byte[] { (byte) b }, 0, 1 );
+      }
+    }
+
+    @Override public void write( final byte[] b, int off, int len ) throws IOException {
+      while ( fileStream == null && len > 0 ) {
+        if ( chunkPosition == StagingBufferPool.CHUNK_SIZE ) {
+          final byte[] chunk = nextChunk();
+          if ( chunk == null ) {
+            spill();
+            break;
+          }
+          chunks.add( chunk );
+          chunkPosition = 0;
+        }
+        final int length = Math.min( len, StagingBufferPool.CHUNK_SIZE - chunkPosition );
+        System.arraycopy( b, off, chunks.get( chunks.size() - 1 ), chunkPosition, length );
+        chunkPosition += length;
+        off += length;
+        len -= length;
+      }
+      if ( len > 0 ) {
+        fileStream.write( b, off, len );
+      }
+    }
+
+    @Override public void flush() throws IOException {
+      if ( fileStream != null ) {
+        fileStream.flush();
+      }
+    }
+  }
+}
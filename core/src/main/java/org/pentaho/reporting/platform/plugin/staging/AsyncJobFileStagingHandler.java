@@ -32,8 +32,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Async stage handler. Write to TEMP file but: - live between requests. - require to re-set output stream for
@@ -175,6 +177,17 @@ public class AsyncJobFileStagingHandler {
       return stagingInputStream;
     }
 
+    @Override public void writeTo( final OutputStream out ) throws IOException {
+      FileTransfer.transferTo( tmpFile, out );
+    }
+
+    @Override public void writeTo( final OutputStream out, final long position, final long count )
+      throws IOException {
+      try ( FileChannel channel = FileChannel.open( tmpFile.toPath(), StandardOpenOption.READ ) ) {
+        FileTransfer.transferTo( channel, position, count, out );
+      }
+    }
+
     @Override public long getContentSize() {
       return size;
     }
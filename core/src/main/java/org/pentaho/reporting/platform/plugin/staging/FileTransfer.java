@@ -0,0 +1,95 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies staged files to the destination without stream wrappers. Destinations backed by a channel get the content by
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets the operating system copy it. Plain
+ * streams, like servlet streams, get it in large blocks read from the file channel.
+ */
+public final class FileTransfer {
+
+  private static final int BLOCK_SIZE = 256 * 1024;
+
+  private FileTransfer() {
+  }
+
+  /**
+   * Writes the whole file, the stream is not closed.
+   */
+  public static void transferTo( final File file, final OutputStream out ) throws IOException {
+    try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+      transferTo( channel, 0, channel.size(), out );
+    }
+  }
+
+  /**
+   * Writes a part of the file, the stream is not closed.
+   *
+   * @param channel  file to read
+   * @param position first byte to write
+   * @param count    number of bytes to write
+   * @param out      destination
+   * @throws EOFException if the file ends before count bytes are written
+   */
+  public static void transferTo( final FileChannel channel, long position, long count, final OutputStream out )
+    throws IOException {
+    final WritableByteChannel target = getChannel( out );
+    if ( target != null ) {
+      while ( count > 0 ) {
+        final long written = channel.transferTo( position, count, target );
+        if ( written <= 0 && position >= channel.size() ) {
+          throw new EOFException( "Staged file ends before byte " + position );
+        }
+        position += written;
+        count -= written;
+      }
+      return;
+    }
+
+    final byte[] block = new byte[ (int) Math.max( 1, Math.min( BLOCK_SIZE, count ) ) ];
+    final ByteBuffer buffer = ByteBuffer.wrap( block );
+    while ( count > 0 ) {
+      buffer.clear();
+      buffer.limit( (int) Math.min( block.length, count ) );
+      final int read = channel.read( buffer, position );
+      if ( read < 0 ) {
+        throw new EOFException( "Staged file ends before byte " + position );
+      }
+      out.write( block, 0, read );
+      position += read;
+      count -= read;
+    }
+  }
+
+  private static WritableByteChannel getChannel( final OutputStream out ) {
+    if ( out instanceof FileOutputStream ) {
+      return ( (FileOutputStream) out ).getChannel();
+    }
+    if ( out instanceof WritableByteChannel ) {
+      return (WritableByteChannel) out;
+    }
+    return null;
+  }
+}
@@ -13,7 +13,11 @@
 
 package org.pentaho.reporting.platform.plugin.staging;
 
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 public interface IFixedSizeStreamingContent {
 
@@ -27,4 +31,25 @@ public interface IFixedSizeStreamingContent {
   long getContentSize();
   boolean cleanContent();
 
+  /**
+   * Writes the content to the stream, the stream is not closed.
+   */
+  default void writeTo( final OutputStream out ) throws IOException {
+    try ( InputStream in = getStream() ) {
+      IOUtils.copy( in, out );
+    }
+  }
+
+  /**
+   * Writes a part of the content to the stream, the stream is not closed.
+   *
+   * @param position first byte to write
+   * @param count    number of bytes to write
+   */
+  default void writeTo( final OutputStream out, final long position, final long count ) throws IOException {
+    try ( InputStream in = getStream() ) {
+      IOUtils.copyLarge( in, out, position, count );
+    }
+  }
+
 }
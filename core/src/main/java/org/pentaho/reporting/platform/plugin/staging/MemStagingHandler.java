@@ -71,7 +71,7 @@ public class MemStagingHandler extends AbstractStagingHandler {
     }
   }
 
-  @Override public int getWrittenByteCount() {
+  @Override public long getWrittenByteCount() {
     return memoryTrackingStream.getTrackingSize();
   }
 
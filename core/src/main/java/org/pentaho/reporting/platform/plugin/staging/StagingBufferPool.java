@@ -0,0 +1,96 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.libraries.base.config.Configuration;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size memory chunks shared by the {@link AdaptiveStagingHandler}s. The chunks in use by all handlers together
+ * never exceed the capacity, a handler that gets no chunk stages to a file instead. Released chunks are kept for reuse,
+ * so the pool holds at most its capacity.
+ */
+final class StagingBufferPool {
+
+  private static final Log logger = LogFactory.getLog( StagingBufferPool.class );
+
+  /**
+   * Bytes of memory all adaptive staging handlers may use together.
+   */
+  static final String CAPACITY = "org.pentaho.reporting.platform.plugin.staging.AdaptiveStagingMemory";
+  private static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  private static final class Holder {
+    static final StagingBufferPool INSTANCE =
+      new StagingBufferPool( getCapacity( ClassicEngineBoot.getInstance().getGlobalConfig() ) );
+  }
+
+  private final long capacity;
+  private final AtomicLong used = new AtomicLong();
+  private final Queue<byte[]> free = new ConcurrentLinkedQueue<>();
+
+  StagingBufferPool( final long capacity ) {
+    this.capacity = capacity;
+  }
+
+  static StagingBufferPool getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  private static long getCapacity( final Configuration configuration ) {
+    final String value = configuration.getConfigProperty( CAPACITY );
+    if ( value == null || value.trim().isEmpty() ) {
+      return DEFAULT_CAPACITY;
+    }
+    try {
+      return Long.parseLong( value.trim() );
+    } catch ( final NumberFormatException e ) {
+      logger.warn( "Invalid value of " + CAPACITY + ": " + value );
+      return DEFAULT_CAPACITY;
+    }
+  }
+
+  /**
+   * @return a chunk of {@link #CHUNK_SIZE} bytes with undefined content, or null if the capacity is used up
+   */
+  byte[] acquire() {
+    long current;
+    do {
+      current = used.get();
+      if ( current + CHUNK_SIZE > capacity ) {
+        return null;
+      }
+    } while ( !used.compareAndSet( current, current + CHUNK_SIZE ) );
+
+    final byte[] chunk = free.poll();
+    return chunk != null ? chunk : new byte[ CHUNK_SIZE ];
+  }
+
+  void release( final byte[] chunk ) {
+    free.offer( chunk );
+    used.addAndGet( -CHUNK_SIZE );
+  }
+
+  long getUsedBytes() {
+    return used.get();
+  }
+}
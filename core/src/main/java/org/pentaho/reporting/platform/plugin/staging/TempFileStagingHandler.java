@@ -22,10 +22,8 @@ import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.reporting.engine.classic.core.util.StagingMode;
 import org.pentaho.reporting.platform.plugin.TrackingOutputStream;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -73,12 +71,7 @@ public class TempFileStagingHandler extends AbstractStagingHandler {
   @Override
   public void complete() throws IOException {
     IOUtils.closeQuietly( fileTrackingStream );
-    final BufferedInputStream bis = new BufferedInputStream( new FileInputStream( tmpFile ) );
-    try {
-      IOUtils.copy( bis, outputStream );
-    } finally {
-      IOUtils.closeQuietly( bis );
-    }
+    FileTransfer.transferTo( tmpFile, outputStream );
   }
 
   /**
@@ -101,7 +94,7 @@ public class TempFileStagingHandler extends AbstractStagingHandler {
     }
   }
 
-  @Override public int getWrittenByteCount() {
+  @Override public long getWrittenByteCount() {
     return fileTrackingStream.getTrackingSize();
   }
 
@@ -58,7 +58,7 @@ public class ThruStagingHandler extends AbstractStagingHandler {
   }
 
   @Override
-  public int getWrittenByteCount() {
+  public long getWrittenByteCount() {
     return thruTrackingStream.getTrackingSize();
   }
 
@@ -0,0 +1,82 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin;
+
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ContentEncodingOutputStreamTest {
+
+  @Test
+  public void testAcceptsGzip() {
+    assertTrue( ContentEncodingOutputStream.acceptsGzip( request( "gzip, deflate, br" ) ) );
+    assertTrue( ContentEncodingOutputStream.acceptsGzip( request( "deflate", "x-gzip;q=0.5" ) ) );
+    assertTrue( ContentEncodingOutputStream.acceptsGzip( request( "GZIP ; q=1.0" ) ) );
+    assertFalse( ContentEncodingOutputStream.acceptsGzip( request( "gzip;q=0" ) ) );
+    assertFalse( ContentEncodingOutputStream.acceptsGzip( request( "deflate, identity" ) ) );
+    assertFalse( ContentEncodingOutputStream.acceptsGzip( request() ) );
+    assertFalse( ContentEncodingOutputStream.acceptsGzip( null ) );
+  }
+
+  @Test
+  public void testWriteGzip() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final HttpServletResponse response = mock( HttpServletResponse.class );
+    final ContentEncodingOutputStream stream = new ContentEncodingOutputStream( out );
+    stream.setResponse( response, true );
+    assertTrue( stream.isGzipAccepted() );
+
+    stream.writeGzip( new byte[] { 1, 2, 3 } );
+    verify( response ).setHeader( "Content-Encoding", "gzip" );
+    verify( response ).addHeader( "Vary", "Accept-Encoding" );
+    assertEquals( "gzip", stream.getContentEncoding() );
+    assertArrayEquals( new byte[] { 1, 2, 3 }, out.toByteArray() );
+    assertFalse( stream.isGzipAccepted() );
+  }
+
+  @Test
+  public void testNotAcceptedAfterPlainWrite() throws Exception {
+    final ContentEncodingOutputStream stream = new ContentEncodingOutputStream( new ByteArrayOutputStream() );
+    stream.setResponse( mock( HttpServletResponse.class ), true );
+    stream.write( 1 );
+    assertFalse( stream.isGzipAccepted() );
+    assertNull( stream.getContentEncoding() );
+  }
+
+  @Test( expected = IllegalStateException.class )
+  public void testWriteGzipWithoutResponse() throws Exception {
+    final ContentEncodingOutputStream stream = new ContentEncodingOutputStream( new ByteArrayOutputStream() );
+    assertFalse( stream.isGzipAccepted() );
+    stream.writeGzip( new byte[] { 1 } );
+  }
+
+  private static HttpServletRequest request( final String... headers ) {
+    final HttpServletRequest request = mock( HttpServletRequest.class );
+    when( request.getHeaders( "Accept-Encoding" ) ).thenReturn( Collections.enumeration( Arrays.asList( headers ) ) );
+    return request;
+  }
+}
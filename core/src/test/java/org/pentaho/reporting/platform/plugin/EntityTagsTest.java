@@ -0,0 +1,140 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin;
+
+import org.junit.After;
+import org.junit.Test;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.api.repository2.unified.RepositoryFile;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.platform.plugin.cache.IPluginCacheManager;
+import org.pentaho.reporting.platform.plugin.cache.IReportContentCache;
+import org.pentaho.reporting.platform.plugin.cache.ReportContentImpl;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EntityTagsTest {
+
+  @After
+  public void tearDown() {
+    PentahoSystem.shutdown();
+  }
+
+  @Test
+  public void testMatches() {
+    final String tag = "\"abc-1-ff\"";
+    assertTrue( EntityTags.matches( tag, tag ) );
+    assertTrue( EntityTags.matches( "\"other\", W/\"abc-1-ff\"", tag ) );
+    assertTrue( EntityTags.matches( "*", tag ) );
+    assertFalse( EntityTags.matches( "\"abc-2-ff\"", tag ) );
+    assertFalse( EntityTags.matches( null, tag ) );
+  }
+
+  @Test
+  public void testRequestKeyIgnoresInputOrder() {
+    final RepositoryFile file = file( "id", "1" );
+    final Map<String, Object> inputs = new LinkedHashMap<>();
+    inputs.put( "a", "1" );
+    inputs.put( "b", new String[] { "x", "y" } );
+    final Map<String, Object> reversed = new LinkedHashMap<>();
+    reversed.put( "b", new String[] { "x", "y" } );
+    reversed.put( "a", "1" );
+
+    final IPentahoSession session = session( "joe" );
+    final String key = EntityTags.createRequestKey( "report", session, file, inputs, false );
+    assertEquals( key, EntityTags.createRequestKey( "report", session, file, reversed, false ) );
+    assertNotEquals( key, EntityTags.createRequestKey( "report", session, file, inputs, true ) );
+    assertNotEquals( key, EntityTags.createRequestKey( "report", session( "suzy" ), file, inputs, false ) );
+    assertNotEquals( key, EntityTags.createRequestKey( "report", session, file( "id", "2" ), inputs, false ) );
+    reversed.put( "b", new String[] { "x" } );
+    assertNotEquals( key, EntityTags.createRequestKey( "report", session, file, reversed, false ) );
+    assertNull( EntityTags.createRequestKey( "report", session, null, inputs, false ) );
+  }
+
+  @Test
+  public void testPageTagFollowsCachedPage() {
+    final byte[] page = new byte[] { 1, 2, 3 };
+    final IReportContentCache cache = mock( IReportContentCache.class );
+    when( cache.get( "content" ) ).thenReturn( new ReportContentImpl( 1, Collections.singletonMap( 0, page ) ) );
+    final IPluginCacheManager cacheManager = mock( IPluginCacheManager.class );
+    when( cacheManager.getCache() ).thenReturn( cache );
+    PentahoSystem.registerObject( cacheManager, IPluginCacheManager.class );
+
+    final String requestKey = EntityTags.createRequestKey( "report", null, file( "page", "1" ),
+      new HashMap<String, Object>(), false );
+    assertNull( EntityTags.getPageTag( requestKey ) );
+    EntityTags.issuePage( requestKey, "content", 0, null );
+    final String tag = EntityTags.getPageTag( requestKey );
+    assertEquals( EntityTags.createPageTag( "content", 0, page, null ), tag );
+
+    // the page was rendered again with other data
+    when( cache.get( "content" ) )
+      .thenReturn( new ReportContentImpl( 1, Collections.singletonMap( 0, new byte[] { 4 } ) ) );
+    assertNotEquals( tag, EntityTags.getPageTag( requestKey ) );
+    when( cache.get( "content" ) ).thenReturn( null );
+    assertNull( EntityTags.getPageTag( requestKey ) );
+  }
+
+  @Test
+  public void testPageTagDependsOnEncoding() {
+    final byte[] page = new byte[] { 1, 2, 3 };
+    assertNotEquals( EntityTags.createPageTag( "key", 0, page, null ),
+      EntityTags.createPageTag( "key", 0, page, ContentEncodingOutputStream.GZIP ) );
+    assertNotEquals( EntityTags.createPageTag( "key", 0, page, null ),
+      EntityTags.createPageTag( "key", 1, page, null ) );
+  }
+
+  @Test
+  public void testNotModified() {
+    final HttpServletRequest request = mock( HttpServletRequest.class );
+    when( request.getHeader( EntityTags.IF_NONE_MATCH ) ).thenReturn( "\"tag\"" );
+    assertTrue( EntityTags.isNotModified( request, "\"tag\"" ) );
+    assertFalse( EntityTags.isNotModified( request, null ) );
+    assertFalse( EntityTags.isNotModified( null, "\"tag\"" ) );
+
+    final HttpServletResponse response = mock( HttpServletResponse.class );
+    EntityTags.sendNotModified( response, "\"tag\"" );
+    verify( response ).setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+    verify( response ).setHeader( EntityTags.ETAG, "\"tag\"" );
+  }
+
+  private static RepositoryFile file( final String id, final String version ) {
+    final RepositoryFile file = mock( RepositoryFile.class );
+    when( file.getId() ).thenReturn( id );
+    when( file.getVersionId() ).thenReturn( version );
+    when( file.getLastModifiedDate() ).thenReturn( new Date( 1000 ) );
+    return file;
+  }
+
+  private static IPentahoSession session( final String name ) {
+    final IPentahoSession session = mock( IPentahoSession.class );
+    when( session.getName() ).thenReturn( name );
+    return session;
+  }
+}
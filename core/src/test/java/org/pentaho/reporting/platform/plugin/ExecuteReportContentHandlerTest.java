@@ -17,6 +17,8 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
 import org.pentaho.platform.api.engine.IParameterProvider;
 import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.platform.api.locale.IPentahoLocale;
@@ -39,6 +41,7 @@ import org.pentaho.reporting.libraries.resourceloader.ResourceException;
 import org.pentaho.reporting.platform.plugin.messages.Messages;
 import org.pentaho.test.platform.engine.core.SimpleObjectFactory;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -58,7 +61,9 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyFloat;
 import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -252,6 +257,43 @@ public class ExecuteReportContentHandlerTest {
     );
   }
 
+  /**
+   * a page the browser has already is answered with 304 without loading the report.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testNotModifiedPageIsNotRendered() throws Exception {
+    final ExecuteReportContentHandler handler = new ExecuteReportContentHandler( contentGenerator );
+    final HttpServletRequest request = mock( HttpServletRequest.class );
+    when( request.getHeader( EntityTags.IF_NONE_MATCH ) ).thenReturn( "\"page\"" );
+    when( prameterProvider.getParameter( eq( "httprequest" ) ) ).thenReturn( request );
+    when( file.getId() ).thenReturn( fileId );
+
+    try ( MockedStatic<EntityTags> entityTags = Mockito.mockStatic( EntityTags.class, Mockito.CALLS_REAL_METHODS ) ) {
+      entityTags.when( () -> EntityTags.getPageTag( anyString() ) ).thenReturn( "\"page\"" );
+      handler.createReportContent( outputStream, fileId, path, true, reportComponent, audit );
+    } finally {
+      when( file.getId() ).thenReturn( null );
+    }
+
+    verify( response ).setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+    verify( response ).setHeader( EntityTags.ETAG, "\"page\"" );
+    verify( reportComponent, never() ).getReport();
+    verify( reportComponent, never() ).execute();
+    verify( audit, times( 1 ) ).audit(
+      eq( sessionId ),
+      eq( sessionName ),
+      eq( path ),
+      eq( ReportContentGenerator.class.getName() ),
+      eq( handler.getClass().getName() ),
+      eq( MessageTypes.INSTANCE_END ),
+      eq( instanceId ),
+      eq( "" ),
+      anyFloat(),
+      eq( contentGenerator )
+    );
+  }
 
   /**
    * Tests basic actions for report component when create normal report.
@@ -41,6 +41,7 @@ import org.pentaho.reporting.platform.plugin.async.PentahoAsyncExecutor;
 import org.pentaho.reporting.platform.plugin.staging.IFixedSizeStreamingContent;
 
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
@@ -322,6 +323,58 @@ public class JobManagerTest {
   }
 
 
+  @Test public void testContentRange() throws Exception {
+    setSession();
+
+    final UUID uuid = UUID.randomUUID();
+    final JobManager jobManager = new JobManager();
+
+    final Future future = mock( Future.class );
+    final IFixedSizeStreamingContent content = mock( IFixedSizeStreamingContent.class );
+    when( content.getContentSize() ).thenReturn( 3L * Integer.MAX_VALUE );
+    when( future.get() ).thenReturn( content );
+    when( executor.getFuture( uuid, session ) ).thenReturn( future );
+    STATUS = AsyncExecutionStatus.FINISHED;
+
+    final Response response = jobManager.getContent( uuid.toString(), "bytes=4294967296-", null );
+    assertEquals( 206, response.getStatus() );
+    assertEquals( "bytes 4294967296-6442450940/6442450941", response.getHeaderString( "Content-Range" ) );
+    assertEquals( "2147483645", response.getHeaderString( "Content-Length" ) );
+    final String tag = response.getHeaderString( "ETag" );
+
+    ( (JobManager.StreamingOutputWrapper) response.getEntity() ).write( new ByteArrayOutputStream() );
+    verify( content ).writeTo( any(), eq( 4294967296L ), eq( 2147483645L ) );
+
+    final Response resumed = jobManager.getContent( uuid.toString(), "bytes=-5", tag );
+    assertEquals( 206, resumed.getStatus() );
+    assertEquals( "bytes 6442450936-6442450940/6442450941", resumed.getHeaderString( "Content-Range" ) );
+
+    final Response changed = jobManager.getContent( uuid.toString(), "bytes=-5", "\"other\"" );
+    assertEquals( 200, changed.getStatus() );
+    assertEquals( "6442450941", changed.getHeaderString( "Content-Length" ) );
+
+    final Response unsatisfiable = jobManager.getContent( uuid.toString(), "bytes=6442450941-", null );
+    assertEquals( 416, unsatisfiable.getStatus() );
+    assertEquals( "bytes */6442450941", unsatisfiable.getHeaderString( "Content-Range" ) );
+  }
+
+  @Test public void testParseByteRange() {
+    assertNull( JobManager.ByteRange.parse( null, 100 ) );
+    assertNull( JobManager.ByteRange.parse( "items=0-10", 100 ) );
+    assertNull( JobManager.ByteRange.parse( "bytes=0-10,20-30", 100 ) );
+    assertNull( JobManager.ByteRange.parse( "bytes=10-5", 100 ) );
+    assertNull( JobManager.ByteRange.parse( "bytes=a-", 100 ) );
+
+    final JobManager.ByteRange range = JobManager.ByteRange.parse( "bytes=10-200", 100 );
+    assertEquals( 10, range.first );
+    assertEquals( 99, range.last );
+    assertEquals( 0, JobManager.ByteRange.parse( "bytes=-200", 100 ).first );
+    assertEquals( 90, JobManager.ByteRange.parse( "bytes=90-", 100 ).first );
+
+    assertTrue( JobManager.ByteRange.UNSATISFIABLE == JobManager.ByteRange.parse( "bytes=100-", 100 ) );
+    assertTrue( JobManager.ByteRange.UNSATISFIABLE == JobManager.ByteRange.parse( "bytes=-0", 100 ) );
+  }
+
   @Test public void testFlowNoPropting() throws IOException, ExecutionException, InterruptedException {
     setSession();
 
@@ -0,0 +1,108 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.pentaho.platform.api.repository2.unified.IUnifiedRepository;
+import org.pentaho.platform.api.repository2.unified.RepositoryFile;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.engine.classic.core.MasterReport;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+
+public class ReportCreatorTest {
+
+  private MockedStatic<PentahoSystem> pentahoSystem;
+  private MockedStatic<ReportCreator> reportCreator;
+  private RepositoryFile file;
+
+  @BeforeClass
+  public static void beforeClass() {
+    ClassicEngineBoot.getInstance().start();
+  }
+
+  @Before
+  public void setUp() {
+    file = mock( RepositoryFile.class );
+    when( file.getId() ).thenReturn( "file-id" );
+    when( file.getPath() ).thenReturn( "/public/report.prpt" );
+    when( file.getLastModifiedDate() ).thenReturn( new Date( 1000 ) );
+    final IUnifiedRepository repository = mock( IUnifiedRepository.class );
+    when( repository.getFileById( "file-id" ) ).thenReturn( file );
+
+    pentahoSystem = mockStatic( PentahoSystem.class );
+    pentahoSystem.when( () -> PentahoSystem.get( eq( IUnifiedRepository.class ), any() ) ).thenReturn( repository );
+    reportCreator = mockStatic( ReportCreator.class, Mockito.CALLS_REAL_METHODS );
+    reportCreator.when( () -> ReportCreator.parseReport( any(), any() ) ).thenAnswer( invocation -> {
+      final MasterReport report = new MasterReport();
+      report.setName( "parsed" );
+      return report;
+    } );
+    ReportCreator.clearCache();
+  }
+
+  @After
+  public void tearDown() {
+    reportCreator.close();
+    pentahoSystem.close();
+  }
+
+  @Test
+  public void testParsedReportIsCloned() throws Exception {
+    final MasterReport first = ReportCreator.createReport( "file-id" );
+    first.setName( "changed" );
+    final MasterReport second = ReportCreator.createReport( "file-id" );
+    final MasterReport third = ReportCreator.createReport( "file-id" );
+
+    assertEquals( "parsed", second.getName() );
+    assertNotSame( second, third );
+    reportCreator.verify( () -> ReportCreator.parseReport( any(), any() ), times( 1 ) );
+  }
+
+  @Test
+  public void testChangedFileIsParsedAgain() throws Exception {
+    ReportCreator.createReport( "file-id" );
+    when( file.getLastModifiedDate() ).thenReturn( new Date( 2000 ) );
+    ReportCreator.createReport( "file-id" );
+    ReportCreator.createReport( "file-id" );
+    reportCreator.verify( () -> ReportCreator.parseReport( any(), any() ), times( 2 ) );
+
+    ReportCreator.clearCache();
+    ReportCreator.createReport( "file-id" );
+    reportCreator.verify( () -> ReportCreator.parseReport( any(), any() ), times( 3 ) );
+  }
+
+  @Test
+  public void testFileWithoutVersionIsNotCached() throws Exception {
+    when( file.getLastModifiedDate() ).thenReturn( null );
+    ReportCreator.createReport( "file-id" );
+    ReportCreator.createReport( "file-id" );
+    reportCreator.verify( () -> ReportCreator.parseReport( any(), any() ), times( 2 ) );
+  }
+}
@@ -0,0 +1,74 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin;
+
+import org.junit.Test;
+import org.pentaho.reporting.libraries.base.config.Configuration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReportingWarmUpTest {
+
+  @Test
+  public void testDisabledWithoutConfiguration() {
+    assertFalse( new ReportingWarmUp( mock( Configuration.class ) ).isEnabled() );
+  }
+
+  @Test
+  public void testReportsAreSplit() {
+    final Configuration configuration = mock( Configuration.class );
+    assertEquals( Collections.emptyList(), new ReportingWarmUp( configuration ).getReports() );
+
+    when( configuration.getConfigProperty( ReportingWarmUp.REPORTS ) ).thenReturn( " /public/a.prpt, ,/public/b.prpt" );
+    assertEquals( Arrays.asList( "/public/a.prpt", "/public/b.prpt" ),
+      new ReportingWarmUp( configuration ).getReports() );
+  }
+
+  @Test
+  public void testFailedStepIsLogged() {
+    ReportingWarmUp.run( "failing", () -> {
+      throw new IllegalStateException( "failed step" );
+    } );
+  }
+
+  @Test
+  public void testStartRunsAllSteps() throws Exception {
+    final Configuration configuration = mock( Configuration.class );
+    when( configuration.getConfigProperty( ReportingWarmUp.REPORTS ) ).thenReturn( "/public/a.prpt,/public/b.prpt" );
+    when( configuration.getConfigProperty( ReportingWarmUp.THREADS ) ).thenReturn( "3" );
+    final ReportingWarmUp warmUp = spy( new ReportingWarmUp( configuration ) );
+    doThrow( new IllegalStateException( "no caches" ) ).when( warmUp ).createCaches();
+    doNothing().when( warmUp ).parseReport( "/public/a.prpt" );
+    doNothing().when( warmUp ).parseReport( "/public/b.prpt" );
+    doNothing().when( warmUp ).renderEmptyReport();
+
+    warmUp.start().get( 10, TimeUnit.SECONDS );
+
+    verify( warmUp ).createCaches();
+    verify( warmUp ).renderEmptyReport();
+    verify( warmUp ).parseReport( "/public/a.prpt" );
+    verify( warmUp ).parseReport( "/public/b.prpt" );
+  }
+}
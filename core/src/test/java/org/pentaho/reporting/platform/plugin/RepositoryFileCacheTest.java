@@ -0,0 +1,89 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.platform.api.repository2.unified.IUnifiedRepository;
+import org.pentaho.platform.api.repository2.unified.RepositoryFile;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
+import org.pentaho.platform.engine.core.system.StandaloneSession;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RepositoryFileCacheTest {
+
+  private IUnifiedRepository repository;
+  private RepositoryFile file;
+
+  @BeforeClass
+  public static void beforeClass() {
+    ClassicEngineBoot.getInstance().start();
+  }
+
+  @Before
+  public void setUp() {
+    RepositoryFileCache.invalidateAll();
+    repository = mock( IUnifiedRepository.class );
+    file = mock( RepositoryFile.class );
+    when( repository.getFile( "/public/report.prpt" ) ).thenReturn( file );
+    when( repository.getFileById( "file-id" ) ).thenReturn( file );
+    PentahoSessionHolder.setSession( new StandaloneSession( "joe", "session-joe" ) );
+  }
+
+  @After
+  public void tearDown() {
+    PentahoSessionHolder.setSession( null );
+  }
+
+  @Test
+  public void testLookupIsReused() {
+    final long hits = RepositoryFileCache.getStats().hitCount();
+    assertSame( file, RepositoryFileCache.getFile( repository, "/public/report.prpt" ) );
+    assertSame( file, RepositoryFileCache.getFile( repository, "/public/report.prpt" ) );
+    assertSame( file, RepositoryFileCache.getFileById( repository, "file-id" ) );
+    assertSame( file, RepositoryFileCache.getFileById( repository, "file-id" ) );
+    verify( repository, times( 1 ) ).getFile( "/public/report.prpt" );
+    verify( repository, times( 1 ) ).getFileById( "file-id" );
+    assertTrue( RepositoryFileCache.getStats().hitCount() >= hits + 2 );
+  }
+
+  @Test
+  public void testMissingFileIsCached() {
+    assertNull( RepositoryFileCache.getFile( repository, "/public/missing.prpt" ) );
+    assertNull( RepositoryFileCache.getFile( repository, "/public/missing.prpt" ) );
+    verify( repository, times( 1 ) ).getFile( "/public/missing.prpt" );
+  }
+
+  @Test
+  public void testLookupsArePerUser() {
+    RepositoryFileCache.getFile( repository, "/public/report.prpt" );
+    PentahoSessionHolder.setSession( new StandaloneSession( "suzy", "session-suzy" ) );
+    RepositoryFileCache.getFile( repository, "/public/report.prpt" );
+    verify( repository, times( 2 ) ).getFile( "/public/report.prpt" );
+
+    RepositoryFileCache.invalidateAll();
+    RepositoryFileCache.getFile( repository, "/public/report.prpt" );
+    verify( repository, times( 3 ) ).getFile( "/public/report.prpt" );
+  }
+}
@@ -52,6 +52,13 @@ public class TrackingOutputStreamTest extends TestCase {
     assertEquals( 5, streamSpy.getTrackingSize() );
   }
 
+  @Test
+  public void testSizeBeyondInt() throws Exception {
+    stream.write( new byte[ 1 ], 0, Integer.MAX_VALUE );
+    stream.write( new byte[ 1 ], 0, Integer.MAX_VALUE );
+    assertEquals( 2L * Integer.MAX_VALUE, stream.getTrackingSize() );
+  }
+
   @Test
   public void testGetStream() throws Exception {
     assertEquals( outputStream, streamSpy.getWrappedStream() );
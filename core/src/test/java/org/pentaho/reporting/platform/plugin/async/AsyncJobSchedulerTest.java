@@ -0,0 +1,193 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncJobSchedulerTest {
+
+  private AsyncJobScheduler scheduler;
+  private CountDownLatch release;
+  private List<String> order;
+
+  @Before
+  public void setUp() {
+    scheduler = new AsyncJobScheduler( 1, Executors.newFixedThreadPool( 2 ) );
+    release = new CountDownLatch( 1 );
+    order = new CopyOnWriteArrayList<>();
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    scheduler.shutdown();
+  }
+
+  private ListenableFuture<String> submit( final String name, final AsyncJobPriority priority, final String user,
+                                           final String report ) {
+    return scheduler.submit( () -> {
+      order.add( name );
+      return name;
+    }, priority, user, report );
+  }
+
+  private ListenableFuture<String> blockThread() throws Exception {
+    final CountDownLatch started = new CountDownLatch( 1 );
+    final ListenableFuture<String> blocker = scheduler.submit( () -> {
+      started.countDown();
+      release.await();
+      return "blocker";
+    }, AsyncJobPriority.BACKGROUND, "blocker", "blocker.prpt" );
+    assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+    return blocker;
+  }
+
+  @Test
+  public void testHigherPriorityRunsFirst() throws Exception {
+    blockThread();
+    final ListenableFuture<String> background = submit( "background", AsyncJobPriority.BACKGROUND, "a", "a.prpt" );
+    final ListenableFuture<String> viewer = submit( "viewer", AsyncJobPriority.ASYNC_VIEWER, "b", "b.prpt" );
+    final ListenableFuture<String> interactive = submit( "interactive", AsyncJobPriority.INTERACTIVE, "c", "c.prpt" );
+    assertEquals( 3, scheduler.getQueuedJobs() );
+
+    release.countDown();
+    background.get( 5, TimeUnit.SECONDS );
+    viewer.get( 5, TimeUnit.SECONDS );
+    interactive.get( 5, TimeUnit.SECONDS );
+    assertEquals( "interactive", order.get( 0 ) );
+    assertEquals( "viewer", order.get( 1 ) );
+    assertEquals( "background", order.get( 2 ) );
+  }
+
+  @Test
+  public void testUserQuotaLetsOthersPass() throws Exception {
+    scheduler.shutdown();
+    scheduler = new AsyncJobScheduler( 2, Executors.newFixedThreadPool( 2 ) );
+    scheduler.setMaxConcurrentJobsPerUser( 1 );
+    blockThread();
+
+    final ListenableFuture<String> sameUser = submit( "same", AsyncJobPriority.INTERACTIVE, "blocker", "x.prpt" );
+    final ListenableFuture<String> otherUser = submit( "other", AsyncJobPriority.BACKGROUND, "other", "y.prpt" );
+    assertEquals( "other", otherUser.get( 5, TimeUnit.SECONDS ) );
+    assertEquals( 1, scheduler.getQueuedJobs() );
+
+    release.countDown();
+    assertEquals( "same", sameUser.get( 5, TimeUnit.SECONDS ) );
+  }
+
+  @Test
+  public void testReportQuota() throws Exception {
+    scheduler.shutdown();
+    scheduler = new AsyncJobScheduler( 2, Executors.newFixedThreadPool( 2 ) );
+    scheduler.setMaxConcurrentJobsPerReport( 1 );
+    blockThread();
+
+    final ListenableFuture<String> sameReport = submit( "same", AsyncJobPriority.INTERACTIVE, "a", "blocker.prpt" );
+    assertEquals( 1, scheduler.getQueuedJobs() );
+    assertEquals( 1, scheduler.getRunningJobs() );
+
+    release.countDown();
+    assertEquals( "same", sameReport.get( 5, TimeUnit.SECONDS ) );
+  }
+
+  @Test
+  public void testRejectsWhenQueueIsFull() throws Exception {
+    scheduler.setMaxQueuedJobs( 1 );
+    blockThread();
+    submit( "first", AsyncJobPriority.INTERACTIVE, "a", "a.prpt" );
+    try {
+      submit( "second", AsyncJobPriority.INTERACTIVE, "a", "a.prpt" );
+      fail();
+    } catch ( final RejectedExecutionException e ) {
+      assertEquals( 1, scheduler.getRejectedJobs() );
+    }
+
+    // callbacks of finished jobs are always accepted and don't wait for a job slot
+    final CountDownLatch callback = new CountDownLatch( 1 );
+    scheduler.execute( callback::countDown );
+    assertTrue( callback.await( 5, TimeUnit.SECONDS ) );
+    assertEquals( 1, scheduler.getQueuedJobs() );
+    assertEquals( 1, scheduler.getRunningJobs() );
+  }
+
+  @Test
+  public void testRejectsWhenUserQueueIsFull() throws Exception {
+    scheduler.setMaxQueuedJobsPerUser( 1 );
+    blockThread();
+    submit( "first", AsyncJobPriority.INTERACTIVE, "a", "a.prpt" );
+    submit( "other", AsyncJobPriority.INTERACTIVE, "b", "a.prpt" );
+    try {
+      submit( "second", AsyncJobPriority.INTERACTIVE, "a", "a.prpt" );
+      fail();
+    } catch ( final RejectedExecutionException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCanceledJobIsSkipped() throws Exception {
+    blockThread();
+    final ListenableFuture<String> canceled = submit( "canceled", AsyncJobPriority.INTERACTIVE, "a", "a.prpt" );
+    final ListenableFuture<String> next = submit( "next", AsyncJobPriority.INTERACTIVE, "a", "a.prpt" );
+    canceled.cancel( true );
+
+    release.countDown();
+    assertEquals( "next", next.get( 5, TimeUnit.SECONDS ) );
+    assertEquals( 1, order.size() );
+  }
+
+  @Test
+  public void testCanceledJobFreesQueueSlot() throws Exception {
+    scheduler.setMaxQueuedJobs( 1 );
+    scheduler.setMaxQueuedJobsPerUser( 1 );
+    blockThread();
+    submit( "canceled", AsyncJobPriority.INTERACTIVE, "a", "a.prpt" ).cancel( true );
+    assertEquals( 0, scheduler.getQueuedJobs() );
+
+    final ListenableFuture<String> next = submit( "next", AsyncJobPriority.INTERACTIVE, "a", "a.prpt" );
+    assertEquals( 0, scheduler.getRejectedJobs() );
+    release.countDown();
+    assertEquals( "next", next.get( 5, TimeUnit.SECONDS ) );
+    assertEquals( 1, order.size() );
+  }
+
+  @Test
+  public void testReprioritizedJobMovesInQueue() throws Exception {
+    blockThread();
+    final ListenableFuture<String> scheduled = submit( "scheduled", AsyncJobPriority.INTERACTIVE, "a", "a.prpt" );
+    final ListenableFuture<String> viewer = submit( "viewer", AsyncJobPriority.ASYNC_VIEWER, "b", "b.prpt" );
+    assertTrue( scheduler.reprioritize( scheduled, AsyncJobPriority.BACKGROUND ) );
+
+    release.countDown();
+    scheduled.get( 5, TimeUnit.SECONDS );
+    viewer.get( 5, TimeUnit.SECONDS );
+    assertEquals( "viewer", order.get( 0 ) );
+    assertEquals( "scheduled", order.get( 1 ) );
+    assertFalse( scheduler.reprioritize( scheduled, AsyncJobPriority.INTERACTIVE ) );
+  }
+}
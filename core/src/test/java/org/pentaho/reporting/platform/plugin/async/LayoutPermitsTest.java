@@ -0,0 +1,93 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class LayoutPermitsTest {
+
+  private final ReportProgressEvent event = mock( ReportProgressEvent.class );
+
+  @Test
+  public void testPermitTakenOncePerJob() {
+    final LayoutPermits permits = new LayoutPermits( 2 );
+    final LayoutPermits.Permit permit = permits.newPermit();
+    permit.reportProcessingStarted( event );
+    assertEquals( 2, permits.getAvailablePermits() );
+
+    permit.reportProcessingUpdate( event );
+    permit.reportProcessingUpdate( event );
+    assertEquals( 1, permits.getAvailablePermits() );
+
+    permit.reportProcessingFinished( event );
+    assertEquals( 2, permits.getAvailablePermits() );
+    permit.release();
+    assertEquals( 2, permits.getAvailablePermits() );
+    // a finished job doesn't take the permit again
+    permit.reportProcessingUpdate( event );
+    assertEquals( 2, permits.getAvailablePermits() );
+  }
+
+  @Test
+  public void testPermitReleasedOnAnotherThread() throws Exception {
+    final LayoutPermits permits = new LayoutPermits( 1 );
+    final LayoutPermits.Permit permit = permits.newPermit();
+    final Thread render = new Thread( () -> permit.reportProcessingUpdate( event ) );
+    render.start();
+    render.join( 5000 );
+    assertEquals( 0, permits.getAvailablePermits() );
+
+    permit.release();
+    assertEquals( 1, permits.getAvailablePermits() );
+  }
+
+  @Test
+  public void testLayoutWaitsForPermit() throws Exception {
+    final LayoutPermits permits = new LayoutPermits( 1 );
+    final LayoutPermits.Permit first = permits.newPermit();
+    first.reportProcessingUpdate( event );
+
+    final AtomicBoolean laidOut = new AtomicBoolean();
+    final CountDownLatch done = new CountDownLatch( 1 );
+    final Thread other = new Thread( () -> {
+      final LayoutPermits.Permit second = permits.newPermit();
+      second.reportProcessingUpdate( event );
+      laidOut.set( true );
+      second.release();
+      done.countDown();
+    } );
+    other.start();
+    assertFalse( done.await( 200, TimeUnit.MILLISECONDS ) );
+    assertFalse( laidOut.get() );
+
+    first.release();
+    assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+    assertTrue( laidOut.get() );
+  }
+
+  @Test
+  public void testVirtualThreadFactoryMatchesRuntime() {
+    final boolean supported = Runtime.version().feature() >= 21;
+    assertEquals( supported, VirtualThreads.createFactory( "test" ) != null );
+  }
+}
@@ -37,8 +37,7 @@ public class MemorizeSchedulingLocationListenerTest {
     final MemorizeSchedulingLocationListener memorizeSchedulingLocationListener =
       new MemorizeSchedulingLocationListener();
     final PentahoAsyncExecutor.CompositeKey mock = mock( PentahoAsyncExecutor.CompositeKey.class );
-    when( mock.isSameSession( "another" ) ).thenReturn( false );
-    when( mock.isSameSession( "same" ) ).thenReturn( true );
+    when( mock.getSessionId() ).thenReturn( "same" );
     final String path = "test.prpt";
     memorizeSchedulingLocationListener.recordOutputFile( mock, path );
     assertEquals( path, memorizeSchedulingLocationListener.lookupOutputFile( mock ) );
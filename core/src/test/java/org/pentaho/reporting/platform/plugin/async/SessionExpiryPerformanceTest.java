@@ -0,0 +1,119 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.async;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
+import org.pentaho.platform.engine.core.system.StandaloneSession;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.engine.classic.core.cache.DataCacheKey;
+import org.pentaho.reporting.engine.classic.core.util.TypedTableModel;
+import org.pentaho.reporting.libraries.base.config.ModifiableConfiguration;
+import org.pentaho.reporting.platform.plugin.cache.PentahoDataCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Logout clean-up time when many sessions expire at once, as at a shift change. Every session holds a few cached
+ * tables and scheduled output locations. Runs only with
+ * -Dorg.pentaho.reporting.engine.classic.test.ExecutePerformanceTest=true (see test.performance in the parent pom).
+ */
+public class SessionExpiryPerformanceTest {
+
+  private static final String CACHE_PREFIX = "org.pentaho.reporting.platform.plugin.cache.PentahoDataCache.";
+  private static final int[] SESSIONS = { 1000, 5000, 20000 };
+  private static final int ENTRIES_PER_SESSION = 5;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue( Boolean.getBoolean( "org.pentaho.reporting.engine.classic.test.ExecutePerformanceTest" ) );
+    ClassicEngineBoot.getInstance().start();
+  }
+
+  @Test
+  public void testMassLogout() {
+    final ModifiableConfiguration config = ClassicEngineBoot.getInstance().getEditableConfig();
+    config.setConfigProperty( CACHE_PREFIX + "CachableRowLimit", "10000" );
+    config.setConfigProperty( CACHE_PREFIX + "MaximumBytes", String.valueOf( Long.MAX_VALUE / 2 ) );
+    config.setConfigProperty( CACHE_PREFIX + "SpillMaximumBytes", "0" );
+    try {
+      for ( final int count : SESSIONS ) {
+        measure( count );
+      }
+    } finally {
+      config.setConfigProperty( CACHE_PREFIX + "MaximumBytes", null );
+      config.setConfigProperty( CACHE_PREFIX + "SpillMaximumBytes", null );
+      PentahoSessionHolder.setSession( null );
+    }
+  }
+
+  private static void measure( final int count ) {
+    final PentahoDataCache cache = new PentahoDataCache( ( key, model ) -> 1 );
+    final MemorizeSchedulingLocationListener locations = new MemorizeSchedulingLocationListener();
+    final List<IPentahoSession> sessions = new ArrayList<>();
+    final List<PentahoAsyncExecutor.CompositeKey> keys = new ArrayList<>();
+    for ( int i = 0; i < count; i++ ) {
+      final IPentahoSession session = new StandaloneSession( "user" + i, "session-" + i );
+      sessions.add( session );
+      PentahoSessionHolder.setSession( session );
+      for ( int j = 0; j < ENTRIES_PER_SESSION; j++ ) {
+        cache.put( key( j ), model() );
+        final PentahoAsyncExecutor.CompositeKey key =
+          new PentahoAsyncExecutor.CompositeKey( session, UUID.randomUUID() );
+        keys.add( key );
+        locations.recordOutputFile( key, "file-" + j );
+      }
+    }
+    assertEquals( (long) count * ENTRIES_PER_SESSION, (long) cache.getStatistics().get( "entries" ) );
+
+    long start = System.nanoTime();
+    for ( final IPentahoSession session : sessions ) {
+      cache.onLogout( session );
+    }
+    final long cacheNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for ( final IPentahoSession session : sessions ) {
+      locations.onLogout( session.getId() );
+    }
+    final long locationNanos = System.nanoTime() - start;
+
+    assertEquals( 0L, (long) cache.getStatistics().get( "entries" ) );
+    assertNull( locations.lookupOutputFile( keys.get( keys.size() - 1 ) ) );
+
+    System.out.println( String.format( "%6d sessions x %d entries: data cache %8.2f ms, locations %8.2f ms", count,
+      ENTRIES_PER_SESSION, cacheNanos / 1e6, locationNanos / 1e6 ) );
+    cache.clear();
+  }
+
+  private static DataCacheKey key( final int value ) {
+    final DataCacheKey key = new DataCacheKey();
+    key.addParameter( "query", "query" + value );
+    return key;
+  }
+
+  private static TypedTableModel model() {
+    final TypedTableModel model = new TypedTableModel( new String[] { "value" }, new Class[] { Integer.class } );
+    model.addRow( 1 );
+    return model;
+  }
+}
@@ -0,0 +1,130 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.MetaTableModel;
+import org.pentaho.reporting.engine.classic.core.wizard.DataAttributes;
+import org.pentaho.reporting.engine.classic.core.wizard.EmptyDataAttributes;
+import org.pentaho.reporting.platform.plugin.MockTableModel;
+
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ColumnarTableModelTest {
+
+  @Test
+  public void testValuesAreEqualAndOfTheSameClass() {
+    final Timestamp timestamp = new Timestamp( 1600000000123L );
+    timestamp.setNanos( 123456789 );
+    final Object[][] data = {
+      { 1, 2L, 3.5, true, new Date( 1000 ), new java.sql.Date( 2000 ), new Time( 3000 ), timestamp,
+        new BigDecimal( "12.50" ), "north", new BigInteger( "7" ) },
+      { null, null, null, null, null, null, null, null, null, null, null },
+      { -1, Long.MAX_VALUE, Double.NaN, false, new Date( 4000 ), new java.sql.Date( 5000 ), new Time( 6000 ),
+        new Timestamp( 7000 ), new BigDecimal( "-0.001" ), "north", new BigInteger( "8" ) }
+    };
+    final MockTableModel model = new MockTableModel( data );
+    final ColumnarTableModel columnar = new ColumnarTableModel( model );
+
+    assertEquals( 3, columnar.getRowCount() );
+    assertEquals( model.getColumnCount(), columnar.getColumnCount() );
+    assertSameValues( model, columnar );
+  }
+
+  @Test
+  public void testMixedValueTypes() {
+    final BigDecimal large = new BigDecimal( BigInteger.ONE.shiftLeft( 70 ) );
+    final Object[][] data = { { null }, { 1 }, { "two" }, { 3L }, { large } };
+    final MockTableModel model = new MockTableModel( data );
+    assertSameValues( model, new ColumnarTableModel( model ) );
+  }
+
+  @Test
+  public void testColumnWithoutValues() {
+    final ColumnarTableModel columnar =
+      new ColumnarTableModel( new MockTableModel( new Object[][] { { null }, { null } } ) );
+    assertNull( columnar.getValueAt( 1, 0 ) );
+  }
+
+  @Test
+  public void testStringsShareDictionaryEntries() {
+    final Object[][] data = new Object[ 1000 ][];
+    for ( int i = 0; i < data.length; i++ ) {
+      data[ i ] = new Object[] { "Region " + ( i % 10 ) };
+    }
+    final ColumnarTableModel columnar = new ColumnarTableModel( new MockTableModel( data ) );
+    assertSame( columnar.getValueAt( 3, 0 ), columnar.getValueAt( 13, 0 ) );
+    assertTrue( columnar.getEstimatedBytes() < TableModelWeigher.weighValue( "Region 0" ) * data.length );
+  }
+
+  @Test
+  public void testPrimitiveColumnsAreSmallerThanBoxedValues() {
+    final Object[][] data = new Object[ 10000 ][];
+    for ( int i = 0; i < data.length; i++ ) {
+      data[ i ] = new Object[] { i, (long) i, i / 3.0, new Date( i ), new BigDecimal( i ).movePointLeft( 2 ) };
+    }
+    final MockTableModel model = new MockTableModel( data );
+    final ColumnarTableModel columnar = new ColumnarTableModel( model );
+    final TableModelWeigher weigher = new TableModelWeigher();
+    assertTrue( 2L * weigher.weigh( null, columnar ) < weigher.weigh( null, model ) );
+  }
+
+  @Test
+  public void testMetaData() {
+    final DefaultTableModel model = new DefaultTableModel( new Object[][] { { "a" } }, new Object[] { "name" } );
+    final ColumnarTableModel columnar = new ColumnarTableModel( model );
+    assertEquals( "name", columnar.getColumnName( 0 ) );
+    assertEquals( Object.class, columnar.getColumnClass( 0 ) );
+    assertFalse( columnar.isCellDataAttributesSupported() );
+    assertSame( EmptyDataAttributes.INSTANCE, columnar.getColumnAttributes( 0 ) );
+
+    final MetaTableModel metaModel = mock( MetaTableModel.class );
+    final DataAttributes tableAttributes = mock( DataAttributes.class );
+    final DataAttributes columnAttributes = mock( DataAttributes.class );
+    when( metaModel.getRowCount() ).thenReturn( 0 );
+    when( metaModel.getColumnCount() ).thenReturn( 1 );
+    when( metaModel.getTableAttributes() ).thenReturn( tableAttributes );
+    when( metaModel.getColumnAttributes( 0 ) ).thenReturn( columnAttributes );
+    final ColumnarTableModel metaColumnar = new ColumnarTableModel( metaModel );
+    assertSame( tableAttributes, metaColumnar.getTableAttributes() );
+    assertSame( columnAttributes, metaColumnar.getColumnAttributes( 0 ) );
+  }
+
+  private static void assertSameValues( final TableModel expected, final TableModel actual ) {
+    for ( int row = 0; row < expected.getRowCount(); row++ ) {
+      for ( int column = 0; column < expected.getColumnCount(); column++ ) {
+        final Object value = expected.getValueAt( row, column );
+        final Object copy = actual.getValueAt( row, column );
+        assertEquals( row + "/" + column, value, copy );
+        if ( value != null ) {
+          assertSame( value.getClass(), copy.getClass() );
+        }
+      }
+    }
+  }
+}
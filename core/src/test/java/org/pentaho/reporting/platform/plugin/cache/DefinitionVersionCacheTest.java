@@ -0,0 +1,79 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.junit.After;
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.libraries.resourceloader.ResourceKey;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class DefinitionVersionCacheTest {
+
+  @After
+  public void tearDown() {
+    ClassicEngineBoot.getInstance().getEditableConfig().setConfigProperty( DefinitionVersionCache.LIFETIME, null );
+  }
+
+  @Test
+  public void testVersionIsMemoized() throws Exception {
+    final ResourceKey key = createKey();
+    final AtomicInteger loads = new AtomicInteger();
+    final DefinitionVersionCache.VersionLoader loader = k -> {
+      loads.incrementAndGet();
+      return 42;
+    };
+    assertEquals( 42, DefinitionVersionCache.getVersion( key, loader ) );
+    assertEquals( 42, DefinitionVersionCache.getVersion( key, loader ) );
+    assertEquals( 1, loads.get() );
+
+    DefinitionVersionCache.invalidate( key );
+    assertEquals( 42, DefinitionVersionCache.getVersion( key, loader ) );
+    assertEquals( 2, loads.get() );
+  }
+
+  @Test
+  public void testUpdateReplacesVersion() throws Exception {
+    final ResourceKey key = createKey();
+    assertEquals( 1, DefinitionVersionCache.getVersion( key, k -> 1 ) );
+    DefinitionVersionCache.update( key, 2 );
+    assertEquals( 2, DefinitionVersionCache.getVersion( key, k -> 3 ) );
+  }
+
+  @Test
+  public void testMissingVersionIsNotMemoized() throws Exception {
+    final ResourceKey key = createKey();
+    assertEquals( -1, DefinitionVersionCache.getVersion( key, k -> -1 ) );
+    assertEquals( 5, DefinitionVersionCache.getVersion( key, k -> 5 ) );
+    DefinitionVersionCache.update( key, -1 );
+    assertEquals( 6, DefinitionVersionCache.getVersion( key, k -> 6 ) );
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    ClassicEngineBoot.getInstance().getEditableConfig().setConfigProperty( DefinitionVersionCache.LIFETIME, "0" );
+    final ResourceKey key = createKey();
+    assertEquals( 1, DefinitionVersionCache.getVersion( key, k -> 1 ) );
+    assertEquals( 2, DefinitionVersionCache.getVersion( key, k -> 2 ) );
+  }
+
+  private static ResourceKey createKey() {
+    return new ResourceKey( "test", "report-" + UUID.randomUUID(), Collections.emptyMap() );
+  }
+}
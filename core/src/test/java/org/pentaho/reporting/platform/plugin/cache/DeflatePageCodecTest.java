@@ -0,0 +1,78 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeflatePageCodecTest {
+
+  private final DeflatePageCodec codec = new DeflatePageCodec();
+
+  static byte[] createPage( final int size ) {
+    final StringBuilder html = new StringBuilder();
+    int row = 0;
+    while ( html.length() < size ) {
+      html.append( "<tr><td class=\"style-1\">Row " ).append( row ).append( "</td><td class=\"style-2\">" )
+        .append( row * 31 % 1000 ).append( ".00</td></tr>\n" );
+      row++;
+    }
+    return Arrays.copyOf( html.toString().getBytes( StandardCharsets.UTF_8 ), size );
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    final byte[] page = createPage( 100000 );
+    final byte[] encoded = codec.encode( page );
+    assertTrue( encoded.length < page.length / 4 );
+    assertArrayEquals( page, codec.decode( encoded ) );
+  }
+
+  @Test
+  public void testRoundTripAllLevels() throws Exception {
+    final byte[] page = createPage( 5000 );
+    for ( int level = 1; level <= 9; level++ ) {
+      codec.setLevel( level );
+      assertArrayEquals( page, codec.decode( codec.encode( page ) ) );
+    }
+  }
+
+  @Test
+  public void testEmptyPage() throws Exception {
+    assertArrayEquals( new byte[ 0 ], codec.decode( codec.encode( new byte[ 0 ] ) ) );
+  }
+
+  @Test( expected = IOException.class )
+  public void testTruncatedPage() throws Exception {
+    final byte[] encoded = codec.encode( createPage( 10000 ) );
+    codec.decode( Arrays.copyOf( encoded, encoded.length / 2 ) );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testInvalidLevel() {
+    codec.setLevel( 0 );
+  }
+
+  @Test
+  public void testResolveBuiltInCodecs() throws Exception {
+    assertEquals( PlainPageCodec.ID, ReportContentFileFormat.resolveCodec( PlainPageCodec.ID, codec ).getId() );
+    assertEquals( DeflatePageCodec.ID, ReportContentFileFormat.resolveCodec( DeflatePageCodec.ID, null ).getId() );
+  }
+}
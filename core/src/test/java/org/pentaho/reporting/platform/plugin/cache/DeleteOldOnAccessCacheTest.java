@@ -22,8 +22,10 @@ import org.pentaho.platform.engine.core.system.StandaloneSession;
 
 import java.util.Collections;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 
 public class DeleteOldOnAccessCacheTest {
@@ -69,6 +71,34 @@ public class DeleteOldOnAccessCacheTest {
     assertNull( cache.get( SOME_KEY ) );
   }
 
+  @Test
+  public void testSweepPurgesExpiredEntries() throws Exception {
+    final DeleteOldOnAccessCache cache = new DeleteOldOnAccessCache( fileSystemCacheBackend );
+    cache.setDaysToLive( 1L );
+    cache.put( SOME_KEY, SOME_VALUE );
+    cache.sweep();
+    assertNotNull( fileSystemCacheBackend.read( cache.computeKey( SOME_KEY ) ) );
+    cache.setMillisToLive( 0 );
+    Thread.sleep( 10 );
+    cache.sweep();
+    assertNull( fileSystemCacheBackend.read( cache.computeKey( SOME_KEY ) ) );
+    cache.shutdown();
+  }
+
+  @Test
+  public void testIndexRebuiltFromStoredEntries() throws Exception {
+    final DeleteOldOnAccessCache writer = new DeleteOldOnAccessCache( fileSystemCacheBackend );
+    writer.setDaysToLive( 1L );
+    writer.put( SOME_KEY, SOME_VALUE );
+
+    final DeleteOldOnAccessCache restarted = new DeleteOldOnAccessCache( fileSystemCacheBackend );
+    restarted.setMillisToLive( 0 );
+    restarted.rebuildIndex();
+    Thread.sleep( 10 );
+    restarted.sweep();
+    assertNull( fileSystemCacheBackend.read( writer.computeKey( SOME_KEY ) ) );
+    writer.shutdown();
+  }
 
   @Test
   public void testCleanupCurrentSession() throws Exception {
@@ -88,7 +118,9 @@ public class DeleteOldOnAccessCacheTest {
     cache.put( SOME_KEY, SOME_VALUE );
     assertNotNull( cache.get( SOME_KEY ) );
     //The second one cleans cache
+    assertTrue( cache.isIndexed( SOME_KEY ) );
     cache.cleanupCurrentSession();
+    assertFalse( cache.isIndexed( SOME_KEY ) );
     assertNull( cache.get( SOME_KEY ) );
     //The first one still has his data
     PentahoSessionHolder.setSession( bill );
@@ -96,5 +128,6 @@ public class DeleteOldOnAccessCacheTest {
     //The first one cleans cache
     cache.cleanupCurrentSession();
     assertNull( cache.get( SOME_KEY ) );
+    cache.shutdown();
   }
 }
@@ -0,0 +1,113 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Many viewers reading a shared set of entries while a few threads keep rewriting them. Every read must see a whole
+ * value of its own entry, never a torn or foreign one.
+ */
+public class FileSystemCacheBackendContentionTest {
+
+  private static final int THREADS = 32;
+  private static final int KEYS = 16;
+  private static final int OPERATIONS = 200;
+
+  private static FileSystemCacheBackend backend;
+
+  @BeforeClass
+  public static void setUp() {
+    backend = new FileSystemCacheBackend();
+    backend.setCachePath( "/test-cache-contention/" );
+    for ( int i = 0; i < KEYS; i++ ) {
+      assertTrue( backend.write( key( i ), value( i, 0 ), metaData( i ) ) );
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    if ( backend != null ) {
+      assertTrue( backend.purge( Collections.singletonList( "" ) ) );
+    }
+  }
+
+  @Test
+  public void testReadsUnderContention() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+    final CountDownLatch start = new CountDownLatch( 1 );
+    final List<Future<?>> results = new ArrayList<>();
+    for ( int t = 0; t < THREADS; t++ ) {
+      final int thread = t;
+      results.add( executor.submit( () -> {
+        start.await();
+        for ( int op = 1; op <= OPERATIONS; op++ ) {
+          final int i = ( thread + op ) % KEYS;
+          if ( thread % 8 == 0 ) {
+            assertTrue( backend.write( key( i ), value( i, op ), metaData( i ) ) );
+          } else {
+            final String value = (String) backend.read( key( i ) );
+            assertNotNull( value );
+            assertTrue( value, value.startsWith( "value" + i + "-" ) );
+            final Map<String, Serializable> metaData = backend.readMetaData( key( i ) );
+            assertNotNull( metaData );
+            assertEquals( i, metaData.get( "index" ) );
+          }
+        }
+        return null;
+      } ) );
+    }
+    start.countDown();
+    for ( final Future<?> result : results ) {
+      // rethrows a failed assertion of the thread
+      result.get();
+    }
+    executor.shutdown();
+    assertTrue( executor.awaitTermination( 1, TimeUnit.MINUTES ) );
+  }
+
+  private static List<String> key( final int i ) {
+    return Arrays.asList( "session", "user" + ( i % 4 ), "report" + i );
+  }
+
+  private static String value( final int i, final int version ) {
+    return "value" + i + "-" + version;
+  }
+
+  private static HashMap<String, Serializable> metaData( final int i ) {
+    final HashMap<String, Serializable> metaData = new HashMap<>();
+    metaData.put( "index", i );
+    return metaData;
+  }
+}
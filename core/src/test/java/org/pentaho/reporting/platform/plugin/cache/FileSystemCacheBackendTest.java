@@ -21,6 +21,8 @@ import org.junit.Test;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.StandaloneSession;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -28,18 +30,21 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 
@@ -79,6 +84,119 @@ public class FileSystemCacheBackendTest {
     assertEquals( fileSystemCacheBackend.read( Arrays.asList( directoryKey, key ) ), value );
   }
 
+  @Test
+  public void testWriteReadPagedContent() throws Exception {
+    final Map<Integer, byte[]> pages = new HashMap<>();
+    pages.put( 0, new byte[] { 1 } );
+    pages.put( 1, new byte[] { 1, 2 } );
+    pages.put( 3, new byte[] { 1, 2, 3, 4 } );
+    assertTrue( fileSystemCacheBackend
+      .write( Arrays.asList( directoryKey, key ), new ReportContentImpl( 5, pages ), new HashMap<String, Serializable>() ) );
+
+    final Serializable read = fileSystemCacheBackend.read( Arrays.asList( directoryKey, key ) );
+    assertTrue( read instanceof PagedReportContent );
+    final IReportContent content = (IReportContent) read;
+    assertEquals( 5, content.getPageCount() );
+    assertEquals( 3, content.getStoredPageCount() );
+    assertTrue( Arrays.equals( new byte[] { 1, 2 }, content.getPageData( 1 ) ) );
+    assertTrue( Arrays.equals( new byte[] { 1, 2, 3, 4 }, content.getPageData( 3 ) ) );
+    assertNull( content.getPageData( 2 ) );
+  }
+
+  @Test
+  public void testAppendPagedContent() throws Exception {
+    final Map<Integer, byte[]> pages = new HashMap<>();
+    pages.put( 0, new byte[] { 1 } );
+    assertTrue( fileSystemCacheBackend
+      .write( Arrays.asList( directoryKey, key ), new ReportContentImpl( 3, pages ), new HashMap<String, Serializable>() ) );
+    final IReportContent before = (IReportContent) fileSystemCacheBackend.read( Arrays.asList( directoryKey, key ) );
+
+    final Map<Integer, byte[]> appended = new HashMap<>();
+    appended.put( 1, new byte[] { 2, 2 } );
+    appended.put( 2, new byte[] { 3, 3, 3 } );
+    final HashMap<String, Serializable> metaData = new HashMap<>();
+    metaData.put( "rows", 10 );
+    assertTrue( fileSystemCacheBackend.append( Arrays.asList( directoryKey, key ), 4, appended, metaData ) );
+
+    final IReportContent after = (IReportContent) fileSystemCacheBackend.read( Arrays.asList( directoryKey, key ) );
+    assertEquals( 4, after.getPageCount() );
+    assertEquals( 3, after.getStoredPageCount() );
+    assertTrue( Arrays.equals( new byte[] { 1 }, after.getPageData( 0 ) ) );
+    assertTrue( Arrays.equals( new byte[] { 3, 3, 3 }, after.getPageData( 2 ) ) );
+    assertEquals( 10, fileSystemCacheBackend.readMetaData( Arrays.asList( directoryKey, key ) ).get( "rows" ) );
+
+    // content read before the append is unchanged
+    assertEquals( 1, before.getStoredPageCount() );
+    assertTrue( Arrays.equals( new byte[] { 1 }, before.getPageData( 0 ) ) );
+  }
+
+  @Test
+  public void testAppendReplacesPage() throws Exception {
+    final Map<Integer, byte[]> pages = new HashMap<>();
+    pages.put( 0, new byte[] { 1 } );
+    fileSystemCacheBackend
+      .write( Arrays.asList( directoryKey, key ), new ReportContentImpl( 1, pages ), new HashMap<String, Serializable>() );
+    fileSystemCacheBackend.append( Arrays.asList( directoryKey, key ), 1,
+      Collections.singletonMap( 0, new byte[] { 5, 5 } ), new HashMap<String, Serializable>() );
+
+    final IReportContent content = (IReportContent) fileSystemCacheBackend.read( Arrays.asList( directoryKey, key ) );
+    assertEquals( 1, content.getStoredPageCount() );
+    assertTrue( Arrays.equals( new byte[] { 5, 5 }, content.getPageData( 0 ) ) );
+  }
+
+  @Test
+  public void testAppendToMissingEntry() throws Exception {
+    final List<String> missing = Arrays.asList( directoryKey, "missing.html" );
+    assertTrue( fileSystemCacheBackend.append( missing, 2, Collections.singletonMap( 1, new byte[] { 4 } ),
+      new HashMap<String, Serializable>() ) );
+    final IReportContent content = (IReportContent) fileSystemCacheBackend.read( missing );
+    assertEquals( 2, content.getPageCount() );
+    assertTrue( Arrays.equals( new byte[] { 4 }, content.getPageData( 1 ) ) );
+    fileSystemCacheBackend.purge( missing );
+  }
+
+  @Test
+  public void testCompressedContentSurvivesCodecChange() throws Exception {
+    final List<String> compressed = Arrays.asList( directoryKey, "compressed.html" );
+    final FileSystemCacheBackend deflateBackend = new FileSystemCacheBackend();
+    deflateBackend.setCachePath( "/test-cache/" );
+    deflateBackend.setPageCodec( new DeflatePageCodec() );
+    final byte[] page = DeflatePageCodecTest.createPage( 20000 );
+    assertTrue( deflateBackend.write( compressed, new ReportContentImpl( 3, Collections.singletonMap( 0, page ) ),
+      new HashMap<String, Serializable>() ) );
+    assertEquals( "deflate", deflateBackend.readMetaData( compressed ).get( FileSystemCacheBackend.PAGE_CODEC ) );
+
+    // the plain backend reads deflated content and appends to it in its codec
+    assertTrue( fileSystemCacheBackend.append( compressed, 3, Collections.singletonMap( 2, page ),
+      new HashMap<String, Serializable>() ) );
+    final PagedReportContent content = (PagedReportContent) fileSystemCacheBackend.read( compressed );
+    assertTrue( Arrays.equals( page, content.getPageData( 0 ) ) );
+    assertTrue( Arrays.equals( page, content.getPageData( 2 ) ) );
+    assertTrue( content.getContentSize() < page.length );
+    assertEquals( "deflate", fileSystemCacheBackend.readMetaData( compressed ).get( FileSystemCacheBackend.PAGE_CODEC ) );
+    fileSystemCacheBackend.purge( compressed );
+  }
+
+  @Test
+  public void testPagedContentSerializesAsPlainContent() throws Exception {
+    final Map<Integer, byte[]> pages = new HashMap<>();
+    pages.put( 0, new byte[] { 7, 8 } );
+    assertTrue( fileSystemCacheBackend
+      .write( Arrays.asList( directoryKey, key ), new ReportContentImpl( 1, pages ), new HashMap<String, Serializable>() ) );
+    final IReportContent paged = (IReportContent) fileSystemCacheBackend.read( Arrays.asList( directoryKey, key ) );
+
+    final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try ( final ObjectOutputStream oout = new ObjectOutputStream( bout ) ) {
+      oout.writeObject( paged );
+    }
+    try ( final ObjectInputStream oin = new ObjectInputStream( new ByteArrayInputStream( bout.toByteArray() ) ) ) {
+      final IReportContent copy = (IReportContent) oin.readObject();
+      assertTrue( copy instanceof ReportContentImpl );
+      assertEquals( 1, copy.getStoredPageCount() );
+      assertTrue( Arrays.equals( new byte[] { 7, 8 }, copy.getPageData( 0 ) ) );
+    }
+  }
+
   @Test
   public void testPurge() throws Exception {
     assertTrue(
@@ -98,12 +216,49 @@ public class FileSystemCacheBackendTest {
   }
 
   @Test
-  public void testPurgeSyncMapCleaning() {
-    List<String> randomKey = Arrays.asList( UUID.randomUUID().toString() );
-    Map<List<String>, ReentrantReadWriteLock> syncMap = new HashMap<List<String>, ReentrantReadWriteLock>();
-    fileSystemCacheBackend.setSyncMap( syncMap );
-    fileSystemCacheBackend.purge( randomKey );
-    assertFalse( fileSystemCacheBackend.getSyncMap().containsKey( randomKey ) );
+  public void testVisitDoesNotBlockWrites() throws Exception {
+    assertTrue(
+      fileSystemCacheBackend.write( Arrays.asList( directoryKey, key ), value, new HashMap<String, Serializable>() ) );
+    final CountDownLatch visiting = new CountDownLatch( 1 );
+    final CountDownLatch written = new CountDownLatch( 1 );
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<?> walk = executor.submit( () -> fileSystemCacheBackend.visitSegment(
+        Collections.singletonList( directoryKey ), ( entryKey, metaData ) -> {
+          visiting.countDown();
+          try {
+            written.await( 5, TimeUnit.SECONDS );
+          } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+          }
+        } ) );
+      assertTrue( visiting.await( 5, TimeUnit.SECONDS ) );
+      // the walk is in progress, entry operations go on
+      assertTrue( fileSystemCacheBackend
+        .write( Arrays.asList( directoryKey, "other" ), value, new HashMap<String, Serializable>() ) );
+      written.countDown();
+      walk.get( 5, TimeUnit.SECONDS );
+    } finally {
+      executor.shutdownNow();
+      fileSystemCacheBackend.purge( Arrays.asList( directoryKey, "other" ) );
+    }
+  }
+
+  @Test
+  public void testLockTableIsBounded() {
+    final Set<ReentrantReadWriteLock> locks = new HashSet<>();
+    for ( int i = 0; i < 10000; i++ ) {
+      locks.add( fileSystemCacheBackend.getLock( Arrays.asList( directoryKey, UUID.randomUUID().toString() ) ) );
+    }
+    assertTrue( locks.size() <= 64 );
+  }
+
+  @Test
+  public void testDataAndMetadataShareLock() {
+    assertSame( fileSystemCacheBackend.getLock( Arrays.asList( directoryKey, key ) ),
+      fileSystemCacheBackend.getLock( Arrays.asList( directoryKey, key + FileSystemCacheBackend.DATA ) ) );
+    assertSame( fileSystemCacheBackend.getLock( Arrays.asList( directoryKey, key ) ),
+      fileSystemCacheBackend.getLock( Arrays.asList( directoryKey, key + FileSystemCacheBackend.METADATA ) ) );
   }
 
   @Test
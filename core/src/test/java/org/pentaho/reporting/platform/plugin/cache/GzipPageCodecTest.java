@@ -0,0 +1,83 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GzipPageCodecTest {
+
+  private final GzipPageCodec codec = new GzipPageCodec();
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    final byte[] page = DeflatePageCodecTest.createPage( 100000 );
+    final byte[] encoded = codec.encode( page );
+    assertTrue( encoded.length < page.length / 4 );
+    assertArrayEquals( page, codec.decode( encoded ) );
+  }
+
+  @Test
+  public void testReadableAsGzip() throws Exception {
+    final byte[] page = DeflatePageCodecTest.createPage( 20000 );
+    try ( GZIPInputStream in = new GZIPInputStream( new ByteArrayInputStream( codec.encode( page ) ) ) ) {
+      assertArrayEquals( page, IOUtils.toByteArray( in ) );
+    }
+  }
+
+  @Test
+  public void testEmptyPage() throws Exception {
+    assertArrayEquals( new byte[ 0 ], codec.decode( codec.encode( new byte[ 0 ] ) ) );
+  }
+
+  @Test( expected = IOException.class )
+  public void testDamagedChecksum() throws Exception {
+    final byte[] encoded = codec.encode( DeflatePageCodecTest.createPage( 10000 ) );
+    encoded[ encoded.length - 5 ] ^= 1;
+    codec.decode( encoded );
+  }
+
+  @Test
+  public void testResolveCodec() throws Exception {
+    assertEquals( GzipPageCodec.ID, ReportContentFileFormat.resolveCodec( GzipPageCodec.ID, null ).getId() );
+  }
+
+  @Test
+  public void testReportContentEncodesPageOnce() throws Exception {
+    final byte[] page = DeflatePageCodecTest.createPage( 1000 );
+    final GzipReportContent content = GzipReportContent.encode( 2, Collections.singletonMap( 0, page ) );
+    final byte[] encoded = content.getGzipPageData( 0 );
+    assertArrayEquals( page, codec.decode( encoded ) );
+    assertSame( encoded, content.getGzipPageData( 0 ) );
+    assertArrayEquals( page, content.getPageData( 0 ) );
+    assertNull( content.getGzipPageData( 1 ) );
+    assertEquals( 1, content.getStoredPageCount() );
+
+    // plain content gets the same encoding, gzip content is taken as it is
+    final GzipReportContent copy = GzipReportContent.encode( new ReportContentImpl( 2, Collections.singletonMap( 0,
+      page ) ) );
+    assertArrayEquals( encoded, copy.getGzipPageData( 0 ) );
+    assertSame( content, GzipReportContent.encode( (IReportContent) content ) );
+  }
+}
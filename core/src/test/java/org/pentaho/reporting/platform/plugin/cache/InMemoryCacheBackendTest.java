@@ -0,0 +1,229 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InMemoryCacheBackendTest {
+
+  private static final List<String> KEY = Arrays.asList( "session", "id", "key" );
+
+  private ICacheBackend delegate;
+  private InMemoryCacheBackend backend;
+
+  @Before
+  public void setUp() {
+    delegate = mock( ICacheBackend.class );
+    when( delegate.write( anyList(), any(), anyMap() ) ).thenReturn( true );
+    when( delegate.purge( anyList() ) ).thenReturn( true );
+    backend = new InMemoryCacheBackend( delegate );
+  }
+
+  /**
+   * Content with a page of random bytes, which keeps its size when encoded.
+   */
+  private static IReportContent content( final int pageSize ) {
+    final byte[] page = new byte[ pageSize ];
+    new Random( pageSize ).nextBytes( page );
+    return new ReportContentImpl( 1, Collections.singletonMap( 0, page ) );
+  }
+
+  @Test
+  public void testWriteThroughAndReadFromMemory() {
+    final IReportContent value = content( 10 );
+    final Map<String, Serializable> metaData = new HashMap<>();
+    metaData.put( "rows", 5 );
+
+    assertTrue( backend.write( KEY, value, metaData ) );
+    verify( delegate, times( 1 ) ).write( KEY, value, metaData );
+
+    final IReportContent cached = (IReportContent) backend.read( KEY );
+    assertArrayEquals( value.getPageData( 0 ), cached.getPageData( 0 ) );
+    assertEquals( 5, backend.readMetaData( KEY ).get( "rows" ) );
+    verify( delegate, never() ).read( anyList() );
+    verify( delegate, never() ).readMetaData( anyList() );
+    assertTrue( backend.getStats().hitCount() > 0 );
+  }
+
+  @Test
+  public void testReadMissLoadsFromDelegate() {
+    final IReportContent value = content( 10 );
+    when( delegate.read( KEY ) ).thenReturn( value );
+
+    final Serializable cached = backend.read( KEY );
+    assertSame( cached, backend.read( KEY ) );
+    verify( delegate, times( 1 ) ).read( KEY );
+  }
+
+  @Test
+  public void testDelegateContentIsCopiedToHeap() {
+    final byte[] page = DeflatePageCodecTest.createPage( 1000 );
+    final Map<Integer, long[]> index = Collections.singletonMap( 0, new long[] { 0, page.length } );
+    final PagedReportContent mapped =
+      new PagedReportContent( 1, index, ByteBuffer.wrap( page ).asReadOnlyBuffer(), new PlainPageCodec() );
+    when( delegate.read( KEY ) ).thenReturn( mapped );
+
+    final Serializable cached = backend.read( KEY );
+    assertTrue( cached instanceof GzipReportContent );
+    assertArrayEquals( page, ( (IReportContent) cached ).getPageData( 0 ) );
+    assertSame( cached, backend.read( KEY ) );
+  }
+
+  @Test
+  public void testReadDoesNotRestoreValueReplacedByWrite() throws Exception {
+    final CountDownLatch reading = new CountDownLatch( 1 );
+    final CountDownLatch written = new CountDownLatch( 1 );
+    final IReportContent old = content( 10 );
+    when( delegate.read( KEY ) ).thenAnswer( invocation -> {
+      reading.countDown();
+      written.await();
+      return old;
+    } ).thenReturn( null );
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<Serializable> read = executor.submit( () -> backend.read( KEY ) );
+      assertTrue( reading.await( 5, TimeUnit.SECONDS ) );
+      // too large for memory, the entry is only invalidated
+      backend.setMaximumEntryBytes( 100 );
+      backend.write( KEY, content( 1000 ), new HashMap<String, Serializable>() );
+      backend.setMaximumEntryBytes( Integer.MAX_VALUE );
+      written.countDown();
+      assertNotNull( read.get( 5, TimeUnit.SECONDS ) );
+    } finally {
+      executor.shutdownNow();
+    }
+    assertNull( backend.read( KEY ) );
+    verify( delegate, times( 2 ) ).read( KEY );
+  }
+
+  @Test
+  public void testContentIsHeldGzipEncoded() throws Exception {
+    final byte[] page = DeflatePageCodecTest.createPage( 10000 );
+    final IReportContent value = new ReportContentImpl( 2, Collections.singletonMap( 0, page ) );
+    backend.write( KEY, value, new HashMap<String, Serializable>() );
+
+    final IReportContent cached = (IReportContent) backend.read( KEY );
+    assertEquals( 2, cached.getPageCount() );
+    assertEquals( 1, cached.getStoredPageCount() );
+    final byte[] gzip = cached.getGzipPageData( 0 );
+    assertNotNull( gzip );
+    assertArrayEquals( page, new GzipPageCodec().decode( gzip ) );
+    assertArrayEquals( page, cached.getPageData( 0 ) );
+    assertNull( cached.getPageData( 1 ) );
+    // weighed by the encoded pages
+    final ReportContentWeigher weigher = new ReportContentWeigher();
+    weigher.setEntryOverhead( 0 );
+    assertEquals( gzip.length, weigher.weigh( KEY, cached ) );
+  }
+
+  @Test
+  public void testAppendInvalidatesEntry() {
+    final IReportContent value = content( 10 );
+    backend.write( KEY, value, new HashMap<String, Serializable>() );
+    final Map<Integer, byte[]> pages = Collections.singletonMap( 1, new byte[ 10 ] );
+    final Map<String, Serializable> metaData = new HashMap<>();
+    when( delegate.append( KEY, 2, pages, metaData ) ).thenReturn( true );
+
+    assertTrue( backend.append( KEY, 2, pages, metaData ) );
+    verify( delegate, times( 1 ) ).append( KEY, 2, pages, metaData );
+    backend.read( KEY );
+    verify( delegate, times( 1 ) ).read( KEY );
+  }
+
+  @Test
+  public void testMetaDataIsCopied() {
+    backend.write( KEY, content( 10 ), new HashMap<String, Serializable>() );
+    backend.readMetaData( KEY ).put( "changed", true );
+    assertNull( backend.readMetaData( KEY ).get( "changed" ) );
+  }
+
+  @Test
+  public void testEvictsBySize() {
+    backend.setMaximumBytes( 3000 );
+    backend.setMaximumEntryBytes( 3000 );
+    final ReportContentWeigher weigher = new ReportContentWeigher();
+    weigher.setEntryOverhead( 0 );
+    backend.setWeigher( weigher );
+
+    backend.write( Arrays.asList( "a" ), content( 1000 ), new HashMap<String, Serializable>() );
+    backend.write( Arrays.asList( "b" ), content( 1000 ), new HashMap<String, Serializable>() );
+    backend.write( Arrays.asList( "c" ), content( 1000 ), new HashMap<String, Serializable>() );
+    backend.write( Arrays.asList( "d" ), content( 1000 ), new HashMap<String, Serializable>() );
+
+    backend.read( Arrays.asList( "a" ) );
+    verify( delegate, times( 1 ) ).read( Arrays.asList( "a" ) );
+    assertTrue( backend.getStats().evictionCount() > 0 );
+  }
+
+  @Test
+  public void testLargeEntriesStayOnDisk() {
+    backend.setMaximumEntryBytes( 100 );
+    backend.write( KEY, content( 1000 ), new HashMap<String, Serializable>() );
+    backend.read( KEY );
+    verify( delegate, times( 1 ) ).read( KEY );
+  }
+
+  @Test
+  public void testPurgeInvalidatesSegment() {
+    backend.write( KEY, content( 10 ), new HashMap<String, Serializable>() );
+    assertTrue( backend.purge( Arrays.asList( "session", "id" ) ) );
+    assertNull( backend.read( KEY ) );
+    verify( delegate, times( 1 ) ).read( KEY );
+  }
+
+  @Test
+  public void testPurgeSegmentInvalidatesMatchingEntries() {
+    backend.write( KEY, content( 10 ), new HashMap<String, Serializable>() );
+    final Map<String, Serializable> metaData = new HashMap<>();
+    doAnswer( invocation -> {
+      final BiPredicate<List<String>, Map<String, Serializable>> p = invocation.getArgument( 1 );
+      p.test( KEY, metaData );
+      return null;
+    } ).when( delegate ).purgeSegment( anyList(), any() );
+
+    backend.purgeSegment( Collections.singletonList( "session" ), ( k, m ) -> true );
+    assertNull( backend.read( KEY ) );
+  }
+}
@@ -0,0 +1,71 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Encode and decode throughput of the page codecs against page size. Runs only with
+ * -Dorg.pentaho.reporting.engine.classic.test.ExecutePerformanceTest=true (see test.performance in the parent pom).
+ */
+public class PageCodecPerformanceTest {
+
+  private static final int[] PAGE_SIZES = { 4 * 1024, 32 * 1024, 256 * 1024, 2 * 1024 * 1024 };
+  private static final long DURATION_MS = 1000;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue( Boolean.getBoolean( "org.pentaho.reporting.engine.classic.test.ExecutePerformanceTest" ) );
+  }
+
+  @Test
+  public void testThroughput() throws Exception {
+    final DeflatePageCodec fast = new DeflatePageCodec();
+    final DeflatePageCodec dense = new DeflatePageCodec();
+    dense.setLevel( Deflater.BEST_COMPRESSION );
+    for ( final int size : PAGE_SIZES ) {
+      final byte[] page = DeflatePageCodecTest.createPage( size );
+      measure( "plain", new PlainPageCodec(), page );
+      measure( "deflate-1", fast, page );
+      measure( "deflate-9", dense, page );
+    }
+  }
+
+  private static void measure( final String name, final PageCodec codec, final byte[] page ) throws Exception {
+    byte[] encoded = codec.encode( page );
+    long end = System.currentTimeMillis() + DURATION_MS;
+    long encodedBytes = 0;
+    while ( System.currentTimeMillis() < end ) {
+      encoded = codec.encode( page );
+      encodedBytes += page.length;
+    }
+    end = System.currentTimeMillis() + DURATION_MS;
+    long decodedBytes = 0;
+    byte[] decoded = null;
+    while ( System.currentTimeMillis() < end ) {
+      decoded = codec.decode( encoded );
+      decodedBytes += page.length;
+    }
+    assertEquals( page.length, decoded.length );
+
+    System.out.println( String.format( "%-10s page %8d bytes, ratio %5.1f, encode %7.1f MB/s, decode %7.1f MB/s", name,
+      page.length, (double) page.length / encoded.length, encodedBytes * 1000.0 / DURATION_MS / 1024 / 1024,
+      decodedBytes * 1000.0 / DURATION_MS / 1024 / 1024 ) );
+  }
+}
@@ -0,0 +1,284 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import com.google.common.base.Ticker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
+import org.pentaho.platform.engine.core.system.StandaloneSession;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.engine.classic.core.cache.DataCacheKey;
+import org.pentaho.reporting.engine.classic.core.util.TypedTableModel;
+import org.pentaho.reporting.libraries.base.config.ModifiableConfiguration;
+
+import javax.swing.table.TableModel;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PentahoDataCacheTest {
+
+  private static final int WEIGHT = 1000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void beforeClass() {
+    ClassicEngineBoot.getInstance().start();
+  }
+
+  @Before
+  public void setUp() {
+    final ModifiableConfiguration config = ClassicEngineBoot.getInstance().getEditableConfig();
+    config.setConfigProperty( PentahoDataCache.ROW_LIMIT, "10000" );
+    config.setConfigProperty( PentahoDataCache.MAXIMUM_BYTES, String.valueOf( 100 * WEIGHT ) );
+    config.setConfigProperty( PentahoDataCache.MAXIMUM_ENTRY_BYTES, String.valueOf( 5 * WEIGHT ) );
+    config.setConfigProperty( PentahoDataCache.SPILL_MAXIMUM_BYTES, "0" );
+    PentahoSessionHolder.setSession( new StandaloneSession( "joe", "session-joe" ) );
+  }
+
+  @After
+  public void tearDown() {
+    final ModifiableConfiguration config = ClassicEngineBoot.getInstance().getEditableConfig();
+    config.setConfigProperty( PentahoDataCache.MAXIMUM_BYTES, null );
+    config.setConfigProperty( PentahoDataCache.MAXIMUM_ENTRY_BYTES, null );
+    config.setConfigProperty( PentahoDataCache.SPILL_MAXIMUM_BYTES, null );
+    config.setConfigProperty( PentahoDataCache.EXPIRE_AFTER_WRITE_SECONDS, null );
+    config.setConfigProperty( PentahoDataCache.EXPIRE_AFTER_ACCESS_SECONDS, null );
+    PentahoSessionHolder.setSession( null );
+  }
+
+  @Test
+  public void testPutAndGet() {
+    final PentahoDataCache cache = new PentahoDataCache( ( key, model ) -> WEIGHT );
+    final DataCacheKey key = key( "a" );
+    final TableModel model = model();
+    assertNull( cache.get( key ) );
+
+    final TableModel cached = cache.put( key, model );
+    assertNotSame( model, cached );
+    assertTrue( cached instanceof ColumnarTableModel );
+    assertSame( cached, cache.get( key ) );
+
+    final Map<String, Long> statistics = cache.getStatistics();
+    assertEquals( 1L, (long) statistics.get( "hits" ) );
+    assertEquals( 1L, (long) statistics.get( "misses" ) );
+    assertEquals( 1L, (long) statistics.get( "entries" ) );
+    assertEquals( WEIGHT, cache.getBytes() );
+  }
+
+  @Test
+  public void testHeavyModelIsNotCached() {
+    final PentahoDataCache cache = new PentahoDataCache( ( key, model ) -> 6 * WEIGHT );
+    final TableModel model = model();
+    assertSame( model, cache.put( key( "a" ), model ) );
+    assertNull( cache.get( key( "a" ) ) );
+    assertEquals( 0, cache.getBytes() );
+  }
+
+  @Test
+  public void testEvictionKeepsBudget() {
+    final PentahoDataCache cache = new PentahoDataCache( ( key, model ) -> WEIGHT );
+    for ( int i = 0; i < 500; i++ ) {
+      cache.put( key( "key" + i ), model() );
+    }
+    assertTrue( cache.getBytes() <= 100 * WEIGHT );
+    assertEquals( cache.getBytes(), WEIGHT * (long) cache.getStatistics().get( "entries" ) );
+    assertTrue( cache.getStats().evictionCount() >= 400 );
+  }
+
+  @Test
+  public void testKillSessionCache() {
+    final PentahoDataCache cache = new PentahoDataCache( ( key, model ) -> WEIGHT );
+    final StandaloneSession joe = (StandaloneSession) PentahoSessionHolder.getSession();
+    cache.put( key( "a" ), model() );
+    PentahoSessionHolder.setSession( new StandaloneSession( "suzy", "session-suzy" ) );
+    cache.put( key( "a" ), model() );
+
+    cache.onLogout( joe );
+    assertNotNull( cache.get( key( "a" ) ) );
+    assertEquals( WEIGHT, cache.getBytes() );
+    PentahoSessionHolder.setSession( joe );
+    assertNull( cache.get( key( "a" ) ) );
+
+    cache.clear();
+    assertEquals( 0, cache.getBytes() );
+  }
+
+  @Test
+  public void testHeavyModelIsSpilled() throws Exception {
+    ClassicEngineBoot.getInstance().getEditableConfig()
+      .setConfigProperty( PentahoDataCache.SPILL_MAXIMUM_BYTES, String.valueOf( 1024 * 1024 ) );
+    final File directory = folder.newFolder( "spill" );
+    final PentahoDataCache cache = new PentahoDataCache( ( key, model ) -> 6 * WEIGHT, directory );
+
+    final TableModel spilled = cache.put( key( "a" ), model() );
+    assertTrue( spilled instanceof SpilledTableModel );
+    assertSame( spilled, cache.get( key( "a" ) ) );
+    assertEquals( "b", spilled.getValueAt( 1, 0 ) );
+    assertEquals( 2, spilled.getValueAt( 1, 1 ) );
+    assertEquals( 0, cache.getBytes() );
+    assertEquals( 1L, (long) cache.getStatistics().get( "spillEntries" ) );
+    assertEquals( 1L, (long) cache.getStatistics().get( "spillHits" ) );
+
+    final File file = ( (SpilledTableModel) spilled ).getFile();
+    assertTrue( file.exists() );
+    cache.onLogout( PentahoSessionHolder.getSession() );
+    assertNull( cache.get( key( "a" ) ) );
+    assertEquals( 0L, (long) cache.getStatistics().get( "spillBytes" ) );
+  }
+
+  @Test
+  public void testEvictedModelIsSpilled() throws Exception {
+    ClassicEngineBoot.getInstance().getEditableConfig()
+      .setConfigProperty( PentahoDataCache.SPILL_MAXIMUM_BYTES, String.valueOf( 16 * 1024 * 1024 ) );
+    final File directory = folder.newFolder( "spill" );
+    final PentahoDataCache cache = new PentahoDataCache( ( key, model ) -> WEIGHT, directory, Runnable::run );
+    for ( int i = 0; i < 200; i++ ) {
+      cache.put( key( "key" + i ), model() );
+    }
+    assertTrue( cache.getStats().evictionCount() >= 100 );
+
+    final TableModel evicted = cache.get( key( "key0" ) );
+    assertTrue( evicted instanceof SpilledTableModel );
+    assertEquals( 2, evicted.getRowCount() );
+    assertEquals( "a", evicted.getValueAt( 0, 0 ) );
+
+    // a table put again lives on the heap only
+    assertTrue( cache.put( key( "key0" ), model() ) instanceof ColumnarTableModel );
+    assertTrue( cache.get( key( "key0" ) ) instanceof ColumnarTableModel );
+
+    cache.clear();
+    assertEquals( 0L, (long) cache.getStatistics().get( "spillEntries" ) );
+    assertFalse( ( (SpilledTableModel) evicted ).getFile().exists() );
+  }
+
+  @Test
+  public void testEvictedModelIsSpilledInBackground() throws Exception {
+    ClassicEngineBoot.getInstance().getEditableConfig()
+      .setConfigProperty( PentahoDataCache.SPILL_MAXIMUM_BYTES, String.valueOf( 16 * 1024 * 1024 ) );
+    final File directory = folder.newFolder( "spill" );
+    final Queue<Runnable> tasks = new ArrayDeque<>();
+    final PentahoDataCache cache = new PentahoDataCache( ( key, model ) -> WEIGHT, directory, tasks::add );
+    for ( int i = 0; i < 120; i++ ) {
+      cache.put( key( "key" + i ), model() );
+    }
+    // the evicting requests didn't write anything, waiting tables are still served
+    final long pending = cache.getStatistics().get( "spillPending" );
+    assertTrue( pending > 0 );
+    assertEquals( 0L, (long) cache.getStatistics().get( "spillEntries" ) );
+    int found = 0;
+    for ( int i = 0; i < 120; i++ ) {
+      if ( cache.get( key( "key" + i ) ) != null ) {
+        found++;
+      }
+    }
+    assertEquals( cache.getStatistics().get( "entries" ) + pending, found );
+
+    while ( !tasks.isEmpty() ) {
+      tasks.poll().run();
+    }
+    assertEquals( 0L, (long) cache.getStatistics().get( "spillPending" ) );
+    assertEquals( pending, (long) cache.getStatistics().get( "spillEntries" ) );
+
+    // tables of an ended session are not written
+    cache.clear();
+    for ( int i = 0; i < 120; i++ ) {
+      cache.put( key( "key" + i ), model() );
+    }
+    assertFalse( tasks.isEmpty() );
+    cache.onLogout( PentahoSessionHolder.getSession() );
+    while ( !tasks.isEmpty() ) {
+      tasks.poll().run();
+    }
+    assertEquals( 0L, (long) cache.getStatistics().get( "spillEntries" ) );
+    assertEquals( 0L, (long) cache.getStatistics().get( "spillPending" ) );
+  }
+
+  @Test
+  public void testModelExpires() throws Exception {
+    final ModifiableConfiguration config = ClassicEngineBoot.getInstance().getEditableConfig();
+    config.setConfigProperty( PentahoDataCache.EXPIRE_AFTER_WRITE_SECONDS, "600" );
+    config.setConfigProperty( PentahoDataCache.EXPIRE_AFTER_ACCESS_SECONDS, "300" );
+    final AtomicLong nanos = new AtomicLong();
+    final PentahoDataCache cache =
+      new PentahoDataCache( ( key, model ) -> WEIGHT, folder.newFolder( "spill" ), Runnable::run, ticker( nanos ) );
+    cache.put( key( "a" ), model() );
+    cache.put( key( "b" ), model() );
+
+    // read tables live until they were put long enough ago, idle tables go earlier
+    nanos.addAndGet( TimeUnit.SECONDS.toNanos( 200 ) );
+    assertNotNull( cache.get( key( "a" ) ) );
+    nanos.addAndGet( TimeUnit.SECONDS.toNanos( 200 ) );
+    assertNotNull( cache.get( key( "a" ) ) );
+    assertNull( cache.get( key( "b" ) ) );
+    nanos.addAndGet( TimeUnit.SECONDS.toNanos( 201 ) );
+    assertNull( cache.get( key( "a" ) ) );
+  }
+
+  @Test
+  public void testSpilledModelExpires() throws Exception {
+    final ModifiableConfiguration config = ClassicEngineBoot.getInstance().getEditableConfig();
+    config.setConfigProperty( PentahoDataCache.SPILL_MAXIMUM_BYTES, String.valueOf( 1024 * 1024 ) );
+    config.setConfigProperty( PentahoDataCache.EXPIRE_AFTER_WRITE_SECONDS, "600" );
+    final AtomicLong nanos = new AtomicLong();
+    final PentahoDataCache cache =
+      new PentahoDataCache( ( key, model ) -> 6 * WEIGHT, folder.newFolder( "spill" ), Runnable::run, ticker( nanos ) );
+
+    final TableModel spilled = cache.put( key( "a" ), model() );
+    assertTrue( spilled instanceof SpilledTableModel );
+    nanos.addAndGet( TimeUnit.SECONDS.toNanos( 601 ) );
+    assertNull( cache.get( key( "a" ) ) );
+  }
+
+  private static Ticker ticker( final AtomicLong nanos ) {
+    return new Ticker() {
+      @Override
+      public long read() {
+        return nanos.get();
+      }
+    };
+  }
+
+  private static DataCacheKey key( final String value ) {
+    final DataCacheKey key = new DataCacheKey();
+    key.addParameter( "query", value );
+    return key;
+  }
+
+  private static TableModel model() {
+    final TypedTableModel model = new TypedTableModel( new String[] { "name", "value" },
+      new Class[] { String.class, Integer.class } );
+    model.addRow( "a", 1 );
+    model.addRow( "b", 2 );
+    return model;
+  }
+}
@@ -0,0 +1,139 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.AttributeNames;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.engine.classic.core.DataFactory;
+import org.pentaho.reporting.engine.classic.core.DataRow;
+import org.pentaho.reporting.engine.classic.core.Element;
+import org.pentaho.reporting.engine.classic.core.MasterReport;
+import org.pentaho.reporting.engine.classic.core.ReportEnvironment;
+import org.pentaho.reporting.engine.classic.core.SubReport;
+import org.pentaho.reporting.engine.classic.core.function.FormulaExpression;
+import org.pentaho.reporting.engine.classic.core.metadata.DataFactoryMetaData;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReportSecurityFingerprintTest {
+
+  private MasterReport report;
+  private ReportEnvironment environment;
+  private DataFactory dataFactory;
+  private DataFactoryMetaData metaData;
+
+  @BeforeClass
+  public static void beforeClass() {
+    ClassicEngineBoot.getInstance().start();
+  }
+
+  @Before
+  public void setUp() {
+    report = mock( MasterReport.class );
+    environment = mock( ReportEnvironment.class );
+    dataFactory = mock( DataFactory.class );
+    metaData = mock( DataFactoryMetaData.class );
+    when( report.getReportEnvironment() ).thenReturn( environment );
+    when( report.getDataFactory() ).thenReturn( dataFactory );
+    when( dataFactory.getMetaData() ).thenReturn( metaData );
+    when( dataFactory.getQueryNames() ).thenReturn( new String[] { "query" } );
+    when( environment.getEnvironmentProperty( "roles" ) ).thenReturn( "Power User,Authenticated" );
+    when( environment.getEnvironmentProperty( "username" ) ).thenReturn( "bill" );
+  }
+
+  @Test
+  public void testRolesAreSorted() {
+    when( metaData.getReferencedFields( any( DataFactory.class ), anyString(), any( DataRow.class ) ) )
+      .thenReturn( new String[] { "region" } );
+    final Map<String, String> fingerprint = ReportSecurityFingerprint.compute( report );
+    assertEquals( "Authenticated,Power User", fingerprint.get( "roles" ) );
+    assertFalse( fingerprint.containsKey( "username" ) );
+  }
+
+  @Test
+  public void testReferencedUsername() {
+    when( metaData.getReferencedFields( any( DataFactory.class ), anyString(), any( DataRow.class ) ) )
+      .thenReturn( new String[] { "env::username" } );
+    final Map<String, String> bill = ReportSecurityFingerprint.compute( report );
+    assertEquals( "bill", bill.get( "username" ) );
+
+    when( environment.getEnvironmentProperty( "username" ) ).thenReturn( "steve" );
+    assertNotEquals( bill, ReportSecurityFingerprint.compute( report ) );
+  }
+
+  @Test
+  public void testUnknownReferencesIncludeUsername() {
+    when( metaData.getReferencedFields( any( DataFactory.class ), anyString(), any( DataRow.class ) ) )
+      .thenReturn( null );
+    assertTrue( ReportSecurityFingerprint.compute( report ).containsKey( "username" ) );
+  }
+
+  @Test
+  public void testReferenceInSubReportElement() {
+    final MasterReport master = createReport();
+    final SubReport subReport = new SubReport();
+    final Element field = new Element();
+    field.setAttribute( AttributeNames.Core.NAMESPACE, AttributeNames.Core.FIELD, "env::username" );
+    subReport.getReportHeader().addElement( field );
+    master.getReportHeader().addSubReport( subReport );
+
+    assertEquals( "bill", ReportSecurityFingerprint.compute( master ).get( "username" ) );
+  }
+
+  @Test
+  public void testReferenceInSubReportFormula() {
+    final MasterReport master = createReport();
+    final SubReport subReport = new SubReport();
+    final FormulaExpression formula = new FormulaExpression();
+    formula.setName( "region" );
+    formula.setFormula( "=IF([env::session:region] = \"EMEA\"; 1; 0)" );
+    subReport.addExpression( formula );
+    master.getItemBand().addSubReport( subReport );
+
+    when( environment.getEnvironmentProperty( "session:region" ) ).thenReturn( "EMEA" );
+    final Map<String, String> fingerprint = ReportSecurityFingerprint.compute( master );
+    assertEquals( "EMEA", fingerprint.get( "session:region" ) );
+    assertFalse( fingerprint.containsKey( "username" ) );
+  }
+
+  @Test
+  public void testReferenceInSubReportQuery() {
+    when( metaData.getReferencedFields( any( DataFactory.class ), anyString(), any( DataRow.class ) ) )
+      .thenReturn( new String[] { "env::username" } );
+    final MasterReport master = createReport();
+    final SubReport subReport = new SubReport();
+    subReport.setDataFactory( dataFactory );
+    master.getReportFooter().addSubReport( subReport );
+
+    assertEquals( "bill", ReportSecurityFingerprint.compute( master ).get( "username" ) );
+  }
+
+  private MasterReport createReport() {
+    final MasterReport master = new MasterReport();
+    master.setReportEnvironment( environment );
+    return master;
+  }
+}
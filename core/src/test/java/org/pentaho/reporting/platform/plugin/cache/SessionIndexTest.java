@@ -0,0 +1,57 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SessionIndexTest {
+
+  @Test
+  public void testKeysAreGroupedBySession() {
+    final SessionIndex<String> index = new SessionIndex<>();
+    index.add( "joe", "a" );
+    index.add( "joe", "b" );
+    index.add( "suzy", "c" );
+    index.add( null, "d" );
+    assertEquals( 2, index.size() );
+    assertEquals( new HashSet<>( Arrays.asList( "a", "b" ) ), index.getKeys( "joe" ) );
+
+    assertEquals( new HashSet<>( Arrays.asList( "a", "b" ) ), index.removeSession( "joe" ) );
+    assertTrue( index.getKeys( "joe" ).isEmpty() );
+    assertTrue( index.removeSession( "joe" ).isEmpty() );
+    assertTrue( index.removeSession( null ).isEmpty() );
+    assertEquals( 1, index.size() );
+  }
+
+  @Test
+  public void testEmptySessionIsForgotten() {
+    final SessionIndex<String> index = new SessionIndex<>();
+    index.add( "joe", "a" );
+    index.remove( "joe", "b" );
+    assertEquals( 1, index.size() );
+    index.remove( "joe", "a" );
+    assertEquals( 0, index.size() );
+    index.remove( "suzy", "a" );
+
+    index.add( "joe", "a" );
+    index.clear();
+    assertTrue( index.getKeys( "joe" ).isEmpty() );
+  }
+}
@@ -0,0 +1,89 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import junit.framework.Assert;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
+import org.pentaho.platform.engine.core.system.StandaloneSession;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SharedReportContentCacheTest {
+
+  private static final String SOME_KEY = "some_key";
+  private static final IReportContent SOME_VALUE =
+    new ReportContentImpl( 100, Collections.singletonMap( 1, new byte[] { 1, 3, 4, 5 } ) );
+  private static FileSystemCacheBackend fileSystemCacheBackend;
+
+  @BeforeClass
+  public static void setUp() {
+    fileSystemCacheBackend = new FileSystemCacheBackend();
+    fileSystemCacheBackend.setCachePath( "/test-cache/" );
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    Assert.assertTrue( fileSystemCacheBackend.purge( Collections.singletonList( "" ) ) );
+    PentahoSessionHolder.removeSession();
+  }
+
+  @Test
+  public void testSharedAcrossSessions() throws Exception {
+    final SharedReportContentCache cache = new SharedReportContentCache( fileSystemCacheBackend );
+    cache.setDaysToLive( 1L );
+
+    PentahoSessionHolder.setSession( new StandaloneSession( "bill", "1" ) );
+    assertNull( cache.get( SOME_KEY ) );
+    cache.put( SOME_KEY, SOME_VALUE );
+
+    PentahoSessionHolder.setSession( new StandaloneSession( "steve", "2" ) );
+    assertNotNull( cache.get( SOME_KEY ) );
+
+    assertEquals( 1, cache.getHitCount() );
+    assertEquals( 1, cache.getMissCount() );
+    assertEquals( 0.5, cache.getHitRatio(), 0.0001 );
+    cache.shutdown();
+  }
+
+  @Test
+  public void testCleanupCurrentSessionDropsSharedContent() throws Exception {
+    final SharedReportContentCache cache = new SharedReportContentCache( fileSystemCacheBackend );
+    cache.setDaysToLive( 1L );
+    PentahoSessionHolder.setSession( new StandaloneSession( "bill", "1" ) );
+    cache.put( SOME_KEY, SOME_VALUE );
+    assertNotNull( cache.get( SOME_KEY ) );
+    cache.cleanupCurrentSession();
+    assertNull( cache.get( SOME_KEY ) );
+    cache.shutdown();
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    final SharedReportContentCache cache = new SharedReportContentCache( fileSystemCacheBackend );
+    cache.setDaysToLive( 1L );
+    PentahoSessionHolder.setSession( new StandaloneSession( "bill", "1" ) );
+    cache.put( SOME_KEY, SOME_VALUE );
+    cache.setMillisToLive( 0 );
+    Thread.sleep( 10 );
+    assertNull( cache.get( SOME_KEY ) );
+    cache.shutdown();
+  }
+}
@@ -0,0 +1,116 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.reporting.platform.plugin.MockTableModel;
+
+import javax.swing.table.DefaultTableModel;
+import java.awt.Point;
+import java.io.File;
+import java.io.NotSerializableException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpilledTableModelTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testValuesAreEqualAndOfTheSameClass() throws Exception {
+    final Timestamp timestamp = new Timestamp( 1600000000123L );
+    timestamp.setNanos( 123456789 );
+    final Object[][] data = {
+      { 1, 2L, 3.5, true, new Date( 1000 ), new java.sql.Date( 2000 ), new Time( 3000 ), timestamp,
+        new BigDecimal( "12.50" ), "n\u00f6rth", new BigInteger( "7" ), 1.5f, (short) 2, (byte) 3, new Point( 1, 2 ) },
+      { null, null, null, null, null, null, null, null, null, null, null, null, null, null, null },
+      { -1, Long.MAX_VALUE, Double.NaN, false, new Date( 4000 ), new java.sql.Date( 5000 ), new Time( 6000 ),
+        new Timestamp( 7000 ), new BigDecimal( BigInteger.ONE.shiftLeft( 70 ), 3 ), "", BigInteger.ONE.negate(),
+        Float.MAX_VALUE, Short.MIN_VALUE, Byte.MAX_VALUE, new Point() }
+    };
+    final MockTableModel model = new MockTableModel( data );
+    final SpilledTableModel spilled = SpilledTableModel.write( model, folder.newFile(), Long.MAX_VALUE );
+
+    assertEquals( 3, spilled.getRowCount() );
+    assertEquals( model.getColumnCount(), spilled.getColumnCount() );
+    // rows are decoded in any order
+    for ( int row = model.getRowCount() - 1; row >= 0; row-- ) {
+      for ( int column = 0; column < model.getColumnCount(); column++ ) {
+        final Object value = model.getValueAt( row, column );
+        final Object copy = spilled.getValueAt( row, column );
+        assertEquals( row + "/" + column, value, copy );
+        if ( value != null ) {
+          assertSame( value.getClass(), copy.getClass() );
+        }
+      }
+    }
+    assertEquals( spilled.getFile().length(), spilled.getSize() );
+  }
+
+  @Test
+  public void testMetaData() throws Exception {
+    final DefaultTableModel model = new DefaultTableModel( new Object[][] { { "a" } }, new Object[] { "name" } );
+    final SpilledTableModel spilled = SpilledTableModel.write( model, folder.newFile(), Long.MAX_VALUE );
+    assertEquals( "name", spilled.getColumnName( 0 ) );
+    assertEquals( Object.class, spilled.getColumnClass( 0 ) );
+    assertFalse( spilled.isCellDataAttributesSupported() );
+  }
+
+  @Test
+  public void testTooLargeTableIsNotWritten() throws Exception {
+    final Object[][] data = new Object[ 1000 ][];
+    for ( int i = 0; i < data.length; i++ ) {
+      data[ i ] = new Object[] { "Region " + i };
+    }
+    final File file = folder.newFile();
+    assertNull( SpilledTableModel.write( new MockTableModel( data ), file, 1024 ) );
+    assertFalse( file.exists() );
+  }
+
+  @Test
+  public void testEstimateSize() throws Exception {
+    final Object[][] data = new Object[ 1000 ][];
+    for ( int i = 0; i < data.length; i++ ) {
+      data[ i ] = new Object[] { "Region " + i, i };
+    }
+    final MockTableModel model = new MockTableModel( data );
+    final long estimate = SpilledTableModel.estimateSize( model );
+    final long size = SpilledTableModel.write( model, folder.newFile(), Long.MAX_VALUE ).getSize();
+    assertTrue( estimate + " ~ " + size, Math.abs( estimate - size ) < size / 10 );
+  }
+
+  @Test
+  public void testNotSerializableValue() throws Exception {
+    final File file = folder.newFile();
+    try {
+      SpilledTableModel.write( new MockTableModel( new Object[][] { { new Object() } } ), file, Long.MAX_VALUE );
+      fail();
+    } catch ( final NotSerializableException e ) {
+      assertFalse( file.exists() );
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.cache;
+
+import org.junit.Test;
+import org.pentaho.reporting.platform.plugin.MockTableModel;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TableModelWeigherTest {
+
+  private final TableModelWeigher weigher = new TableModelWeigher();
+
+  @Test
+  public void testWideValuesWeighMore() {
+    final Object[][] numbers = new Object[ 100 ][ 3 ];
+    final Object[][] texts = new Object[ 100 ][ 3 ];
+    for ( int i = 0; i < 100; i++ ) {
+      numbers[ i ] = new Object[] { i, (long) i, new BigDecimal( i ) };
+      texts[ i ] = new Object[] { "Row number " + i, "Some longer description of row " + i, "x" };
+    }
+    final int textWeight = weigher.weigh( null, new MockTableModel( texts ) );
+    final int numberWeight = weigher.weigh( null, new MockTableModel( numbers ) );
+    assertTrue( textWeight > numberWeight );
+    assertTrue( numberWeight > weigher.weigh( null, new MockTableModel() ) );
+  }
+
+  @Test
+  public void testSampledWeightIsExtrapolated() {
+    final Object[][] data = new Object[ 10000 ][];
+    for ( int i = 0; i < data.length; i++ ) {
+      data[ i ] = new Object[] { "0123456789", i };
+    }
+    final MockTableModel model = new MockTableModel( data );
+    final int sampled = weigher.weigh( null, model );
+    weigher.setSampleRows( data.length );
+    assertEquals( weigher.weigh( null, model ), sampled );
+  }
+
+  @Test
+  public void testValueWeights() {
+    assertEquals( 0, TableModelWeigher.weighValue( null ) );
+    assertEquals( 40 + 2 * 5, TableModelWeigher.weighValue( "hello" ) );
+    assertEquals( 16 + 100, TableModelWeigher.weighValue( new byte[ 100 ] ) );
+  }
+}
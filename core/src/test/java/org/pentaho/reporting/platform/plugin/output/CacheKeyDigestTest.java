@@ -0,0 +1,57 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.output;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class CacheKeyDigestTest {
+
+  @Test
+  public void testSameKeySameDigest() throws Exception {
+    final Map<String, String> first = new LinkedHashMap<>();
+    first.put( "a", "1" );
+    first.put( "b", null );
+    final Map<String, String> second = new LinkedHashMap<>();
+    second.put( "b", null );
+    second.put( "a", "1" );
+    final String digest = new CacheKeyDigest().add( Arrays.asList( "repository", "/home/report.prpt" ) )
+      .add( first ).add( "en_US" ).digest();
+    assertEquals( digest, new CacheKeyDigest().add( Arrays.asList( "repository", "/home/report.prpt" ) )
+      .add( second ).add( "en_US" ).digest() );
+    assertEquals( 44, digest.length() );
+  }
+
+  @Test
+  public void testPartsAreNotConcatenated() throws Exception {
+    assertNotEquals( new CacheKeyDigest().add( "ab" ).add( "c" ).digest(),
+      new CacheKeyDigest().add( "a" ).add( "bc" ).digest() );
+    assertNotEquals( new CacheKeyDigest().add( (String) null ).digest(), new CacheKeyDigest().add( "" ).digest() );
+    assertNotEquals( new CacheKeyDigest().add( Collections.singletonList( "a" ) ).add( "b" ).digest(),
+      new CacheKeyDigest().add( Arrays.asList( "a", "b" ) ).digest() );
+
+    final Map<String, String> nullValue = new HashMap<>();
+    nullValue.put( "a", null );
+    assertNotEquals( new CacheKeyDigest().add( nullValue ).digest(),
+      new CacheKeyDigest().add( Collections.singletonMap( "a", "null" ) ).digest() );
+  }
+}
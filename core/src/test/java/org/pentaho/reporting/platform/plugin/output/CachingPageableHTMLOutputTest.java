@@ -0,0 +1,205 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.output;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.engine.classic.core.MasterReport;
+import org.pentaho.reporting.engine.classic.core.ReportInterruptedException;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressEvent;
+import org.pentaho.reporting.engine.classic.core.event.ReportProgressListener;
+import org.pentaho.reporting.engine.classic.core.event.async.IAsyncReportListener;
+import org.pentaho.reporting.engine.classic.core.event.async.ReportListenerThreadHolder;
+import org.pentaho.reporting.platform.plugin.MicroPlatformFactory;
+import org.pentaho.reporting.platform.plugin.cache.IReportContent;
+import org.pentaho.reporting.platform.plugin.cache.IReportContentCache;
+import org.pentaho.reporting.platform.plugin.cache.PluginCacheManagerImpl;
+import org.pentaho.test.platform.engine.core.MicroPlatform;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class CachingPageableHTMLOutputTest {
+
+  private static final String KEY = "shared-render";
+
+  private MicroPlatform microPlatform;
+  private ExecutorService executor;
+  private IReportContentCache cache;
+  private MasterReport report;
+  private IReportContent content;
+  private CountDownLatch started;
+  private CountDownLatch release;
+  private AtomicInteger renders;
+  private AtomicInteger interrupted;
+
+  @BeforeClass
+  public static void boot() {
+    ClassicEngineBoot.getInstance().start();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    PentahoSessionHolder.removeSession();
+    cache = mock( IReportContentCache.class );
+    microPlatform = MicroPlatformFactory.create();
+    microPlatform.define( "IPluginCacheManager", new PluginCacheManagerImpl( cache ) );
+    microPlatform.start();
+    executor = Executors.newCachedThreadPool();
+
+    report = mock( MasterReport.class );
+    content = mock( IReportContent.class );
+    doReturn( 1 ).when( content ).getPageCount();
+    started = new CountDownLatch( 1 );
+    release = new CountDownLatch( 1 );
+    renders = new AtomicInteger();
+    interrupted = new AtomicInteger();
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+    microPlatform.stop();
+  }
+
+  @Test
+  public void testCanceledLeaderKeepsRenderForFollower() throws Exception {
+    final CachingPageableHTMLOutput leader = createBlockingOutput();
+    final CachingPageableHTMLOutput follower = createBlockingOutput();
+
+    final AtomicReference<Object> leaderResult = new AtomicReference<>();
+    final CountDownLatch leaderLeft = new CountDownLatch( 1 );
+    final Future<?> leaderRequest = executor.submit( () -> {
+      try {
+        leaderResult.set( leader.regenerateCache( report, 1, KEY, 0 ) );
+      } catch ( final Exception e ) {
+        leaderResult.set( e );
+      } finally {
+        leaderLeft.countDown();
+      }
+    } );
+    assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+
+    final CountDownLatch following = new CountDownLatch( 1 );
+    final IAsyncReportListener followerListener = mock( IAsyncReportListener.class );
+    doAnswer( invocation -> {
+      following.countDown();
+      return false;
+    } ).when( followerListener ).isFirstPageMode();
+    final Future<IReportContent> followerRequest = executor.submit( () -> {
+      ReportListenerThreadHolder.setListener( followerListener );
+      try {
+        return follower.regenerateCache( report, 1, KEY, 0 );
+      } finally {
+        ReportListenerThreadHolder.clear();
+      }
+    } );
+    assertTrue( following.await( 5, TimeUnit.SECONDS ) );
+
+    // the render goes on on the leader's thread for the follower
+    leaderRequest.cancel( true );
+    final long deadline = System.currentTimeMillis() + 5000;
+    while ( !leader.getLeaderGuard().isHandedOver() && System.currentTimeMillis() < deadline ) {
+      Thread.sleep( 10 );
+    }
+    assertTrue( leader.getLeaderGuard().isHandedOver() );
+
+    release.countDown();
+    assertSame( content, followerRequest.get( 5, TimeUnit.SECONDS ) );
+    assertTrue( leaderLeft.await( 5, TimeUnit.SECONDS ) );
+    assertSame( content, leaderResult.get() );
+    assertEquals( 1, renders.get() );
+    assertEquals( 0, interrupted.get() );
+    verify( follower, never() ).produceCacheablePages( any(), anyInt(), anyString(), anyInt() );
+    verify( cache ).put( eq( KEY ), same( content ), any() );
+  }
+
+  @Test
+  public void testRenderStopsWhenLastRequestLeaves() throws Exception {
+    final CachingPageableHTMLOutput leader = createBlockingOutput();
+    final CountDownLatch leaderLeft = new CountDownLatch( 1 );
+    final Future<?> leaderRequest = executor.submit( () -> {
+      try {
+        leader.regenerateCache( report, 1, KEY, 0 );
+      } finally {
+        leaderLeft.countDown();
+      }
+      return null;
+    } );
+    assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+
+    leaderRequest.cancel( true );
+    assertTrue( leaderLeft.await( 5, TimeUnit.SECONDS ) );
+
+    final long deadline = System.currentTimeMillis() + 5000;
+    while ( interrupted.get() == 0 && System.currentTimeMillis() < deadline ) {
+      Thread.sleep( 10 );
+    }
+    assertEquals( 1, interrupted.get() );
+    assertEquals( 0, renders.get() );
+    verify( cache, never() ).put( anyString(), any(), any() );
+  }
+
+  /**
+   * @return output whose render runs until {@link #release} is counted down. Like the engine, it reports progress to
+   * the leader guard and stops when it finds its thread interrupted.
+   */
+  private CachingPageableHTMLOutput createBlockingOutput() throws Exception {
+    final CachingPageableHTMLOutput output = spy( new CachingPageableHTMLOutput() );
+    final ReportProgressEvent event = mock( ReportProgressEvent.class );
+    doAnswer( invocation -> {
+      started.countDown();
+      final ReportProgressListener guard = output.getLeaderGuard();
+      while ( release.getCount() > 0 ) {
+        LockSupport.parkNanos( TimeUnit.MILLISECONDS.toNanos( 1 ) );
+        if ( guard != null ) {
+          guard.reportProcessingUpdate( event );
+        }
+        if ( Thread.currentThread().isInterrupted() ) {
+          interrupted.incrementAndGet();
+          throw new ReportInterruptedException( "Render interrupted" );
+        }
+      }
+      renders.incrementAndGet();
+      return content;
+    } ).when( output ).produceCacheablePages( report, 1, KEY, 0 );
+    return output;
+  }
+}
@@ -13,6 +13,7 @@
 
 package org.pentaho.reporting.platform.plugin.output;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -30,12 +31,15 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -138,4 +142,40 @@ public class PaginationControlWrapperTest {
       tmp.delete();
     }
   }
+
+  @Test
+  public void embedCssOnEveryPage() throws Exception {
+    File tmp = new File( "target/test/resource/solution/system/tmp" );
+    tmp.mkdirs();
+
+    final String solutionPath = PentahoSystem.getApplicationContext().getSolutionPath( "system/tmp/shared.css" );
+    final File file = new File( solutionPath );
+    try {
+      // group references in the stylesheet must not be expanded
+      FileUtils.writeStringToFile( file, ".price:before{content:\"$1\"}", "UTF-8" );
+      final Map<Integer, byte[]> pages = new HashMap<>();
+      for ( int i = 0; i < 3; i++ ) {
+        pages.put( i, ( "<p>" + i + "</p>\n"
+          + "<link type=\"text/css\" rel=\"stylesheet\" href=\"/pentaho/getImage?image=shared.css\">" ).getBytes() );
+      }
+      final String res;
+      try ( ByteArrayOutputStream baos = new ByteArrayOutputStream() ) {
+        PaginationControlWrapper.write( baos, new ReportContentImpl( 3, pages ) );
+        res = new String( baos.toByteArray(), "UTF-8" );
+      }
+
+      final String array = res.substring( res.indexOf( "var pages = [" ), res.indexOf( " ];" ) );
+      final Matcher matcher = Pattern.compile( "'([A-Za-z0-9+/=]*)'" ).matcher( array );
+      for ( int i = 0; i < 3; i++ ) {
+        assertTrue( matcher.find() );
+        assertEquals( "&lt;p&gt;" + i + "&lt;/p&gt;\n"
+            + "&lt;style&gt;\n.price:before{content:&quot;$1&quot;}\n&lt;/style&gt;",
+          new String( Base64.decodeBase64( matcher.group( 1 ) ), "UTF-8" ) );
+      }
+      assertFalse( matcher.find() );
+    } finally {
+      file.delete();
+      tmp.delete();
+    }
+  }
 }
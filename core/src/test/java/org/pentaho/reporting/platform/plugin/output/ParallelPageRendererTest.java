@@ -0,0 +1,145 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.output;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
+import org.pentaho.reporting.engine.classic.core.MasterReport;
+import org.pentaho.reporting.engine.classic.core.layout.output.LogicalPageKey;
+import org.pentaho.reporting.libraries.base.config.Configuration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ParallelPageRendererTest {
+
+  @BeforeClass
+  public static void beforeClass() {
+    ClassicEngineBoot.getInstance().start();
+  }
+
+  @Test
+  public void testReservedPagesBelongToMain() {
+    final ParallelPageRenderer renderer = new ParallelPageRenderer( 2 );
+    assertFalse( renderer.claim( 1, 0 ) );
+    assertFalse( renderer.claim( 1, 1 ) );
+    assertTrue( renderer.claim( ParallelPageRenderer.MAIN, 1 ) );
+    assertTrue( renderer.claim( 1, 2 ) );
+  }
+
+  @Test
+  public void testPageIsClaimedOnce() {
+    final ParallelPageRenderer renderer = new ParallelPageRenderer( 1 );
+    assertTrue( renderer.claim( 2, 5 ) );
+    assertTrue( renderer.claim( 2, 5 ) );
+    assertFalse( renderer.claim( 1, 5 ) );
+    assertFalse( renderer.claim( ParallelPageRenderer.MAIN, 5 ) );
+  }
+
+  @Test
+  public void testNoClaimsAfterJoin() {
+    final ParallelPageRenderer renderer = new ParallelPageRenderer( 1 );
+    assertTrue( renderer.claim( 1, 3 ) );
+    renderer.join( Collections.<Integer, byte[]>emptyMap() );
+    assertTrue( renderer.claim( 1, 3 ) );
+    assertFalse( renderer.claim( 1, 4 ) );
+  }
+
+  @Test
+  public void testJoinMergesWorkerPages() throws Exception {
+    final ParallelPageRenderer renderer = new ParallelPageRenderer( 1 );
+    final CountDownLatch started = new CountDownLatch( 1 );
+    renderer.fork( selector -> {
+      started.countDown();
+      final Map<Integer, byte[]> pages = new HashMap<>();
+      pages.put( 1, new byte[] { 1 } );
+      return pages;
+    } );
+    renderer.fork( selector -> {
+      throw new IllegalStateException( "failed worker" );
+    } );
+    assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+
+    final Map<Integer, byte[]> main = new HashMap<>();
+    main.put( 0, new byte[] { 0 } );
+    final Map<Integer, byte[]> pages = renderer.join( main );
+    assertEquals( 2, pages.size() );
+    assertArrayEquals( new byte[] { 1 }, pages.get( 1 ) );
+    assertEquals( new HashSet<>( Arrays.asList( 2, 3 ) ), ParallelPageRenderer.getMissingPages( 4, pages ) );
+  }
+
+  @Test
+  public void testBusyPoolStartsNoWorker() throws Exception {
+    final ThreadPoolExecutor executor =
+      new ThreadPoolExecutor( 1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>() );
+    try {
+      final ParallelPageRenderer renderer = new ParallelPageRenderer( 1, executor );
+      final CountDownLatch release = new CountDownLatch( 1 );
+      assertTrue( renderer.fork( selector -> {
+        release.await();
+        return Collections.singletonMap( 1, new byte[] { 1 } );
+      } ) );
+      assertFalse( renderer.fork( selector -> Collections.singletonMap( 2, new byte[] { 2 } ) ) );
+
+      release.countDown();
+      final Map<Integer, byte[]> pages = renderer.join( Collections.<Integer, byte[]>emptyMap() );
+      assertEquals( Collections.singleton( 1 ), pages.keySet() );
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testThreadsAreCapped() {
+    final Configuration configuration = mock( Configuration.class );
+    final MasterReport report = mock( MasterReport.class );
+    when( report.getConfiguration() ).thenReturn( configuration );
+    when( configuration.getConfigProperty( ParallelPageRenderer.THREADS ) ).thenReturn( "64" );
+    assertEquals( 4, ParallelPageRenderer.getThreads( report ) );
+    when( configuration.getConfigProperty( ParallelPageRenderer.THREADS ) ).thenReturn( "2" );
+    assertEquals( 2, ParallelPageRenderer.getThreads( report ) );
+    when( configuration.getConfigProperty( ParallelPageRenderer.THREADS ) ).thenReturn( "0" );
+    assertEquals( 1, ParallelPageRenderer.getThreads( report ) );
+  }
+
+  @Test
+  public void testSelectorNamesContentAfterPage() throws Exception {
+    final ParallelPageRenderer renderer = new ParallelPageRenderer( 1 );
+    final ParallelPageRenderer.PageSelector selector =
+      renderer.createSelector( new HashSet<>( Collections.singletonList( 7 ) ) );
+    assertFalse( selector.isLogicalPageAccepted( pageKey( 6 ) ) );
+    assertTrue( selector.isLogicalPageAccepted( pageKey( 7 ) ) );
+    assertEquals( "page-7.html", selector.generateName( "index", "text/html" ) );
+  }
+
+  private static LogicalPageKey pageKey( final int position ) {
+    final LogicalPageKey key = mock( LogicalPageKey.class );
+    when( key.getPosition() ).thenReturn( position );
+    return key;
+  }
+}
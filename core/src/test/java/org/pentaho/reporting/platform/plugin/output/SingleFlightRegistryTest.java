@@ -0,0 +1,164 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package org.pentaho.reporting.platform.plugin.output;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightRegistryTest {
+
+  private final SingleFlightRegistry<String> registry = new SingleFlightRegistry<>();
+
+  @Test
+  public void testFollowerGetsLeaderResult() throws Exception {
+    final SingleFlightRegistry.Flight<String> leader = registry.join( "key" );
+    assertTrue( leader.isLeader() );
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final CountDownLatch joined = new CountDownLatch( 1 );
+      final Future<String> follower = executor.submit( () -> {
+        final SingleFlightRegistry.Flight<String> flight = registry.join( "key" );
+        assertFalse( flight.isLeader() );
+        joined.countDown();
+        try {
+          return flight.await( 5, TimeUnit.SECONDS );
+        } finally {
+          flight.leave();
+        }
+      } );
+      assertTrue( joined.await( 5, TimeUnit.SECONDS ) );
+      assertEquals( 2, leader.getWaiters() );
+
+      leader.complete( "content" );
+      assertEquals( "content", follower.get( 5, TimeUnit.SECONDS ) );
+      assertEquals( 0, registry.size() );
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFinishedFlightIsNotJoined() {
+    final SingleFlightRegistry.Flight<String> first = registry.join( "key" );
+    first.complete( "content" );
+    final SingleFlightRegistry.Flight<String> second = registry.join( "key" );
+    assertNotSame( first, second );
+    assertTrue( second.isLeader() );
+  }
+
+  @Test
+  public void testDistinctKeysDontShareFlights() {
+    final SingleFlightRegistry.Flight<String> first = registry.join( "a" );
+    final SingleFlightRegistry.Flight<String> second = registry.join( "b" );
+    assertNotSame( first, second );
+    assertSame( first, registry.join( "a" ) );
+    assertEquals( 2, registry.size() );
+  }
+
+  @Test
+  public void testFailureIsPropagated() throws Exception {
+    final SingleFlightRegistry.Flight<String> flight = registry.join( "key" );
+    final IllegalStateException failure = new IllegalStateException( "bang" );
+    flight.fail( failure );
+    try {
+      flight.await( 1, TimeUnit.SECONDS );
+      fail();
+    } catch ( final ExecutionException e ) {
+      assertSame( failure, e.getCause() );
+    }
+    assertEquals( 0, registry.size() );
+  }
+
+  @Test
+  public void testAbandonedFlightLetsFollowersTakeOver() throws Exception {
+    final SingleFlightRegistry.Flight<String> flight = registry.join( "key" );
+    flight.abandon();
+    try {
+      flight.await( 1, TimeUnit.SECONDS );
+      fail();
+    } catch ( final ExecutionException e ) {
+      assertTrue( e.getCause() instanceof SingleFlightRegistry.AbandonedException );
+    }
+    assertTrue( registry.join( "key" ).isLeader() );
+  }
+
+  @Test
+  public void testLeavingFollowerDoesNotEndFlight() {
+    final SingleFlightRegistry.Flight<String> flight = registry.join( "key" );
+    assertSame( flight, registry.join( "key" ) );
+    flight.leave();
+    assertEquals( 1, flight.getWaiters() );
+    assertEquals( 1, registry.size() );
+  }
+
+  @Test
+  public void testLastLeavingCallerCancelsFlight() {
+    final AtomicInteger canceled = new AtomicInteger();
+    final SingleFlightRegistry.Flight<String> flight = registry.join( "key" );
+    flight.setCancelAction( canceled::incrementAndGet );
+    assertSame( flight, registry.join( "key" ) );
+
+    flight.leave();
+    assertEquals( 0, canceled.get() );
+    assertEquals( 1, registry.size() );
+
+    flight.leave();
+    assertEquals( 1, canceled.get() );
+    assertEquals( 0, registry.size() );
+    assertNotSame( flight, registry.join( "key" ) );
+
+    flight.leave();
+    assertEquals( 1, canceled.get() );
+  }
+
+  @Test
+  public void testLeaderHandsOverToFollower() {
+    final AtomicInteger canceled = new AtomicInteger();
+    final SingleFlightRegistry.Flight<String> flight = registry.join( "key" );
+    flight.setCancelAction( canceled::incrementAndGet );
+    // nobody else waits
+    assertFalse( flight.handOver() );
+
+    assertSame( flight, registry.join( "key" ) );
+    assertTrue( flight.handOver() );
+    assertEquals( 0, canceled.get() );
+    // the follower leaving is the last one
+    flight.leave();
+    assertEquals( 1, canceled.get() );
+  }
+
+  @Test
+  public void testLeavingCompletedFlightDoesNotCancel() {
+    final AtomicInteger canceled = new AtomicInteger();
+    final SingleFlightRegistry.Flight<String> flight = registry.join( "key" );
+    flight.setCancelAction( canceled::incrementAndGet );
+    flight.complete( "content" );
+    flight.leave();
+    assertEquals( 0, canceled.get() );
+  }
+}
@@ -17,13 +17,17 @@ import org.junit.Test;
 import org.pentaho.platform.api.engine.IApplicationContext;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.engine.core.system.StandaloneSession;
+import org.pentaho.reporting.engine.classic.core.ClassicEngineBoot;
 import org.pentaho.reporting.engine.classic.core.util.StagingMode;
+import org.pentaho.reporting.libraries.base.config.Configuration;
 import org.pentaho.reporting.platform.plugin.MicroPlatformFactory;
 import org.pentaho.test.platform.engine.core.MicroPlatform;
 
 import java.io.File;
 
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class AbstractStagingHandlerTest {
   @Test
@@ -50,4 +54,20 @@ public class AbstractStagingHandlerTest {
       microPlatform = null;
     }
   }
+
+  @Test
+  public void getAdaptiveStagingHandlerImpl() throws Exception {
+    ClassicEngineBoot.getInstance().start();
+    final Configuration configuration = mock( Configuration.class );
+    assertTrue( AbstractStagingHandler.getStagingHandlerImpl( null, null, StagingMode.MEMORY, configuration )
+      instanceof MemStagingHandler );
+
+    when( configuration.getConfigProperty( AdaptiveStagingHandler.ENABLED ) ).thenReturn( "true" );
+    assertTrue( AbstractStagingHandler.getStagingHandlerImpl( null, null, StagingMode.MEMORY, configuration )
+      instanceof AdaptiveStagingHandler );
+    assertTrue( AbstractStagingHandler.getStagingHandlerImpl( null, null, StagingMode.TMPFILE, configuration )
+      instanceof AdaptiveStagingHandler );
+    assertTrue( AbstractStagingHandler.getStagingHandlerImpl( null, null, StagingMode.THRU, configuration )
+      instanceof ThruStagingHandler );
+  }
 }
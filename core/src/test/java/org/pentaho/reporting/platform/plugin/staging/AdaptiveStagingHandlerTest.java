@@ -0,0 +1,137 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.platform.api.engine.IApplicationContext;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.reporting.engine.classic.core.util.StagingMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdaptiveStagingHandlerTest {
+
+  private static final int CHUNK = StagingBufferPool.CHUNK_SIZE;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private IPentahoSession session = mock( IPentahoSession.class );
+
+  @Before
+  public void before() throws IOException {
+    final IApplicationContext appContext = mock( IApplicationContext.class );
+    when( appContext.createTempFile( eq( session ), anyString(), anyString(), anyBoolean() ) )
+      .thenAnswer( invocation -> folder.newFile() );
+    PentahoSystem.setApplicationContext( appContext );
+  }
+
+  @Test
+  public void testSmallContentStaysInMemory() throws IOException {
+    final StagingBufferPool pool = new StagingBufferPool( 4 * CHUNK );
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final AdaptiveStagingHandler handler = new AdaptiveStagingHandler( baos, session, 2 * CHUNK, pool );
+    final byte[] content = write( handler, CHUNK + 10 );
+
+    assertEquals( 0, baos.size() );
+    assertEquals( StagingMode.MEMORY, handler.getStagingMode() );
+    assertNull( handler.tmpFile );
+    assertEquals( content.length, handler.getWrittenByteCount() );
+    assertEquals( 2 * CHUNK, pool.getUsedBytes() );
+
+    handler.complete();
+    assertArrayEquals( content, baos.toByteArray() );
+    handler.close();
+    assertEquals( 0, pool.getUsedBytes() );
+  }
+
+  @Test
+  public void testLargeContentMovesToFile() throws IOException {
+    final StagingBufferPool pool = new StagingBufferPool( 4 * CHUNK );
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final AdaptiveStagingHandler handler = new AdaptiveStagingHandler( baos, session, 2 * CHUNK, pool );
+    final byte[] content = write( handler, 3 * CHUNK + 10 );
+
+    assertEquals( StagingMode.TMPFILE, handler.getStagingMode() );
+    assertNotNull( handler.tmpFile );
+    assertEquals( content.length, handler.getWrittenByteCount() );
+    assertEquals( 0, pool.getUsedBytes() );
+
+    handler.complete();
+    assertArrayEquals( content, baos.toByteArray() );
+    handler.close();
+    assertFalse( handler.tmpFile.exists() );
+  }
+
+  @Test
+  public void testExhaustedMemoryMovesToFile() throws IOException {
+    final StagingBufferPool pool = new StagingBufferPool( CHUNK );
+    final AdaptiveStagingHandler first =
+      new AdaptiveStagingHandler( new ByteArrayOutputStream(), session, 2 * CHUNK, pool );
+    write( first, 10 );
+    assertEquals( StagingMode.MEMORY, first.getStagingMode() );
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final AdaptiveStagingHandler second = new AdaptiveStagingHandler( baos, session, 2 * CHUNK, pool );
+    final byte[] content = write( second, 10 );
+    assertEquals( StagingMode.TMPFILE, second.getStagingMode() );
+    second.complete();
+    assertArrayEquals( content, baos.toByteArray() );
+
+    first.close();
+    second.close();
+    assertEquals( 0, pool.getUsedBytes() );
+    assertTrue( pool.acquire() != null );
+  }
+
+  /**
+   * Writes random content in blocks and single bytes.
+   */
+  private static byte[] write( final AdaptiveStagingHandler handler, final int length ) throws IOException {
+    final byte[] content = new byte[ length ];
+    new Random( length ).nextBytes( content );
+    final OutputStream stream = handler.getStagingOutputStream();
+    int position = 0;
+    while ( position < length ) {
+      if ( position % 3 == 0 ) {
+        stream.write( content[ position ] );
+        position++;
+      } else {
+        final int block = Math.min( length - position, 1000 );
+        stream.write( content, position, block );
+        position += block;
+      }
+    }
+    return content;
+  }
+}
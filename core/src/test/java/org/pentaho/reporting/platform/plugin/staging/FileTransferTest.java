@@ -0,0 +1,80 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.reporting.platform.plugin.staging;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class FileTransferTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private byte[] content;
+  private File file;
+
+  @Before
+  public void before() throws IOException {
+    content = new byte[ 700000 ];
+    new Random( 1 ).nextBytes( content );
+    file = folder.newFile();
+    Files.write( file.toPath(), content );
+  }
+
+  @Test
+  public void testTransferToStream() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    FileTransfer.transferTo( file, out );
+    assertArrayEquals( content, out.toByteArray() );
+  }
+
+  @Test
+  public void testTransferToChannel() throws IOException {
+    final File target = folder.newFile();
+    try ( FileOutputStream out = new FileOutputStream( target ) ) {
+      FileTransfer.transferTo( file, out );
+    }
+    assertArrayEquals( content, Files.readAllBytes( target.toPath() ) );
+  }
+
+  @Test
+  public void testTransferPart() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try ( FileChannel channel = FileChannel.open( file.toPath() ) ) {
+      FileTransfer.transferTo( channel, 100, 300000, out );
+    }
+    assertArrayEquals( Arrays.copyOfRange( content, 100, 300100 ), out.toByteArray() );
+  }
+
+  @Test( expected = EOFException.class )
+  public void testTransferBeyondEnd() throws IOException {
+    try ( FileChannel channel = FileChannel.open( file.toPath() ) ) {
+      FileTransfer.transferTo( channel, content.length - 10, 20, new ByteArrayOutputStream() );
+    }
+  }
+}